@@ -0,0 +1,201 @@
+package trader.bench;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import trader.common.beans.BeansContainer;
+import trader.common.util.FileUtil;
+import trader.common.util.TraderHomeUtil;
+import trader.service.ServiceConstants.AccountState;
+import trader.service.data.KVStoreService;
+import trader.service.md.MarketData;
+import trader.service.md.MarketDataService;
+import trader.service.trade.Account;
+import trader.service.trade.AccountImpl;
+import trader.service.trade.MarketTimeService;
+import trader.service.trade.OrderRefGen;
+import trader.service.trade.OrderRefGenImpl;
+import trader.service.trade.TradeConstants;
+import trader.service.trade.TradeConstants.PosDirection;
+import trader.service.trade.TradeService;
+import trader.service.trade.TxnSession;
+import trader.service.trade.TxnSessionFactory;
+import trader.service.trade.spi.TxnSessionListener;
+import trader.simulator.SimBeansContainer;
+import trader.simulator.SimKVStoreService;
+import trader.simulator.SimMarketDataService;
+import trader.simulator.SimMarketTimeService;
+import trader.simulator.trade.SimTxnSession;
+
+/**
+ * 模拟账户持仓时, 行情更新持仓盈亏和账户资金
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AccountBenchmark {
+
+    /**
+     * 初始化时返回一个昨仓的模拟交易连接
+     */
+    private static class BenchTxnSession extends SimTxnSession {
+
+        BenchTxnSession(BeansContainer beansContainer, Account account, TxnSessionListener listener) {
+            super(beansContainer, account, listener);
+        }
+
+        @Override
+        public String syncQryPositions() throws Exception {
+            int[] volumes = new int[TradeConstants.PosVolume_Count];
+            volumes[TradeConstants.PosVolume_Position] = 2;
+            volumes[TradeConstants.PosVolume_YdPosition] = 2;
+            volumes[TradeConstants.PosVolume_LongPosition] = 2;
+            volumes[TradeConstants.PosVolume_LongYdPosition] = 2;
+            JsonObject detail = new JsonObject();
+            detail.addProperty("direction", PosDirection.Long.name());
+            detail.addProperty("volume", 2);
+            detail.addProperty("price", "285.00");
+            detail.addProperty("openDate", "20181227");
+            detail.addProperty("today", false);
+            JsonArray details = new JsonArray();
+            details.add(detail);
+
+            JsonObject posInfo = new JsonObject();
+            posInfo.addProperty("direction", PosDirection.Long.name());
+            posInfo.add("volumes", TradeConstants.posVolume2json(volumes));
+            posInfo.add("money", TradeConstants.posMoney2json(new long[TradeConstants.PosMoney_Count]));
+            posInfo.add("details", details);
+            JsonObject result = new JsonObject();
+            result.add(BenchSupport.AU1906.toString(), posInfo);
+            return result.toString();
+        }
+    }
+
+    private static class BenchTradeService implements TradeService {
+        private OrderRefGen orderRefGen;
+        private Map<String, TxnSessionFactory> txnSessionFactories = new HashMap<>();
+
+        BenchTradeService(BeansContainer beansContainer){
+            orderRefGen = new OrderRefGenImpl(beansContainer);
+            txnSessionFactories.put(TxnSession.PROVIDER_SIM, (BeansContainer beansContainer0, Account account, TxnSessionListener listener)->{
+                return new BenchTxnSession(beansContainer0, account, listener);
+            });
+        }
+
+        @Override
+        public void init(BeansContainer beansContainer) throws Exception {
+        }
+
+        @Override
+        public void destroy() {
+        }
+
+        @Override
+        public OrderRefGen getOrderRefGen() {
+            return orderRefGen;
+        }
+
+        @Override
+        public Account getPrimaryAccount() {
+            return null;
+        }
+
+        @Override
+        public Account getAccount(String id) {
+            return null;
+        }
+
+        @Override
+        public Collection<Account> getAccounts() {
+            return null;
+        }
+
+        @Override
+        public Map<String, TxnSessionFactory> getTxnSessionFactories() {
+            return txnSessionFactories;
+        }
+    }
+
+    private static final String COMMISSIONS_JSON =
+            "{\"feeInfos\": {\"au1906.shfe\": {\"priceTick\": \"0.05\", \"volumeMultiple\": 1000, "
+            + "\"marginRatios\": [0.09, 0.0, 0.09, 0.0], \"commissionRatios\": [6.0E-8, 10.01, 6.0E-8, 10.01, 6.0E-8, 0.0]}}, "
+            + "\"brokerMarginRatio\": {\"au1906.shfe\": \"0.09\"}}";
+
+    private ExecutorService executorService;
+    private AccountImpl account;
+    private MarketData[] ticks;
+    private int tickIndex;
+
+    @Setup
+    public void setup() throws Exception {
+        ticks = BenchSupport.createTicks(BenchSupport.TICK_COUNT);
+        executorService = Executors.newSingleThreadExecutor();
+
+        SimBeansContainer beansContainer = new SimBeansContainer();
+        SimMarketTimeService mtService = new SimMarketTimeService();
+        mtService.setTimeRanges(BenchSupport.TRADING_DAY, new LocalDateTime[] {BenchSupport.getBeginTime(), BenchSupport.getTradingTimes().getMarketCloseTime()});
+        beansContainer.addBean(MarketTimeService.class, mtService);
+        beansContainer.addBean(MarketDataService.class, new SimMarketDataService());
+        beansContainer.addBean(KVStoreService.class, new SimKVStoreService());
+        beansContainer.addBean(ExecutorService.class, executorService);
+
+        File commissionsFile = new File(TraderHomeUtil.getDirectory(TraderHomeUtil.DIR_WORK), "bench-account.commissions.json");
+        commissionsFile.getParentFile().mkdirs();
+        FileUtil.save(commissionsFile, COMMISSIONS_JSON);
+
+        Map<String, Object> config = new HashMap<>();
+        config.put("id", "bench-account");
+        config.put("provider", TxnSession.PROVIDER_SIM);
+        config.put("text", "[connectionProps]\ninitMoney=500000.00\ncommissionsFile="+commissionsFile.getAbsolutePath());
+        account = new AccountImpl(new BenchTradeService(beansContainer), beansContainer, config);
+        //连接后异步初始化账户
+        ((SimTxnSession)account.getSession()).connect(account.getConnectionProps());
+        long t0 = System.currentTimeMillis();
+        while( account.getState()!=AccountState.Ready ) {
+            if ( System.currentTimeMillis()-t0>10*1000 ) {
+                throw new IllegalStateException("Account is not ready: "+account.getState());
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Benchmark
+    public long accountOnMarketData() {
+        MarketData tick = ticks[tickIndex++];
+        if ( tickIndex>=ticks.length ) {
+            tickIndex = 0;
+        }
+        account.onMarketData(tick);
+        return account.getMoney(TradeConstants.AccMoney_PositionProfit);
+    }
+
+}
@@ -0,0 +1,97 @@
+package trader.bench;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import trader.service.event.AsyncEvent;
+import trader.service.event.AsyncEventServiceImpl;
+import trader.service.md.ctp.CtpMarketData;
+
+/**
+ * AsyncEventService 行情事件发布到处理线程分发的延时
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AsyncEventBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * 处理线程数量, 对应每个FilterChain一个线程
+     */
+    @Param({"1", "2"})
+    public int filterChains;
+
+    private ExecutorService executorService;
+    private AsyncEventServiceImpl asyncEventService;
+    private CtpMarketData[] ticks;
+    private int tickIndex;
+    private AtomicLong[] processedCounts;
+    private long publishedCount;
+
+    @Setup
+    public void setup() throws Exception {
+        ticks = BenchSupport.createTicks(BATCH_SIZE);
+        executorService = Executors.newCachedThreadPool();
+        asyncEventService = new AsyncEventServiceImpl();
+        BenchSupport.setField(asyncEventService, "executorService", executorService);
+        asyncEventService.init(null);
+        processedCounts = new AtomicLong[filterChains];
+        for(int i=0;i<filterChains;i++) {
+            AtomicLong processedCount = new AtomicLong();
+            processedCounts[i] = processedCount;
+            asyncEventService.addFilter("chain"+i, (AsyncEvent event)->{
+                processedCount.lazySet(processedCount.get()+1);
+                return true;
+            }, AsyncEvent.EVENT_TYPE_MARKETDATA);
+        }
+        asyncEventService.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        asyncEventService.destroy();
+        executorService.shutdownNow();
+    }
+
+    /**
+     * 发布一批行情并等待所有FilterChain处理完毕
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void publishAndDispatch() {
+        for(int i=0;i<BATCH_SIZE;i++) {
+            asyncEventService.publishMarketData(ticks[tickIndex++]);
+            if ( tickIndex>=ticks.length ) {
+                tickIndex = 0;
+            }
+        }
+        publishedCount += BATCH_SIZE;
+        for(AtomicLong processedCount:processedCounts) {
+            while( processedCount.get()<publishedCount ) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,156 @@
+package trader.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+import net.jctp.CThostFtdcDepthMarketDataField;
+import trader.common.exchangeable.Exchangeable;
+import trader.common.exchangeable.ExchangeableTradingTimes;
+import trader.common.util.TraderHomeUtil;
+import trader.service.md.ctp.CtpMarketData;
+
+/**
+ * 性能测试的公共数据和工具方法.
+ * <BR>行情数据为合成的随机游走TICK, 从交易日第一个交易时间段开始每500毫秒一个, 保证可重复
+ */
+public class BenchSupport {
+
+    /**
+     * 每次回放的TICK数量, 用于@OperationsPerInvocation
+     */
+    public static final int TICK_COUNT = 20000;
+
+    public static final Exchangeable AU1906 = Exchangeable.fromString("au1906");
+    public static final LocalDate TRADING_DAY = LocalDate.of(2018, 12, 28);
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    static {
+        initTraderHome();
+    }
+
+    /**
+     * 没有指定trader.home时使用临时目录, 避免读写真实的数据目录
+     */
+    private static void initTraderHome() {
+        if ( System.getProperty(TraderHomeUtil.PROP_TRADER_HOME)!=null ) {
+            return;
+        }
+        try {
+            File home = Files.createTempDirectory("trader-bench").toFile();
+            home.deleteOnExit();
+            System.setProperty(TraderHomeUtil.PROP_TRADER_HOME, home.getAbsolutePath());
+            System.setProperty(TraderHomeUtil.PROP_REPOSITORY_DIR, new File(home, TraderHomeUtil.DIR_REPOSITORY).getAbsolutePath());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static ExchangeableTradingTimes getTradingTimes() {
+        return AU1906.exchange().getTradingTimes(AU1906, TRADING_DAY);
+    }
+
+    /**
+     * 交易日开市前的时间
+     */
+    public static LocalDateTime getBeginTime() {
+        return getTradingTimes().getMarketTimes()[0].minusMinutes(10);
+    }
+
+    /**
+     * 创建CTP原始行情数据
+     */
+    public static CThostFtdcDepthMarketDataField[] createFields(int count) {
+        Exchangeable e = AU1906;
+        ExchangeableTradingTimes tradingTimes = getTradingTimes();
+        LocalDateTime[] marketTimes = tradingTimes.getMarketTimes();
+        CThostFtdcDepthMarketDataField[] result = new CThostFtdcDepthMarketDataField[count];
+        Random random = new Random(20181228);
+        double priceTick = 0.05;
+        double price = 285.0;
+        int volume = 0;
+        double turnover = 0;
+        double openInterest = 200000;
+        int idx = 0;
+        for(int i=0;i<marketTimes.length && idx<count;i+=2) {
+            LocalDateTime time = marketTimes[i];
+            while( time.isBefore(marketTimes[i+1]) && idx<count ) {
+                price += (random.nextInt(5)-2)*priceTick;
+                int vol = random.nextInt(20);
+                volume += vol;
+                turnover += vol*price*e.getVolumeMutiplier();
+                openInterest += random.nextInt(5)-2;
+
+                CThostFtdcDepthMarketDataField field = new CThostFtdcDepthMarketDataField();
+                field.ExchangeID = e.exchange().name();
+                field.InstrumentID = e.id();
+                field.TradingDay = DATE_FORMATTER.format(TRADING_DAY);
+                field.ActionDay = DATE_FORMATTER.format(time);
+                field.UpdateTime = TIME_FORMATTER.format(time);
+                field.UpdateMillisec = time.getNano()/1000000;
+                field.LastPrice = round(price);
+                field.PreClosePrice = 285.0;
+                field.OpenPrice = 285.0;
+                field.HighestPrice = 290.0;
+                field.LowestPrice = 280.0;
+                field.Volume = volume;
+                field.Turnover = turnover;
+                field.OpenInterest = openInterest;
+                field.AveragePrice = volume==0?0:turnover/volume;
+                field.UpperLimitPrice = 300.0;
+                field.LowerLimitPrice = 270.0;
+                field.BidPrice1 = round(price-priceTick);
+                field.BidVolume1 = 1+random.nextInt(50);
+                field.AskPrice1 = round(price);
+                field.AskVolume1 = 1+random.nextInt(50);
+                result[idx++] = field;
+                time = time.plusNanos(500*1000000L);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 创建行情切片, 已经设置好市场时间段
+     */
+    public static CtpMarketData[] createTicks(int count) {
+        ExchangeableTradingTimes tradingTimes = getTradingTimes();
+        CThostFtdcDepthMarketDataField[] fields = createFields(count);
+        CtpMarketData[] result = new CtpMarketData[fields.length];
+        for(int i=0;i<fields.length;i++) {
+            result[i] = new CtpMarketData("bench", AU1906, fields[i], TRADING_DAY);
+            result[i].postProcess(tradingTimes);
+        }
+        return result;
+    }
+
+    /**
+     * 设置@Autowired等私有字段
+     */
+    public static void setField(Object bean, String fieldName, Object value) throws Exception {
+        Class<?> clazz = bean.getClass();
+        while(clazz!=null) {
+            try {
+                Field field = clazz.getDeclaredField(fieldName);
+                field.setAccessible(true);
+                field.set(bean, value);
+                return;
+            }catch(NoSuchFieldException e) {
+                clazz = clazz.getSuperclass();
+            }
+        }
+        throw new NoSuchFieldException(fieldName);
+    }
+
+    private static double round(double price) {
+        return Math.round(price*100)/100.0;
+    }
+
+}
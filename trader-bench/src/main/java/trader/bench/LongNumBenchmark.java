@@ -0,0 +1,78 @@
+package trader.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ta4j.core.num.Num;
+
+import trader.service.ta.LongNum;
+
+/**
+ * LongNum 四则运算和比较
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LongNumBenchmark {
+
+    private Num a;
+    private Num b;
+    private long rawA;
+    private long rawB;
+
+    @Setup
+    public void setup() {
+        a = new LongNum(2853.45);
+        b = new LongNum(3.5);
+        rawA = LongNum.rawValueOf(a);
+        rawB = LongNum.rawValueOf(b);
+    }
+
+    @Benchmark
+    public Num plus() {
+        return a.plus(b);
+    }
+
+    @Benchmark
+    public Num multipliedBy() {
+        return a.multipliedBy(b);
+    }
+
+    @Benchmark
+    public Num dividedBy() {
+        return a.dividedBy(b);
+    }
+
+    @Benchmark
+    public boolean isGreaterThan() {
+        return a.isGreaterThan(b);
+    }
+
+    @Benchmark
+    public Num valueOf() {
+        return LongNum.valueOf(rawA);
+    }
+
+    @Benchmark
+    public long rawMultiply() {
+        return LongNum.rawMultiply(rawA, rawB);
+    }
+
+    @Benchmark
+    public long rawDivide() {
+        return LongNum.rawDivide(rawA, rawB);
+    }
+
+}
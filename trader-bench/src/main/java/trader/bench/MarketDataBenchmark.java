@@ -0,0 +1,113 @@
+package trader.bench;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.jctp.CThostFtdcDepthMarketDataField;
+import trader.service.event.AsyncEvent;
+import trader.service.md.MarketData;
+import trader.service.md.MarketDataServiceImpl;
+import trader.service.md.ctp.CtpMarketData;
+import trader.simulator.SimMarketTimeService;
+
+/**
+ * 行情切片创建和MarketDataService分发
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarketDataBenchmark {
+
+    @State(Scope.Thread)
+    public static class FieldState {
+        CThostFtdcDepthMarketDataField[] fields;
+        int fieldIndex;
+        CtpMarketData slotTick;
+
+        @Setup
+        public void setup() {
+            fields = BenchSupport.createFields(BenchSupport.TICK_COUNT);
+            slotTick = new CtpMarketData("bench", BenchSupport.AU1906, fields[0], BenchSupport.TRADING_DAY);
+        }
+
+        CThostFtdcDepthMarketDataField nextField() {
+            CThostFtdcDepthMarketDataField result = fields[fieldIndex++];
+            if ( fieldIndex>=fields.length ) {
+                fieldIndex = 0;
+            }
+            return result;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ServiceState {
+        CtpMarketData[] ticks;
+        AsyncEvent event;
+        MarketDataServiceImpl mdService;
+
+        @Setup
+        public void setup() {
+            ticks = BenchSupport.createTicks(BenchSupport.TICK_COUNT);
+            event = new AsyncEvent();
+        }
+
+        /**
+         * 每次回放都使用新的MarketDataService, 保证行情时间戳递增
+         */
+        @Setup(Level.Invocation)
+        public void setupService() throws Exception {
+            SimMarketTimeService mtService = new SimMarketTimeService();
+            mtService.setTimeRanges(BenchSupport.TRADING_DAY, new LocalDateTime[] {BenchSupport.getBeginTime(), BenchSupport.getTradingTimes().getMarketCloseTime()});
+            mdService = new MarketDataServiceImpl();
+            BenchSupport.setField(mdService, "mtService", mtService);
+            mdService.addSubscriptions(Arrays.asList(BenchSupport.AU1906));
+            mdService.addListener((MarketData md)->{}, BenchSupport.AU1906);
+        }
+    }
+
+    @Benchmark
+    public CtpMarketData ctpMarketDataCreate(FieldState state) {
+        return new CtpMarketData("bench", BenchSupport.AU1906, state.nextField(), BenchSupport.TRADING_DAY);
+    }
+
+    /**
+     * 和RingBuffer转换器一样, 用update()原地更新槽位中的行情对象
+     */
+    @Benchmark
+    public CtpMarketData ctpMarketDataUpdate(FieldState state) {
+        state.slotTick.update("bench", BenchSupport.AU1906, state.nextField(), BenchSupport.TRADING_DAY);
+        return state.slotTick;
+    }
+
+    /**
+     * 按时间顺序回放全部TICK, 结果按单个TICK计算
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchSupport.TICK_COUNT)
+    public void marketDataServiceOnEvent(ServiceState state, Blackhole bh) {
+        CtpMarketData[] ticks = state.ticks;
+        AsyncEvent event = state.event;
+        for(int i=0;i<ticks.length;i++) {
+            event.setData(AsyncEvent.EVENT_TYPE_MARKETDATA, null, ticks[i], null);
+            bh.consume(state.mdService.onEvent(event));
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+package trader.bench;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import trader.common.tick.PriceLevel;
+import trader.common.util.StringUtil;
+import trader.service.md.MarketData;
+import trader.service.ta.FutureBar;
+import trader.service.ta.LongNum;
+import trader.service.ta.TAEntry;
+import trader.service.ta.TALookback;
+import trader.service.ta.trend.MarketDataWaveBarBuilder;
+import trader.service.trade.MarketTimeService;
+import trader.simulator.SimBeansContainer;
+import trader.simulator.SimMarketTimeService;
+
+/**
+ * TICK到KBar/笔划线段的更新
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TABenchmark {
+
+    @State(Scope.Thread)
+    public static class TickState {
+        MarketData[] ticks;
+
+        @Setup
+        public void setup() {
+            ticks = BenchSupport.createTicks(BenchSupport.TICK_COUNT);
+        }
+    }
+
+    /**
+     * 一分钟KBar, 反复使用这一分钟内的TICK更新
+     */
+    @State(Scope.Thread)
+    public static class BarState {
+        private static final int BAR_TICKS = 120;
+        MarketData[] ticks;
+        int tickIndex;
+        FutureBar bar;
+        LocalDateTime endTime;
+
+        @Setup
+        public void setup(TickState tickState) {
+            ticks = new MarketData[BAR_TICKS];
+            System.arraycopy(tickState.ticks, 0, ticks, 0, BAR_TICKS);
+            MarketData tick = ticks[0];
+            endTime = tick.updateTime.plusMinutes(1);
+            bar = FutureBar.create(0, BenchSupport.getTradingTimes(), tick.updateTime, null, tick, tick.lastPrice, tick.lastPrice);
+        }
+
+        MarketData nextTick() {
+            MarketData result = ticks[tickIndex++];
+            if ( tickIndex>=ticks.length ) {
+                tickIndex = 1;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 每次回放都使用新的TAEntry, 历史数据目录为空, 只计算实时KBar
+     */
+    @State(Scope.Thread)
+    public static class EntryState {
+        @Param({"min1,min5,min15", "min1,min5,min15,vol1k"})
+        public String levels;
+
+        TAEntry entry;
+        SimBeansContainer beansContainer;
+
+        @Setup
+        public void setup() {
+            SimMarketTimeService mtService = new SimMarketTimeService();
+            mtService.setTimeRanges(BenchSupport.TRADING_DAY, new LocalDateTime[] {BenchSupport.getBeginTime(), BenchSupport.getTradingTimes().getMarketCloseTime()});
+            beansContainer = new SimBeansContainer();
+            beansContainer.addBean(MarketTimeService.class, mtService);
+        }
+
+        @Setup(Level.Invocation)
+        public void setupEntry() throws Exception {
+            List<PriceLevel> priceLevels = new ArrayList<>();
+            for(String level:StringUtil.split(levels, ",")) {
+                priceLevels.add(PriceLevel.valueOf(level));
+            }
+            entry = new TAEntry(BenchSupport.AU1906, priceLevels, TALookback.DEFAULT, false);
+            entry.init(beansContainer);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class WaveBarState {
+        MarketDataWaveBarBuilder builder;
+
+        @Setup(Level.Invocation)
+        public void setupBuilder() {
+            builder = new MarketDataWaveBarBuilder();
+            builder.setStrokeDirectionThreshold(new LongNum(BenchSupport.AU1906.getPriceTick()*3));
+        }
+    }
+
+    @Benchmark
+    public FutureBar futureBarUpdate(BarState barState) {
+        barState.bar.update(barState.nextTick(), barState.endTime);
+        return barState.bar;
+    }
+
+    /**
+     * 按时间顺序回放全部TICK, 结果按单个TICK计算
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchSupport.TICK_COUNT)
+    public void taEntryOnMarketData(TickState tickState, EntryState entryState, Blackhole bh) {
+        MarketData[] ticks = tickState.ticks;
+        TAEntry entry = entryState.entry;
+        for(int i=0;i<ticks.length;i++) {
+            bh.consume(entry.onMarketData(ticks[i]));
+        }
+    }
+
+    /**
+     * 按时间顺序回放全部TICK, 结果按单个TICK计算
+     */
+    @Benchmark
+    @OperationsPerInvocation(BenchSupport.TICK_COUNT)
+    public void waveBarBuilderOnMarketData(TickState tickState, WaveBarState waveBarState, Blackhole bh) {
+        MarketData[] ticks = tickState.ticks;
+        MarketDataWaveBarBuilder builder = waveBarState.builder;
+        for(int i=0;i<ticks.length;i++) {
+            builder.onMarketData(ticks[i]);
+        }
+        bh.consume(builder);
+    }
+
+}
@@ -4,9 +4,9 @@ import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
@@ -146,7 +146,7 @@ public class ExchangeContract {
         return null;
     }
 
-    private static final Map<String, ExchangeContract> contracts = new HashMap<>();
+    private static final Map<String, ExchangeContract> contracts = new ConcurrentHashMap<>();
 
     static {
         try{
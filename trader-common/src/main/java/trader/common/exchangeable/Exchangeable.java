@@ -3,6 +3,7 @@ package trader.common.exchangeable;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import trader.common.util.PriceUtil;
@@ -185,7 +186,7 @@ public abstract class Exchangeable implements Comparable<Exchangeable> {
         throw new RuntimeException("Unknown exchange: "+exchange);
     }
 
-    private static Map<String, Exchangeable> cachedExchangeables = new HashMap<>();
+    private static Map<String, Exchangeable> cachedExchangeables = new ConcurrentHashMap<>();
 
     /**
      * Load exchangeable from cache
@@ -3,6 +3,12 @@ package trader.common.exchangeable;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -11,6 +17,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -358,8 +365,173 @@ public class ExchangeableData {
         }
     }
 
+    /**
+     * 二进制列存数据: 每年一个数据文件(yyyy.tick-ctp.bin)和一个按交易日的索引文件(yyyy.tick-ctp.idx).
+     * <BR>索引记录定长: 交易日(int yyyymmdd), 偏移(long), 长度(int). 新交易日追加到文件末尾
+     * <BR>同一交易日重复保存时重写并压缩年度文件: 其它交易日数据复制到临时文件, 再追加新数据, 然后替换数据和索引文件, 不会留下无用数据
+     */
+    private static class ColumnarDataProvider{
+        private static final int INDEX_ENTRY_SIZE = 16;
+
+        private File getDataFile(File exchangeableDir, DataInfo dataInfo, LocalDate tradingDay){
+            return new File(exchangeableDir, tradingDay.getYear()+"."+dataInfo.name()+EXT_BIN);
+        }
+
+        private File getIndexFile(File exchangeableDir, DataInfo dataInfo, LocalDate tradingDay){
+            return new File(exchangeableDir, tradingDay.getYear()+"."+dataInfo.name()+EXT_IDX);
+        }
+
+        private static int date2int(LocalDate tradingDay){
+            return tradingDay.getYear()*10000+tradingDay.getMonthValue()*100+tradingDay.getDayOfMonth();
+        }
+
+        /**
+         * 查找交易日索引, 返回 {offset, length}, 不存在返回null
+         */
+        private long[] lookup(File exchangeableDir, DataInfo dataInfo, LocalDate tradingDay) throws IOException
+        {
+            File indexFile = getIndexFile(exchangeableDir, dataInfo, tradingDay);
+            if ( !indexFile.exists() ){
+                return null;
+            }
+            int day = date2int(tradingDay);
+            ByteBuffer index = ByteBuffer.wrap(FileUtil.loadAsBytes(indexFile));
+            long[] result = null;
+            while(index.remaining()>=INDEX_ENTRY_SIZE){
+                int entryDay = index.getInt();
+                long offset = index.getLong();
+                int length = index.getInt();
+                if ( entryDay==day ){
+                    result = new long[]{offset, length};
+                }
+            }
+            return result;
+        }
+
+        public boolean exists(File exchangeableDir, DataInfo dataInfo, LocalDate tradingDay) throws IOException
+        {
+            return lookup(exchangeableDir, dataInfo, tradingDay)!=null;
+        }
+
+        public ByteBuffer read(File exchangeableDir, DataInfo dataInfo, LocalDate tradingDay) throws IOException
+        {
+            long[] entry = lookup(exchangeableDir, dataInfo, tradingDay);
+            if ( entry==null ){
+                return null;
+            }
+            File dataFile = getDataFile(exchangeableDir, dataInfo, tradingDay);
+            try(FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ);){
+                ByteBuffer result = ByteBuffer.allocate((int)entry[1]);
+                long position = entry[0];
+                while(result.hasRemaining()){
+                    int bytesRead = channel.read(result, position);
+                    if ( bytesRead<0 ){
+                        throw new IOException("Unexpected EOF: "+dataFile);
+                    }
+                    position += bytesRead;
+                }
+                result.flip();
+                return result;
+            }
+        }
+
+        /**
+         * 内存映射方式读取, 关闭文件后映射仍然有效
+         */
+        public ByteBuffer map(File exchangeableDir, DataInfo dataInfo, LocalDate tradingDay) throws IOException
+        {
+            long[] entry = lookup(exchangeableDir, dataInfo, tradingDay);
+            if ( entry==null ){
+                return null;
+            }
+            File dataFile = getDataFile(exchangeableDir, dataInfo, tradingDay);
+            try(FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ);){
+                return channel.map(MapMode.READ_ONLY, entry[0], entry[1]);
+            }
+        }
+
+        public void save(File exchangeableDir, DataInfo dataInfo, LocalDate tradingDay, ByteBuffer content) throws IOException
+        {
+            exchangeableDir.mkdirs();
+            if ( lookup(exchangeableDir, dataInfo, tradingDay)!=null ){
+                rewrite(exchangeableDir, dataInfo, tradingDay, content);
+                return;
+            }
+            long offset = 0;
+            int length = content.remaining();
+            try(FileChannel channel = FileChannel.open(getDataFile(exchangeableDir, dataInfo, tradingDay).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);){
+                offset = channel.size();
+                while(content.hasRemaining()){
+                    channel.write(content);
+                }
+            }
+            ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+            entry.putInt(date2int(tradingDay)).putLong(offset).putInt(length).flip();
+            try(FileChannel channel = FileChannel.open(getIndexFile(exchangeableDir, dataInfo, tradingDay).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);){
+                while(entry.hasRemaining()){
+                    channel.write(entry);
+                }
+            }
+        }
+
+        /**
+         * 重写年度数据和索引文件, 替换指定交易日的数据
+         */
+        private void rewrite(File exchangeableDir, DataInfo dataInfo, LocalDate tradingDay, ByteBuffer content) throws IOException
+        {
+            File dataFile = getDataFile(exchangeableDir, dataInfo, tradingDay);
+            File indexFile = getIndexFile(exchangeableDir, dataInfo, tradingDay);
+            File tmpDataFile = new File(dataFile.getPath()+".tmp");
+            File tmpIndexFile = new File(indexFile.getPath()+".tmp");
+            int day = date2int(tradingDay);
+            //同一交易日以最后一条索引为准
+            Map<Integer, long[]> entries = new TreeMap<>();
+            ByteBuffer index = ByteBuffer.wrap(FileUtil.loadAsBytes(indexFile));
+            while(index.remaining()>=INDEX_ENTRY_SIZE){
+                int entryDay = index.getInt();
+                long entryOffset = index.getLong();
+                int entryLength = index.getInt();
+                if ( entryDay!=day ){
+                    entries.put(entryDay, new long[]{entryOffset, entryLength});
+                }
+            }
+            ByteBuffer newIndex = ByteBuffer.allocate((entries.size()+1)*INDEX_ENTRY_SIZE);
+            try(FileChannel src = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ);
+                FileChannel dst = FileChannel.open(tmpDataFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);)
+            {
+                for(Map.Entry<Integer, long[]> entry:entries.entrySet()){
+                    long offset = dst.position();
+                    long position = entry.getValue()[0], remaining = entry.getValue()[1];
+                    while(remaining>0){
+                        long transferred = src.transferTo(position, remaining, dst);
+                        if ( transferred<=0 ){
+                            throw new IOException("Unexpected EOF: "+dataFile);
+                        }
+                        position += transferred;
+                        remaining -= transferred;
+                    }
+                    newIndex.putInt(entry.getKey()).putLong(offset).putInt((int)entry.getValue()[1]);
+                }
+                long offset = dst.position();
+                int length = content.remaining();
+                while(content.hasRemaining()){
+                    dst.write(content);
+                }
+                newIndex.putInt(day).putLong(offset).putInt(length).flip();
+            }
+            try(FileChannel channel = FileChannel.open(tmpIndexFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);){
+                while(newIndex.hasRemaining()){
+                    channel.write(newIndex);
+                }
+            }
+            Files.move(tmpDataFile.toPath(), dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmpIndexFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
 
     private static final String EXT_NAME = ".csv";
+    private static final String EXT_BIN = ".bin";
+    private static final String EXT_IDX = ".idx";
     private static final String CHARSET = "UTF-8";
 
     private boolean readOnly;
@@ -368,6 +540,7 @@ public class ExchangeableData {
     private Lock workingLock = new ReentrantLock();
     private DataProvider regularProvider = new RegularFileDataProvider();
     private DataProvider zipProvider= new ZipDataProvider();
+    private ColumnarDataProvider columnarProvider = new ColumnarDataProvider();
 
     public ExchangeableData(File dataDir){
         this(dataDir, true);
@@ -578,6 +751,69 @@ public class ExchangeableData {
         }
     }
 
+    /**
+     * 是否存在二进制列存格式数据
+     */
+    public boolean existsBinary(Exchangeable exchangeable, DataInfo dataInfo, LocalDate tradingDay)
+            throws IOException
+    {
+        try (FileLocker fileLocker = getFileLock(exchangeable);
+                LockWrapper lockWrapper = getInternalLock(exchangeable);)
+        {
+            return columnarProvider.exists(getExchangeableDir(exchangeable), dataInfo, tradingDay);
+        }
+    }
+
+    /**
+     * 加载某个交易日的二进制列存格式数据
+     */
+    public ByteBuffer loadBinary(Exchangeable exchangeable, DataInfo dataInfo, LocalDate tradingDay)
+            throws IOException
+    {
+        try(FileLocker fileLocker = getFileLock(exchangeable);
+                LockWrapper lockWrapper = getInternalLock(exchangeable); )
+        {
+            File edir = getExchangeableDir(exchangeable);
+            ByteBuffer result = columnarProvider.read(edir, dataInfo, tradingDay);
+            if ( result==null ){
+                throw new IOException("Data not exists: "+edir+"/"+DateUtil.date2str(tradingDay)+"."+dataInfo.name()+EXT_BIN);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 内存映射方式加载某个交易日的二进制列存格式数据, 不复制到堆内存
+     */
+    public ByteBuffer mapBinary(Exchangeable exchangeable, DataInfo dataInfo, LocalDate tradingDay)
+            throws IOException
+    {
+        try(FileLocker fileLocker = getFileLock(exchangeable);
+                LockWrapper lockWrapper = getInternalLock(exchangeable); )
+        {
+            File edir = getExchangeableDir(exchangeable);
+            ByteBuffer result = columnarProvider.map(edir, dataInfo, tradingDay);
+            if ( result==null ){
+                throw new IOException("Data not exists: "+edir+"/"+DateUtil.date2str(tradingDay)+"."+dataInfo.name()+EXT_BIN);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 保存某个交易日的二进制列存格式数据
+     */
+    public void saveBinary(Exchangeable exchangeable, DataInfo dataInfo, LocalDate tradingDay, ByteBuffer content)
+            throws IOException
+    {
+        checkReadOnly();
+        try(FileLocker fileLocker = getFileLock(exchangeable);
+                LockWrapper lockWrapper = getInternalLock(exchangeable); )
+        {
+            columnarProvider.save(getExchangeableDir(exchangeable), dataInfo, tradingDay, content);
+        }
+    }
+
     private boolean exists0(File edir, String dataFile) throws IOException
     {
         return  regularProvider.exists(edir, dataFile)
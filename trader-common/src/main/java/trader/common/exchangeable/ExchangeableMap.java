@@ -0,0 +1,256 @@
+package trader.common.exchangeable;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * 以Exchangeable.uniqueIntId()为数组下标的Map, 查找不需要计算字符串hashCode/equals.
+ * <BR>下标数组只保存紧凑数组的位置, 键值保存在紧凑数组中, 遍历只访问实际存在的元素, values()遍历不创建Entry对象
+ * <BR>遍历顺序为插入顺序, 删除时使用最后一个元素填补空位. 非线程安全, 多线程访问需要外部同步或者Copy-On-Write
+ */
+public class ExchangeableMap<V> extends AbstractMap<Exchangeable, V> {
+
+    /**
+     * 下标: uniqueIntId, 值: 紧凑数组位置+1, 0代表不存在
+     */
+    private int[] index;
+    private Exchangeable[] keys;
+    private Object[] values;
+    private int size;
+
+    public ExchangeableMap() {
+        this(16);
+    }
+
+    public ExchangeableMap(int capacity) {
+        index = new int[capacity];
+        keys = new Exchangeable[capacity];
+        values = new Object[capacity];
+    }
+
+    public ExchangeableMap(Map<Exchangeable, ? extends V> map) {
+        if ( map instanceof ExchangeableMap ) {
+            ExchangeableMap<? extends V> map0 = (ExchangeableMap<? extends V>)map;
+            index = map0.index.clone();
+            keys = map0.keys.clone();
+            values = map0.values.clone();
+            size = map0.size;
+        } else {
+            index = new int[16];
+            keys = new Exchangeable[16];
+            values = new Object[16];
+            putAll(map);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if ( !(key instanceof Exchangeable) ) {
+            return false;
+        }
+        int id = ((Exchangeable)key).uniqueIntId();
+        return id<index.length && index[id]!=0;
+    }
+
+    @Override
+    public V get(Object key) {
+        if ( !(key instanceof Exchangeable) ) {
+            return null;
+        }
+        return get((Exchangeable)key);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Exchangeable e) {
+        int id = e.uniqueIntId();
+        int[] index = this.index;
+        if ( id<index.length ) {
+            int pos = index[id];
+            if ( pos!=0 ) {
+                return (V)values[pos-1];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(Exchangeable e, V value) {
+        int id = e.uniqueIntId();
+        if ( id>=index.length ) {
+            index = Arrays.copyOf(index, Math.max(id+1, index.length*2));
+        }
+        int pos = index[id];
+        if ( pos!=0 ) {
+            V old = (V)values[pos-1];
+            values[pos-1] = value;
+            return old;
+        }
+        if ( size>=keys.length ) {
+            int newCapacity = Math.max(16, keys.length*2);
+            keys = Arrays.copyOf(keys, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+        }
+        keys[size] = e;
+        values[size] = value;
+        size++;
+        index[id] = size;
+        return null;
+    }
+
+    @Override
+    public V remove(Object key) {
+        if ( !(key instanceof Exchangeable) ) {
+            return null;
+        }
+        int id = ((Exchangeable)key).uniqueIntId();
+        if ( id>=index.length || index[id]==0 ) {
+            return null;
+        }
+        return removeAt(index[id]-1);
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(index, 0);
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+    }
+
+    @Override
+    public Set<Exchangeable> keySet() {
+        return new AbstractSet<Exchangeable>() {
+            @Override
+            public Iterator<Exchangeable> iterator() {
+                return new DenseIterator<Exchangeable>() {
+                    @Override
+                    protected Exchangeable elementAt(int pos) {
+                        return keys[pos];
+                    }
+                };
+            }
+            @Override
+            public int size() {
+                return size;
+            }
+            @Override
+            public boolean contains(Object o) {
+                return containsKey(o);
+            }
+        };
+    }
+
+    @Override
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new DenseIterator<V>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    protected V elementAt(int pos) {
+                        return (V)values[pos];
+                    }
+                };
+            }
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Set<Entry<Exchangeable, V>> entrySet() {
+        return new AbstractSet<Entry<Exchangeable, V>>() {
+            @Override
+            public Iterator<Entry<Exchangeable, V>> iterator() {
+                return new DenseIterator<Entry<Exchangeable, V>>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    protected Entry<Exchangeable, V> elementAt(int pos) {
+                        return new SimpleEntry<Exchangeable, V>(keys[pos], (V)values[pos]) {
+                            private static final long serialVersionUID = 1L;
+                            @Override
+                            public V setValue(V value) {
+                                values[pos] = value;
+                                return super.setValue(value);
+                            }
+                        };
+                    }
+                };
+            }
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * 删除紧凑数组中的元素, 最后一个元素移动到空位
+     */
+    @SuppressWarnings("unchecked")
+    private V removeAt(int pos) {
+        V old = (V)values[pos];
+        index[keys[pos].uniqueIntId()] = 0;
+        int last = size-1;
+        if ( pos!=last ) {
+            keys[pos] = keys[last];
+            values[pos] = values[last];
+            index[keys[pos].uniqueIntId()] = pos+1;
+        }
+        keys[last] = null;
+        values[last] = null;
+        size--;
+        return old;
+    }
+
+    /**
+     * 按紧凑数组位置遍历, 删除后最后一个元素移动到当前位置, 需要重新访问该位置
+     */
+    private abstract class DenseIterator<T> implements Iterator<T> {
+        private int next = 0;
+        private int last = -1;
+
+        protected abstract T elementAt(int pos);
+
+        @Override
+        public boolean hasNext() {
+            return next<size;
+        }
+
+        @Override
+        public T next() {
+            if ( next>=size ) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return elementAt(last);
+        }
+
+        @Override
+        public void remove() {
+            if ( last<0 ) {
+                throw new IllegalStateException();
+            }
+            removeAt(last);
+            next = last;
+            last = -1;
+        }
+    }
+
+}
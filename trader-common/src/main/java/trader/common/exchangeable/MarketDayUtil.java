@@ -5,17 +5,17 @@ import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import trader.common.util.DateUtil;
 import trader.common.util.IOUtil;
 
 public class MarketDayUtil {
 
-    private static final Map<String,List<LocalDate>> closeDayMap = new HashMap<>();
+    private static final Map<String,List<LocalDate>> closeDayMap = new ConcurrentHashMap<>();
     static{
         loadCloseDayMap();
     }
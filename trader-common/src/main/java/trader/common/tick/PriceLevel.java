@@ -1,7 +1,7 @@
 package trader.common.tick;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -10,10 +10,15 @@ import trader.common.util.StringUtil;
 
 public class PriceLevel {
     private static final Pattern PATTERN = Pattern.compile("([a-z]+)(\\d*)");
-    private static final Map<String, PriceLevel> levels = new HashMap<>();
+    private static final Map<String, PriceLevel> levels = new ConcurrentHashMap<>();
 
     public static final String LEVEL_MIN  = "min";
     public static final String LEVEL_VOL  = "vol";
+    /**
+     * 按成交金额切分, 单位为元, 例如 amt100m 表示每成交1亿元一根KBar.
+     * <BR>级别数值为int, 最大 amt2147m, 超出范围的级别数值为-1, 不能使用
+     */
+    public static final String LEVEL_AMT  = "amt";
 
     public static final PriceLevel TICKET = new PriceLevel("tick", -1);
     public static final PriceLevel MIN1 = PriceLevel.valueOf(LEVEL_MIN+1);
@@ -27,6 +32,8 @@ public class PriceLevel {
     public static final PriceLevel VOL5K = PriceLevel.valueOf(LEVEL_VOL+"5k");
     public static final PriceLevel VOL10K = PriceLevel.valueOf(LEVEL_VOL+"10k");
 
+    public static final PriceLevel AMT100M = PriceLevel.valueOf(LEVEL_AMT+"100m");
+
     public static final PriceLevel DAY = new PriceLevel("day", -1);
 
     private String name;
@@ -45,6 +52,13 @@ public class PriceLevel {
         return value;
     }
 
+    /**
+     * 是否基于成交量或成交金额切分KBar
+     */
+    public boolean isVolumeBased() {
+        return name.startsWith(LEVEL_VOL) || name.startsWith(LEVEL_AMT);
+    }
+
     @Override
     public String toString() {
         return name;
@@ -74,6 +88,9 @@ public class PriceLevel {
     	    if ( str.endsWith("k") ) {
                 unit = 1000;
                 str = str.substring(0, str.length()-1);
+            } else if ( str.endsWith("m") ) {
+                unit = 1000000;
+                str = str.substring(0, str.length()-1);
             }
     	    Matcher matcher = PATTERN.matcher(str);
     	    if ( matcher.matches() ) {
@@ -82,11 +99,16 @@ public class PriceLevel {
     	        try {
     	            String vol = matcher.group(2).toLowerCase();
     	            if ( !StringUtil.isEmpty(vol)) {
-    	                value = ConversionUtil.toInt(vol)*unit;
+    	                //溢出时抛出ArithmeticException, 级别数值保持为-1
+    	                value = Math.toIntExact(ConversionUtil.toLong(vol)*unit);
     	            }
     	        }catch(Throwable t) {}
     	        result = new PriceLevel(levelName, value);
-    	        levels.put(str, result);
+    	        //并发加载时以先放入的实例为准
+    	        PriceLevel lastLevel = levels.putIfAbsent(levelName, result);
+    	        if ( lastLevel!=null ) {
+    	            result = lastLevel;
+    	        }
     	    }
     	}
     	return result;
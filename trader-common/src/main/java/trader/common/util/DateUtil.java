@@ -15,11 +15,11 @@ import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoField;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -271,7 +271,7 @@ public class DateUtil {
     /**
      * 缓存的节假日定义
      */
-    private static final Map<Locale, List<String>> cachedHolidays = new HashMap<>();
+    private static final Map<Locale, List<String>> cachedHolidays = new ConcurrentHashMap<>();
 
     private static synchronized List<String> getHolidaysText(Locale locale) {
         if (locale == null) {
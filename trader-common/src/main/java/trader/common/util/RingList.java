@@ -0,0 +1,143 @@
+package trader.common.util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * 固定最大长度的环形List, 超过最大长度时自动删除最早的元素.
+ * <BR>尾部增加和删除都是O(1), 用于长时间运行时只保留最近历史数据
+ */
+public class RingList<E> extends AbstractList<E> implements RandomAccess {
+
+    private Object[] elements;
+    private int head;
+    private int size;
+    private final int maxSize;
+    /**
+     * 因超过最大长度而被删除的元素数量
+     */
+    private long droppedCount;
+
+    public RingList(int maxSize) {
+        this(Math.min(maxSize, 16), maxSize);
+    }
+
+    public RingList(int initialCapacity, int maxSize) {
+        if ( maxSize<=0 ) {
+            throw new IllegalArgumentException("Invalid max size: "+maxSize);
+        }
+        this.maxSize = maxSize;
+        elements = new Object[Math.max(1, Math.min(initialCapacity, maxSize))];
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public E get(int index) {
+        checkIndex(index);
+        return (E)elements[pos(index)];
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public E set(int index, E e) {
+        checkIndex(index);
+        int pos = pos(index);
+        E result = (E)elements[pos];
+        elements[pos] = e;
+        return result;
+    }
+
+    @Override
+    public boolean add(E e) {
+        if ( size==maxSize ) {
+            //覆盖最早的元素
+            elements[head] = e;
+            head = (head+1)%elements.length;
+            droppedCount++;
+        } else {
+            if ( size==elements.length ) {
+                grow();
+            }
+            elements[pos(size)] = e;
+            size++;
+        }
+        modCount++;
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public E remove(int index) {
+        checkIndex(index);
+        E result = (E)elements[pos(index)];
+        for(int i=index;i<size-1;i++) {
+            elements[pos(i)] = elements[pos(i+1)];
+        }
+        elements[pos(size-1)] = null;
+        size--;
+        modCount++;
+        return result;
+    }
+
+    public E getLast() {
+        if ( size==0 ) {
+            throw new NoSuchElementException();
+        }
+        return get(size-1);
+    }
+
+    public E removeLast() {
+        if ( size==0 ) {
+            throw new NoSuchElementException();
+        }
+        return remove(size-1);
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(elements, null);
+        head = 0;
+        size = 0;
+        modCount++;
+    }
+
+    private void grow() {
+        int newCapacity = Math.min(maxSize, Math.max(elements.length*2, 16));
+        Object[] newElements = new Object[newCapacity];
+        for(int i=0;i<size;i++) {
+            newElements[i] = elements[pos(i)];
+        }
+        elements = newElements;
+        head = 0;
+    }
+
+    private int pos(int index) {
+        int result = head+index;
+        if ( result>=elements.length ) {
+            result -= elements.length;
+        }
+        return result;
+    }
+
+    private void checkIndex(int index) {
+        if ( index<0 || index>=size ) {
+            throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+        }
+    }
+
+}
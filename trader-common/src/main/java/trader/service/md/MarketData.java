@@ -1,6 +1,7 @@
 package trader.service.md;
 
 import java.time.LocalDateTime;
+import java.util.Arrays;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
@@ -171,24 +172,45 @@ public abstract class MarketData implements Cloneable, JsonEnabled {
 
     protected void cloneImpl(MarketData marketDataToClone){
         marketDataToClone.producerId = producerId;
+        marketDataToClone.tradingDay = tradingDay;
         marketDataToClone.instrumentId = instrumentId;
         marketDataToClone.volume = volume;
         marketDataToClone.turnover = turnover;
         marketDataToClone.openInterest = openInterest;
         marketDataToClone.lastPrice = lastPrice;
         marketDataToClone.updateTime = updateTime;
+        marketDataToClone.updateTimestamp = updateTimestamp;
         marketDataToClone.preClosePrice = preClosePrice;
         marketDataToClone.openPrice = openPrice;
         marketDataToClone.highestPrice = highestPrice;
         marketDataToClone.lowestPrice = lowestPrice;
         marketDataToClone.averagePrice = averagePrice;
+        marketDataToClone.upperLimitPrice = upperLimitPrice;
+        marketDataToClone.lowerLimitPrice = lowerLimitPrice;
         marketDataToClone.depth = depth;
-        marketDataToClone.bidPrices = bidPrices;
-        marketDataToClone.bidVolumes = bidVolumes;
-        marketDataToClone.bidCounts = bidCounts;
-        marketDataToClone.askPrices = askPrices;
-        marketDataToClone.askVolumes = askVolumes;
-        marketDataToClone.askCounts = askCounts;
+        //深度数组需要复制, 游标方式加载的行情会复用数组
+        marketDataToClone.bidPrices = copyOf(bidPrices);
+        marketDataToClone.bidVolumes = copyOf(bidVolumes);
+        marketDataToClone.bidCounts = copyOf(bidCounts);
+        marketDataToClone.askPrices = copyOf(askPrices);
+        marketDataToClone.askVolumes = copyOf(askVolumes);
+        marketDataToClone.askCounts = copyOf(askCounts);
+        marketDataToClone.mktStage = mktStage;
+        marketDataToClone.mktTime = mktTime;
+    }
+
+    private long[] copyOf(long[] values) {
+        if ( values==null ) {
+            return null;
+        }
+        return Arrays.copyOf(values, Math.min(depth, values.length));
+    }
+
+    private int[] copyOf(int[] values) {
+        if ( values==null ) {
+            return null;
+        }
+        return Arrays.copyOf(values, Math.min(depth, values.length));
     }
 
     @Override
@@ -0,0 +1,184 @@
+package trader.service.md;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import trader.common.config.ConfigUtil;
+import trader.common.exchangeable.Exchangeable;
+import trader.common.exchangeable.ExchangeableData.DataInfo;
+
+/**
+ * 进程内共享的TICK数据缓存, 按 品种+交易日+数据类型 缓存列存格式的只读数据.
+ * <BR>多个并行的回测/参数优化使用同一份内存, 超过容量后按LRU淘汰
+ */
+public class MarketDataCache {
+
+    /**
+     * 缓存容量(MB)
+     */
+    public static final String ITEM_TICK_CACHE_SIZE = "/MarketDataService/tickCacheSize";
+
+    /**
+     * 从Repository加载列存格式数据, 不存在返回null
+     */
+    public static interface Loader {
+        public ByteBuffer load() throws IOException;
+    }
+
+    private static class Key {
+        final Exchangeable exchangeable;
+        final LocalDate tradingDay;
+        final String dataInfo;
+
+        Key(Exchangeable exchangeable, LocalDate tradingDay, DataInfo dataInfo){
+            this.exchangeable = exchangeable;
+            this.tradingDay = tradingDay;
+            this.dataInfo = dataInfo.name();
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(exchangeable, tradingDay, dataInfo);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if ( !(o instanceof Key) ) {
+                return false;
+            }
+            Key k = (Key)o;
+            return exchangeable.equals(k.exchangeable) && tradingDay.equals(k.tradingDay) && dataInfo.equals(k.dataInfo);
+        }
+    }
+
+    private static class Entry {
+        final CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+        long size;
+    }
+
+    private static MarketDataCache instance;
+
+    private long maxSize;
+    private long size;
+    private LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    public MarketDataCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public static synchronized MarketDataCache getInstance() {
+        if ( instance==null ) {
+            instance = new MarketDataCache(ConfigUtil.getInt(ITEM_TICK_CACHE_SIZE, 1024)*1024L*1024L);
+        }
+        return instance;
+    }
+
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * 已缓存的字节数
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        evict(null);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * 返回缓存的数据, 不存在时调用loader加载. 同一份数据同时只会加载一次.
+     *
+     * @return 只读的ByteBuffer, 有独立的position; 数据不存在返回null
+     */
+    public ByteBuffer get(Exchangeable e, LocalDate tradingDay, DataInfo dataInfo, Loader loader) throws IOException
+    {
+        Key key = new Key(e, tradingDay, dataInfo);
+        Entry entry = null;
+        boolean load = false;
+        synchronized(this) {
+            entry = entries.get(key);
+            if ( entry==null ) {
+                entry = new Entry();
+                entries.put(key, entry);
+                load = true;
+            }
+        }
+        if ( load ) {
+            ByteBuffer buf = null;
+            try{
+                buf = loader.load();
+            }catch(Throwable t) {
+                synchronized(this) {
+                    entries.remove(key);
+                }
+                entry.future.completeExceptionally(t);
+                throw t;
+            }
+            synchronized(this) {
+                if ( buf==null ) {
+                    entries.remove(key);
+                } else if ( entries.get(key)==entry ) {
+                    entry.size = buf.remaining();
+                    size += entry.size;
+                    evict(key);
+                }
+            }
+            entry.future.complete(buf);
+        }
+        ByteBuffer result = null;
+        try{
+            result = entry.future.get();
+        }catch(InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ie);
+        }catch(ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if ( cause instanceof IOException ) {
+                throw (IOException)cause;
+            }
+            throw new IOException(cause);
+        }
+        if ( result!=null ) {
+            result = result.asReadOnlyBuffer();
+        }
+        return result;
+    }
+
+    /**
+     * 按最近最少使用顺序淘汰, 刚加载的数据超过容量时也会被淘汰
+     */
+    private void evict(Key currKey) {
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while( size>maxSize && it.hasNext() ) {
+            Map.Entry<Key, Entry> mapEntry = it.next();
+            Entry entry = mapEntry.getValue();
+            if ( !entry.future.isDone() && mapEntry.getKey()!=currKey ) {
+                //正在加载的数据还没有计入容量
+                continue;
+            }
+            it.remove();
+            size -= entry.size;
+        }
+    }
+
+}
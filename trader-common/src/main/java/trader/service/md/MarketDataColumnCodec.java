@@ -0,0 +1,163 @@
+package trader.service.md;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import trader.common.exchangeable.Exchangeable;
+
+/**
+ * 行情切片的二进制列存格式编解码.
+ * <BR>一个交易日的数据格式: 文件头(MAGIC, 数量, 最大深度), 然后按列依次存放定长数据:
+ * <BR>long列: updateTimestamp, lastPrice, volume, turnover, openInterest, preClosePrice, openPrice, highestPrice, lowestPrice, averagePrice, upperLimitPrice, lowerLimitPrice
+ * <BR>深度列(按档位顺序): long bidPrices, int bidVolumes, long askPrices, int askVolumes
+ * <BR>byte列: 每个切片的实际深度
+ */
+public class MarketDataColumnCodec {
+
+    public static final int MAGIC = 0x54434B31; //TCK1
+
+    public static final int HEADER_SIZE = 12;
+
+    public static final int COL_UPDATE_TIMESTAMP = 0;
+    public static final int COL_LAST_PRICE = 1;
+    public static final int COL_VOLUME = 2;
+    public static final int COL_TURNOVER = 3;
+    public static final int COL_OPEN_INTEREST = 4;
+    public static final int COL_PRE_CLOSE_PRICE = 5;
+    public static final int COL_OPEN_PRICE = 6;
+    public static final int COL_HIGHEST_PRICE = 7;
+    public static final int COL_LOWEST_PRICE = 8;
+    public static final int COL_AVERAGE_PRICE = 9;
+    public static final int COL_UPPER_LIMIT_PRICE = 10;
+    public static final int COL_LOWER_LIMIT_PRICE = 11;
+    public static final int LONG_COLUMN_COUNT = 12;
+
+    /**
+     * 编码一个交易日的行情切片
+     */
+    public static ByteBuffer encode(List<MarketData> marketDatas) {
+        int count = marketDatas.size();
+        int depth = 0;
+        for(MarketData md:marketDatas) {
+            depth = Math.max(depth, md.depth);
+        }
+        ByteBuffer buf = ByteBuffer.allocate(getSize(count, depth));
+        buf.putInt(MAGIC).putInt(count).putInt(depth);
+        for(int col=0;col<LONG_COLUMN_COUNT;col++) {
+            for(MarketData md:marketDatas) {
+                buf.putLong(getLongColumn(md, col));
+            }
+        }
+        for(int level=0;level<depth;level++) {
+            for(MarketData md:marketDatas) {
+                buf.putLong(level<md.depth?md.bidPrices[level]:0);
+            }
+        }
+        for(int level=0;level<depth;level++) {
+            for(MarketData md:marketDatas) {
+                buf.putInt(level<md.depth?md.bidVolumes[level]:0);
+            }
+        }
+        for(int level=0;level<depth;level++) {
+            for(MarketData md:marketDatas) {
+                buf.putLong(level<md.depth?md.askPrices[level]:0);
+            }
+        }
+        for(int level=0;level<depth;level++) {
+            for(MarketData md:marketDatas) {
+                buf.putInt(level<md.depth?md.askVolumes[level]:0);
+            }
+        }
+        for(MarketData md:marketDatas) {
+            buf.put((byte)md.depth);
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * 解码一个交易日的行情切片
+     *
+     * @param creator 创建空白的MarketData对象
+     */
+    public static List<MarketData> decode(ByteBuffer buf, Exchangeable e, LocalDate tradingDay, Supplier<MarketData> creator) {
+        MarketDataCursor cursor = new MarketDataCursor(buf, e, tradingDay, creator);
+        List<MarketData> result = new ArrayList<>(cursor.size());
+        for(int i=0;i<cursor.size();i++) {
+            result.add(cursor.copy(i));
+        }
+        return result;
+    }
+
+    /**
+     * 一个交易日数据的字节数
+     */
+    public static int getSize(int count, int depth) {
+        return getDepthColumnOffset(count, depth)+count;
+    }
+
+    public static int getLongColumnOffset(int col, int count, int index) {
+        return HEADER_SIZE+(col*count+index)*8;
+    }
+
+    public static int getBidPriceOffset(int count, int depth, int level, int index) {
+        return HEADER_SIZE+LONG_COLUMN_COUNT*count*8 + (level*count+index)*8;
+    }
+
+    public static int getBidVolumeOffset(int count, int depth, int level, int index) {
+        return getBidPriceOffset(count, depth, depth, 0) + (level*count+index)*4;
+    }
+
+    public static int getAskPriceOffset(int count, int depth, int level, int index) {
+        return getBidVolumeOffset(count, depth, depth, 0) + (level*count+index)*8;
+    }
+
+    public static int getAskVolumeOffset(int count, int depth, int level, int index) {
+        return getAskPriceOffset(count, depth, depth, 0) + (level*count+index)*4;
+    }
+
+    public static int getDepthColumnOffset(int count, int depth) {
+        return getAskVolumeOffset(count, depth, depth, 0);
+    }
+
+    static void checkMagic(ByteBuffer buf, int base) {
+        if ( buf.getInt(base)!=MAGIC ) {
+            throw new IllegalArgumentException("Invalid market data column format");
+        }
+    }
+
+    private static long getLongColumn(MarketData md, int col) {
+        switch(col) {
+        case COL_UPDATE_TIMESTAMP:
+            return md.updateTimestamp;
+        case COL_LAST_PRICE:
+            return md.lastPrice;
+        case COL_VOLUME:
+            return md.volume;
+        case COL_TURNOVER:
+            return md.turnover;
+        case COL_OPEN_INTEREST:
+            return md.openInterest;
+        case COL_PRE_CLOSE_PRICE:
+            return md.preClosePrice;
+        case COL_OPEN_PRICE:
+            return md.openPrice;
+        case COL_HIGHEST_PRICE:
+            return md.highestPrice;
+        case COL_LOWEST_PRICE:
+            return md.lowestPrice;
+        case COL_AVERAGE_PRICE:
+            return md.averagePrice;
+        case COL_UPPER_LIMIT_PRICE:
+            return md.upperLimitPrice;
+        case COL_LOWER_LIMIT_PRICE:
+            return md.lowerLimitPrice;
+        default:
+            throw new IllegalArgumentException("Invalid column "+col);
+        }
+    }
+
+}
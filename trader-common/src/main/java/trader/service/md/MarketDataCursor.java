@@ -0,0 +1,151 @@
+package trader.service.md;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.function.Supplier;
+
+import trader.common.exchangeable.Exchangeable;
+import trader.common.util.DateUtil;
+
+/**
+ * 二进制列存格式行情数据的游标, 直接从(内存映射的)ByteBuffer读取, 始终复用同一个MarketData对象.
+ * <BR>get()/moveTo()返回的对象在游标移动后会被改写, 需要保留时使用copy()
+ */
+public class MarketDataCursor {
+
+    private ByteBuffer buf;
+    private int base;
+    private int count;
+    private int depth;
+    private Exchangeable exchangeable;
+    private String tradingDay;
+    private ZoneId zoneId;
+    private Supplier<MarketData> creator;
+    private MarketData current;
+    private int index = -1;
+    private MarketData lastCopy;
+    private int lastCopyIndex = -1;
+
+    public MarketDataCursor(ByteBuffer buf, Exchangeable e, LocalDate tradingDay, Supplier<MarketData> creator) {
+        this.buf = buf;
+        this.base = buf.position();
+        MarketDataColumnCodec.checkMagic(buf, base);
+        this.count = buf.getInt(base+4);
+        this.depth = buf.getInt(base+8);
+        this.exchangeable = e;
+        this.tradingDay = DateUtil.date2str(tradingDay);
+        this.zoneId = e.exchange().getZoneId();
+        this.creator = creator;
+        current = creator.get();
+        current.bidPrices = new long[depth];
+        current.bidVolumes = new int[depth];
+        current.askPrices = new long[depth];
+        current.askVolumes = new int[depth];
+    }
+
+    public Exchangeable getExchangeable() {
+        return exchangeable;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * 当前位置, -1 表示还未开始
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public boolean hasNext() {
+        return index+1<count;
+    }
+
+    public boolean next() {
+        if ( index+1>=count ) {
+            return false;
+        }
+        moveTo(index+1);
+        return true;
+    }
+
+    /**
+     * 当前行情数据, 游标移动后会被改写
+     */
+    public MarketData get() {
+        return current;
+    }
+
+    public MarketData moveTo(int index) {
+        if ( this.index!=index ) {
+            fill(current, index, true);
+            this.index = index;
+        }
+        return current;
+    }
+
+    /**
+     * 直接读取某个位置的时间戳, 不移动游标
+     */
+    public long getUpdateTimestamp(int index) {
+        return buf.getLong(base+MarketDataColumnCodec.getLongColumnOffset(MarketDataColumnCodec.COL_UPDATE_TIMESTAMP, count, index));
+    }
+
+    /**
+     * 直接读取某个位置的最新价, 不移动游标
+     */
+    public long getLastPrice(int index) {
+        return buf.getLong(base+MarketDataColumnCodec.getLongColumnOffset(MarketDataColumnCodec.COL_LAST_PRICE, count, index));
+    }
+
+    /**
+     * 返回某个位置的独立MarketData对象, 连续复制同一位置返回同一对象. index<0 返回null
+     */
+    public MarketData copy(int index) {
+        if ( index<0 ) {
+            return null;
+        }
+        if ( index!=lastCopyIndex ) {
+            lastCopy = creator.get();
+            fill(lastCopy, index, false);
+            lastCopyIndex = index;
+        }
+        return lastCopy;
+    }
+
+    private void fill(MarketData md, int i, boolean reuseArrays) {
+        md.instrumentId = exchangeable;
+        md.tradingDay = tradingDay;
+        md.updateTimestamp = buf.getLong(base+MarketDataColumnCodec.getLongColumnOffset(MarketDataColumnCodec.COL_UPDATE_TIMESTAMP, count, i));
+        md.updateTime = DateUtil.long2datetime(zoneId, md.updateTimestamp);
+        md.lastPrice = buf.getLong(base+MarketDataColumnCodec.getLongColumnOffset(MarketDataColumnCodec.COL_LAST_PRICE, count, i));
+        md.volume = buf.getLong(base+MarketDataColumnCodec.getLongColumnOffset(MarketDataColumnCodec.COL_VOLUME, count, i));
+        md.turnover = buf.getLong(base+MarketDataColumnCodec.getLongColumnOffset(MarketDataColumnCodec.COL_TURNOVER, count, i));
+        md.openInterest = buf.getLong(base+MarketDataColumnCodec.getLongColumnOffset(MarketDataColumnCodec.COL_OPEN_INTEREST, count, i));
+        md.preClosePrice = buf.getLong(base+MarketDataColumnCodec.getLongColumnOffset(MarketDataColumnCodec.COL_PRE_CLOSE_PRICE, count, i));
+        md.openPrice = buf.getLong(base+MarketDataColumnCodec.getLongColumnOffset(MarketDataColumnCodec.COL_OPEN_PRICE, count, i));
+        md.highestPrice = buf.getLong(base+MarketDataColumnCodec.getLongColumnOffset(MarketDataColumnCodec.COL_HIGHEST_PRICE, count, i));
+        md.lowestPrice = buf.getLong(base+MarketDataColumnCodec.getLongColumnOffset(MarketDataColumnCodec.COL_LOWEST_PRICE, count, i));
+        md.averagePrice = buf.getLong(base+MarketDataColumnCodec.getLongColumnOffset(MarketDataColumnCodec.COL_AVERAGE_PRICE, count, i));
+        md.upperLimitPrice = buf.getLong(base+MarketDataColumnCodec.getLongColumnOffset(MarketDataColumnCodec.COL_UPPER_LIMIT_PRICE, count, i));
+        md.lowerLimitPrice = buf.getLong(base+MarketDataColumnCodec.getLongColumnOffset(MarketDataColumnCodec.COL_LOWER_LIMIT_PRICE, count, i));
+
+        int tickDepth = buf.get(base+MarketDataColumnCodec.getDepthColumnOffset(count, depth)+i);
+        md.depth = tickDepth;
+        if ( !reuseArrays ) {
+            md.bidPrices = new long[tickDepth];
+            md.bidVolumes = new int[tickDepth];
+            md.askPrices = new long[tickDepth];
+            md.askVolumes = new int[tickDepth];
+        }
+        for(int level=0;level<tickDepth;level++) {
+            md.bidPrices[level] = buf.getLong(base+MarketDataColumnCodec.getBidPriceOffset(count, depth, level, i));
+            md.bidVolumes[level] = buf.getInt(base+MarketDataColumnCodec.getBidVolumeOffset(count, depth, level, i));
+            md.askPrices[level] = buf.getLong(base+MarketDataColumnCodec.getAskPriceOffset(count, depth, level, i));
+            md.askVolumes[level] = buf.getInt(base+MarketDataColumnCodec.getAskVolumeOffset(count, depth, level, i));
+        }
+    }
+
+}
@@ -48,4 +48,9 @@ public interface MarketDataProducer<T> extends JsonEnabled {
      * 从原始行情事件对象创建MarketData对象
      */
     public MarketData createMarketData(T rawMarketData, LocalDate actionDay);
+
+    /**
+     * 创建空白的MarketData对象, 由调用方填充数据. 用于从二进制列存格式加载行情
+     */
+    public MarketData createEmptyMarketData(Exchangeable e);
 }
@@ -0,0 +1,185 @@
+package trader.service.ta;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import trader.common.exchangeable.Exchangeable;
+import trader.common.exchangeable.ExchangeableTradingTimes;
+import trader.common.exchangeable.MarketTimeStage;
+import trader.common.tick.PriceLevel;
+
+/**
+ * 某个交易日的 开市后秒数->KBar位置 查找表, 所有分钟级别共用一张表.
+ * <BR>表中每秒保存已交易分钟数和是否处于时间段结束的边界, 任意分钟级别的KBar位置只需要一次数组读取和一次除法.
+ * <BR>结果与逐个时间段计算的 TimeSeriesLoader.getBarIndex() 完全一致, 休市期间的时间会回退到精确计算. 相同品种相同交易日的表会被缓存共享
+ */
+public class BarIndexTable {
+
+    private static final int MAX_CACHED_TABLES = 256;
+
+    /**
+     * 休市期间的交易时间在一秒内不是单调对齐的, 需要按毫秒精确计算
+     */
+    private static final int CODE_EXACT = -2;
+
+    private static final Map<String, BarIndexTable> cachedTables = new LinkedHashMap<String, BarIndexTable>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, BarIndexTable> eldest) {
+            return size()>MAX_CACHED_TABLES;
+        }
+    };
+
+    private ExchangeableTradingTimes tradingTimes;
+    private ZoneOffset zoneOffset;
+    /**
+     * 第一个交易时间段开始的EpochSecond
+     */
+    private long beginEpochSecond;
+    /**
+     * 每秒的编码: 已交易分钟数<<1 | 边界标志, -1表示不属于任何KBar, CODE_EXACT表示需要按毫秒精确计算
+     */
+    private int[] codes;
+
+    private BarIndexTable(ExchangeableTradingTimes tradingTimes) {
+        this.tradingTimes = tradingTimes;
+        LocalDateTime[] marketTimes = tradingTimes.getMarketTimes();
+        LocalDateTime beginTime = marketTimes[0].withNano(0);
+        zoneOffset = tradingTimes.getExchangeable().exchange().getZoneId().getRules().getOffset(beginTime);
+        beginEpochSecond = beginTime.toEpochSecond(zoneOffset);
+        int seconds = (int)(tradingTimes.getMarketCloseTime().toEpochSecond(zoneOffset)-beginEpochSecond)+1;
+        codes = new int[seconds];
+        LocalDateTime time = beginTime;
+        for(int i=0;i<seconds;i++) {
+            if ( tradingTimes.getTimeStage(time)==MarketTimeStage.MarketBreak ) {
+                codes[i] = CODE_EXACT;
+            } else {
+                codes[i] = computeCode(tradingTimes, time);
+            }
+            time = time.plusSeconds(1);
+        }
+    }
+
+    public ExchangeableTradingTimes getTradingTimes() {
+        return tradingTimes;
+    }
+
+    /**
+     * 根据EpochMillis返回KBar位置
+     * @return -1 如果未开市, 0-N
+     */
+    public int getBarIndex(PriceLevel level, long epochMillis) {
+        if ( level==PriceLevel.DAY ) {
+            return 0;
+        }
+        long epochSecond = Math.floorDiv(epochMillis, 1000);
+        long second = epochSecond-beginEpochSecond;
+        if ( second<0 || second>=codes.length ) {
+            return -1;
+        }
+        int code = codes[(int)second];
+        if ( code==CODE_EXACT ) {
+            LocalDateTime marketTime = LocalDateTime.ofEpochSecond(epochSecond, Math.floorMod(epochMillis, 1000)*1000000, zoneOffset);
+            code = computeCode(tradingTimes, marketTime);
+        }
+        return code2barIndex(code, level.getValue());
+    }
+
+    /**
+     * 根据市场时间返回KBar位置
+     * @return -1 如果未开市, 0-N
+     */
+    public int getBarIndex(PriceLevel level, LocalDateTime marketTime) {
+        if ( level==PriceLevel.DAY ) {
+            return 0;
+        }
+        long second = marketTime.toEpochSecond(zoneOffset)-beginEpochSecond;
+        if ( second<0 || second>=codes.length ) {
+            return -1;
+        }
+        int code = codes[(int)second];
+        if ( code==CODE_EXACT ) {
+            code = computeCode(tradingTimes, marketTime);
+        }
+        return code2barIndex(code, level.getValue());
+    }
+
+    /**
+     * 返回交易日的查找表, 同一品种同一交易日共享
+     */
+    public static BarIndexTable getTable(ExchangeableTradingTimes tradingTimes) {
+        Exchangeable e = tradingTimes.getExchangeable();
+        String key = e.exchange().name()+"."+e.commodity()+"@"+tradingTimes.getTradingDay();
+        BarIndexTable result = null;
+        synchronized(cachedTables) {
+            result = cachedTables.get(key);
+        }
+        if ( result==null ) {
+            result = new BarIndexTable(tradingTimes);
+            synchronized(cachedTables) {
+                cachedTables.put(key, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 从编码计算某个分钟级别的KBar位置
+     */
+    static int code2barIndex(int code, int levelMinutes) {
+        if ( code<0 ) {
+            return -1;
+        }
+        int tradeMinutes = code>>1;
+        int result = tradeMinutes/levelMinutes;
+        //超过当前时间段, 但是没有到下一个时间段, 而且距离KBar开始不足5秒, 算在上一个KBar
+        if ( (code&1)!=0 && tradeMinutes%levelMinutes==0 ) {
+            result -= 1;
+        }
+        return result;
+    }
+
+    /**
+     * 逐个时间段计算某个时间的编码
+     */
+    static int computeCode(ExchangeableTradingTimes tradingTimes, LocalDateTime marketTime) {
+        MarketTimeStage mts = tradingTimes.getTimeStage(marketTime);
+        switch(mts){
+        case MarketOpen:
+        case MarketBreak:
+            break;
+        default:
+            return -1;
+        }
+
+        int tradingMillis = tradingTimes.getTradingTime(marketTime);
+        int tradeMinutes = tradingMillis / (1000*60);
+        int result = 0;
+
+        LocalDateTime[] marketTimes = tradingTimes.getMarketTimes();
+        for(int i=0;i<marketTimes.length;i+=2) {
+            LocalDateTime stageBegin = marketTimes[i];
+            LocalDateTime stageEnd = marketTimes[i+1];
+            LocalDateTime stageBegin2 = null;
+            if ( i<marketTimes.length-2) {
+                stageBegin2 = marketTimes[i+2];
+            }
+            //如果已经是下一个时间段, 直接跳过当前时间段
+            if ( stageBegin2!=null && marketTime.compareTo(stageBegin2)>=0 ) {
+                continue;
+            }
+            if ( marketTime.compareTo(stageBegin)<0 ) {
+                break;
+            }
+            result = tradeMinutes<<1;
+            if ( marketTime.compareTo(stageEnd)>=0 && tradingMillis-tradeMinutes*60*1000<5*1000 ) {
+                result |= 1;
+            }
+            break;
+        }
+        return result;
+    }
+
+}
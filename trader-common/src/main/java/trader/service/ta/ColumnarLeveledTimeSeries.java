@@ -0,0 +1,631 @@
+package trader.service.ta;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import org.ta4j.core.Bar;
+import org.ta4j.core.TimeSeries;
+import org.ta4j.core.num.Num;
+
+import trader.common.tick.PriceLevel;
+import trader.service.md.MarketData;
+
+/**
+ * 按列保存KBar数据的TimeSeries, 每个字段一个long[]数组, 不持有FutureBar/Num/MarketData对象.
+ * <BR>getBar()返回按需创建的轻量Bar2视图, 视图不包含TICK, getOpenTick()等返回null. 视图只适合短期使用, 删除旧KBar后可能失效.
+ * <BR>最后一个通过addBar()加入的FutureBar会作为活动KBar保留, 以便实时行情继续update(), 新KBar加入时才转为列数据.
+ * <BR>非线程安全
+ */
+public class ColumnarLeveledTimeSeries implements LeveledTimeSeries {
+    private static final long serialVersionUID = -2435183402536611247L;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private String name;
+    private PriceLevel level;
+    private ZoneId zoneId;
+
+    private long[] open;
+    private long[] high;
+    private long[] low;
+    private long[] close;
+    /**
+     * 成交量, LongNum原始值
+     */
+    private long[] volume;
+    private long[] amount;
+    private long[] openInterest;
+    private long[] avgPrice;
+    private long[] mktAvgPrice;
+    private long[] beginMillis;
+    private long[] endMillis;
+    /**
+     * KBar时间长度, 只计算交易时间
+     */
+    private long[] periodMillis;
+    /**
+     * KBar在当天的序号
+     */
+    private int[] barIndex;
+
+    /**
+     * 第一个有效数据在数组中的位置
+     */
+    private int head;
+    private int size;
+    private int maximumBarCount = Integer.MAX_VALUE;
+    private int removedBarsCount;
+
+    /**
+     * 活动KBar, 位于最后一个位置
+     */
+    private FutureBar liveBar;
+
+    public ColumnarLeveledTimeSeries(String name, PriceLevel level, ZoneId zoneId) {
+        this(name, level, zoneId, INITIAL_CAPACITY);
+    }
+
+    public ColumnarLeveledTimeSeries(String name, PriceLevel level, ZoneId zoneId, int capacity) {
+        this.name = name;
+        this.level = level;
+        this.zoneId = zoneId;
+        allocate(Math.max(capacity, 16));
+    }
+
+    @Override
+    public PriceLevel getLevel() {
+        return level;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Bar getBar(int i) {
+        int innerIndex = i-removedBarsCount;
+        if ( innerIndex<0 ) {
+            if ( i<0 ) {
+                throw new IndexOutOfBoundsException("Bar index "+i+" out of range");
+            }
+            if ( size==0 ) {
+                throw new IndexOutOfBoundsException("Time series is empty");
+            }
+            innerIndex = 0;
+        } else if ( innerIndex>=size ) {
+            throw new IndexOutOfBoundsException("Bar index "+i+" out of range, bar count "+size);
+        }
+        if ( liveBar!=null && innerIndex==size-1 ) {
+            return liveBar;
+        }
+        return new ColumnBar(this, head+innerIndex);
+    }
+
+    @Override
+    public int getBarCount() {
+        return size;
+    }
+
+    @Override
+    public List<Bar> getBarData() {
+        return new AbstractList<Bar>() {
+            @Override
+            public Bar get(int index) {
+                return getBar(removedBarsCount+index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public int getBeginIndex() {
+        return size==0?-1:removedBarsCount;
+    }
+
+    @Override
+    public int getEndIndex() {
+        return size==0?-1:removedBarsCount+size-1;
+    }
+
+    @Override
+    public void setMaximumBarCount(int maximumBarCount) {
+        if ( maximumBarCount<=0 ) {
+            throw new IllegalArgumentException("Maximum bar count must be strictly positive");
+        }
+        this.maximumBarCount = maximumBarCount;
+        removeExceedingBars();
+    }
+
+    @Override
+    public int getMaximumBarCount() {
+        return maximumBarCount;
+    }
+
+    @Override
+    public int getRemovedBarsCount() {
+        return removedBarsCount;
+    }
+
+    /**
+     * 加入新的KBar, 之前的活动KBar转为列数据. FutureBar作为新的活动KBar保留
+     */
+    @Override
+    public void addBar(Bar bar, boolean replace) {
+        if ( bar==null ) {
+            throw new IllegalArgumentException("Cannot add null bar");
+        }
+        if ( replace && size>0 ) {
+            liveBar = null;
+            size--;
+        } else if ( size>0 ) {
+            long lastEndMillis = liveBar!=null?toMillis(liveBar.getEndTime()):endMillis[head+size-1];
+            if ( toMillis(bar.getEndTime())<=lastEndMillis ) {
+                throw new IllegalArgumentException("Cannot add a bar with end time:"+bar.getEndTime()+" that is before or same as series end time");
+            }
+        }
+        freezeLiveBar();
+        ensureCapacity(size+1);
+        int pos = head+size;
+        size++;
+        setColumns(pos, bar);
+        if ( bar instanceof FutureBar ) {
+            liveBar = (FutureBar)bar;
+        }
+        removeExceedingBars();
+    }
+
+    /**
+     * 直接以原始long值加入一个KBar, 不创建任何对象
+     */
+    public void addBar(int index, long beginMillis, long endMillis, long periodMillis, long open, long high, long low, long close, long volume, long amount, long openInterest, long avgPrice, long mktAvgPrice) {
+        if ( size>0 ) {
+            long lastEndMillis = liveBar!=null?toMillis(liveBar.getEndTime()):this.endMillis[head+size-1];
+            if ( endMillis<=lastEndMillis ) {
+                throw new IllegalArgumentException("Cannot add a bar with end time:"+endMillis+" that is before or same as series end time");
+            }
+        }
+        freezeLiveBar();
+        ensureCapacity(size+1);
+        int pos = head+size;
+        size++;
+        this.barIndex[pos] = index;
+        this.beginMillis[pos] = beginMillis;
+        this.endMillis[pos] = endMillis;
+        this.periodMillis[pos] = periodMillis;
+        this.open[pos] = open;
+        this.high[pos] = high;
+        this.low[pos] = low;
+        this.close[pos] = close;
+        this.volume[pos] = volume;
+        this.amount[pos] = amount;
+        this.openInterest[pos] = openInterest;
+        this.avgPrice[pos] = avgPrice;
+        this.mktAvgPrice[pos] = mktAvgPrice;
+        removeExceedingBars();
+    }
+
+    @Override
+    public void addBar(Duration timePeriod, ZonedDateTime endTime) {
+        long end = toMillis(endTime);
+        addBar(-1, end-timePeriod.toMillis(), end, timePeriod.toMillis(), 0, 0, 0, 0, 0, 0, 0, 0, 0);
+    }
+
+    @Override
+    public void addBar(ZonedDateTime endTime, Num openPrice, Num highPrice, Num lowPrice, Num closePrice, Num volume, Num amount) {
+        addBar(level2duration(), endTime, openPrice, highPrice, lowPrice, closePrice, volume, amount);
+    }
+
+    @Override
+    public void addBar(Duration timePeriod, ZonedDateTime endTime, Num openPrice, Num highPrice, Num lowPrice, Num closePrice, Num volume) {
+        addBar(timePeriod, endTime, openPrice, highPrice, lowPrice, closePrice, volume, LongNum.ZERO);
+    }
+
+    @Override
+    public void addBar(Duration timePeriod, ZonedDateTime endTime, Num openPrice, Num highPrice, Num lowPrice, Num closePrice, Num volume, Num amount) {
+        long end = toMillis(endTime);
+        long close = LongNum.rawValueOf(closePrice);
+        addBar(-1, end-timePeriod.toMillis(), end, timePeriod.toMillis(),
+                LongNum.rawValueOf(openPrice), LongNum.rawValueOf(highPrice), LongNum.rawValueOf(lowPrice), close,
+                LongNum.rawValueOf(volume), LongNum.rawValueOf(amount), 0, close, close);
+    }
+
+    @Override
+    public void addTrade(Num tradeVolume, Num tradePrice) {
+        if ( liveBar!=null ) {
+            liveBar.addTrade(tradeVolume, tradePrice);
+        }
+        int pos = lastPos();
+        volume[pos] += LongNum.rawValueOf(tradeVolume);
+        amount[pos] += LongNum.rawMultiply(LongNum.rawValueOf(tradeVolume), LongNum.rawValueOf(tradePrice));
+        updatePrice(pos, LongNum.rawValueOf(tradePrice));
+    }
+
+    @Override
+    public void addPrice(Num price) {
+        if ( liveBar!=null ) {
+            liveBar.addPrice(price);
+        }
+        updatePrice(lastPos(), LongNum.rawValueOf(price));
+    }
+
+    @Override
+    public TimeSeries getSubSeries(int startIndex, int endIndex) {
+        if ( startIndex>endIndex ) {
+            throw new IllegalArgumentException("the endIndex: "+endIndex+" must be bigger than startIndex: "+startIndex);
+        }
+        ColumnarLeveledTimeSeries result = new ColumnarLeveledTimeSeries(name, level, zoneId, endIndex-startIndex);
+        if ( size==0 ) {
+            return result;
+        }
+        int from = Math.max(startIndex, getBeginIndex());
+        int to = Math.min(endIndex, getEndIndex()+1);
+        for(int i=from;i<to;i++) {
+            Bar bar = getBar(i);
+            if ( bar instanceof FutureBar ) {
+                //活动KBar不共享给子序列
+                result.addBar(bar, false);
+                result.freezeLiveBar();
+            } else {
+                int pos = head+i-removedBarsCount;
+                result.addBar(barIndex[pos], beginMillis[pos], endMillis[pos], periodMillis[pos], open[pos], high[pos], low[pos], close[pos], volume[pos], amount[pos], openInterest[pos], avgPrice[pos], mktAvgPrice[pos]);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Num numOf(Number number) {
+        return LongNum.valueOf(number);
+    }
+
+    @Override
+    public Function<Number, Num> function() {
+        return LongNum::valueOf;
+    }
+
+    /**
+     * 收盘价原始值, 供指标直接计算
+     */
+    public long getClosePrice(int i) {
+        int pos = pos(i);
+        if ( pos<0 ) {
+            return LongNum.rawValueOf(liveBar.getClosePrice());
+        }
+        return close[pos];
+    }
+
+    public long getOpenPrice(int i) {
+        int pos = pos(i);
+        if ( pos<0 ) {
+            return LongNum.rawValueOf(liveBar.getOpenPrice());
+        }
+        return open[pos];
+    }
+
+    public long getMaxPrice(int i) {
+        int pos = pos(i);
+        if ( pos<0 ) {
+            return LongNum.rawValueOf(liveBar.getMaxPrice());
+        }
+        return high[pos];
+    }
+
+    public long getMinPrice(int i) {
+        int pos = pos(i);
+        if ( pos<0 ) {
+            return LongNum.rawValueOf(liveBar.getMinPrice());
+        }
+        return low[pos];
+    }
+
+    public long getVolume(int i) {
+        int pos = pos(i);
+        if ( pos<0 ) {
+            return LongNum.rawValueOf(liveBar.getVolume());
+        }
+        return volume[pos];
+    }
+
+    public long getAmount(int i) {
+        int pos = pos(i);
+        if ( pos<0 ) {
+            return LongNum.rawValueOf(liveBar.getAmount());
+        }
+        return amount[pos];
+    }
+
+    /**
+     * KBar在当天的序号
+     */
+    public int getBarIndex(int i) {
+        int pos = pos(i);
+        if ( pos<0 ) {
+            return liveBar.getIndex();
+        }
+        return barIndex[pos];
+    }
+
+    /**
+     * 返回数组位置, 活动KBar返回-1
+     */
+    private int pos(int i) {
+        int innerIndex = i-removedBarsCount;
+        if ( innerIndex<0 || innerIndex>=size ) {
+            throw new IndexOutOfBoundsException("Bar index "+i+" out of range");
+        }
+        if ( liveBar!=null && innerIndex==size-1 ) {
+            return -1;
+        }
+        return head+innerIndex;
+    }
+
+    private int lastPos() {
+        if ( size==0 ) {
+            throw new IllegalStateException("Time series is empty");
+        }
+        return head+size-1;
+    }
+
+    private void updatePrice(int pos, long price) {
+        if ( open[pos]==0 ) {
+            open[pos] = price;
+            high[pos] = price;
+            low[pos] = price;
+        }
+        close[pos] = price;
+        high[pos] = Math.max(high[pos], price);
+        low[pos] = Math.min(low[pos], price);
+    }
+
+    /**
+     * 活动KBar转为列数据, 释放对TICK的引用
+     */
+    private void freezeLiveBar() {
+        if ( liveBar!=null ) {
+            setColumns(head+size-1, liveBar);
+            liveBar = null;
+        }
+    }
+
+    private void setColumns(int pos, Bar bar) {
+        barIndex[pos] = -1;
+        beginMillis[pos] = toMillis(bar.getBeginTime());
+        endMillis[pos] = toMillis(bar.getEndTime());
+        periodMillis[pos] = bar.getTimePeriod()!=null?bar.getTimePeriod().toMillis():(endMillis[pos]-beginMillis[pos]);
+        open[pos] = LongNum.rawValueOf(bar.getOpenPrice());
+        high[pos] = LongNum.rawValueOf(bar.getMaxPrice());
+        low[pos] = LongNum.rawValueOf(bar.getMinPrice());
+        close[pos] = LongNum.rawValueOf(bar.getClosePrice());
+        volume[pos] = LongNum.rawValueOf(bar.getVolume());
+        amount[pos] = LongNum.rawValueOf(bar.getAmount());
+        openInterest[pos] = 0;
+        avgPrice[pos] = close[pos];
+        mktAvgPrice[pos] = close[pos];
+        if ( bar instanceof Bar2 ) {
+            Bar2 bar2 = (Bar2)bar;
+            openInterest[pos] = bar2.getOpenInterest();
+            if ( bar2.getAvgPrice()!=null ) {
+                avgPrice[pos] = LongNum.rawValueOf(bar2.getAvgPrice());
+            }
+            if ( bar2.getMktAvgPrice()!=null ) {
+                mktAvgPrice[pos] = LongNum.rawValueOf(bar2.getMktAvgPrice());
+            }
+        }
+        if ( bar instanceof FutureBar ) {
+            barIndex[pos] = ((FutureBar)bar).getIndex();
+        } else if ( bar instanceof ColumnBar ) {
+            ColumnBar columnBar = (ColumnBar)bar;
+            barIndex[pos] = columnBar.series.barIndex[columnBar.pos];
+        }
+    }
+
+    private void removeExceedingBars() {
+        int exceeded = size-maximumBarCount;
+        if ( exceeded>0 ) {
+            head += exceeded;
+            size -= exceeded;
+            removedBarsCount += exceeded;
+        }
+    }
+
+    private void ensureCapacity(int count) {
+        if ( head+count<=close.length ) {
+            return;
+        }
+        if ( head>0 && count<=close.length/2 ) {
+            //前面有大量已删除数据, 原地压缩
+            compact(close.length);
+        } else {
+            compact(Math.max(close.length*2, count));
+        }
+    }
+
+    private void allocate(int capacity) {
+        open = new long[capacity];
+        high = new long[capacity];
+        low = new long[capacity];
+        close = new long[capacity];
+        volume = new long[capacity];
+        amount = new long[capacity];
+        openInterest = new long[capacity];
+        avgPrice = new long[capacity];
+        mktAvgPrice = new long[capacity];
+        beginMillis = new long[capacity];
+        endMillis = new long[capacity];
+        periodMillis = new long[capacity];
+        barIndex = new int[capacity];
+    }
+
+    private void compact(int capacity) {
+        open = compact(open, capacity);
+        high = compact(high, capacity);
+        low = compact(low, capacity);
+        close = compact(close, capacity);
+        volume = compact(volume, capacity);
+        amount = compact(amount, capacity);
+        openInterest = compact(openInterest, capacity);
+        avgPrice = compact(avgPrice, capacity);
+        mktAvgPrice = compact(mktAvgPrice, capacity);
+        beginMillis = compact(beginMillis, capacity);
+        endMillis = compact(endMillis, capacity);
+        periodMillis = compact(periodMillis, capacity);
+        int[] barIndex2 = new int[capacity];
+        System.arraycopy(barIndex, head, barIndex2, 0, size);
+        barIndex = barIndex2;
+        head = 0;
+    }
+
+    private long[] compact(long[] column, int capacity) {
+        if ( capacity==column.length ) {
+            System.arraycopy(column, head, column, 0, size);
+            Arrays.fill(column, size, column.length, 0);
+            return column;
+        }
+        long[] result = new long[capacity];
+        System.arraycopy(column, head, result, 0, size);
+        return result;
+    }
+
+    private Duration level2duration() {
+        if ( level!=null && level.name().startsWith(PriceLevel.LEVEL_MIN) ) {
+            return Duration.ofMinutes(level.getValue());
+        }
+        return Duration.ofDays(1);
+    }
+
+    private static long toMillis(ZonedDateTime time) {
+        return time.toInstant().toEpochMilli();
+    }
+
+    /**
+     * 列数据的KBar视图, 不持有任何数据
+     */
+    static class ColumnBar implements Bar2 {
+        private static final long serialVersionUID = 6137296427017437154L;
+
+        private final ColumnarLeveledTimeSeries series;
+        private final int pos;
+
+        ColumnBar(ColumnarLeveledTimeSeries series, int pos){
+            this.series = series;
+            this.pos = pos;
+        }
+
+        public int getIndex() {
+            return series.barIndex[pos];
+        }
+
+        @Override
+        public Num getOpenPrice() {
+            return LongNum.fromRawValue(series.open[pos]);
+        }
+
+        @Override
+        public Num getMinPrice() {
+            return LongNum.fromRawValue(series.low[pos]);
+        }
+
+        @Override
+        public Num getMaxPrice() {
+            return LongNum.fromRawValue(series.high[pos]);
+        }
+
+        @Override
+        public Num getClosePrice() {
+            return LongNum.fromRawValue(series.close[pos]);
+        }
+
+        @Override
+        public Num getVolume() {
+            return LongNum.fromRawValue(series.volume[pos]);
+        }
+
+        @Override
+        public int getTrades() {
+            return 0;
+        }
+
+        @Override
+        public Num getAmount() {
+            return LongNum.fromRawValue(series.amount[pos]);
+        }
+
+        @Override
+        public Duration getTimePeriod() {
+            return Duration.ofMillis(series.periodMillis[pos]);
+        }
+
+        @Override
+        public ZonedDateTime getBeginTime() {
+            return Instant.ofEpochMilli(series.beginMillis[pos]).atZone(series.zoneId);
+        }
+
+        @Override
+        public ZonedDateTime getEndTime() {
+            return Instant.ofEpochMilli(series.endMillis[pos]).atZone(series.zoneId);
+        }
+
+        @Override
+        public void addTrade(Num tradeVolume, Num tradePrice) {
+            throw new UnsupportedOperationException("addTrade");
+        }
+
+        @Override
+        public void addPrice(Num price) {
+            throw new UnsupportedOperationException("addPrice");
+        }
+
+        @Override
+        public Num getAvgPrice() {
+            return LongNum.fromRawValue(series.avgPrice[pos]);
+        }
+
+        @Override
+        public Num getMktAvgPrice() {
+            return LongNum.fromRawValue(series.mktAvgPrice[pos]);
+        }
+
+        @Override
+        public long getOpenInterest() {
+            return series.openInterest[pos];
+        }
+
+        @Override
+        public MarketData getOpenTick() {
+            return null;
+        }
+
+        @Override
+        public MarketData getCloseTick() {
+            return null;
+        }
+
+        @Override
+        public MarketData getMaxTick() {
+            return null;
+        }
+
+        @Override
+        public MarketData getMinTick() {
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return "{end time: "+getEndTime()+", close price: "+getClosePrice()+", open price: "+getOpenPrice()
+                +", min price: "+getMinPrice()+", max price: "+getMaxPrice()+", volume: "+getVolume().longValue()+", openInt: "+getOpenInterest()+"}";
+        }
+    }
+
+}
@@ -1,5 +1,8 @@
 package trader.service.ta;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
 import java.util.function.Function;
 
 import org.ta4j.core.num.Num;
@@ -8,11 +11,52 @@ import trader.common.util.PriceUtil;
 
 /**
  * long表示价格, 4位小数
+ * <BR>乘除法直接在4位小数的long上精确计算(四舍五入), 不经过double转换.
+ * <BR>常用的小数值(原始值绝对值较小, 或者较小的整数)有缓存, 运算结果落在缓存范围内时不创建新对象.
+ * <BR>rawXXX() 静态方法直接在原始long值上运算, 供自定义指标在不分配对象的情况下使用
  */
 public class LongNum implements Num {
     private static final long serialVersionUID = -6389115676116240242L;
 
-    public static final LongNum ZERO = new LongNum(0);
+    /**
+     * 原始值的缩放倍数, 4位小数
+     */
+    public static final long SCALE = 10000;
+
+    private static final int RAW_CACHE_LOW = -1024;
+    private static final int RAW_CACHE_HIGH = 1024;
+    private static final int INT_CACHE_LOW = -128;
+    private static final int INT_CACHE_HIGH = 1024;
+
+    /**
+     * 原始值在[-1024, 1024]之间的缓存, 对应-0.1024到0.1024, 指标差值在0附近时常见
+     */
+    private static final LongNum[] rawCache = new LongNum[RAW_CACHE_HIGH-RAW_CACHE_LOW+1];
+    /**
+     * 整数值在[-128, 1024]之间的缓存
+     */
+    private static final LongNum[] intCache = new LongNum[INT_CACHE_HIGH-INT_CACHE_LOW+1];
+
+    static {
+        for(int i=0;i<rawCache.length;i++) {
+            rawCache[i] = new LongNum((long)(i+RAW_CACHE_LOW));
+        }
+        for(int i=0;i<intCache.length;i++) {
+            long raw = (i+INT_CACHE_LOW)*SCALE;
+            if ( raw>=RAW_CACHE_LOW && raw<=RAW_CACHE_HIGH ) {
+                intCache[i] = rawCache[(int)(raw-RAW_CACHE_LOW)];
+            } else {
+                intCache[i] = new LongNum(raw);
+            }
+        }
+    }
+
+    public static final LongNum ZERO = fromRawValue(0);
+    public static final LongNum ONE = fromRawValue(SCALE);
+
+    private static final BigInteger BIG_SCALE = BigInteger.valueOf(SCALE);
+    private static final BigDecimal BIG_LONG_MAX = BigDecimal.valueOf(Long.MAX_VALUE);
+    private static final BigDecimal BIG_LONG_MIN = BigDecimal.valueOf(Long.MIN_VALUE);
 
     private long value;
 
@@ -41,33 +85,38 @@ public class LongNum implements Num {
 
     @Override
     public Num plus(Num augend) {
-        long result = value+((LongNum)augend).value;
-        return new LongNum(result);
+        long v2 = ((LongNum)augend).value;
+        if ( v2==0 ) {
+            return this;
+        }
+        return fromRawValue(value+v2);
     }
 
     @Override
     public Num minus(Num subtrahend) {
-        long result = value-((LongNum)subtrahend).value;
-        return new LongNum(result);
+        long v2 = ((LongNum)subtrahend).value;
+        if ( v2==0 ) {
+            return this;
+        }
+        return fromRawValue(value-v2);
     }
 
     @Override
     public Num multipliedBy(Num multiplicand) {
-        double v = PriceUtil.long2price(value);
-        double v2 = PriceUtil.long2price(((LongNum)multiplicand).value);
-        double r = v*v2;
-        return new LongNum(PriceUtil.price2long(r));
+        long v2 = ((LongNum)multiplicand).value;
+        if ( v2==SCALE ) {
+            return this;
+        }
+        return fromRawValue(rawMultiply(value, v2));
     }
 
     @Override
     public Num dividedBy(Num divisor) {
-        if ( divisor.isZero() ) {
-            return new LongNum(Long.MAX_VALUE);
+        long v2 = ((LongNum)divisor).value;
+        if ( v2==SCALE ) {
+            return this;
         }
-        double v = PriceUtil.long2price(value);
-        double v2 = PriceUtil.long2price(((LongNum)divisor).value);
-        double r = v/v2;
-        return new LongNum(PriceUtil.price2long(r));
+        return fromRawValue(rawDivide(value, v2));
     }
 
     @Override
@@ -107,7 +156,10 @@ public class LongNum implements Num {
 
     @Override
     public Num abs() {
-        return new LongNum(Math.abs(value));
+        if ( value>=0 ) {
+            return this;
+        }
+        return fromRawValue(-value);
     }
 
     @Override
@@ -186,7 +238,106 @@ public class LongNum implements Num {
     }
 
     public static Num valueOf(Number i) {
-        return new LongNum(PriceUtil.price2long(i.doubleValue()));
+        if ( i instanceof Integer || i instanceof Long || i instanceof Short || i instanceof Byte ) {
+            return fromInt(i.longValue());
+        }
+        return fromRawValue(PriceUtil.price2long(i.doubleValue()));
+    }
+
+    /**
+     * 从原始4位小数的long值创建, 优先使用缓存
+     */
+    public static LongNum fromRawValue(long rawValue) {
+        if ( rawValue>=RAW_CACHE_LOW && rawValue<=RAW_CACHE_HIGH ) {
+            return rawCache[(int)(rawValue-RAW_CACHE_LOW)];
+        }
+        if ( rawValue%SCALE==0 ) {
+            long l = rawValue/SCALE;
+            if ( l>=INT_CACHE_LOW && l<=INT_CACHE_HIGH ) {
+                return intCache[(int)(l-INT_CACHE_LOW)];
+            }
+        }
+        return new LongNum(rawValue);
+    }
+
+    /**
+     * 从整数值创建, 优先使用缓存
+     */
+    public static LongNum fromInt(long l) {
+        if ( l>=INT_CACHE_LOW && l<=INT_CACHE_HIGH ) {
+            return intCache[(int)(l-INT_CACHE_LOW)];
+        }
+        return new LongNum(l*SCALE);
+    }
+
+    /**
+     * 返回Num的原始long值, 非LongNum会转换
+     */
+    public static long rawValueOf(Num num) {
+        if ( num instanceof LongNum ) {
+            return ((LongNum)num).value;
+        }
+        return PriceUtil.price2long(num.doubleValue());
+    }
+
+    /**
+     * 原始值乘法: a*b/SCALE, 四舍五入(远离0).
+     * <BR>中间结果超出long时使用BigInteger计算, 最终结果超出long时返回Long.MAX_VALUE/Long.MIN_VALUE
+     */
+    public static long rawMultiply(long a, long b) {
+        long hi = Math.multiplyHigh(a, b);
+        long lo = a*b;
+        if ( (hi==0 && lo>=0) || (hi==-1 && lo<0) ) {
+            return roundDivide(lo, SCALE);
+        }
+        BigInteger r = BigInteger.valueOf(a).multiply(BigInteger.valueOf(b));
+        return clamp(new BigDecimal(r).divide(new BigDecimal(BIG_SCALE), 0, RoundingMode.HALF_UP));
+    }
+
+    /**
+     * 原始值除法: a*SCALE/b, 四舍五入(远离0). 除数为0时返回Long.MAX_VALUE
+     * <BR>中间结果超出long时使用BigInteger计算, 最终结果超出long时返回Long.MAX_VALUE/Long.MIN_VALUE
+     */
+    public static long rawDivide(long a, long b) {
+        if ( b==0 ) {
+            return Long.MAX_VALUE;
+        }
+        long hi = Math.multiplyHigh(a, SCALE);
+        long lo = a*SCALE;
+        if ( (hi==0 && lo>=0) || (hi==-1 && lo<0) ) {
+            return roundDivide(lo, b);
+        }
+        BigInteger r = BigInteger.valueOf(a).multiply(BIG_SCALE);
+        return clamp(new BigDecimal(r).divide(new BigDecimal(b), 0, RoundingMode.HALF_UP));
+    }
+
+    /**
+     * 超出long范围时取Long.MAX_VALUE/Long.MIN_VALUE, 不能用longValue()截断
+     */
+    private static long clamp(BigDecimal v) {
+        if ( v.compareTo(BIG_LONG_MAX)>0 ) {
+            return Long.MAX_VALUE;
+        }
+        if ( v.compareTo(BIG_LONG_MIN)<0 ) {
+            return Long.MIN_VALUE;
+        }
+        return v.longValueExact();
+    }
+
+    /**
+     * n/d 四舍五入(远离0)
+     */
+    private static long roundDivide(long n, long d) {
+        long q = n/d;
+        long r = n%d;
+        if ( r!=0 ) {
+            //|2r|>=|d|时进位, 用|r|>=|d|-|r|避免溢出
+            long absR = Math.abs(r), absD = Math.abs(d);
+            if ( absR>=absD-absR ) {
+                q += ((n^d)<0)?-1:1;
+            }
+        }
+        return q;
     }
 
     @Override
@@ -4,6 +4,7 @@ import java.util.List;
 
 import trader.common.exchangeable.Exchangeable;
 import trader.common.tick.PriceLevel;
+import trader.service.ta.indicators.IncrementalIndicator;
 import trader.service.ta.trend.WaveBar;
 import trader.service.ta.trend.WaveBar.WaveType;
 
@@ -15,10 +16,17 @@ public interface TAItem {
     /**
      * 获得某个品种的KBar数据, 如果没有返回null.
      * <BR>要求品种必须是关注行情的品种; 不支持运行到一半时动态增加品种的kBar
-     * <BR>对于MIN1以外的KBar, 会动态从MIN1合成
+     * <BR>对于MIN1以外的分钟级别KBar, 第一次请求时从MIN1合并创建, 之后随行情更新
+     * <BR>成交量(VOL)/成交金额(AMT)级别KBar第一次请求时从TICK数据加载, 之后逐TICK更新
      */
     public LeveledTimeSeries getSeries(PriceLevel level);
 
+    /**
+     * 获得共享的增量计算指标, 不存在会创建. 相同(级别, 参数)的指标只计算一次, 随KBar更新自动更新.
+     * <BR>spec格式见IncrementalIndicator.create(), 例如 MACD(12,26,9), 级别不存在返回null
+     */
+    public IncrementalIndicator getIndicator(PriceLevel level, String spec);
+
     public List<WaveBar> getWaveBars(WaveType waveType);
 
     public WaveBar getLastWaveBar(WaveType waveType);
@@ -1,6 +1,8 @@
 package trader.service.ta;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
@@ -12,7 +14,10 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.IntFunction;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.ta4j.core.Bar;
 import org.ta4j.core.BaseBar;
 import org.ta4j.core.num.Num;
@@ -29,8 +34,12 @@ import trader.common.tick.PriceLevel;
 import trader.common.util.CSVDataSet;
 import trader.common.util.CSVMarshallHelper;
 import trader.common.util.CSVUtil;
+import trader.common.util.CSVWriter;
 import trader.common.util.DateUtil;
 import trader.service.md.MarketData;
+import trader.service.md.MarketDataCache;
+import trader.service.md.MarketDataColumnCodec;
+import trader.service.md.MarketDataCursor;
 import trader.service.md.MarketDataProducer;
 import trader.service.md.MarketDataProducerFactory;
 import trader.service.md.MarketDataService;
@@ -39,6 +48,7 @@ import trader.service.md.MarketDataService;
  * 行情数据加载和转换为分钟级别数据
  */
 public class TimeSeriesLoader {
+    private final static Logger logger = LoggerFactory.getLogger(TimeSeriesLoader.class);
 
     private BeansContainer beansContainer;
     private ExchangeableData data;
@@ -56,6 +66,22 @@ public class TimeSeriesLoader {
      * 实际时间
      */
     private LocalDateTime endTime;
+    /**
+     * 最少加载的KBar数量, 开始交易日之前的数据会继续向前加载直到满足数量
+     */
+    private int barCount;
+    /**
+     * 从TICK生成的完整交易日的MIN1数据是否保存为MIN1文件, 下次直接加载
+     */
+    private boolean saveMin1Bars;
+    /**
+     * 多个加载器共享的已收市交易日的MIN1数据, 需要线程安全
+     */
+    private Map<LocalDate, List<Bar>> sharedMin1Bars;
+    /**
+     * 二进制TICK数据是否通过进程内共享的MarketDataCache加载, 只用于模拟和回测
+     */
+    private boolean useMarketDataCache;
 
     private Map<LocalDate, List<Bar>> min1BarsByDay = new HashMap<>();
 
@@ -105,22 +131,66 @@ public class TimeSeriesLoader {
         return this;
     }
 
+    /**
+     * 设置最少加载的KBar数量, 缺省为0只按交易日加载
+     */
+    public TimeSeriesLoader setBarCount(int barCount){
+        this.barCount = barCount;
+        return this;
+    }
+
+    /**
+     * 设置是否将从TICK生成的已收市交易日的MIN1数据保存为MIN1文件, 不覆盖已有文件, 缺省不保存
+     */
+    public TimeSeriesLoader setSaveMin1Bars(boolean saveMin1Bars){
+        this.saveMin1Bars = saveMin1Bars;
+        return this;
+    }
+
+    /**
+     * 设置多个加载器共享的MIN1数据, 用于同一品种的多个回测任务不再重复加载和生成历史MIN1数据.
+     * <BR>只有已收市交易日的数据会放入共享, 放入后只读
+     */
+    public TimeSeriesLoader setSharedMin1Bars(Map<LocalDate, List<Bar>> sharedMin1Bars){
+        this.sharedMin1Bars = sharedMin1Bars;
+        return this;
+    }
+
+    /**
+     * 设置二进制TICK数据通过MarketDataCache加载, 缺省直接读取文件. 只用于模拟和回测, 多个任务共享同一份只读数据
+     */
+    public TimeSeriesLoader setUseMarketDataCache(boolean useMarketDataCache){
+        this.useMarketDataCache = useMarketDataCache;
+        return this;
+    }
+
     public List<LocalDate> getLoadedDates(){
         return Collections.unmodifiableList(loadedDates);
     }
 
     /**
-     * 直接加载行情切片原始数据
+     * 直接加载行情切片原始数据, 优先使用二进制列存格式
      */
     public List<MarketData> loadMarketDataTicks(LocalDate tradingDay, DataInfo tickDataInfo) throws IOException
     {
-        if ( !data.exists(exchangeable, tickDataInfo, tradingDay) ) {
+        boolean binary = data.existsBinary(exchangeable, tickDataInfo, tradingDay);
+        if ( !binary && !data.exists(exchangeable, tickDataInfo, tradingDay) ) {
             return Collections.emptyList();
         }
         List<MarketData> result = new ArrayList<>();
         MarketDataService mdService = this.beansContainer.getBean(MarketDataService.class);
         MarketDataProducerFactory ctpFactory = mdService.getProducerFactories().get(tickDataInfo.provider());
         MarketDataProducer mdProducer = ctpFactory.create(beansContainer, null);
+        if ( binary ) {
+            ByteBuffer buf = useMarketDataCache ? loadCachedTicks(tradingDay, tickDataInfo) : data.loadBinary(exchangeable, tickDataInfo, tradingDay);
+            for(MarketData marketData:MarketDataColumnCodec.decode(buf, exchangeable, tradingDay, ()->mdProducer.createEmptyMarketData(exchangeable))) {
+                if ( this.endTime!=null && this.endTime.isBefore(marketData.updateTime)) {
+                    continue;
+                }
+                result.add(marketData);
+            }
+            return result;
+        }
         CSVMarshallHelper csvMarshallHelper = ctpFactory.createCSVMarshallHelper();
         String csv = data.load(exchangeable, tickDataInfo, tradingDay);
         CSVDataSet csvDataSet = CSVUtil.parse(csv);
@@ -134,6 +204,32 @@ public class TimeSeriesLoader {
         return result;
     }
 
+    /**
+     * 内存映射方式打开二进制列存格式的行情切片, 不存在返回null
+     */
+    public MarketDataCursor openMarketDataCursor(LocalDate tradingDay, DataInfo tickDataInfo) throws IOException
+    {
+        if ( !data.existsBinary(exchangeable, tickDataInfo, tradingDay) ) {
+            return null;
+        }
+        MarketDataService mdService = this.beansContainer.getBean(MarketDataService.class);
+        MarketDataProducerFactory ctpFactory = mdService.getProducerFactories().get(tickDataInfo.provider());
+        MarketDataProducer mdProducer = ctpFactory.create(beansContainer, null);
+        ByteBuffer buf = useMarketDataCache ? loadCachedTicks(tradingDay, tickDataInfo) : data.mapBinary(exchangeable, tickDataInfo, tradingDay);
+        return new MarketDataCursor(buf, exchangeable, tradingDay, ()->mdProducer.createEmptyMarketData(exchangeable));
+    }
+
+    /**
+     * 二进制列存格式的行情切片通过进程内共享缓存加载, 返回只读数据
+     */
+    private ByteBuffer loadCachedTicks(LocalDate tradingDay, DataInfo tickDataInfo) throws IOException
+    {
+        Exchangeable e = exchangeable;
+        return MarketDataCache.getInstance().get(e, tradingDay, tickDataInfo, ()->{
+            return data.mapBinary(e, tickDataInfo, tradingDay);
+        });
+    }
+
     /**
      * 加载数据
      */
@@ -150,10 +246,13 @@ public class TimeSeriesLoader {
         if ( level.name().startsWith(PriceLevel.LEVEL_MIN)) { //基于时间切分BAR
             LocalDate tradingDay = endTradingDay;
             //从后向前
-            while(tradingDay.compareTo(startTradingDay)>=0) {
+            while(tradingDay.compareTo(startTradingDay)>=0 || bars.size()<barCount) {
                 List<Bar> dayMinBars = new ArrayList<>();
                 if ( min1BarsByDay.containsKey(tradingDay)) {
                     dayMinBars = mergeMin1Bars(min1BarsByDay.get(tradingDay));
+                } else if ( level==PriceLevel.MIN1 && sharedMin1Bars!=null && isTradingDayClosed(tradingDay) ) {
+                    dayMinBars = loadSharedMin1Bars(tradingDay);
+                    min1BarsByDay.put(tradingDay, dayMinBars);
                 } else if (data.exists(exchangeable, ExchangeableData.MIN1, tradingDay)) {
                     List<Bar> dayMin1Bars = loadMin1Bars(tradingDay);
                     min1BarsByDay.put(tradingDay, dayMin1Bars);
@@ -172,23 +271,95 @@ public class TimeSeriesLoader {
                 //前一个交易日
                 tradingDay = MarketDayUtil.prevMarketDay(exchangeable.exchange(), tradingDay);
             }
-        }else if ( level.name().startsWith(PriceLevel.LEVEL_VOL)) { //基于交易量切分BAR
+        }else if ( level.isVolumeBased() ) { //基于成交量或成交金额切分BAR
             LocalDate tradingDay = endTradingDay;
             //从后向前
-            while(tradingDay.compareTo(startTradingDay)>=0) {
-                bars.addAll(loadVolBars(tradingDay, level));
+            while(tradingDay.compareTo(startTradingDay)>=0 || bars.size()<barCount) {
+                Collection<Bar> dayVolBars = loadVolBars(tradingDay, level);
+                if ( dayVolBars.isEmpty() && !tradingDay.equals(endTradingDay) ) {
+                    break;
+                }
+                if ( !dayVolBars.isEmpty() ) {
+                    bars.addAll(0, dayVolBars);
+                    loadedDates.add(tradingDay);
+                }
                 tradingDay = MarketDayUtil.prevMarketDay(exchangeable.exchange(), tradingDay);
             }
         }
-        //转换Bar为TimeSeries
-        BaseLeveledTimeSeries result = new BaseLeveledTimeSeries(exchangeable.name()+"-"+level, level, LongNum::valueOf);
-        for(int i=0;i<bars.size();i++) {
-            Bar bar = bars.get(i);
+        //转换Bar为按列保存的TimeSeries, 不再持有Bar和TICK对象
+        ColumnarLeveledTimeSeries result = new ColumnarLeveledTimeSeries(exchangeable.name()+"-"+level, level, exchangeable.exchange().getZoneId(), bars.size());
+        for(Bar bar:bars) {
             result.addBar(bar);
         }
         return result;
     }
 
+    /**
+     * 将MIN1序列按KBar位置合并为多分钟序列, 同一交易日内MIN1位置/分钟数相同的KBar合并为一个.
+     * <BR>最后一个未完成的KBar也会合并, 不需要重新加载历史数据
+     */
+    public static ColumnarLeveledTimeSeries foldMin1Series(Exchangeable exchangeable, LeveledTimeSeries min1Series, PriceLevel level) {
+        return foldMin1Series(exchangeable, min1Series, level, min1Series.getEndIndex());
+    }
+
+    /**
+     * 将MIN1序列从开始位置到endIndex(包含)的KBar合并为多分钟序列
+     */
+    public static ColumnarLeveledTimeSeries foldMin1Series(Exchangeable exchangeable, LeveledTimeSeries min1Series, PriceLevel level, int endIndex) {
+        ColumnarLeveledTimeSeries result = new ColumnarLeveledTimeSeries(exchangeable.name()+"-"+level, level, exchangeable.exchange().getZoneId(), min1Series.getBarCount()/Math.max(1, level.getValue())+16);
+        if ( min1Series.isEmpty() || endIndex<min1Series.getBeginIndex() ) {
+            return result;
+        }
+        long volumeMultiplier = Math.max(1, exchangeable.getVolumeMutiplier());
+        int minutes = level.getValue();
+        int levelIndex = -1, lastMin1Index = -1, sequence = 0;
+        long beginMillis=0, endMillis=0, periodMillis=0, open=0, high=0, low=0, close=0, volume=0, amount=0, openInterest=0, mktAvgPrice=0;
+        for(int i=min1Series.getBeginIndex();i<=endIndex;i++) {
+            Bar bar = min1Series.getBar(i);
+            int min1Index = sequence++;
+            if ( bar instanceof FutureBar ) {
+                min1Index = ((FutureBar)bar).getIndex();
+            } else if ( min1Series instanceof ColumnarLeveledTimeSeries ) {
+                min1Index = ((ColumnarLeveledTimeSeries)min1Series).getBarIndex(i);
+            }
+            int barLevelIndex = min1Index/minutes;
+            //新交易日或者新的KBar
+            boolean newBar = levelIndex<0 || min1Index<=lastMin1Index || barLevelIndex!=levelIndex;
+            if ( newBar && levelIndex>=0 ) {
+                long avgPrice = volume>0?LongNum.rawDivide(amount, volume*volumeMultiplier):close;
+                result.addBar(levelIndex, beginMillis, endMillis, periodMillis, open, high, low, close, volume, amount, openInterest, avgPrice, mktAvgPrice);
+            }
+            long barHigh = LongNum.rawValueOf(bar.getMaxPrice()), barLow = LongNum.rawValueOf(bar.getMinPrice());
+            if ( newBar ) {
+                levelIndex = barLevelIndex;
+                beginMillis = bar.getBeginTime().toInstant().toEpochMilli();
+                periodMillis = 0;
+                open = LongNum.rawValueOf(bar.getOpenPrice());
+                high = barHigh;
+                low = barLow;
+                volume = 0;
+                amount = 0;
+            }
+            lastMin1Index = min1Index;
+            endMillis = bar.getEndTime().toInstant().toEpochMilli();
+            periodMillis += bar.getTimePeriod().toMillis();
+            high = Math.max(high, barHigh);
+            low = Math.min(low, barLow);
+            close = LongNum.rawValueOf(bar.getClosePrice());
+            volume += LongNum.rawValueOf(bar.getVolume());
+            amount += LongNum.rawValueOf(bar.getAmount());
+            if ( bar instanceof Bar2 ) {
+                openInterest = ((Bar2)bar).getOpenInterest();
+                mktAvgPrice = LongNum.rawValueOf(((Bar2)bar).getMktAvgPrice());
+            } else {
+                mktAvgPrice = close;
+            }
+        }
+        long avgPrice = volume>0?LongNum.rawDivide(amount, volume*volumeMultiplier):close;
+        result.addBar(levelIndex, beginMillis, endMillis, periodMillis, open, high, low, close, volume, amount, openInterest, avgPrice, mktAvgPrice);
+        return result;
+    }
+
     /**
      * 将1分钟K线合并为多分钟K线
      */
@@ -265,18 +436,130 @@ public class TimeSeriesLoader {
      * 加载某日的TICK数据, 转换为MIN1数据
      */
     private List<Bar> loadMinFromTicks(LocalDate tradingDay) throws IOException {
-        List<MarketData> marketDatas = loadMarketData(tradingDay);
-        List<Bar> minBars = marketDatas2bars(exchangeable, level, marketDatas);
+        List<Bar> minBars = null;
+        MarketDataCursor cursor = null;
+        if ( exchangeable.getType()==ExchangeableType.FUTURE && endTime==null ) {
+            cursor = openMarketDataCursor(tradingDay, ExchangeableData.TICK_CTP);
+        }
+        if ( cursor!=null ) {
+            minBars = marketDatas2bars(exchangeable, level, cursor);
+        } else {
+            minBars = marketDatas2bars(exchangeable, level, loadMarketData(tradingDay));
+        }
         if (level==PriceLevel.MIN1) {
             min1BarsByDay.put(tradingDay, minBars);
+            //只保存已收市的完整交易日的数据, 已存在的MIN1文件不会覆盖
+            if ( saveMin1Bars && !minBars.isEmpty() && isTradingDayClosed(tradingDay) ) {
+                try{
+                    if ( !data.exists(exchangeable, ExchangeableData.MIN1, tradingDay) ) {
+                        saveMin1Bars(data, exchangeable, tradingDay, minBars);
+                    }
+                }catch(Throwable t) {
+                    logger.error(exchangeable+" save MIN1 bars of "+tradingDay+" failed", t);
+                }
+            }
         }
         return minBars;
     }
 
     /**
-     * 将TICK数据转换为 VOL10K Bar这种数据, 如果TICK之间的volume不能被整除, 不会再次切分TICK.因为这是最小单位.
+     * 从共享数据加载已收市交易日的MIN1数据, 每个交易日只从MIN1文件或TICK加载一次, 同时加载同一交易日时等待
+     */
+    private List<Bar> loadSharedMin1Bars(LocalDate tradingDay) throws IOException {
+        try{
+            return sharedMin1Bars.computeIfAbsent(tradingDay, (LocalDate d)->{
+                try{
+                    List<Bar> min1Bars = null;
+                    if ( data.exists(exchangeable, ExchangeableData.MIN1, d) ) {
+                        min1Bars = loadMin1Bars(d);
+                    } else {
+                        min1Bars = loadMinFromTicks(d);
+                    }
+                    return Collections.unmodifiableList(min1Bars);
+                }catch(IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }catch(UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 交易日是否在最后一个交易日之前并且已经收市, 正在进行中的交易日TICK数据不完整
+     */
+    private boolean isTradingDayClosed(LocalDate tradingDay) {
+        if ( !tradingDay.isBefore(endTradingDay) ) {
+            return false;
+        }
+        ExchangeableTradingTimes tradingTimes = exchangeable.exchange().getTradingTimes(exchangeable, tradingDay);
+        if ( tradingTimes==null ) {
+            return false;
+        }
+        LocalDateTime currTime = endTime!=null?endTime:LocalDateTime.now();
+        return !currTime.isBefore(tradingTimes.getMarketCloseTime());
+    }
+
+    /**
+     * 保存MIN1数据, 会覆盖已有的MIN1文件. 加载时缓存MIN1数据的调用方需要自行检查文件是否存在
+     */
+    public static void saveMin1Bars(ExchangeableData data, Exchangeable exchangeable, LocalDate tradingDay, List<Bar> bars) throws IOException
+    {
+        DataInfo dataInfo = ExchangeableData.MIN1;
+        CSVWriter csvWriter = new CSVWriter(dataInfo.getColumns());
+        for(Bar bar:bars) {
+            csvWriter.next();
+            if ( bar instanceof FutureBar ) {
+                ((FutureBar)bar).save(csvWriter);
+            } else {
+                csvWriter.set(ExchangeableData.COLUMN_BEGIN_TIME, DateUtil.date2str(bar.getBeginTime().toLocalDateTime()));
+                csvWriter.set(ExchangeableData.COLUMN_END_TIME, DateUtil.date2str(bar.getEndTime().toLocalDateTime()));
+                csvWriter.set(ExchangeableData.COLUMN_OPEN, bar.getOpenPrice().toString());
+                csvWriter.set(ExchangeableData.COLUMN_HIGH, bar.getMaxPrice().toString());
+                csvWriter.set(ExchangeableData.COLUMN_LOW, bar.getMinPrice().toString());
+                csvWriter.set(ExchangeableData.COLUMN_CLOSE, bar.getClosePrice().toString());
+
+                csvWriter.set(ExchangeableData.COLUMN_VOLUME, ""+bar.getVolume().longValue());
+                csvWriter.set(ExchangeableData.COLUMN_TURNOVER, bar.getAmount().toString());
+                if ( bar instanceof Bar2 ) {
+                    Bar2 bar2 = (Bar2)bar;
+                    csvWriter.set(ExchangeableData.COLUMN_AVG, bar2.getAvgPrice().toString());
+                    csvWriter.set(ExchangeableData.COLUMN_MKTAVG, bar2.getMktAvgPrice().toString());
+                    csvWriter.set(ExchangeableData.COLUMN_OPENINT, ""+bar2.getOpenInterest());
+                }
+                if ( bar instanceof ColumnarLeveledTimeSeries.ColumnBar ) {
+                    csvWriter.set(ExchangeableData.COLUMN_INDEX, ""+((ColumnarLeveledTimeSeries.ColumnBar)bar).getIndex());
+                }
+            }
+        }
+        data.save(exchangeable, dataInfo, tradingDay, csvWriter.toString());
+    }
+
+    /**
+     * 当天第一根成交量/金额KBar的起始TICK, 成交量和成交金额为0, 使集合竞价的成交计入第一根KBar
+     */
+    public static MarketData createVolumeBarBeginTick(MarketData tick) {
+        MarketData result = tick.clone();
+        result.volume = 0;
+        result.turnover = 0;
+        return result;
+    }
+
+    /**
+     * 成交量(VOL)或成交金额(AMT)KBar是否已经达到切分数量
+     */
+    public static boolean isVolumeBarFull(Bar bar, PriceLevel level) {
+        long threshold = level.getValue()*LongNum.SCALE;
+        if ( level.name().startsWith(PriceLevel.LEVEL_AMT) ) {
+            return LongNum.rawValueOf(bar.getAmount())>=threshold;
+        }
+        return LongNum.rawValueOf(bar.getVolume())>=threshold;
+    }
+
+    /**
+     * 将TICK数据转换为 VOL10K/AMT100M Bar这种数据, 如果TICK之间的volume不能被整除, 不会再次切分TICK.因为这是最小单位.
      */
-    private Collection<Bar> loadVolBars(LocalDate tradingDay, PriceLevel level2) throws IOException
+    private Collection<Bar> loadVolBars(LocalDate tradingDay, PriceLevel level) throws IOException
     {
         List<Bar> result = new ArrayList<>();
         List<MarketData> marketDatas = loadMarketData(tradingDay);
@@ -285,13 +568,15 @@ public class TimeSeriesLoader {
         ExchangeableTradingTimes tradingTimes = exchangeable.exchange().getTradingTimes(exchangeable, tradingDay);
         for(int i=0;i<marketDatas.size();i++) {
             MarketData md = marketDatas.get(i);
-            if ( currBar!=null && currBar.getVolume().doubleValue()<level.getValue() ) {
+            if ( currBar!=null && !isVolumeBarFull(currBar, level) ) {
                 currBar.update(md, md.updateTime);
                 continue;
             }
-            MarketData mdBegin = md;
+            MarketData mdBegin = null;
             if (i>0) {
                 mdBegin = marketDatas.get(i-1);
+            } else {
+                mdBegin = createVolumeBarBeginTick(md);
             }
             currBar = FutureBar.create(currIndex++, tradingTimes, DateUtil.round(mdBegin.updateTime), mdBegin, md, md.lastPrice, md.lastPrice);
             result.add(currBar);
@@ -319,71 +604,88 @@ public class TimeSeriesLoader {
      * 将原始CTP TICK转为MIN1 Bar
      */
     public static List<Bar> marketDatas2bars(Exchangeable exchangeable, PriceLevel level ,List<MarketData> marketDatas){
-        if ( marketDatas.isEmpty() ) {
+        return marketDatas2bars(exchangeable, level, marketDatas.size(), marketDatas::get, marketDatas::get);
+    }
+
+    /**
+     * 从行情游标转为MIN1 Bar, 只有作为Bar起止的TICK会复制为独立对象
+     */
+    public static List<Bar> marketDatas2bars(Exchangeable exchangeable, PriceLevel level, MarketDataCursor cursor){
+        return marketDatas2bars(exchangeable, level, cursor.size(), cursor::moveTo, cursor::copy);
+    }
+
+    /**
+     * @param peek 读取某个位置的TICK, 只在当次循环中使用
+     * @param materialize 返回某个位置可以长期持有的TICK, -1返回null
+     */
+    private static List<Bar> marketDatas2bars(Exchangeable exchangeable, PriceLevel level, int size, IntFunction<MarketData> peek, IntFunction<MarketData> materialize){
+        if ( size==0 ) {
             return Collections.emptyList();
         }
         List<Bar> result = new ArrayList<>();
-        MarketData beginTick=null, lastTick=null;
+        int beginIdx=-1, lastIdx=-1;
+        LocalDateTime beginTime=null, lastTime=null;
+        String tradingDay = null;
         ExchangeableTradingTimes tradingTimes = null;
+        BarIndexTable barIndexTable = null;
         int lastBarIndex = 0;
         long high=0, low=0;
-        for(int i=0;i<marketDatas.size();i++) {
-            MarketData currTick = marketDatas.get(i);
-            LocalDate currDay = DateUtil.str2localdate(currTick.tradingDay);
-            if ( tradingTimes==null || !currDay.equals(tradingTimes.getTradingDay()) ){
-                tradingTimes = exchangeable.exchange().getTradingTimes(exchangeable, currDay);
-                high = currTick.lastPrice;
-                low=currTick.lastPrice;
-                beginTick = currTick;
+        for(int i=0;i<size;i++) {
+            MarketData currTick = peek.apply(i);
+            LocalDateTime currTime = currTick.updateTime;
+            long currPrice = currTick.lastPrice;
+            if ( tradingTimes==null || !currTick.tradingDay.equals(tradingDay) ){
+                tradingDay = currTick.tradingDay;
+                LocalDate currDay = DateUtil.str2localdate(tradingDay);
+                if ( tradingTimes==null || !currDay.equals(tradingTimes.getTradingDay()) ) {
+                    tradingTimes = exchangeable.exchange().getTradingTimes(exchangeable, currDay);
+                    barIndexTable = tradingTimes!=null?BarIndexTable.getTable(tradingTimes):null;
+                    high = currPrice;
+                    low = currPrice;
+                    beginIdx = i;
+                    beginTime = currTime;
+                }
             }
-            int currTickIndex = getBarIndex(tradingTimes, level, currTick.updateTime);
+            int currTickIndex = barIndexTable!=null?barIndexTable.getBarIndex(level, currTime):-1;
             if ( currTickIndex<0 ) {
                 continue;
             }
             if ( currTickIndex==lastBarIndex ) {
-                high = Math.max(high, currTick.lastPrice);
-                low = Math.min(low, currTick.lastPrice);
-                lastTick = currTick;
+                high = Math.max(high, currPrice);
+                low = Math.min(low, currPrice);
+                lastIdx = i;
+                lastTime = currTime;
                 continue;
             }
             //创建新的Bar
-            LocalDateTime[] barTimes = getBarTimes(tradingTimes, level, lastBarIndex, beginTick.updateTime);
-            MarketData endTick = lastTick;
+            LocalDateTime[] barTimes = getBarTimes(tradingTimes, level, lastBarIndex, beginTime);
+            int endIdx = lastIdx;
+            LocalDateTime endTime = lastTime;
             if ( currTickIndex>lastBarIndex ) { //今天的连续Bar
-                if ( currTick.updateTime.equals(barTimes[1]) ) {
-                    endTick = currTick;
-                    high = Math.max(high, endTick.lastPrice);
-                    low = Math.min(low, endTick.lastPrice);
+                if ( currTime.equals(barTimes[1]) ) {
+                    endIdx = i;
+                    endTime = currTime;
+                    high = Math.max(high, currPrice);
+                    low = Math.min(low, currPrice);
                 }
             }
-            FutureBar bar = FutureBar.create(lastBarIndex, tradingTimes, barTimes[0], beginTick, endTick, high, low);
+            FutureBar bar = FutureBar.create(lastBarIndex, tradingTimes, barTimes[0], materialize.apply(beginIdx), materialize.apply(endIdx), high, low);
             result.add(bar);
 
             if( lastBarIndex>currTickIndex ) { //换了日市夜市
-                beginTick = currTick;
+                beginIdx = i;
+                beginTime = currTime;
             }else {
-                beginTick = endTick;
+                beginIdx = endIdx;
+                beginTime = endTime;
             }
-            high = low = currTick.lastPrice;
+            high = low = currPrice;
             lastBarIndex=currTickIndex;
         }
         //Convert market data to MIN1
-        lastTick = marketDatas.get(marketDatas.size()-1);
-        if ( lastTick!=beginTick ) {
-            LocalDateTime[] barTimes = getBarTimes(tradingTimes, level, -1, beginTick.updateTime);
-            FutureBar bar = FutureBar.create(lastBarIndex, tradingTimes, barTimes[0], beginTick, lastTick, high, low);
-            /*
-            new FutureBar(lastBarIndex, DateUtil.between(barTimes[0], lastTick.updateTime),
-                    barTimes[1].atZone(exchangeable.exchange().getZoneId()),
-                    new LongNum(beginTick.lastPrice),
-                    new LongNum(high),
-                    new LongNum(low),
-                    new LongNum(lastTick.lastPrice),
-                    new LongNum(lastTick.volume-beginTick.volume),
-                    new LongNum(lastTick.turnover-beginTick.turnover),
-                    new LongNum(lastTick.openInterest)
-                    );
-            */
+        if ( size-1!=beginIdx ) {
+            LocalDateTime[] barTimes = getBarTimes(tradingTimes, level, -1, beginTime);
+            FutureBar bar = FutureBar.create(lastBarIndex, tradingTimes, barTimes[0], materialize.apply(beginIdx), materialize.apply(size-1), high, low);
             result.add(bar);
         }
         return result;
@@ -422,50 +724,7 @@ public class TimeSeriesLoader {
         if ( tradingTimes==null ) {
             return -1;
         }
-        MarketTimeStage mts = tradingTimes.getTimeStage(marketTime);
-        switch(mts){
-        case AggregateAuction:
-        case BeforeMarketOpen:
-            return -1;
-        case MarketOpen:
-        case MarketBreak:
-            break;
-        default:
-            return -1;
-        }
-
-        int tradingMillis = tradingTimes.getTradingTime(marketTime);
-        int tradeMinutes = tradingMillis / (1000*60);
-        int tickIndex=0;
-
-        LocalDateTime[] marketTimes = tradingTimes.getMarketTimes();
-        for(int i=0;i<marketTimes.length;i+=2) {
-            LocalDateTime stageBegin = marketTimes[i];
-            LocalDateTime stageEnd = marketTimes[i+1];
-            LocalDateTime stageBegin2 = null;
-            if ( i<marketTimes.length-2) {
-                stageBegin2 = marketTimes[i+2];
-            }
-            //如果已经是下一个时间段, 直接跳过当前时间段
-            if ( stageBegin2!=null && marketTime.compareTo(stageBegin2)>=0 ) {
-                continue;
-            }
-            if ( marketTime.compareTo(stageBegin)<0 ) {
-                break;
-            }
-            int compareResult = marketTime.compareTo(stageEnd);
-            tickIndex = tradeMinutes/level.getValue();
-            int tickBeginMillis = tickIndex*level.getValue()*60*1000;
-            if ( compareResult>=0 ) {
-                //超过当前时间段, 但是没有到下一个时间段, 算在最后一个KBar
-                if ( tradingMillis-tickBeginMillis<5*1000 ) {
-                    tickIndex -= 1;
-                }
-            }
-            break;
-        }
-
-        return tickIndex;
+        return BarIndexTable.code2barIndex(BarIndexTable.computeCode(tradingTimes, marketTime), level.getValue());
     }
 
     ExchangeableTradingTimes getTradingTimes(LocalDate day) {
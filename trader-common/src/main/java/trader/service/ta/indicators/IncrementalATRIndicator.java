@@ -0,0 +1,38 @@
+package trader.service.ta.indicators;
+
+import trader.common.exchangeable.Exchangeable;
+import trader.service.ta.LeveledTimeSeries;
+
+/**
+ * 增量计算的ATR, 使用Wilder平滑(MMA), 与ta4j的ATRIndicator一致
+ */
+public class IncrementalATRIndicator extends IncrementalIndicator {
+
+    public static final int OUTPUT_ATR = 0;
+    public static final int OUTPUT_TR = 1;
+
+    private int count;
+
+    public IncrementalATRIndicator(Exchangeable exchangeable, LeveledTimeSeries series, int count) {
+        super(exchangeable, series, "ATR("+count+")", 2);
+        this.count = count;
+    }
+
+    @Override
+    protected void calculate(int index, boolean hasPrev) {
+        long high = getMaxPrice(index), low = getMinPrice(index);
+        long tr = high-low;
+        if ( hasPrev ) {
+            long prevClose = getClosePrice(index-1);
+            tr = Math.max(tr, Math.max(Math.abs(high-prevClose), Math.abs(low-prevClose)));
+        }
+        long atr = tr;
+        if ( hasPrev ) {
+            long prevAtr = getValue(OUTPUT_ATR, index-1);
+            atr = prevAtr+Math.round((tr-prevAtr)/(double)count);
+        }
+        setValue(OUTPUT_TR, index, tr);
+        setValue(OUTPUT_ATR, index, atr);
+    }
+
+}
@@ -0,0 +1,52 @@
+package trader.service.ta.indicators;
+
+import trader.common.exchangeable.Exchangeable;
+import trader.service.ta.LeveledTimeSeries;
+
+/**
+ * 增量计算的布林带, 中轨为收盘价SMA, 上下轨为中轨加减k倍总体标准差.
+ * <BR>SMA使用滚动求和, 标准差只遍历最近count根KBar, 与序列长度无关
+ */
+public class IncrementalBollingerIndicator extends IncrementalIndicator {
+
+    public static final int OUTPUT_MIDDLE = 0;
+    public static final int OUTPUT_UPPER = 1;
+    public static final int OUTPUT_LOWER = 2;
+    private static final int OUTPUT_SUM = 3;
+
+    private int count;
+    private double k;
+
+    public IncrementalBollingerIndicator(Exchangeable exchangeable, LeveledTimeSeries series, int count, double k) {
+        super(exchangeable, series, "BOLL("+count+","+(k==(long)k?Long.toString((long)k):Double.toString(k))+")", 4);
+        this.count = count;
+        this.k = k;
+    }
+
+    @Override
+    protected void calculate(int index, boolean hasPrev) {
+        int beginIndex = Math.max(series.getBeginIndex(), index-count+1);
+        long close = getClosePrice(index);
+        long sum = close;
+        if ( hasPrev ) {
+            sum += getValue(OUTPUT_SUM, index-1);
+            if ( index-count>=series.getBeginIndex() ) {
+                sum -= getClosePrice(index-count);
+            }
+        }
+        int n = index-beginIndex+1;
+        double mean = ((double)sum)/n;
+        double variance = 0;
+        for(int i=beginIndex;i<=index;i++) {
+            double d = getClosePrice(i)-mean;
+            variance += d*d;
+        }
+        long deviation = Math.round(k*Math.sqrt(variance/n));
+        long middle = Math.round(mean);
+        setValue(OUTPUT_SUM, index, sum);
+        setValue(OUTPUT_MIDDLE, index, middle);
+        setValue(OUTPUT_UPPER, index, middle+deviation);
+        setValue(OUTPUT_LOWER, index, middle-deviation);
+    }
+
+}
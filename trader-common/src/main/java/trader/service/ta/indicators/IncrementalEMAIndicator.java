@@ -0,0 +1,28 @@
+package trader.service.ta.indicators;
+
+import trader.common.exchangeable.Exchangeable;
+import trader.service.ta.LeveledTimeSeries;
+
+/**
+ * 增量计算的收盘价EMA, 第一根KBar的EMA为收盘价, 与ta4j的EMAIndicator一致
+ */
+public class IncrementalEMAIndicator extends IncrementalIndicator {
+
+    private int count;
+
+    public IncrementalEMAIndicator(Exchangeable exchangeable, LeveledTimeSeries series, int count) {
+        super(exchangeable, series, "EMA("+count+")", 1);
+        this.count = count;
+    }
+
+    @Override
+    protected void calculate(int index, boolean hasPrev) {
+        long close = getClosePrice(index);
+        if ( hasPrev ) {
+            setValue(0, index, ema(getValue(index-1), close, count));
+        } else {
+            setValue(0, index, close);
+        }
+    }
+
+}
@@ -0,0 +1,265 @@
+package trader.service.ta.indicators;
+
+import java.util.Arrays;
+
+import org.ta4j.core.Bar;
+import org.ta4j.core.num.Num;
+
+import trader.common.exchangeable.Exchangeable;
+import trader.common.util.ConversionUtil;
+import trader.common.util.StringUtil;
+import trader.service.ta.ColumnarLeveledTimeSeries;
+import trader.service.ta.FutureBar;
+import trader.service.ta.LeveledTimeSeries;
+import trader.service.ta.LongNum;
+
+/**
+ * 增量计算的技术指标, 与某个品种的某个级别的KBar序列绑定.
+ * <BR>每次行情更新只重新计算最后一根KBar(新KBar时包括上一根), 不需要遍历整个序列.
+ * <BR>指标值为LongNum原始值(4位小数的long), 按KBar序号保存, 多个输出值的指标用output区分.
+ * <BR>由TAService统一创建和更新, 相同(品种, 级别, 参数)的指标在所有交易小组之间共享
+ */
+public abstract class IncrementalIndicator {
+
+    protected final Exchangeable exchangeable;
+    protected final LeveledTimeSeries series;
+    protected final String key;
+    /**
+     * 输出值, [output][barIndex]
+     */
+    private long[][] outputs;
+    /**
+     * 最后一次计算到的KBar序号, -1表示未计算
+     */
+    private int lastIndex = -1;
+
+    protected IncrementalIndicator(Exchangeable exchangeable, LeveledTimeSeries series, String key, int outputCount) {
+        this.exchangeable = exchangeable;
+        this.series = series;
+        this.key = key;
+        int capacity = Math.max(256, series.getEndIndex()+64);
+        outputs = new long[outputCount][capacity];
+    }
+
+    /**
+     * 指标名称和参数, 例如: MACD(12,26,9)
+     */
+    public String getKey() {
+        return key;
+    }
+
+    public LeveledTimeSeries getSeries() {
+        return series;
+    }
+
+    /**
+     * 已计算的最后一根KBar序号
+     */
+    public int getEndIndex() {
+        return lastIndex;
+    }
+
+    /**
+     * 返回第一个输出值的原始long值
+     */
+    public long getValue(int index) {
+        return outputs[0][index];
+    }
+
+    /**
+     * 返回指定输出值的原始long值
+     */
+    public long getValue(int output, int index) {
+        return outputs[output][index];
+    }
+
+    public Num getNumValue(int output, int index) {
+        return LongNum.fromRawValue(outputs[output][index]);
+    }
+
+    /**
+     * KBar更新后调用, 从上次计算的最后一根KBar开始重新计算到当前最后一根KBar
+     */
+    public void update() {
+        int endIndex = series.getEndIndex();
+        if ( endIndex<0 ) {
+            return;
+        }
+        int beginIndex = Math.max(series.getBeginIndex(), lastIndex<0?0:lastIndex);
+        ensureCapacity(endIndex+1);
+        for(int i=beginIndex;i<=endIndex;i++) {
+            calculate(i, i>series.getBeginIndex());
+        }
+        lastIndex = endIndex;
+    }
+
+    /**
+     * 计算第index根KBar的指标值, 只允许依赖index-1及之前已经计算好的值
+     *
+     * @param hasPrev 是否有前一根KBar
+     */
+    protected abstract void calculate(int index, boolean hasPrev);
+
+    protected void setValue(int output, int index, long value) {
+        outputs[output][index] = value;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if ( capacity>outputs[0].length ) {
+            int newCapacity = Math.max(capacity, outputs[0].length*2);
+            for(int i=0;i<outputs.length;i++) {
+                outputs[i] = Arrays.copyOf(outputs[i], newCapacity);
+            }
+        }
+    }
+
+    protected long getClosePrice(int index) {
+        if ( series instanceof ColumnarLeveledTimeSeries ) {
+            return ((ColumnarLeveledTimeSeries)series).getClosePrice(index);
+        }
+        return LongNum.rawValueOf(series.getBar(index).getClosePrice());
+    }
+
+    protected long getMaxPrice(int index) {
+        if ( series instanceof ColumnarLeveledTimeSeries ) {
+            return ((ColumnarLeveledTimeSeries)series).getMaxPrice(index);
+        }
+        return LongNum.rawValueOf(series.getBar(index).getMaxPrice());
+    }
+
+    protected long getMinPrice(int index) {
+        if ( series instanceof ColumnarLeveledTimeSeries ) {
+            return ((ColumnarLeveledTimeSeries)series).getMinPrice(index);
+        }
+        return LongNum.rawValueOf(series.getBar(index).getMinPrice());
+    }
+
+    protected long getVolume(int index) {
+        if ( series instanceof ColumnarLeveledTimeSeries ) {
+            return ((ColumnarLeveledTimeSeries)series).getVolume(index);
+        }
+        return LongNum.rawValueOf(series.getBar(index).getVolume());
+    }
+
+    protected long getAmount(int index) {
+        if ( series instanceof ColumnarLeveledTimeSeries ) {
+            return ((ColumnarLeveledTimeSeries)series).getAmount(index);
+        }
+        return LongNum.rawValueOf(series.getBar(index).getAmount());
+    }
+
+    /**
+     * KBar在当天的序号, 新交易日从0开始
+     */
+    protected int getBarIndex(int index) {
+        if ( series instanceof ColumnarLeveledTimeSeries ) {
+            return ((ColumnarLeveledTimeSeries)series).getBarIndex(index);
+        }
+        Bar bar = series.getBar(index);
+        if ( bar instanceof FutureBar ) {
+            return ((FutureBar)bar).getIndex();
+        }
+        return index;
+    }
+
+    /**
+     * EMA: prev+(curr-prev)*2/(n+1), 四舍五入到原始值
+     */
+    protected static long ema(long prev, long curr, int count) {
+        return prev+Math.round((curr-prev)*2.0d/(count+1));
+    }
+
+    @Override
+    public String toString() {
+        return exchangeable+" "+series.getLevel()+" "+key;
+    }
+
+    /**
+     * 根据描述创建指标, 格式为: NAME(param1,param2...), 参数可省略使用缺省值.
+     * <BR>支持: EMA(n), MACD(short,long,dea), ATR(n), BOLL(n,k), VWAP
+     */
+    public static IncrementalIndicator create(Exchangeable exchangeable, LeveledTimeSeries series, String spec) {
+        String[] params = parseSpec(spec);
+        switch(params[0]) {
+        case "EMA":
+            return new IncrementalEMAIndicator(exchangeable, series, ConversionUtil.toInt(params[1]));
+        case "MACD":
+            return new IncrementalMACDIndicator(exchangeable, series, ConversionUtil.toInt(params[1]), ConversionUtil.toInt(params[2]), ConversionUtil.toInt(params[3]));
+        case "ATR":
+            return new IncrementalATRIndicator(exchangeable, series, ConversionUtil.toInt(params[1]));
+        case "BOLL":
+            return new IncrementalBollingerIndicator(exchangeable, series, ConversionUtil.toInt(params[1]), ConversionUtil.toDouble(params[2]));
+        case "VWAP":
+            return new IncrementalVWAPIndicator(exchangeable, series);
+        default:
+            throw new IllegalArgumentException("Unsupported indicator: "+spec);
+        }
+    }
+
+    /**
+     * 返回规范化的指标描述, 缺省参数会补齐, 用于指标共享. 例如 macd 返回 MACD(12,26,9)
+     */
+    public static String normalizeKey(String spec) {
+        String[] params = parseSpec(spec);
+        if ( params.length==1 ) {
+            return params[0];
+        }
+        StringBuilder result = new StringBuilder(params[0]).append("(");
+        for(int i=1;i<params.length;i++) {
+            if ( i>1 ) {
+                result.append(",");
+            }
+            result.append(params[i]);
+        }
+        return result.append(")").toString();
+    }
+
+    /**
+     * 解析指标描述, 返回名称和补齐缺省值后的参数
+     */
+    private static String[] parseSpec(String spec) {
+        String name = spec.trim().toUpperCase();
+        String[] params = new String[0];
+        int paramsBegin = name.indexOf('(');
+        if ( paramsBegin>0 ) {
+            String paramsStr = name.substring(paramsBegin+1, name.lastIndexOf(')'));
+            name = name.substring(0, paramsBegin).trim();
+            if ( !StringUtil.isEmpty(paramsStr) ) {
+                params = StringUtil.split(paramsStr, ",");
+            }
+        }
+        String[] defaults = null;
+        switch(name) {
+        case "EMA":
+            defaults = new String[] {"12"};
+            break;
+        case "MACD":
+            defaults = new String[] {"12", "26", "9"};
+            break;
+        case "ATR":
+            defaults = new String[] {"14"};
+            break;
+        case "BOLL":
+            defaults = new String[] {"20", "2"};
+            break;
+        case "VWAP":
+            defaults = new String[0];
+            break;
+        default:
+            throw new IllegalArgumentException("Unsupported indicator: "+spec);
+        }
+        String[] result = new String[defaults.length+1];
+        result[0] = name;
+        for(int i=0;i<defaults.length;i++) {
+            String param = defaults[i];
+            if ( i<params.length ) {
+                //数字参数规范化, 2.0和2视为相同
+                double v = ConversionUtil.toDouble(params[i].trim());
+                param = v==(long)v?Long.toString((long)v):Double.toString(v);
+            }
+            result[i+1] = param;
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,48 @@
+package trader.service.ta.indicators;
+
+import trader.common.exchangeable.Exchangeable;
+import trader.service.ta.LeveledTimeSeries;
+
+/**
+ * 增量计算的MACD, 输出MACD=2*(DIFF-DEA), DIFF, DEA. 计算方式与MACDIndicator一致
+ */
+public class IncrementalMACDIndicator extends IncrementalIndicator {
+
+    public static final int OUTPUT_MACD = 0;
+    public static final int OUTPUT_DIFF = 1;
+    public static final int OUTPUT_DEA = 2;
+    private static final int OUTPUT_SHORT_EMA = 3;
+    private static final int OUTPUT_LONG_EMA = 4;
+
+    private int shortCount;
+    private int longCount;
+    private int deaCount;
+
+    public IncrementalMACDIndicator(Exchangeable exchangeable, LeveledTimeSeries series, int shortCount, int longCount, int deaCount) {
+        super(exchangeable, series, "MACD("+shortCount+","+longCount+","+deaCount+")", 5);
+        this.shortCount = shortCount;
+        this.longCount = longCount;
+        this.deaCount = deaCount;
+    }
+
+    @Override
+    protected void calculate(int index, boolean hasPrev) {
+        long close = getClosePrice(index);
+        long shortEma = close, longEma = close;
+        if ( hasPrev ) {
+            shortEma = ema(getValue(OUTPUT_SHORT_EMA, index-1), close, shortCount);
+            longEma = ema(getValue(OUTPUT_LONG_EMA, index-1), close, longCount);
+        }
+        long diff = shortEma-longEma;
+        long dea = diff;
+        if ( hasPrev ) {
+            dea = ema(getValue(OUTPUT_DEA, index-1), diff, deaCount);
+        }
+        setValue(OUTPUT_SHORT_EMA, index, shortEma);
+        setValue(OUTPUT_LONG_EMA, index, longEma);
+        setValue(OUTPUT_DIFF, index, diff);
+        setValue(OUTPUT_DEA, index, dea);
+        setValue(OUTPUT_MACD, index, MACDIndicator.rawMACD(diff, dea));
+    }
+
+}
@@ -0,0 +1,40 @@
+package trader.service.ta.indicators;
+
+import trader.common.exchangeable.Exchangeable;
+import trader.service.ta.LeveledTimeSeries;
+import trader.service.ta.LongNum;
+
+/**
+ * 增量计算的当日成交量加权均价, 新交易日的第一根KBar重新累计
+ */
+public class IncrementalVWAPIndicator extends IncrementalIndicator {
+
+    public static final int OUTPUT_VWAP = 0;
+    private static final int OUTPUT_AMOUNT = 1;
+    private static final int OUTPUT_VOLUME = 2;
+
+    private long volumeMultiplier;
+
+    public IncrementalVWAPIndicator(Exchangeable exchangeable, LeveledTimeSeries series) {
+        super(exchangeable, series, "VWAP", 3);
+        volumeMultiplier = Math.max(1, exchangeable.getVolumeMutiplier());
+    }
+
+    @Override
+    protected void calculate(int index, boolean hasPrev) {
+        long amount = getAmount(index), volume = getVolume(index);
+        if ( hasPrev && getBarIndex(index)>getBarIndex(index-1) ) {
+            amount += getValue(OUTPUT_AMOUNT, index-1);
+            volume += getValue(OUTPUT_VOLUME, index-1);
+        }
+        long vwap = getClosePrice(index);
+        if ( volume>0 ) {
+            //amount为成交额原始值, volume为成交量原始值(手数*10000)
+            vwap = LongNum.rawDivide(amount, volume*volumeMultiplier);
+        }
+        setValue(OUTPUT_AMOUNT, index, amount);
+        setValue(OUTPUT_VOLUME, index, volume);
+        setValue(OUTPUT_VWAP, index, vwap);
+    }
+
+}
@@ -5,6 +5,8 @@ import org.ta4j.core.indicators.CachedIndicator;
 import org.ta4j.core.indicators.EMAIndicator;
 import org.ta4j.core.num.Num;
 
+import trader.service.ta.LongNum;
+
 /**
  * 真正的MACD计算, ta4j的MACDIndicator只是计算diff
  */
@@ -30,9 +32,20 @@ public class MACDIndicator extends CachedIndicator<Num>  {
     protected Num calculate(int index) {
         Num diff = diffIndicator.getValue(index);
         Num dea = deaIndicator.getValue(index);
+        if ( diff instanceof LongNum && dea instanceof LongNum ) {
+            //LongNum直接在原始值上计算, 不创建中间对象
+            return LongNum.fromRawValue(rawMACD(((LongNum)diff).rawValue(), ((LongNum)dea).rawValue()));
+        }
         //2*DIFF-DEA
         Num result = (diff.minus(dea)).multipliedBy(num2);
         return result;
     }
 
+    /**
+     * 2*(DIFF-DEA), 原始long值计算
+     */
+    public static long rawMACD(long diff, long dea) {
+        return (diff-dea)*2;
+    }
+
 }
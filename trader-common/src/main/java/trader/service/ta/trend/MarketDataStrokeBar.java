@@ -1,6 +1,7 @@
 package trader.service.ta.trend;
 
 import java.time.Duration;
+import java.time.LocalDateTime;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 
@@ -16,17 +17,59 @@ import trader.service.trade.TradeConstants.PosDirection;
 
 /**
  * 缠轮笔划, 从细微的价格波动中找到的最基本的走势
+ * <BR>只保存开始/最高/最低/结束几个点的价格, 时间和累计成交量等原始值, 不持有行情切片对象, getOpenTick()等返回null
  */
 public class MarketDataStrokeBar extends WaveBar<MarketData> {
 
     private static final long serialVersionUID = -2463984410565197764L;
 
+    /**
+     * 笔划中的一个价格点
+     */
+    private static class TickPoint{
+        long price;
+        long timestamp;
+        LocalDateTime time;
+        long volume;
+        long turnover;
+        long openInterest;
+        long averagePrice;
+
+        TickPoint(MarketData md){
+            set(md);
+        }
+
+        TickPoint(TickPoint p){
+            set(p);
+        }
+
+        void set(MarketData md) {
+            price = md.lastPrice;
+            timestamp = md.updateTimestamp;
+            time = md.updateTime;
+            volume = md.volume;
+            turnover = md.turnover;
+            openInterest = md.openInterest;
+            averagePrice = md.averagePrice;
+        }
+
+        void set(TickPoint p) {
+            price = p.price;
+            timestamp = p.timestamp;
+            time = p.time;
+            volume = p.volume;
+            turnover = p.turnover;
+            openInterest = p.openInterest;
+            averagePrice = p.averagePrice;
+        }
+    }
+
     protected Num threshold;
-    private MarketData mdOpen;
-    private MarketData mdMax;
-    private MarketData mdMin;
-    private MarketData mdClose;
-    private MarketData mdSplit;
+    private Exchangeable exchangeable;
+    private TickPoint pOpen;
+    private TickPoint pMax;
+    private TickPoint pMin;
+    private TickPoint pClose;
     private Duration duration;
 
     @Override
@@ -39,8 +82,12 @@ public class MarketDataStrokeBar extends WaveBar<MarketData> {
      */
     public MarketDataStrokeBar(Num threshold, MarketData md) {
         this.threshold = threshold;
-        mdOpen = mdMax = mdMin = mdClose = md;
-        begin = ZonedDateTime.of(md.updateTime, md.instrumentId.exchange().getZoneId());
+        exchangeable = md.instrumentId;
+        pOpen = new TickPoint(md);
+        pMax = new TickPoint(md);
+        pMin = new TickPoint(md);
+        pClose = new TickPoint(md);
+        begin = ZonedDateTime.of(md.updateTime, exchangeable.exchange().getZoneId());
         end = begin;
         open = max = min = close = new LongNum(md.lastPrice);
         volume = LongNum.ZERO;
@@ -49,32 +96,32 @@ public class MarketDataStrokeBar extends WaveBar<MarketData> {
         mktAvgPrice = new LongNum(md.averagePrice);
         avgPrice = close;
         direction = PosDirection.Net;
+        openTotalVolume = closeTotalVolume = md.volume;
+        openTotalTurnover = closeTotalTurnover = md.turnover;
     }
 
     /**
-     * 从开始结束两个行情切片创建笔划, 方向为Long/Short
-     * @param threshold
-     * @param md
-     * @param md2
+     * 从开始结束两个价格点创建笔划, 方向为Long/Short
      */
-    public MarketDataStrokeBar(Num threshold, MarketData md, MarketData md2) {
+    private MarketDataStrokeBar(Num threshold, Exchangeable exchangeable, TickPoint p, TickPoint p2) {
         this.threshold = threshold;
-        mdOpen = md;
-        mdClose = md2;
-        begin = ZonedDateTime.of(md.updateTime, md.instrumentId.exchange().getZoneId());
-        end = ZonedDateTime.of(md2.updateTime, md2.instrumentId.exchange().getZoneId());
-        open = new LongNum(md.lastPrice);
-        close = new LongNum(md2.lastPrice);
-        if ( md.lastPrice<md2.lastPrice ) {
+        this.exchangeable = exchangeable;
+        pOpen = new TickPoint(p);
+        pClose = new TickPoint(p2);
+        begin = toZonedTime(p);
+        end = toZonedTime(p2);
+        open = new LongNum(p.price);
+        close = new LongNum(p2.price);
+        if ( p.price<p2.price ) {
             direction = PosDirection.Long;
-            mdMax = md2;
-            mdMin = md;
+            pMax = new TickPoint(p2);
+            pMin = new TickPoint(p);
             max = close;
             min = open;
         }else {
             direction = PosDirection.Short;
-            mdMax = md;
-            mdMin = md2;
+            pMax = new TickPoint(p);
+            pMin = new TickPoint(p2);
             max = open;
             min = close;
         }
@@ -83,22 +130,22 @@ public class MarketDataStrokeBar extends WaveBar<MarketData> {
 
     @Override
     public MarketData getOpenTick() {
-        return mdOpen;
+        return null;
     }
 
     @Override
     public MarketData getCloseTick() {
-        return mdClose;
+        return null;
     }
 
     @Override
     public MarketData getMaxTick() {
-        return mdMax;
+        return null;
     }
 
     @Override
     public MarketData getMinTick() {
-        return mdMin;
+        return null;
     }
 
     /**
@@ -109,15 +156,15 @@ public class MarketDataStrokeBar extends WaveBar<MarketData> {
     @Override
     public WaveBar<MarketData> update(WaveBar<MarketData> prev, MarketData md) {
         duration = null;
-        mdClose = md;
-        end = ZonedDateTime.of(md.updateTime, md.instrumentId.exchange().getZoneId());
+        pClose.set(md);
+        end = toZonedTime(pClose);
         close = new LongNum(md.lastPrice);
-        if (mdMax.lastPrice < md.lastPrice) {
-            mdMax = md;
+        if (pMax.price < md.lastPrice) {
+            pMax.set(md);
             max = close;
         }
-        if (mdMin.lastPrice > md.lastPrice) {
-            mdMin = md;
+        if (pMin.price > md.lastPrice) {
+            pMin.set(md);
             min = close;
         }
         updateVol();
@@ -137,7 +184,7 @@ public class MarketDataStrokeBar extends WaveBar<MarketData> {
 
     @Override
     public Exchangeable getExchangeable() {
-        return mdOpen.instrumentId;
+        return exchangeable;
     }
 
     @Override
@@ -191,73 +238,69 @@ public class MarketDataStrokeBar extends WaveBar<MarketData> {
      */
     private WaveBar<MarketData> split() {
         MarketDataStrokeBar result = null;
-
-        MarketData md0=null, md1=null;
         switch(direction) {
         case Long:
             //向上笔划, 从最高点拆分, 新笔划向下
-            md0=mdMax; md1=mdClose;
-            this.mdClose = mdMax;
+            result = new MarketDataStrokeBar(threshold, exchangeable, pMax, pClose);
+            pClose.set(pMax);
             this.close = max;
-            this.end = ZonedDateTime.of(mdMax.updateTime, mdMax.instrumentId.exchange().getZoneId());
-            if ( mdMin.updateTimestamp>mdClose.updateTimestamp ) {
-                mdMin = min(mdOpen, mdClose);
+            this.end = toZonedTime(pMax);
+            if ( pMin.timestamp>pClose.timestamp ) {
+                pMin.set(min(pOpen, pClose));
             }
             updateVol();
             break;
         case Short:
             //向下笔划, 从最低的拆分, 新笔划向上
-            md0=mdMin; md1=mdClose;
-            this.mdClose = mdMin;
+            result = new MarketDataStrokeBar(threshold, exchangeable, pMin, pClose);
+            pClose.set(pMin);
             this.close = min;
-            this.end = ZonedDateTime.of(mdMin.updateTime, mdMin.instrumentId.exchange().getZoneId());
-            if ( mdMax.updateTimestamp>mdClose.updateTimestamp ) {
-                mdMax = max(mdOpen, mdClose);
+            this.end = toZonedTime(pMin);
+            if ( pMax.timestamp>pClose.timestamp ) {
+                pMax.set(max(pOpen, pClose));
             }
             updateVol();
             break;
         case Net:
             break;
         }
-        if ( md0!=null ) {
-            result = new MarketDataStrokeBar(threshold, md0, md1);
-            mdSplit = md1;
-        }
         return result;
     }
 
     private void updateVol() {
-        long vol = mdClose.volume - mdOpen.volume;
+        openTotalVolume = pOpen.volume;
+        openTotalTurnover = pOpen.turnover;
+        closeTotalVolume = pClose.volume;
+        closeTotalTurnover = pClose.turnover;
+        long vol = pClose.volume - pOpen.volume;
         volume = new LongNum(PriceUtil.price2long(vol));
-        amount = new LongNum(mdClose.turnover - mdOpen.turnover);
-        openInterest = (mdClose.openInterest);
-        mktAvgPrice = new LongNum(mdClose.averagePrice);
+        amount = new LongNum(pClose.turnover - pOpen.turnover);
+        openInterest = pClose.openInterest;
+        mktAvgPrice = new LongNum(pClose.averagePrice);
 
         if ( vol==0 ) {
-            avgPrice = new LongNum(mdClose.averagePrice);
+            avgPrice = mktAvgPrice;
         }else {
-            avgPrice = new LongNum( (mdClose.turnover - mdOpen.turnover)/vol );
+            avgPrice = new LongNum( (pClose.turnover - pOpen.turnover)/vol );
         }
     }
 
-    private static MarketData max(MarketData md, MarketData md2) {
-        MarketData result = null;
-        if ( md.lastPrice>md2.lastPrice) {
-            result= md;
-        }else {
-            result= md2;
+    private ZonedDateTime toZonedTime(TickPoint p) {
+        return ZonedDateTime.of(p.time, exchangeable.exchange().getZoneId());
+    }
+
+    private static TickPoint max(TickPoint p, TickPoint p2) {
+        if ( p.price>p2.price) {
+            return p;
         }
-        return result;
+        return p2;
     }
 
-    private static MarketData min(MarketData md, MarketData md2) {
-        MarketData result = null;
-        if ( md.lastPrice<md2.lastPrice) {
-            result= md;
-        }else {
-            result= md2;
+    private static TickPoint min(TickPoint p, TickPoint p2) {
+        if ( p.price<p2.price) {
+            return p;
         }
-        return result;
+        return p2;
     }
 
     @Override
@@ -8,6 +8,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.ta4j.core.num.Num;
 
+import trader.common.util.RingList;
 import trader.service.md.MarketData;
 import trader.service.md.MarketDataListener;
 import trader.service.ta.LongNum;
@@ -15,6 +16,7 @@ import trader.service.ta.trend.WaveBar.WaveType;
 
 /**
  * 基于行情切片波浪数据直接构建: 分笔-笔划-线段
+ * <BR>笔划和线段保存在固定最大长度的环形List中, 长时间运行只保留最近的历史数据, 不会无限增长
  */
 @SuppressWarnings("rawtypes")
 public class MarketDataWaveBarBuilder implements MarketDataListener {
@@ -22,17 +24,29 @@ public class MarketDataWaveBarBuilder implements MarketDataListener {
 
     private static final int INDEX_STROKE_BAR = WaveType.Stroke.ordinal();
     private static final int INDEX_SECTION_BAR = WaveType.Section.ordinal();
+    /**
+     * 缺省保留的最近笔划数量, 线段等更高级别依次为1/4
+     */
+    public static final int DEFAULT_MAX_BAR_COUNT = 4096;
 
     private Num strokeDirectionThreshold;
-    private List<WaveBar>[] bars;
+    private RingList<WaveBar>[] bars;
     private WaveBar[] lastBars;
     private Function<Number, Num> numFunction = LongNum::valueOf;
 
     public MarketDataWaveBarBuilder() {
+        this(DEFAULT_MAX_BAR_COUNT);
+    }
+
+    /**
+     * @param maxStrokeCount 保留的最近笔划数量, 线段等更高级别依次为1/4
+     */
+    public MarketDataWaveBarBuilder(int maxStrokeCount) {
         lastBars = new WaveBar[WaveType.values().length];
-        bars = new ArrayList[lastBars.length];
+        bars = new RingList[lastBars.length];
         for(int i=0;i<bars.length;i++) {
-            bars[i] = new ArrayList<>(1024/(int)Math.pow(2, i));
+            int maxSize = Math.max(16, maxStrokeCount>>(2*i));
+            bars[i] = new RingList<>(Math.min(maxSize, 1024/(int)Math.pow(2, i)), maxSize);
         }
     }
 
@@ -63,8 +77,8 @@ public class MarketDataWaveBarBuilder implements MarketDataListener {
 
     @Override
     public void onMarketData(MarketData md) {
-        List<WaveBar> strokeBars = bars[INDEX_STROKE_BAR];
-        List<WaveBar> sectionBars = bars[INDEX_SECTION_BAR];
+        RingList<WaveBar> strokeBars = bars[INDEX_STROKE_BAR];
+        RingList<WaveBar> sectionBars = bars[INDEX_SECTION_BAR];
         WaveBar prevStrokeBar = null;
         WaveBar prevSectionBar = null;
         if ( strokeBars.size()>=2 ) {
@@ -102,10 +116,10 @@ public class MarketDataWaveBarBuilder implements MarketDataListener {
             if ( newSectionBar!=null ) {
                 lastSectionBar = newSectionBar;
             } else if ( (lastSectionBar).canMerge() && prevSectionBar!=null ) {
-                //需要合并
+                //需要合并, 合并的总是最后两个线段, 从尾部删除
                 prevSectionBar.merge(lastSectionBar);
-                sectionBars.remove(lastSectionBar);
-                sectionBars.remove(prevSectionBar);
+                sectionBars.removeLast();
+                sectionBars.removeLast();
                 lastSectionBar = prevSectionBar;
             }
         }
@@ -204,18 +204,7 @@ public class SimpleSectionBar extends WaveBar<WaveBar> {
         }
         this.volume = volume;
         this.amount = amount;
-        MarketData mdOpen = getOpenTick(), mdClose = getCloseTick();
-        long vol = 0;
-        if ( mdOpen!=null ) {
-            vol = mdClose.volume-mdOpen.volume;
-        }
-        if ( vol==0 ) {
-            avgPrice = new LongNum(mdClose.averagePrice);
-        }else {
-            avgPrice = new LongNum( (mdClose.turnover - mdOpen.turnover)/vol );
-        }
-        openInterest = (mdClose.openInterest);
-        mktAvgPrice = new LongNum(mdClose.averagePrice);
+        updateAvgPrice(stroke1, strokeN);
     }
 
     /**
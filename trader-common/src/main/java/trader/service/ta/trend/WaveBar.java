@@ -9,6 +9,7 @@ import org.ta4j.core.num.Num;
 
 import trader.common.exchangeable.Exchangeable;
 import trader.service.ta.Bar2;
+import trader.service.ta.LongNum;
 import trader.service.trade.TradeConstants.PosDirection;
 
 /**
@@ -48,6 +49,10 @@ public abstract class WaveBar<T> implements Bar2 {
     protected Num avgPrice;
     protected long openInterest;
     protected Num mktAvgPrice;
+    /**
+     * 开始和结束时的当日累计成交量/成交金额, 用于计算均价, 不需要保留TICK
+     */
+    protected long openTotalVolume, openTotalTurnover, closeTotalVolume, closeTotalTurnover;
 
     @Override
     public Num getOpenPrice() {
@@ -165,6 +170,24 @@ public abstract class WaveBar<T> implements Bar2 {
         return avgPrice;
     }
 
+    /**
+     * 根据第一个和最后一个底层构件更新均价, 持仓量和市场均价
+     */
+    protected void updateAvgPrice(WaveBar<?> first, WaveBar<?> last) {
+        openTotalVolume = first.openTotalVolume;
+        openTotalTurnover = first.openTotalTurnover;
+        closeTotalVolume = last.closeTotalVolume;
+        closeTotalTurnover = last.closeTotalTurnover;
+        openInterest = last.openInterest;
+        mktAvgPrice = last.mktAvgPrice;
+        long vol = closeTotalVolume-openTotalVolume;
+        if ( vol==0 ) {
+            avgPrice = mktAvgPrice;
+        }else {
+            avgPrice = new LongNum( (closeTotalTurnover-openTotalTurnover)/vol );
+        }
+    }
+
     /**
      * 笔1包含笔2
      */
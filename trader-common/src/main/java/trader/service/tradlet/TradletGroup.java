@@ -29,6 +29,11 @@ public interface TradletGroup extends TradletConstants, JsonEnabled {
      */
     public Exchangeable getExchangeable();
 
+    /**
+     * 关注行情的全部品种, 第一个为可交易品种
+     */
+    public List<Exchangeable> getExchangeables();
+
     /**
      * 交易策略列表.
      * <BR>注意該函數在Tradlet.init()中无法运用
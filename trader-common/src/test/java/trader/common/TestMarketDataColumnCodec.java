@@ -0,0 +1,160 @@
+package trader.common;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import trader.common.exchangeable.Exchangeable;
+import trader.common.exchangeable.ExchangeableData;
+import trader.common.util.DateUtil;
+import trader.common.util.FileUtil;
+import trader.service.md.MarketData;
+import trader.service.md.MarketDataColumnCodec;
+import trader.service.md.MarketDataCursor;
+
+public class TestMarketDataColumnCodec {
+
+    static class TestMarketData extends MarketData {
+        @Override
+        public String getCsvHead() {
+            return null;
+        }
+        @Override
+        public void toCsvRow(StringBuilder rowBuf) {
+        }
+        @Override
+        public MarketData clone() {
+            TestMarketData result = new TestMarketData();
+            cloneImpl(result);
+            return result;
+        }
+    }
+
+    static List<MarketData> createMarketDatas(Exchangeable e, int count){
+        List<MarketData> result = new ArrayList<>();
+        LocalDateTime time = LocalDateTime.of(2018, 12, 28, 9, 0, 0);
+        for(int i=0;i<count;i++) {
+            MarketData md = new TestMarketData();
+            md.instrumentId = e;
+            md.updateTime = time.plusNanos(i*500*1000000L);
+            md.updateTimestamp = DateUtil.localdatetime2long(e.exchange().getZoneId(), md.updateTime);
+            md.lastPrice = 2800000+i*500;
+            md.volume = i*10;
+            md.turnover = i*1000000L;
+            md.openInterest = 240000+i;
+            md.highestPrice = 2810000;
+            md.depth = (i%2==0)?1:5;
+            md.bidPrices = new long[md.depth];
+            md.bidVolumes = new int[md.depth];
+            md.askPrices = new long[md.depth];
+            md.askVolumes = new int[md.depth];
+            for(int j=0;j<md.depth;j++) {
+                md.bidPrices[j] = md.lastPrice-(j+1)*500;
+                md.bidVolumes[j] = i+j;
+                md.askPrices[j] = md.lastPrice+(j+1)*500;
+                md.askVolumes[j] = i+j+1;
+            }
+            result.add(md);
+        }
+        return result;
+    }
+
+    @Test
+    public void testEncodeDecode() {
+        Exchangeable au1906 = Exchangeable.fromString("shfe.au1906");
+        LocalDate tradingDay = LocalDate.of(2018, 12, 28);
+        List<MarketData> mds = createMarketDatas(au1906, 100);
+        ByteBuffer buf = MarketDataColumnCodec.encode(mds);
+        List<MarketData> mds2 = MarketDataColumnCodec.decode(buf, au1906, tradingDay, ()->new TestMarketData());
+        assertTrue(mds2.size()==mds.size());
+        for(int i=0;i<mds.size();i++) {
+            MarketData md = mds.get(i), md2 = mds2.get(i);
+            assertTrue(md.updateTime.equals(md2.updateTime));
+            assertTrue(md.lastPrice==md2.lastPrice);
+            assertTrue(md.volume==md2.volume);
+            assertTrue(md.openInterest==md2.openInterest);
+            assertTrue(md.highestPrice==md2.highestPrice);
+            assertTrue(md.depth==md2.depth);
+            for(int j=0;j<md.depth;j++) {
+                assertTrue(md.bidPrices[j]==md2.bidPrices[j]);
+                assertTrue(md.askVolumes[j]==md2.askVolumes[j]);
+            }
+            assertTrue(md2.tradingDay.equals("20181228"));
+        }
+    }
+
+    @Test
+    public void testCursor() {
+        Exchangeable au1906 = Exchangeable.fromString("shfe.au1906");
+        LocalDate tradingDay = LocalDate.of(2018, 12, 28);
+        List<MarketData> mds = createMarketDatas(au1906, 50);
+        MarketDataCursor cursor = new MarketDataCursor(MarketDataColumnCodec.encode(mds), au1906, tradingDay, ()->new TestMarketData());
+        assertTrue(cursor.size()==50);
+        MarketData flyweight = null;
+        int count=0;
+        while(cursor.next()) {
+            MarketData md = cursor.get();
+            if ( flyweight==null ) {
+                flyweight = md;
+            }
+            //始终复用同一个对象
+            assertTrue(flyweight==md);
+            assertTrue(md.lastPrice==mds.get(count).lastPrice);
+            assertTrue(md.depth==mds.get(count).depth);
+            assertTrue(cursor.getUpdateTimestamp(count)==mds.get(count).updateTimestamp);
+            count++;
+        }
+        assertTrue(count==50);
+        MarketData copy = cursor.copy(3);
+        cursor.moveTo(4);
+        assertTrue(copy!=cursor.get());
+        assertTrue(copy.lastPrice==mds.get(3).lastPrice);
+        assertTrue(copy.bidPrices.length==mds.get(3).depth);
+        MarketData clone = cursor.get().clone();
+        cursor.moveTo(10);
+        assertTrue(clone.bidPrices[0]==mds.get(4).bidPrices[0]);
+    }
+
+    @Test
+    public void testSaveLoad() throws Exception {
+        File dataDir = Files.createTempDirectory("trader-test").toFile();
+        try {
+            Exchangeable au1906 = Exchangeable.fromString("shfe.au1906");
+            ExchangeableData data = new ExchangeableData(dataDir, false);
+            LocalDate day1 = LocalDate.of(2018, 12, 27), day2 = LocalDate.of(2018, 12, 28);
+            assertTrue(!data.existsBinary(au1906, ExchangeableData.TICK_CTP, day1));
+            data.saveBinary(au1906, ExchangeableData.TICK_CTP, day1, MarketDataColumnCodec.encode(createMarketDatas(au1906, 10)));
+            data.saveBinary(au1906, ExchangeableData.TICK_CTP, day2, MarketDataColumnCodec.encode(createMarketDatas(au1906, 20)));
+            //重复保存, 以最后一次为准
+            ByteBuffer content1 = MarketDataColumnCodec.encode(createMarketDatas(au1906, 30));
+            int length1 = content1.remaining();
+            data.saveBinary(au1906, ExchangeableData.TICK_CTP, day1, content1);
+            //年度文件被压缩, 只保留每个交易日最新的数据
+            List<File> binFiles = FileUtil.listAllFiles(dataDir, (File f)->f.getName().endsWith(".bin"));
+            assertTrue(binFiles.size()==1);
+            assertTrue(binFiles.get(0).length()==length1+MarketDataColumnCodec.encode(createMarketDatas(au1906, 20)).remaining());
+
+            assertTrue(data.existsBinary(au1906, ExchangeableData.TICK_CTP, day1));
+            List<MarketData> mds1 = MarketDataColumnCodec.decode(data.loadBinary(au1906, ExchangeableData.TICK_CTP, day1), au1906, day1, ()->new TestMarketData());
+            List<MarketData> mds2 = MarketDataColumnCodec.decode(data.loadBinary(au1906, ExchangeableData.TICK_CTP, day2), au1906, day2, ()->new TestMarketData());
+            assertTrue(mds1.size()==30);
+            assertTrue(mds2.size()==20);
+
+            ByteBuffer mapped = data.mapBinary(au1906, ExchangeableData.TICK_CTP, day2);
+            MarketDataCursor cursor = new MarketDataCursor(mapped, au1906, day2, ()->new TestMarketData());
+            assertTrue(cursor.size()==20);
+            assertTrue(cursor.moveTo(19).lastPrice==mds2.get(19).lastPrice);
+        }finally {
+            FileUtil.deleteDirectory(dataDir);
+        }
+    }
+
+}
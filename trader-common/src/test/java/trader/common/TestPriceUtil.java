@@ -82,5 +82,13 @@ public class TestPriceUtil {
         PriceLevel vol5k = PriceLevel.valueOf("vol5k");
         assertTrue(vol5k.getValue()==5000);
 
+        PriceLevel amt100m = PriceLevel.valueOf("amt100m");
+        assertTrue(amt100m.getValue()==100000000 && amt100m.isVolumeBased());
+        assertTrue(vol5k.isVolumeBased() && !min30.isVolumeBased());
+        assertTrue(PriceLevel.valueOf("vol5k")==vol5k);
+        //超出int范围的级别不能使用
+        assertTrue(PriceLevel.valueOf("amt2147m").getValue()==2147000000);
+        assertTrue(PriceLevel.valueOf("amt2148m").getValue()<0);
+
     }
 }
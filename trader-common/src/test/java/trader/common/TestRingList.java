@@ -0,0 +1,30 @@
+package trader.common;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import trader.common.util.RingList;
+
+public class TestRingList {
+
+    @Test
+    public void testAddAndDrop() {
+        RingList<Integer> list = new RingList<>(2, 5);
+        for(int i=0;i<8;i++) {
+            list.add(i);
+        }
+        assertTrue(list.size()==5 && list.getDroppedCount()==3);
+        assertTrue(list.get(0)==3 && list.getLast()==7);
+
+        assertTrue(list.removeLast()==7);
+        assertTrue(list.removeLast()==6);
+        list.add(8);
+        assertTrue(list.size()==4 && list.get(3)==8 && list.get(0)==3);
+
+        list.remove(Integer.valueOf(4));
+        assertTrue(list.size()==3 && list.get(1)==5);
+        assertTrue(list.lastIndexOf(8)==2);
+    }
+
+}
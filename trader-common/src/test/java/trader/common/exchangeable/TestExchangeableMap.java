@@ -0,0 +1,86 @@
+package trader.common.exchangeable;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TestExchangeableMap {
+
+    @Test
+    public void testMap() {
+        Exchangeable au1906 = Exchangeable.fromString("shfe.au1906");
+        Exchangeable ru1905 = Exchangeable.fromString("shfe.ru1905");
+        Exchangeable m1905 = Exchangeable.fromString("dce.m1905");
+
+        ExchangeableMap<String> map = new ExchangeableMap<>(1);
+        assertTrue(map.isEmpty());
+        assertTrue(map.put(au1906, "au")==null);
+        assertTrue(map.put(ru1905, "ru")==null);
+        assertTrue(map.put(au1906, "au2").equals("au"));
+        assertTrue(map.size()==2);
+        assertTrue(map.get(au1906).equals("au2"));
+        assertTrue(map.get(Exchangeable.fromString("shfe.au1906")).equals("au2"));
+        assertTrue(map.get(m1905)==null);
+        assertTrue(!map.containsKey(m1905));
+        assertTrue(map.get("shfe.au1906")==null);
+
+        Map<Exchangeable, String> hashMap = new HashMap<>(map);
+        assertTrue(hashMap.equals(map) && map.equals(hashMap));
+
+        //Copy-On-Write方式复制, 互不影响
+        ExchangeableMap<String> map2 = new ExchangeableMap<>(map);
+        map2.put(m1905, "m");
+        assertTrue(map2.size()==3 && map.size()==2);
+
+        Iterator<Map.Entry<Exchangeable, String>> it = map2.entrySet().iterator();
+        while(it.hasNext()) {
+            Map.Entry<Exchangeable, String> entry = it.next();
+            if ( entry.getKey().equals(ru1905) ) {
+                it.remove();
+            } else if ( entry.getKey().equals(m1905) ) {
+                entry.setValue("m2");
+            }
+        }
+        assertTrue(map2.size()==2 && !map2.containsKey(ru1905));
+        assertTrue(map2.get(m1905).equals("m2"));
+        assertTrue(map2.remove(au1906).equals("au2"));
+        assertTrue(map2.keySet().size()==1);
+    }
+
+    @Test
+    public void testDenseValues() {
+        Exchangeable au1906 = Exchangeable.fromString("shfe.au1906");
+        Exchangeable ru1905 = Exchangeable.fromString("shfe.ru1905");
+        Exchangeable m1905 = Exchangeable.fromString("dce.m1905");
+
+        ExchangeableMap<String> map = new ExchangeableMap<>();
+        map.put(au1906, "au");
+        map.put(ru1905, "ru");
+        map.put(m1905, "m");
+        //删除中间元素后, 最后一个元素移动到空位, 查找和遍历仍然正确
+        assertTrue(map.remove(au1906).equals("au"));
+        assertTrue(map.get(m1905).equals("m") && map.get(ru1905).equals("ru") && map.get(au1906)==null);
+        Set<String> values = new HashSet<>(map.values());
+        assertTrue(values.size()==2 && values.contains("m") && values.contains("ru"));
+
+        //遍历中删除所有元素
+        map.put(au1906, "au");
+        Iterator<String> it = map.values().iterator();
+        int count = 0;
+        while(it.hasNext()) {
+            it.next();
+            it.remove();
+            count++;
+        }
+        assertTrue(count==3 && map.isEmpty() && !map.containsKey(m1905));
+        map.put(m1905, "m2");
+        assertTrue(map.size()==1 && map.get(m1905).equals("m2") && map.keySet().contains(m1905));
+    }
+
+}
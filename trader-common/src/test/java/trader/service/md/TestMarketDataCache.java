@@ -0,0 +1,50 @@
+package trader.service.md;
+
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import trader.common.exchangeable.Exchangeable;
+import trader.common.exchangeable.ExchangeableData;
+
+public class TestMarketDataCache {
+
+    @Test
+    public void testLoadOnceAndEvict() throws Exception
+    {
+        MarketDataCache cache = new MarketDataCache(250);
+        Exchangeable e = Exchangeable.fromString("au1906");
+        LocalDate day = LocalDate.of(2018, 12, 26);
+        AtomicInteger loads = new AtomicInteger();
+        MarketDataCache.Loader loader = ()->{
+            loads.incrementAndGet();
+            return ByteBuffer.allocate(100);
+        };
+
+        ByteBuffer buf = cache.get(e, day, ExchangeableData.TICK_CTP, loader);
+        assertTrue(buf.isReadOnly() && buf.remaining()==100);
+        buf.position(50);
+        ByteBuffer buf2 = cache.get(e, day, ExchangeableData.TICK_CTP, loader);
+        assertTrue(loads.get()==1 && buf2.position()==0);
+
+        cache.get(e, day.plusDays(1), ExchangeableData.TICK_CTP, loader);
+        cache.get(e, day, ExchangeableData.TICK_CTP, loader);
+        //超过容量, 淘汰最近最少使用的第二天
+        cache.get(e, day.plusDays(2), ExchangeableData.TICK_CTP, loader);
+        assertTrue(loads.get()==3 && cache.getCount()==2 && cache.getSize()==200);
+        cache.get(e, day, ExchangeableData.TICK_CTP, loader);
+        assertTrue(loads.get()==3);
+        cache.get(e, day.plusDays(1), ExchangeableData.TICK_CTP, loader);
+        assertTrue(loads.get()==4);
+
+        //数据不存在不缓存
+        assertTrue(cache.get(e, day.plusDays(3), ExchangeableData.TICK_CTP, ()->null)==null);
+        cache.setMaxSize(50);
+        assertTrue(cache.getCount()==0 && cache.getSize()==0);
+    }
+
+}
@@ -0,0 +1,43 @@
+package trader.service.ta;
+
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import org.junit.Test;
+
+import trader.common.exchangeable.Exchangeable;
+import trader.common.exchangeable.ExchangeableTradingTimes;
+import trader.common.tick.PriceLevel;
+import trader.common.util.DateUtil;
+
+public class TestBarIndexTable {
+
+    @Test
+    public void testSameAsLoader() {
+        PriceLevel[] levels = new PriceLevel[] {PriceLevel.MIN1, PriceLevel.MIN3, PriceLevel.MIN5, PriceLevel.MIN15};
+        for(String id:new String[] {"shfe.au1906", "cffex.IF1906"}) {
+            Exchangeable e = Exchangeable.fromString(id);
+            ExchangeableTradingTimes tradingTimes = e.exchange().getTradingTimes(e, LocalDate.of(2019, 1, 3));
+            BarIndexTable table = BarIndexTable.getTable(tradingTimes);
+            assertTrue(table==BarIndexTable.getTable(tradingTimes));
+            LocalDateTime time = tradingTimes.getMarketTimes()[0].minusMinutes(1);
+            LocalDateTime endTime = tradingTimes.getMarketCloseTime().plusMinutes(1);
+            int millis = 0;
+            while(time.isBefore(endTime)) {
+                //每秒取一个不同的毫秒数
+                LocalDateTime time2 = time.plusNanos(millis*1000000L);
+                long epochMillis = DateUtil.localdatetime2long(e.exchange().getZoneId(), time2);
+                for(PriceLevel level:levels) {
+                    int barIndex = TimeSeriesLoader.getBarIndex(tradingTimes, level, time2);
+                    assertTrue(barIndex==table.getBarIndex(level, time2));
+                    assertTrue(barIndex==table.getBarIndex(level, epochMillis));
+                }
+                millis = (millis+137)%1000;
+                time = time.plusSeconds(1);
+            }
+        }
+    }
+
+}
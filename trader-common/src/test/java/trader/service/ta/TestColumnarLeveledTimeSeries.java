@@ -0,0 +1,80 @@
+package trader.service.ta;
+
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import org.junit.Test;
+import org.ta4j.core.Bar;
+import org.ta4j.core.BaseBar;
+import org.ta4j.core.TimeSeries;
+import org.ta4j.core.indicators.SMAIndicator;
+import org.ta4j.core.indicators.helpers.ClosePriceIndicator;
+
+import trader.common.exchangeable.Exchangeable;
+import trader.common.tick.PriceLevel;
+
+public class TestColumnarLeveledTimeSeries {
+
+    @Test
+    public void testAddAndGet() {
+        ZoneId zoneId = ZoneId.of("Asia/Shanghai");
+        ColumnarLeveledTimeSeries series = new ColumnarLeveledTimeSeries("au1906-MIN1", PriceLevel.MIN1, zoneId, 1);
+        ZonedDateTime time = ZonedDateTime.of(2019, 1, 2, 9, 1, 0, 0, zoneId);
+        for(int i=0;i<100;i++) {
+            long close = (300+i)*10000L;
+            Bar bar = new BaseBar(Duration.ofMinutes(1), time.plusMinutes(i), LongNum.fromRawValue(close-10000), LongNum.fromRawValue(close+20000)
+                    , LongNum.fromRawValue(close-20000), LongNum.fromRawValue(close), LongNum.valueOf(10), LongNum.fromRawValue(close*10));
+            series.addBar(bar);
+        }
+        assertTrue(series.getBarCount()==100 && series.getBeginIndex()==0 && series.getEndIndex()==99);
+        Bar2 bar = (Bar2)series.getBar(99);
+        assertTrue(bar.getClosePrice().isEqual(LongNum.valueOf(399)));
+        assertTrue(bar.getVolume().longValue()==10);
+        assertTrue(bar.getEndTime().equals(time.plusMinutes(99)));
+        assertTrue(bar.getBeginTime().equals(time.plusMinutes(98)));
+        assertTrue(bar.getOpenTick()==null);
+        assertTrue(series.getClosePrice(10)==310*10000L);
+
+        SMAIndicator sma = new SMAIndicator(new ClosePriceIndicator(series), 2);
+        assertTrue(sma.getValue(99).isEqual(new LongNum(398.5)));
+
+        TimeSeries sub = series.getSubSeries(90, 100);
+        assertTrue(sub.getBarCount()==10 && sub.getLastBar().getClosePrice().isEqual(LongNum.valueOf(399)));
+
+        series.setMaximumBarCount(50);
+        assertTrue(series.getBarCount()==50 && series.getBeginIndex()==50 && series.getRemovedBarsCount()==50);
+        series.addBar(Duration.ofMinutes(1), time.plusMinutes(100), LongNum.ONE, LongNum.ONE, LongNum.ONE, LongNum.ONE, LongNum.ONE);
+        assertTrue(series.getEndIndex()==100 && series.getBeginIndex()==51 && series.getBar(51).getClosePrice().isEqual(LongNum.valueOf(351)));
+    }
+
+    @Test
+    public void testFoldMin1Series() {
+        Exchangeable au1906 = Exchangeable.fromString("au1906");
+        ZoneId zoneId = au1906.exchange().getZoneId();
+        ColumnarLeveledTimeSeries min1Series = new ColumnarLeveledTimeSeries("au1906-MIN1", PriceLevel.MIN1, zoneId);
+        long beginMillis = ZonedDateTime.of(2019, 1, 2, 9, 0, 0, 0, zoneId).toInstant().toEpochMilli();
+        //两个交易日, 每天10根MIN1
+        for(int day=0;day<2;day++) {
+            for(int i=0;i<10;i++) {
+                long millis = beginMillis+(day*24*60+i)*60*1000L;
+                long price = (300+i)*10000L;
+                min1Series.addBar(i, millis, millis+60*1000, 60*1000, price, price+10000, price-10000, price, 10*10000, price*10*1000, 100+i, price, price);
+            }
+        }
+        ColumnarLeveledTimeSeries min3Series = TimeSeriesLoader.foldMin1Series(au1906, min1Series, PriceLevel.MIN3);
+        //每天 0-2, 3-5, 6-8, 9
+        assertTrue(min3Series.getBarCount()==8);
+        assertTrue(min3Series.getBarIndex(3)==3 && min3Series.getBarIndex(4)==0);
+        assertTrue(min3Series.getOpenPrice(1)==303*10000L && min3Series.getClosePrice(1)==305*10000L);
+        assertTrue(min3Series.getMaxPrice(1)==306*10000L && min3Series.getMinPrice(1)==302*10000L);
+        assertTrue(min3Series.getVolume(1)==30*10000L && min3Series.getVolume(3)==10*10000L);
+        assertTrue(((Bar2)min3Series.getBar(1)).getOpenInterest()==105);
+
+        ColumnarLeveledTimeSeries min5Series = TimeSeriesLoader.foldMin1Series(au1906, min1Series, PriceLevel.MIN5, 14);
+        assertTrue(min5Series.getBarCount()==3 && min5Series.getClosePrice(2)==304*10000L);
+    }
+
+}
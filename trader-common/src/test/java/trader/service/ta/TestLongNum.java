@@ -0,0 +1,40 @@
+package trader.service.ta;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.ta4j.core.num.Num;
+
+public class TestLongNum {
+
+    @Test
+    public void testCache() {
+        assertTrue(LongNum.fromRawValue(0)==LongNum.ZERO);
+        assertTrue(LongNum.valueOf(1)==LongNum.ONE);
+        assertTrue(LongNum.valueOf(2)==LongNum.fromRawValue(20000));
+        assertTrue(LongNum.fromRawValue(5)==LongNum.fromRawValue(5));
+        assertTrue(LongNum.ONE.plus(LongNum.ONE)==LongNum.valueOf(2));
+    }
+
+    @Test
+    public void testMultiplyDivide() {
+        Num a = new LongNum(3.1415);
+        Num b = new LongNum(2.0);
+        assertTrue(((LongNum)a.multipliedBy(b)).rawValue()==62830);
+        assertTrue(((LongNum)a.dividedBy(b)).rawValue()==15708);
+        assertTrue(LongNum.rawMultiply(-31415, 5000)==-15708);
+        assertTrue(LongNum.rawDivide(10000, 30000)==3333);
+        assertTrue(LongNum.rawDivide(20000, 30000)==6667);
+        assertTrue(LongNum.rawDivide(1, 0)==Long.MAX_VALUE);
+        //溢出时走BigInteger
+        long big = 4000000000L;
+        assertTrue(LongNum.rawMultiply(big, big)==1600000000000000L);
+        assertTrue(LongNum.rawDivide(92233720368547700L, 1000000)==922337203685477L);
+        //结果超出long范围时取极值, 不能截断回绕
+        assertTrue(LongNum.rawMultiply(Long.MAX_VALUE, Long.MAX_VALUE)==Long.MAX_VALUE);
+        assertTrue(LongNum.rawMultiply(Long.MAX_VALUE, -Long.MAX_VALUE)==Long.MIN_VALUE);
+        assertTrue(LongNum.rawDivide(Long.MAX_VALUE, 1)==Long.MAX_VALUE);
+        assertTrue(LongNum.rawDivide(Long.MAX_VALUE, -1)==Long.MIN_VALUE);
+    }
+
+}
@@ -0,0 +1,59 @@
+package trader.service.ta.indicators;
+
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import org.junit.Test;
+import org.ta4j.core.BaseBar;
+import org.ta4j.core.indicators.ATRIndicator;
+import org.ta4j.core.indicators.EMAIndicator;
+import org.ta4j.core.indicators.helpers.ClosePriceIndicator;
+
+import trader.common.exchangeable.Exchangeable;
+import trader.common.tick.PriceLevel;
+import trader.service.ta.ColumnarLeveledTimeSeries;
+import trader.service.ta.LongNum;
+
+public class TestIncrementalIndicator {
+
+    @Test
+    public void testKey() {
+        assertTrue(IncrementalIndicator.normalizeKey("macd").equals("MACD(12,26,9)"));
+        assertTrue(IncrementalIndicator.normalizeKey("BOLL(20, 2.0)").equals("BOLL(20,2)"));
+        assertTrue(IncrementalIndicator.normalizeKey("vwap").equals("VWAP"));
+    }
+
+    @Test
+    public void testAgainstTa4j() {
+        Exchangeable au1906 = Exchangeable.fromString("shfe.au1906");
+        ZoneId zoneId = au1906.exchange().getZoneId();
+        ColumnarLeveledTimeSeries series = new ColumnarLeveledTimeSeries("au1906", PriceLevel.MIN1, zoneId);
+        IncrementalIndicator ema = IncrementalIndicator.create(au1906, series, "EMA(12)");
+        IncrementalIndicator macd = IncrementalIndicator.create(au1906, series, "MACD");
+        IncrementalIndicator atr = IncrementalIndicator.create(au1906, series, "ATR(14)");
+        IncrementalIndicator boll = IncrementalIndicator.create(au1906, series, "BOLL");
+        ZonedDateTime time = ZonedDateTime.of(2019, 1, 2, 9, 1, 0, 0, zoneId);
+        for(int i=0;i<200;i++) {
+            long close = 2900000+(long)(Math.sin(i/7.0)*30000);
+            series.addBar(new BaseBar(Duration.ofMinutes(1), time.plusMinutes(i), LongNum.fromRawValue(close-500), LongNum.fromRawValue(close+1500)
+                    , LongNum.fromRawValue(close-2000), LongNum.fromRawValue(close), LongNum.valueOf(10), LongNum.fromRawValue(close*10)));
+            ema.update(); macd.update(); atr.update(); boll.update();
+        }
+        ClosePriceIndicator closePrice = new ClosePriceIndicator(series);
+        EMAIndicator ta4jEma = new EMAIndicator(closePrice, 12);
+        MACDIndicator ta4jMacd = new MACDIndicator(closePrice);
+        ATRIndicator ta4jAtr = new ATRIndicator(series, 14);
+        //ta4j的EMA系数只有4位小数, 结果会有少量偏差
+        for(int i=0;i<200;i++) {
+            assertTrue(Math.abs(ema.getValue(i)-LongNum.rawValueOf(ta4jEma.getValue(i)))<=10);
+            assertTrue(Math.abs(macd.getValue(IncrementalMACDIndicator.OUTPUT_MACD, i)-LongNum.rawValueOf(ta4jMacd.getValue(i)))<=40);
+            assertTrue(Math.abs(atr.getValue(i)-LongNum.rawValueOf(ta4jAtr.getValue(i)))<=2);
+        }
+        assertTrue(macd.getEndIndex()==199);
+        assertTrue(boll.getValue(IncrementalBollingerIndicator.OUTPUT_UPPER, 199)>boll.getValue(IncrementalBollingerIndicator.OUTPUT_MIDDLE, 199));
+    }
+
+}
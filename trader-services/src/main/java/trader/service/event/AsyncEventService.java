@@ -1,5 +1,8 @@
 package trader.service.event;
 
+import com.lmax.disruptor.EventTranslatorTwoArg;
+
+import trader.common.exchangeable.Exchangeable;
 import trader.service.md.MarketData;
 
 public interface AsyncEventService {
@@ -19,5 +22,11 @@ public interface AsyncEventService {
 
     public void publishMarketData(MarketData md);
 
+    /**
+     * 由生产者直接将原始行情数据转换到RingBuffer的预分配对象中, 消费者需要保留行情时必须复制
+     * <BR>行情分片时根据合约选择RingBuffer
+     */
+    public <A> void publishMarketData(Exchangeable e, EventTranslatorTwoArg<AsyncEvent, Exchangeable, A> translator, A rawMarketData);
+
     public void publishProcessorEvent(AsyncEventProcessor processor, int dataType, Object data, Object data2);
 }
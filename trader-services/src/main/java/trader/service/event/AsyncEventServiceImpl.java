@@ -10,6 +10,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.EventTranslatorTwoArg;
 import com.lmax.disruptor.RingBuffer;
 import com.lmax.disruptor.dsl.Disruptor;
 import com.lmax.disruptor.dsl.ProducerType;
@@ -17,6 +18,7 @@ import com.lmax.disruptor.dsl.ProducerType;
 import trader.common.beans.BeansContainer;
 import trader.common.beans.Lifecycle;
 import trader.common.config.ConfigUtil;
+import trader.common.exchangeable.Exchangeable;
 import trader.common.util.ConversionUtil;
 import trader.service.md.MarketData;
 import trader.service.util.ConcurrentUtil;
@@ -26,6 +28,11 @@ public class AsyncEventServiceImpl implements AsyncEventService, Lifecycle {
 
     public static final String ITEM_DISRUPTOR_WAIT_STRATEGY = "/AsyncEventService/disruptor/waitStrategy";
     public static final String ITEM_DISRUPTOR_RINGBUFFER_SIZE = "/AsyncEventService/disruptor/ringBufferSize";
+    /**
+     * 行情分片数量, 大于1时行情按合约散列到多个独立的RingBuffer和处理线程上.
+     * <BR>同一合约的行情严格有序, 不同合约的行情并行处理, 因此行情Listener需要能同时处理不同合约的回调
+     */
+    public static final String ITEM_MARKETDATA_SHARDS = "/AsyncEventService/marketDataShards";
 
     private static class AsyncEventHandler implements EventHandler<AsyncEvent>{
 
@@ -63,17 +70,26 @@ public class AsyncEventServiceImpl implements AsyncEventService, Lifecycle {
     private Disruptor<AsyncEvent> disruptor;
     private RingBuffer<AsyncEvent> ringBuffer;
 
+    /**
+     * 行情分片的disruptor, null表示行情和其它事件共用一个RingBuffer
+     */
+    private Disruptor<AsyncEvent>[] mdDisruptors;
+    private RingBuffer<AsyncEvent>[] mdRingBuffers;
+
     private List<Object[]> registeredFilters = new ArrayList<>();
 
     @Override
+    @SuppressWarnings("unchecked")
     public void init(BeansContainer beansContainer) throws Exception {
         //启动disruptor
-        disruptor = new Disruptor<AsyncEvent>( new AsyncEventFactory()
-            , ConfigUtil.getInt(ITEM_DISRUPTOR_RINGBUFFER_SIZE, 65536)
-            , executorService
-            , ProducerType.MULTI
-            , ConcurrentUtil.createDisruptorWaitStrategy(ConfigUtil.getString(ITEM_DISRUPTOR_WAIT_STRATEGY))
-            );
+        disruptor = createDisruptor();
+        int shards = ConfigUtil.getInt(ITEM_MARKETDATA_SHARDS, 1);
+        if ( shards>1 ) {
+            mdDisruptors = new Disruptor[shards];
+            for(int i=0;i<shards;i++) {
+                mdDisruptors[i] = createDisruptor();
+            }
+        }
     }
 
     @Override
@@ -83,8 +99,16 @@ public class AsyncEventServiceImpl implements AsyncEventService, Lifecycle {
             disruptor.shutdown();
             ringBuffer = null;
         }
+        if ( mdRingBuffers!=null ) {
+            for(Disruptor<AsyncEvent> mdDisruptor:mdDisruptors) {
+                mdDisruptor.halt();
+                mdDisruptor.shutdown();
+            }
+            mdRingBuffers = null;
+        }
     }
 
+    @SuppressWarnings("unchecked")
     public void start() {
         Map<String, List<Object[]>> filtersByChain = new LinkedHashMap<>();
         for(Object[] filter:registeredFilters) {
@@ -101,9 +125,38 @@ public class AsyncEventServiceImpl implements AsyncEventService, Lifecycle {
         for(int i=0;i<allFilters.size();i++) {
             handlers[i] = new AsyncEventHandler(allFilters.get(i));
         }
+        //为每个FilterChain启动独立的线程
         disruptor.handleEventsWith(handlers);
         ringBuffer= disruptor.start();
-        //为每个FilterChain启动独立的线程
+
+        if ( mdDisruptors!=null ) {
+            //每个行情分片为每个FilterChain启动独立的线程, 只包含处理行情的过滤器
+            List<List<Object[]>> mdFilters = new ArrayList<>();
+            for(List<Object[]> filters:allFilters) {
+                List<Object[]> chainMdFilters = new ArrayList<>();
+                for(Object[] filter:filters) {
+                    int mask = ConversionUtil.toInt(filter[2]);
+                    if ( (AsyncEvent.EVENT_TYPE_MARKETDATA&mask)==AsyncEvent.EVENT_TYPE_MARKETDATA ) {
+                        chainMdFilters.add(filter);
+                    }
+                }
+                if ( !chainMdFilters.isEmpty() ) {
+                    mdFilters.add(chainMdFilters);
+                }
+            }
+            RingBuffer<AsyncEvent>[] ringBuffers = new RingBuffer[mdDisruptors.length];
+            for(int i=0;i<mdDisruptors.length;i++) {
+                AsyncEventHandler[] mdHandlers = new AsyncEventHandler[mdFilters.size()];
+                for(int j=0;j<mdFilters.size();j++) {
+                    mdHandlers[j] = new AsyncEventHandler(mdFilters.get(j));
+                }
+                if ( mdHandlers.length>0 ) {
+                    mdDisruptors[i].handleEventsWith(mdHandlers);
+                }
+                ringBuffers[i] = mdDisruptors[i].start();
+            }
+            mdRingBuffers = ringBuffers;
+        }
     }
 
     @Override
@@ -113,6 +166,7 @@ public class AsyncEventServiceImpl implements AsyncEventService, Lifecycle {
 
     @Override
     public void publishMarketData(MarketData md) {
+        RingBuffer<AsyncEvent> ringBuffer = getMarketDataRingBuffer(md.instrumentId);
         long seq = ringBuffer.next();
         try {
             AsyncEvent event = ringBuffer.get(seq);
@@ -122,6 +176,18 @@ public class AsyncEventServiceImpl implements AsyncEventService, Lifecycle {
         }
     }
 
+    @Override
+    public <A> void publishMarketData(Exchangeable e, EventTranslatorTwoArg<AsyncEvent, Exchangeable, A> translator, A rawMarketData) {
+        getMarketDataRingBuffer(e).publishEvent(translator, e, rawMarketData);
+    }
+
+    public int getMarketDataShards() {
+        if ( mdDisruptors==null ) {
+            return 1;
+        }
+        return mdDisruptors.length;
+    }
+
     @Override
     public void publishProcessorEvent(AsyncEventProcessor processor, int dataType, Object data, Object data2) {
         long seq = ringBuffer.next();
@@ -133,4 +199,24 @@ public class AsyncEventServiceImpl implements AsyncEventService, Lifecycle {
         }
     }
 
+    /**
+     * 同一合约始终映射到同一个RingBuffer, 保证合约内行情有序
+     */
+    private RingBuffer<AsyncEvent> getMarketDataRingBuffer(Exchangeable e) {
+        RingBuffer<AsyncEvent>[] ringBuffers = mdRingBuffers;
+        if ( ringBuffers==null || e==null ) {
+            return ringBuffer;
+        }
+        return ringBuffers[ (e.uniqueIntId()&Integer.MAX_VALUE)%ringBuffers.length ];
+    }
+
+    private Disruptor<AsyncEvent> createDisruptor(){
+        return new Disruptor<AsyncEvent>( new AsyncEventFactory()
+            , ConfigUtil.getInt(ITEM_DISRUPTOR_RINGBUFFER_SIZE, 65536)
+            , executorService
+            , ProducerType.MULTI
+            , ConcurrentUtil.createDisruptorWaitStrategy(ConfigUtil.getString(ITEM_DISRUPTOR_WAIT_STRATEGY))
+            );
+    }
+
 }
@@ -1,7 +1,7 @@
 package trader.service.md;
 
 import java.time.LocalDate;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import trader.common.exchangeable.Exchangeable;
@@ -12,7 +12,10 @@ public class MarketDataListenerHolder {
     private ExchangeableTradingTimes tradingTimes;
     private long lastTimestamp;
     public MarketData lastData;
-    private List<MarketDataListener> listeners = new ArrayList<>();
+    /**
+     * Copy-On-Write数组, 行情线程无锁遍历
+     */
+    private volatile MarketDataListener[] listeners = new MarketDataListener[0];
 
     MarketDataListenerHolder(Exchangeable e, LocalDate tradingDay){
         this.e = e;
@@ -23,15 +26,33 @@ public class MarketDataListenerHolder {
         return tradingTimes;
     }
 
+    public Exchangeable getExchangeable() {
+        return e;
+    }
+
+    /**
+     * 调用者需要保证串行修改
+     */
     public void addListener(MarketDataListener listener) {
-        if ( !listeners.contains(listener) ) {
-            var newListeners = new ArrayList<>(listeners);
-            newListeners.add(listener);
-            listeners = newListeners;
+        MarketDataListener[] listeners = this.listeners;
+        for(MarketDataListener l:listeners) {
+            if ( l==listener ) {
+                return;
+            }
         }
+        MarketDataListener[] newListeners = Arrays.copyOf(listeners, listeners.length+1);
+        newListeners[listeners.length] = listener;
+        this.listeners = newListeners;
     }
 
     public List<MarketDataListener> getListeners(){
+        return Arrays.asList(listeners);
+    }
+
+    /**
+     * 返回当前的Listener数组, 不可修改
+     */
+    MarketDataListener[] getListenerArray(){
         return listeners;
     }
 
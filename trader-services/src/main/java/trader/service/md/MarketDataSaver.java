@@ -1,15 +1,22 @@
 package trader.service.md;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,147 +25,553 @@ import com.google.gson.JsonObject;
 
 import trader.common.beans.BeansContainer;
 import trader.common.beans.ServiceState;
+import trader.common.config.ConfigUtil;
 import trader.common.exchangeable.Exchangeable;
+import trader.common.exchangeable.ExchangeableMap;
 import trader.common.util.FileUtil;
 import trader.common.util.IOUtil;
 import trader.common.util.StringUtil;
 import trader.common.util.TraderHomeUtil;
+import trader.service.stats.StatsCollector;
+import trader.service.stats.StatsItem;
+import trader.service.stats.StatsItemType;
 
 /**
- * 异步保存行情数据
+ * 异步保存行情数据.
+ * <BR>每次唤醒批量取出行情, 按文件编码到DirectByteBuffer, 批次结束时每个文件一次FileChannel聚集写入
+ * <BR>队列有界, 队列满时按照配置阻塞, 丢弃或者溢出到磁盘文件, 溢出文件在队列排空后回放到正常的CSV文件
  */
 public class MarketDataSaver {
     private static Logger logger = LoggerFactory.getLogger(MarketDataSaver.class);
 
     /**
-     * 主动刷新间隔(ms)
+     * 队列满时的处理方式
      */
-    private static final int FLUSH_INTERVAL = 15*1000;
+    public static enum OverflowPolicy{
+        /**
+         * 阻塞调用线程直到队列有空间, 会影响实时行情处理
+         */
+        Block
+        /**
+         * 丢弃并计数
+         */
+        ,Drop
+        /**
+         * 追加到溢出文件, 之后回放
+         */
+        ,Spill
+    }
+
+    private static final String SPILL_DIR = "spill";
+    private static final String SPILL_EXT = ".spill";
+    private static final String SPILL_HEAD = "H";
+    private static final String SPILL_DATA = "D";
+
+    /**
+     * 单个缓冲区大小
+     */
+    private static final int BUFFER_SIZE = 16*1024;
+
+    /**
+     * 单个文件缓冲数据超过后, 不等批次结束立即写入
+     */
+    private static final int MAX_PENDING_BYTES = 1024*1024;
 
     private static class WriterInfo implements AutoCloseable {
-        private Writer writer;
+        private FileChannel channel;
+        private ByteBuffer[] buffers = new ByteBuffer[] {ByteBuffer.allocateDirect(BUFFER_SIZE)};
+        private int bufferIndex;
+        private int pendingBytes;
         /**
-         * 上传刷新时间
+         * 本批次有数据需要写入
          */
-        private long flushTime;
+        private boolean dirty;
+
+        public WriterInfo(FileChannel channel) {
+            this.channel = channel;
+        }
+
         /**
-         * 已经写数据, 需要刷新
+         * 编码一行数据到缓冲区, ASCII字符直接写入, 避免创建String
          */
-        private boolean needFlush;
+        public void appendLine(CharSequence row) {
+            int len = row.length();
+            boolean ascii = true;
+            for(int i=0;i<len;i++) {
+                if ( row.charAt(i)>=0x80 ) {
+                    ascii = false;
+                    break;
+                }
+            }
+            if ( ascii ) {
+                ByteBuffer buf = ensureRemaining(len+1);
+                for(int i=0;i<len;i++) {
+                    buf.put((byte)row.charAt(i));
+                }
+                buf.put((byte)'\n');
+                pendingBytes += len+1;
+            } else {
+                byte[] bytes = (row.toString()+"\n").getBytes(StringUtil.UTF8);
+                ensureRemaining(bytes.length).put(bytes);
+                pendingBytes += bytes.length;
+            }
+        }
 
-        public WriterInfo(BufferedWriter writer) {
-            this.writer = writer;
-            flushTime = System.currentTimeMillis();
+        public boolean isFull() {
+            return pendingBytes>=MAX_PENDING_BYTES;
         }
 
-        boolean flush() throws IOException
+        /**
+         * 聚集写入所有缓冲数据
+         *
+         * @return 写入字节数
+         */
+        public int commit() throws IOException
         {
-            long currTime = System.currentTimeMillis();
-            boolean result = false;
-            if ( needFlush && (currTime-flushTime)>FLUSH_INTERVAL ) {
-                writer.flush();
-                needFlush = false;
-                flushTime = currTime;
-                result = true;
+            int result = pendingBytes;
+            if ( pendingBytes>0 ) {
+                for(int i=0;i<=bufferIndex;i++) {
+                    buffers[i].flip();
+                }
+                long remaining = pendingBytes;
+                while(remaining>0) {
+                    remaining -= channel.write(buffers, 0, bufferIndex+1);
+                }
+                for(int i=0;i<=bufferIndex;i++) {
+                    buffers[i].clear();
+                }
             }
+            bufferIndex = 0;
+            pendingBytes = 0;
+            dirty = false;
             return result;
         }
 
         @Override
         public void close() throws Exception {
-            writer.flush();
-            writer.close();
+            commit();
+            channel.close();
         }
 
-        public void appendLine(String string) throws IOException {
-            writer.write(string);
-            writer.write("\n");
-            needFlush = true;
+        private ByteBuffer ensureRemaining(int bytes) {
+            ByteBuffer buf = buffers[bufferIndex];
+            if ( buf.remaining()>=bytes ) {
+                return buf;
+            }
+            bufferIndex++;
+            if ( bufferIndex>=buffers.length ) {
+                buffers = Arrays.copyOf(buffers, buffers.length+1);
+            }
+            if ( buffers[bufferIndex]==null || buffers[bufferIndex].capacity()<bytes ) {
+                buffers[bufferIndex] = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, bytes));
+            }
+            return buffers[bufferIndex];
         }
-
     }
 
-    private LinkedBlockingQueue<MarketData> queue = new LinkedBlockingQueue<>();
+    private ArrayBlockingQueue<MarketData> queue;
+    private OverflowPolicy overflowPolicy;
     private MarketDataService marketDataService;
-    private Map<String, WriterInfo> writerMap = new HashMap<>();
+    /**
+     * Key: tradingDay, producerId
+     * <BR>回放的溢出文件可能属于之前的交易日, 必须按交易日区分文件
+     */
+    private Map<String, Map<String, ExchangeableMap<WriterInfo>>> writerMap = new HashMap<>();
+    private List<WriterInfo> dirtyWriters = new ArrayList<>();
     private File dataDir;
+    private int batchSize;
     StringBuilder rowBuf = new StringBuilder(1024);
 
+    private volatile long savedCount;
+    private volatile long savedBytes;
+    private volatile long bytesPerSecond;
+    private AtomicLong droppedCount = new AtomicLong();
+    private AtomicLong spilledCount = new AtomicLong();
+    /**
+     * 溢出状态下所有行情都写入溢出文件, 直到回放, 保证同一合约的行情顺序
+     */
+    private volatile boolean spilling;
+    private File spillDir;
+    private File spillFile;
+    private BufferedWriter spillWriter;
+    private Map<String, ExchangeableMap<Boolean>> spillHeads = new HashMap<>();
+    private int spillFileSeq;
+    private Object spillLock = new Object();
+    private long lastStatsTime = System.currentTimeMillis();
+    private long lastSavedBytes;
+
     public MarketDataSaver(BeansContainer beansContainer){
         this.marketDataService = beansContainer.getBean(MarketDataService.class);
         ExecutorService executorService = beansContainer.getBean(ExecutorService.class);
         dataDir = TraderHomeUtil.getDirectory(TraderHomeUtil.DIR_MARKETDATA);
         dataDir.mkdirs();
+        batchSize = Math.max(1, ConfigUtil.getInt(MarketDataServiceImpl.ITEM_SAVE_BATCH_SIZE, 1024));
+        queue = new ArrayBlockingQueue<>(Math.max(batchSize, ConfigUtil.getInt(MarketDataServiceImpl.ITEM_SAVE_QUEUE_SIZE, 256*1024)));
+        overflowPolicy = ConfigUtil.getEnum(OverflowPolicy.class, MarketDataServiceImpl.ITEM_SAVE_OVERFLOW_POLICY, OverflowPolicy.Spill);
+        spillDir = new File(dataDir, SPILL_DIR);
+        registerStatsItems(beansContainer.getBean(StatsCollector.class));
         executorService.execute(()->{
             saveThreadLoop();
         });
     }
 
-
+    /**
+     * 排队保存行情, 除Block方式外不会阻塞, 也不会抛出异常
+     */
     public void asyncSave(MarketData md) {
-        queue.offer(md);
+        switch(overflowPolicy) {
+        case Block:
+            try {
+                queue.put(md);
+            } catch (InterruptedException e) {
+                droppedCount.incrementAndGet();
+                Thread.currentThread().interrupt();
+            }
+            break;
+        case Drop:
+            if ( !queue.offer(md) ) {
+                droppedCount.incrementAndGet();
+            }
+            break;
+        case Spill:
+            if ( spilling || !queue.offer(md) ) {
+                spill(md);
+            }
+            break;
+        }
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getSavedCount() {
+        return savedCount;
+    }
+
+    public long getSavedBytes() {
+        return savedBytes;
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getSpilledCount() {
+        return spilledCount.get();
     }
 
     private void saveThreadLoop() {
+        //回放上次运行遗留的溢出文件
+        replaySpillFiles();
+        List<MarketData> batch = new ArrayList<>(batchSize);
         while( marketDataService.getState()!=ServiceState.Stopped ) {
             MarketData marketData = null;
             try{
                 marketData = queue.poll(200, TimeUnit.MILLISECONDS);
             }catch(Throwable t) {}
             if ( marketData==null ) {
+                //队列已排空, 结束溢出状态并回放溢出文件
+                if ( spilling ) {
+                    closeSpillFile();
+                    replaySpillFiles();
+                }
                 continue;
             }
+            batch.add(marketData);
+            if ( batchSize>1 ) {
+                queue.drainTo(batch, batchSize-1);
+            }
+            saveBatch(batch);
+            batch.clear();
+        }
+        closeSpillFile();
+        closeAllWriters();
+    }
+
+    /**
+     * 编码一批行情, 然后为每个文件执行一次聚集写入
+     */
+    private void saveBatch(List<MarketData> batch) {
+        long bytes = 0;
+        for(int i=0;i<batch.size();i++) {
+            MarketData marketData = batch.get(i);
             try {
                 WriterInfo writerInfo = getOrCreateWriter(marketData);
                 rowBuf.setLength(0);
                 marketData.toCsvRow(rowBuf);
-                writerInfo.appendLine(rowBuf.toString());
+                writerInfo.appendLine(rowBuf);
+                if ( writerInfo.isFull() ) {
+                    bytes += writerInfo.commit();
+                } else if ( !writerInfo.dirty ) {
+                    writerInfo.dirty = true;
+                    dirtyWriters.add(writerInfo);
+                }
             } catch (Throwable e) {
                 logger.error("Write market data file failed",e);
             }
         }
+        for(int i=0;i<dirtyWriters.size();i++) {
+            try {
+                bytes += dirtyWriters.get(i).commit();
+            }catch(Throwable t) {
+                logger.error("Write market data file failed", t);
+            }
+        }
+        dirtyWriters.clear();
+        savedCount += batch.size();
+        savedBytes += bytes;
     }
 
     /**
-     * 按需刷新. 需要被定时调用
+     * 数据在每个批次结束时已经写入文件, 这里只计算写入速度. 需要被定时调用
      */
     public void flushAllWriters() {
-        for(Iterator<Map.Entry<String, WriterInfo>> it=writerMap.entrySet().iterator(); it.hasNext();){
-            Map.Entry<String, WriterInfo> writerInfoEntry = it.next();
-            String key = writerInfoEntry.getKey();
-            WriterInfo writerInfo = writerInfoEntry.getValue();
+        long currTime = System.currentTimeMillis();
+        long currSavedBytes = savedBytes;
+        if ( currTime>lastStatsTime ) {
+            bytesPerSecond = (currSavedBytes-lastSavedBytes)*1000/(currTime-lastStatsTime);
+        }
+        lastStatsTime = currTime;
+        lastSavedBytes = currSavedBytes;
+        synchronized(spillLock) {
+            if ( spillWriter!=null ) {
+                try {
+                    spillWriter.flush();
+                }catch(Throwable t) {
+                    logger.error("Flush market data spill file "+spillFile+" failed", t);
+                }
+            }
+        }
+        if ( logger.isDebugEnabled() ) {
+            logger.debug("Market data saver queue size "+queue.size()+", saved "+savedCount+" ticks, "+bytesPerSecond+" bytes/s, dropped "+droppedCount+", spilled "+spilledCount);
+        }
+    }
+
+    /**
+     * 追加行情到溢出文件, 失败则丢弃
+     * <BR>格式: 每行TAB分隔, H producerId tradingDay instrument csvHead 或 D producerId tradingDay instrument csvRow
+     */
+    private void spill(MarketData md) {
+        synchronized(spillLock) {
             try {
-                writerInfo.flush();
-            }catch(Throwable t){
-                logger.error("Writer "+key+" flush failed", t);
-                it.remove();
+                if ( spillWriter==null ) {
+                    spillDir.mkdirs();
+                    spillFile = new File(spillDir, String.format("%013d-%06d", System.currentTimeMillis(), spillFileSeq++)+SPILL_EXT);
+                    spillWriter = IOUtil.createBufferedWriter(spillFile, StringUtil.UTF8, true);
+                    spillHeads.clear();
+                    logger.warn("Market data save queue is full, spill to "+spillFile);
+                }
+                spilling = true;
+                ExchangeableMap<Boolean> heads = spillHeads.get(md.producerId);
+                if ( heads==null ) {
+                    heads = new ExchangeableMap<>();
+                    spillHeads.put(md.producerId, heads);
+                }
+                if ( heads.get(md.instrumentId)==null ) {
+                    writeSpillLine(SPILL_HEAD, md, md.getCsvHead());
+                    heads.put(md.instrumentId, Boolean.TRUE);
+                }
+                StringBuilder row = new StringBuilder(512);
+                md.toCsvRow(row);
+                writeSpillLine(SPILL_DATA, md, row);
+                spilledCount.incrementAndGet();
+            }catch(Throwable t) {
+                droppedCount.incrementAndGet();
+                logger.error("Spill market data to "+spillFile+" failed", t);
+            }
+        }
+    }
+
+    private void writeSpillLine(String type, MarketData md, CharSequence text) throws IOException {
+        spillWriter.write(type);
+        spillWriter.write('\t');
+        spillWriter.write(md.producerId);
+        spillWriter.write('\t');
+        spillWriter.write(md.tradingDay);
+        spillWriter.write('\t');
+        spillWriter.write(md.instrumentId.toString());
+        spillWriter.write('\t');
+        spillWriter.append(text);
+        spillWriter.write('\n');
+    }
+
+    /**
+     * 关闭当前溢出文件, 之后的行情重新进入队列
+     */
+    private void closeSpillFile() {
+        synchronized(spillLock) {
+            if ( spillWriter!=null ) {
+                try {
+                    spillWriter.close();
+                }catch(Throwable t) {
+                    logger.error("Close market data spill file "+spillFile+" failed", t);
+                }
+                spillWriter = null;
+                spillFile = null;
+            }
+            spilling = false;
+        }
+    }
+
+    /**
+     * 按时间顺序回放已关闭的溢出文件到CSV文件, 完成后删除
+     */
+    private void replaySpillFiles() {
+        File[] files = spillDir.listFiles();
+        if ( files==null ) {
+            return;
+        }
+        TreeSet<String> fileNames = new TreeSet<>();
+        for(File file:files) {
+            if ( file.getName().endsWith(SPILL_EXT) ) {
+                fileNames.add(file.getName());
+            }
+        }
+        for(String fileName:fileNames) {
+            File file = new File(spillDir, fileName);
+            synchronized(spillLock) {
+                if ( file.equals(spillFile) ) {
+                    continue;
+                }
+            }
+            long count = 0;
+            try(BufferedReader reader = IOUtil.createBufferedReader(file, StringUtil.UTF8);){
+                String line = null;
+                while( (line=reader.readLine())!=null ) {
+                    String[] parts = line.split("\t", 5);
+                    if ( parts.length<5 ) {
+                        continue;
+                    }
+                    Exchangeable instrumentId = Exchangeable.fromString(parts[3]);
+                    WriterInfo writerInfo = getWriter(parts[2], parts[1], instrumentId);
+                    if ( SPILL_HEAD.equals(parts[0]) ) {
+                        if ( writerInfo==null ) {
+                            createWriter(parts[1], parts[2], instrumentId, parts[4]);
+                        }
+                        continue;
+                    }
+                    if ( writerInfo==null ) {
+                        continue;
+                    }
+                    writerInfo.appendLine(parts[4]);
+                    if ( writerInfo.isFull() ) {
+                        savedBytes += writerInfo.commit();
+                    } else if ( !writerInfo.dirty ) {
+                        writerInfo.dirty = true;
+                        dirtyWriters.add(writerInfo);
+                    }
+                    count++;
+                }
+                for(int i=0;i<dirtyWriters.size();i++) {
+                    savedBytes += dirtyWriters.get(i).commit();
+                }
+                dirtyWriters.clear();
+                savedCount += count;
+                file.delete();
+                logger.info("Market data spill file "+file+" replayed "+count+" ticks");
+            }catch(Throwable t) {
+                logger.error("Replay market data spill file "+file+" failed", t);
+                dirtyWriters.clear();
             }
         }
     }
 
+    private void closeAllWriters() {
+        for(Map<String, ExchangeableMap<WriterInfo>> producerWriters:writerMap.values()) {
+            for(ExchangeableMap<WriterInfo> writers:producerWriters.values()) {
+                for(WriterInfo writerInfo:writers.values()) {
+                    try {
+                        writerInfo.close();
+                    }catch(Throwable t) {
+                        logger.error("Close market data file failed", t);
+                    }
+                }
+            }
+        }
+        writerMap.clear();
+    }
+
     private WriterInfo getOrCreateWriter(MarketData marketData) throws IOException
     {
-        String producerId = marketData.producerId;
-        Exchangeable instrumentId = marketData.instrumentId;
-        String writerKey = marketData.producerId+"-"+instrumentId.id();
-        WriterInfo writerInfo = writerMap.get(writerKey);
+        WriterInfo writerInfo = getWriter(marketData.tradingDay, marketData.producerId, marketData.instrumentId);
         if ( null==writerInfo ){
-            File file = new File(dataDir, marketData.tradingDay+"/"+producerId+"/"+instrumentId+".csv");
-            File producerDir = file.getParentFile();
-            if( !producerDir.exists()) {
-                producerDir.mkdirs();
-                saveProviderProps(producerDir, producerId);
-            }
-            writerInfo = new WriterInfo( IOUtil.createBufferedWriter(file, StringUtil.UTF8, true) );
-            if ( file.length()==0 ){
-                writerInfo.writer.write(marketData.getCsvHead());
-                writerInfo.writer.write("\n");
-            }
-            writerMap.put(writerKey, writerInfo);
+            writerInfo = createWriter(marketData.producerId, marketData.tradingDay, marketData.instrumentId, marketData.getCsvHead());
+        }
+        return writerInfo;
+    }
+
+    private WriterInfo getWriter(String tradingDay, String producerId, Exchangeable instrumentId) {
+        Map<String, ExchangeableMap<WriterInfo>> producerWriters = writerMap.get(tradingDay);
+        if ( producerWriters==null ) {
+            return null;
+        }
+        ExchangeableMap<WriterInfo> writers = producerWriters.get(producerId);
+        if ( writers==null ) {
+            return null;
+        }
+        return writers.get(instrumentId);
+    }
+
+    private WriterInfo createWriter(String producerId, String tradingDay, Exchangeable instrumentId, String csvHead) throws IOException
+    {
+        Map<String, ExchangeableMap<WriterInfo>> producerWriters = writerMap.get(tradingDay);
+        if ( producerWriters==null ) {
+            producerWriters = new HashMap<>();
+            writerMap.put(tradingDay, producerWriters);
+        }
+        ExchangeableMap<WriterInfo> writers = producerWriters.get(producerId);
+        if ( writers==null ) {
+            writers = new ExchangeableMap<>();
+            producerWriters.put(producerId, writers);
         }
+        File file = new File(dataDir, tradingDay+"/"+producerId+"/"+instrumentId+".csv");
+        File producerDir = file.getParentFile();
+        if( !producerDir.exists()) {
+            producerDir.mkdirs();
+            saveProviderProps(producerDir, producerId);
+        }
+        WriterInfo writerInfo = new WriterInfo( FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND) );
+        if ( file.length()==0 ){
+            writerInfo.appendLine(csvHead);
+        }
+        writers.put(instrumentId, writerInfo);
         return writerInfo;
     }
 
+    private void registerStatsItems(StatsCollector statsCollector) {
+        if ( statsCollector==null ) {
+            return;
+        }
+        String service = MarketDataService.class.getSimpleName();
+        StatsItem queueSizeItem = new StatsItem(service, "saveQueueSize");
+        queueSizeItem.setType(StatsItemType.Instant);
+        statsCollector.registerStatsItem(queueSizeItem, (StatsItem itemInfo)->{
+            return getQueueSize();
+        });
+        StatsItem bytesPerSecondItem = new StatsItem(service, "saveBytesPerSecond");
+        bytesPerSecondItem.setType(StatsItemType.Instant);
+        statsCollector.registerStatsItem(bytesPerSecondItem, (StatsItem itemInfo)->{
+            return getBytesPerSecond();
+        });
+        StatsItem savedCountItem = new StatsItem(service, "saveCount");
+        statsCollector.registerStatsItem(savedCountItem, (StatsItem itemInfo)->{
+            return getSavedCount();
+        });
+        StatsItem droppedCountItem = new StatsItem(service, "saveDroppedCount");
+        statsCollector.registerStatsItem(droppedCountItem, (StatsItem itemInfo)->{
+            return getDroppedCount();
+        });
+        StatsItem spilledCountItem = new StatsItem(service, "saveSpilledCount");
+        statsCollector.registerStatsItem(spilledCountItem, (StatsItem itemInfo)->{
+            return getSpilledCount();
+        });
+    }
+
     /**
      * 为每个producer目录保存一个标准 producer.json文件
      */
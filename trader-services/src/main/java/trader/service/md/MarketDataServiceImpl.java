@@ -5,6 +5,7 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -17,8 +18,6 @@ import java.util.TreeSet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -37,6 +36,7 @@ import trader.common.config.ConfigService;
 import trader.common.config.ConfigUtil;
 import trader.common.exception.AppException;
 import trader.common.exchangeable.Exchangeable;
+import trader.common.exchangeable.ExchangeableMap;
 import trader.common.exchangeable.Future;
 import trader.common.util.ConversionUtil;
 import trader.common.util.DateUtil;
@@ -76,6 +76,26 @@ public class MarketDataServiceImpl implements MarketDataService, ServiceErrorCod
      */
     public static final String ITEM_SUBSCRIPTIONS = "/MarketDataService/subscriptions";
 
+    /**
+     * 行情数据源直接在RingBuffer的预分配对象中转换行情数据, 缺省为false
+     */
+    public static final String ITEM_PUBLISH_IN_RING_BUFFER = "/MarketDataService/publishInRingBuffer";
+
+    /**
+     * 保存行情时每次从队列中批量取出的最大数量, 缺省1024
+     */
+    public static final String ITEM_SAVE_BATCH_SIZE = "/MarketDataService/saveBatchSize";
+
+    /**
+     * 保存行情的队列容量, 缺省262144
+     */
+    public static final String ITEM_SAVE_QUEUE_SIZE = "/MarketDataService/saveQueueSize";
+
+    /**
+     * 保存行情的队列满时的处理方式: Block, Drop, Spill. 缺省为Spill
+     */
+    public static final String ITEM_SAVE_OVERFLOW_POLICY = "/MarketDataService/saveOverflowPolicy";
+
     /**
      * Producer连接超时设置: 15秒
      */
@@ -116,14 +136,20 @@ public class MarketDataServiceImpl implements MarketDataService, ServiceErrorCod
      */
     private Map<String, AbsMarketDataProducer> producers = new HashMap<>();
 
-    private List<MarketDataListener> genericListeners = new ArrayList<>();
+    /**
+     * 采用Copy-On-Write数组, 行情线程无锁遍历
+     */
+    private volatile MarketDataListener[] genericListeners = new MarketDataListener[0];
 
     /**
-     * 使用Copy-On-Write维护的行情读写锁
+     * 按照Exchangeable.uniqueIntId()索引, 采用Copy-On-Write维护, 行情线程无锁O(1)查找
      */
-    private Map<Exchangeable, MarketDataListenerHolder> listenerHolders = new HashMap<>();
+    private volatile ExchangeableMap<MarketDataListenerHolder> listenerHolders = new ExchangeableMap<>();
 
-    private ReadWriteLock listenerHolderLock = new ReentrantReadWriteLock();
+    /**
+     * 串行化对listener注册表的修改, 读取不需要加锁
+     */
+    private Object listenerHolderLock = new Object();
 
     @Override
     public void init(BeansContainer beansContainer) {
@@ -215,7 +241,7 @@ public class MarketDataServiceImpl implements MarketDataService, ServiceErrorCod
 
     @Override
     public MarketData getLastData(Exchangeable e) {
-        MarketDataListenerHolder holder = listenerHolders.get(e);
+        MarketDataListenerHolder holder = getListenerHolder(e);
         if ( holder!=null ) {
             return holder.lastData;
         }
@@ -225,17 +251,10 @@ public class MarketDataServiceImpl implements MarketDataService, ServiceErrorCod
     @Override
     public void addSubscriptions(List<Exchangeable> subscriptions) {
         List<Exchangeable> newSubscriptions = new ArrayList<>();
-        try {
-            listenerHolderLock.writeLock().lock();
+        synchronized(listenerHolderLock) {
             for(Exchangeable e:subscriptions) {
-                if ( listenerHolders.containsKey(e) ) {
-                    continue;
-                }
-                newSubscriptions.add(e);
                 createListenerHolder(e, newSubscriptions);
             }
-        }finally {
-            listenerHolderLock.writeLock().unlock();
         }
         if ( !newSubscriptions.isEmpty() && state==ServiceState.Ready) {
             producersSubscribe(newSubscriptions);
@@ -250,18 +269,17 @@ public class MarketDataServiceImpl implements MarketDataService, ServiceErrorCod
     @Override
     public void addListener(MarketDataListener listener, Exchangeable... exchangeables) {
         List<Exchangeable> subscribes = new ArrayList<>();
-        try {
-            listenerHolderLock.writeLock().lock();
+        synchronized(listenerHolderLock) {
             if ( exchangeables==null || exchangeables.length==0 || (exchangeables.length==1&&exchangeables[0]==null) ){
-                genericListeners.add(listener);
+                MarketDataListener[] newListeners = Arrays.copyOf(genericListeners, genericListeners.length+1);
+                newListeners[genericListeners.length] = listener;
+                genericListeners = newListeners;
             } else {
                 for(Exchangeable exchangeable:exchangeables) {
                     MarketDataListenerHolder holder = createListenerHolder(exchangeable, subscribes);
                     holder.addListener(listener);
                 }
             }
-        }finally {
-            listenerHolderLock.writeLock().unlock();
         }
         //从行情服务器订阅新的品种
         if ( subscribes.size()>0 ) {
@@ -278,25 +296,33 @@ public class MarketDataServiceImpl implements MarketDataService, ServiceErrorCod
     public boolean onEvent(AsyncEvent event)
     {
         MarketData md = (MarketData)event.data;
-        MarketDataListenerHolder holder= listenerHolders.get(md.instrumentId);
+        if ( md==event.marketData ) {
+            //RingBuffer中的行情对象会被复用, 复制一次后供保存, lastData和Listener共用
+            md = md.clone();
+            if ( saveData ) {
+                dataSaver.asyncSave(md);
+            }
+        }
+        MarketDataListenerHolder holder= getListenerHolder(md.instrumentId);
         if ( null!=holder && holder.checkTimestamp(md.updateTimestamp) ) {
             holder.lastData = md;
             md.postProcess(holder.getTradingTimes());
             //通用Listener
-            for(int i=0;i<genericListeners.size();i++) {
+            MarketDataListener[] genericListeners = this.genericListeners;
+            for(int i=0;i<genericListeners.length;i++) {
                 try{
-                    genericListeners.get(i).onMarketData(md);
+                    genericListeners[i].onMarketData(md);
                 }catch(Throwable t) {
-                    logger.error("Marketdata listener "+genericListeners.get(i)+" process failed: "+md,t);
+                    logger.error("Marketdata listener "+genericListeners[i]+" process failed: "+md,t);
                 }
             }
             //特有的listeners
-            List<MarketDataListener> listeners = holder.getListeners();
-            for(int i=0;i<listeners.size();i++) {
+            MarketDataListener[] listeners = holder.getListenerArray();
+            for(int i=0;i<listeners.length;i++) {
                 try {
-                    listeners.get(i).onMarketData(md);
+                    listeners[i].onMarketData(md);
                 }catch(Throwable t) {
-                    logger.error("Marketdata listener "+listeners.get(i)+" process failed: "+md,t);
+                    logger.error("Marketdata listener "+listeners[i]+" process failed: "+md,t);
                 }
             }
         }
@@ -455,13 +481,10 @@ public class MarketDataServiceImpl implements MarketDataService, ServiceErrorCod
         String message = "Total "+allInstruments.size()+" subscriptions loaded, "+newInstruments.size()+" added";
         if ( newInstruments.size()>0 ) {
             logger.info(message);
-            listenerHolderLock.writeLock().lock();
-            try {
+            synchronized(listenerHolderLock) {
                 for(Exchangeable e:newInstruments) {
                     createListenerHolder(e, null);
                 }
-            }finally {
-                listenerHolderLock.writeLock().unlock();
             }
         }else {
             logger.debug(message);
@@ -555,11 +578,23 @@ public class MarketDataServiceImpl implements MarketDataService, ServiceErrorCod
         return result;
     }
 
+    /**
+     * 无锁查找合约的listener holder
+     */
+    private MarketDataListenerHolder getListenerHolder(Exchangeable e) {
+        return listenerHolders.get(e);
+    }
+
+    /**
+     * 需要在listenerHolderLock中调用, 以Copy-On-Write方式发布新的holder
+     */
     private MarketDataListenerHolder createListenerHolder(Exchangeable exchangeable, List<Exchangeable> subscribes) {
-        MarketDataListenerHolder holder = listenerHolders.get(exchangeable);
+        MarketDataListenerHolder holder = getListenerHolder(exchangeable);
         if (null == holder) {
             holder = new MarketDataListenerHolder(exchangeable, mtService.getTradingDay());
-            listenerHolders.put(exchangeable, holder);
+            var newListenerHolders = new ExchangeableMap<>(listenerHolders);
+            newListenerHolders.put(exchangeable, holder);
+            listenerHolders = newListenerHolders;
             if (subscribes != null) {
                 subscribes.add(exchangeable);
             }
@@ -1,7 +1,10 @@
 package trader.service.md.ctp;
 
 import java.time.LocalDate;
-import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.jctp.CThostFtdcDepthMarketDataField;
 import trader.common.exchangeable.Exchange;
@@ -15,11 +18,34 @@ import trader.service.md.MarketData;
 
 public class CtpMarketData extends MarketData {
     private static final CtpCSVMarshallHelper csvMarshallHelper = new CtpCSVMarshallHelper();
-    private static final ZoneId CFFEX_ZONE_ID = Exchange.CFFEX.getZoneId();
+    private static final ZoneOffset CFFEX_ZONE_OFFSET = Exchange.CFFEX.getZoneOffset();
+    private static final DateTimeFormatter UPDATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    /**
+     * 按交易日缓存的日期转换结果, 数量很少, 不需要清理
+     */
+    private static final Map<String, LocalDate> dates = new ConcurrentHashMap<>();
+    private static final Map<LocalDate, String> dateStrs = new ConcurrentHashMap<>();
+    private static final Map<String, LocalDate[]> dceNightActionDays = new ConcurrentHashMap<>();
 
     CThostFtdcDepthMarketDataField field;
 
+    /**
+     * 空白对象, 由二进制列存格式加载时填充数据. 原始CTP字段在需要时重建
+     */
+    public CtpMarketData(String producerId, Exchangeable exchangeable) {
+        this.producerId = producerId;
+        this.instrumentId = exchangeable;
+    }
+
     public CtpMarketData(String producerId, Exchangeable exchangeable, CThostFtdcDepthMarketDataField data, LocalDate tradingDay) {
+        update(producerId, exchangeable, data, tradingDay);
+    }
+
+    /**
+     * 从CTP行情数据更新全部字段, 深度数组在长度足够时复用. RingBuffer的转换器复用槽位中的行情对象, 每次事件原地更新
+     */
+    public void update(String producerId, Exchangeable exchangeable, CThostFtdcDepthMarketDataField data, LocalDate tradingDay) {
         this.producerId = producerId;
         this.field = data;
         this.instrumentId = exchangeable;
@@ -27,32 +53,34 @@ public class CtpMarketData extends MarketData {
         this.turnover = PriceUtil.price2long(data.Turnover);
         this.openInterest = (long)data.OpenInterest;
         this.lastPrice = PriceUtil.price2long(data.LastPrice);
-        String actionDayStr = data.ActionDay;
+        int timeInt = time2int(data.UpdateTime);
         String tradingDayStr = data.TradingDay;
+        LocalDate actionDay = null;
         if ( exchangeable.exchange()==Exchange.DCE ) {
             //DCE的ActionDay, 夜市的值实际上是TradignDay
-            int timeInt = DateUtil.time2int(data.UpdateTime);
             if (timeInt >= 80000 && timeInt <= 185000) {
                 // 日市tradingDay==actionDay, 不做任何修改
             } else {
-                // 夜市 tradingDay-1 = actionDay
-                LocalDate actionDay = MarketDayUtil.prevMarketDay(exchangeable.exchange(), DateUtil.str2localdate(data.TradingDay));
-                // 夜市的00:0002:30, 夜市后半场
-                if (timeInt < 30000) {
-                    actionDay = actionDay.plusDays(1);
-                }
-                actionDayStr = DateUtil.date2str(actionDay);
+                // 夜市 tradingDay-1 = actionDay, 夜市的00:0002:30, 夜市后半场是下一个自然日
+                LocalDate[] nightActionDays = getDceNightActionDays(data.TradingDay);
+                actionDay = nightActionDays[timeInt < 30000?1:0];
             }
         } else if ( exchangeable.exchange()==Exchange.CZCE ) {
             //CZCE的tradingDay是actionDay, 需要判断后加以识别
-            tradingDayStr = DateUtil.date2str(tradingDay);
+            tradingDayStr = date2str(tradingDay);
         }
         if ( StringUtil.isEmpty(tradingDayStr)) {
-            tradingDayStr = DateUtil.date2str(tradingDay);
+            tradingDayStr = date2str(tradingDay);
+        }
+        if ( actionDay==null ) {
+            actionDay = str2date(data.ActionDay);
+        }
+        if ( actionDay==null ) {
+            actionDay = tradingDay;
         }
 
-        this.updateTime = DateUtil.str2localdatetime(actionDayStr, data.UpdateTime, data.UpdateMillisec);
-        this.updateTimestamp = DateUtil.localdatetime2long(CFFEX_ZONE_ID, updateTime);
+        this.updateTime = actionDay.atTime(timeInt/10000, (timeInt/100)%100, timeInt%100, data.UpdateMillisec*1000000);
+        this.updateTimestamp = updateTime.toEpochSecond(CFFEX_ZONE_OFFSET)*1000+data.UpdateMillisec;
         this.preClosePrice = PriceUtil.price2long(data.PreClosePrice);
         this.openPrice = PriceUtil.price2long(data.OpenPrice);
         this.highestPrice = PriceUtil.price2long(data.HighestPrice);
@@ -69,46 +97,99 @@ public class CtpMarketData extends MarketData {
         long bidPrice2 = PriceUtil.price2long(data.BidPrice2);
         if (bidPrice2 == Long.MAX_VALUE || bidPrice2==0) {
             this.depth = 1;
-            bidPrices = new long[] { PriceUtil.price2long(data.BidPrice1) };
-            bidVolumes = new int[] { data.BidVolume1 };
-            askPrices = new long[] { PriceUtil.price2long(data.AskPrice1) };
-            askVolumes = new int[] { data.AskVolume1 };
         } else {
             this.depth = 5;
-            long[] bidPrices = new long[5];
-            bidPrices[0] = PriceUtil.price2long(data.BidPrice1);
+        }
+        if ( bidPrices==null || bidPrices.length<depth ) {
+            bidPrices = new long[depth];
+            bidVolumes = new int[depth];
+            askPrices = new long[depth];
+            askVolumes = new int[depth];
+        }
+        bidPrices[0] = PriceUtil.price2long(data.BidPrice1);
+        bidVolumes[0] = data.BidVolume1;
+        askPrices[0] = PriceUtil.price2long(data.AskPrice1);
+        askVolumes[0] = data.AskVolume1;
+        if ( depth==5 ) {
             bidPrices[1] = bidPrice2;
             bidPrices[2] = PriceUtil.price2long(data.BidPrice3);
             bidPrices[3] = PriceUtil.price2long(data.BidPrice4);
             bidPrices[4] = PriceUtil.price2long(data.BidPrice5);
-            this.bidPrices = bidPrices;
 
-            int[] bidVolumes = new int[5];
-            bidVolumes[0] = data.BidVolume1;
             bidVolumes[1] = data.BidVolume2;
             bidVolumes[2] = data.BidVolume3;
             bidVolumes[3] = data.BidVolume4;
             bidVolumes[4] = data.BidVolume5;
-            this.bidVolumes = bidVolumes;
 
-            long[] askPrices = new long[5];
-            askPrices[0] = PriceUtil.price2long(data.AskPrice1);
             askPrices[1] = PriceUtil.price2long(data.AskPrice2);
             askPrices[2] = PriceUtil.price2long(data.AskPrice3);
             askPrices[3] = PriceUtil.price2long(data.AskPrice4);
             askPrices[4] = PriceUtil.price2long(data.AskPrice5);
-            this.askPrices = askPrices;
 
-            int[] askVolumes = new int[5];
-            askVolumes[0] = data.AskVolume1;
             askVolumes[1] = data.AskVolume2;
             askVolumes[2] = data.AskVolume3;
             askVolumes[3] = data.AskVolume4;
             askVolumes[4] = data.AskVolume5;
-            this.askVolumes = askVolumes;
         }
     }
 
+    /**
+     * 直接从字符解析 HH:MM:SS 或 H:MM:SS 格式为 HHMMSS, 不创建临时对象
+     */
+    static int time2int(String timeHHCMMCSS) {
+        int len = timeHHCMMCSS==null?0:timeHHCMMCSS.length();
+        if ( len<7 ) {
+            return 0;
+        }
+        int i = len-8;
+        int hour = (timeHHCMMCSS.charAt(i+1)-'0');
+        if ( i>=0 ) {
+            hour += (timeHHCMMCSS.charAt(i)-'0')*10;
+        }
+        int min = (timeHHCMMCSS.charAt(i+3)-'0')*10 + (timeHHCMMCSS.charAt(i+4)-'0');
+        int sec = (timeHHCMMCSS.charAt(i+6)-'0')*10 + (timeHHCMMCSS.charAt(i+7)-'0');
+        return hour*10000+min*100+sec;
+    }
+
+    /**
+     * DCE夜市的actionDay: [0] 夜市前半场, 前一交易日; [1] 夜市后半场, 前一交易日的下一个自然日
+     */
+    private static LocalDate[] getDceNightActionDays(String tradingDayStr) {
+        LocalDate[] result = dceNightActionDays.get(tradingDayStr);
+        if ( result==null ) {
+            LocalDate actionDay = MarketDayUtil.prevMarketDay(Exchange.DCE, DateUtil.str2localdate(tradingDayStr));
+            result = new LocalDate[] {actionDay, actionDay.plusDays(1)};
+            dceNightActionDays.put(tradingDayStr, result);
+        }
+        return result;
+    }
+
+    private static LocalDate str2date(String dateStr) {
+        if ( StringUtil.isEmpty(dateStr) ) {
+            return null;
+        }
+        LocalDate result = dates.get(dateStr);
+        if ( result==null ) {
+            result = DateUtil.str2localdate(dateStr);
+            if ( result!=null ) {
+                dates.put(dateStr, result);
+            }
+        }
+        return result;
+    }
+
+    private static String date2str(LocalDate date) {
+        if ( date==null ) {
+            return null;
+        }
+        String result = dateStrs.get(date);
+        if ( result==null ) {
+            result = DateUtil.date2str(date);
+            dateStrs.put(date, result);
+        }
+        return result;
+    }
+
     @Override
     public String getCsvHead() {
         StringBuilder header = new StringBuilder();
@@ -123,7 +204,7 @@ public class CtpMarketData extends MarketData {
 
     @Override
     public void toCsvRow(StringBuilder rowBuf) {
-        String[] fields = csvMarshallHelper.marshall(field);
+        String[] fields = csvMarshallHelper.marshall(getField());
         for(int i=0;i<fields.length;i++) {
             if ( i>0){
                 rowBuf.append(",");
@@ -134,9 +215,68 @@ public class CtpMarketData extends MarketData {
 
     @Override
     public MarketData clone() {
-        CtpMarketData obj = new CtpMarketData(producerId, instrumentId, field, DateUtil.str2localdate(tradingDay));
+        CtpMarketData obj = new CtpMarketData(producerId, instrumentId);
+        obj.field = field;
         cloneImpl(obj);
         return obj;
     }
 
+    /**
+     * 返回原始CTP字段, 从二进制列存格式加载的数据会根据当前值重建, 未保存的字段为0.
+     * <BR>重建结果不缓存, 因为游标方式加载的对象会被复用
+     */
+    public CThostFtdcDepthMarketDataField getField() {
+        if ( field!=null ) {
+            return field;
+        }
+        return toField();
+    }
+
+    private CThostFtdcDepthMarketDataField toField() {
+        CThostFtdcDepthMarketDataField result = new CThostFtdcDepthMarketDataField();
+        result.TradingDay = tradingDay;
+        result.InstrumentID = instrumentId.id();
+        result.ExchangeID = instrumentId.exchange().name();
+        result.LastPrice = PriceUtil.long2price(lastPrice);
+        result.PreClosePrice = PriceUtil.long2price(preClosePrice);
+        result.OpenPrice = PriceUtil.long2price(openPrice);
+        result.HighestPrice = PriceUtil.long2price(highestPrice);
+        result.LowestPrice = PriceUtil.long2price(lowestPrice);
+        result.Volume = (int)volume;
+        result.Turnover = PriceUtil.long2price(turnover);
+        result.OpenInterest = openInterest;
+        result.UpperLimitPrice = PriceUtil.long2price(upperLimitPrice);
+        result.LowerLimitPrice = PriceUtil.long2price(lowerLimitPrice);
+        result.UpdateTime = updateTime.format(UPDATE_TIME_FORMATTER);
+        result.UpdateMillisec = updateTime.getNano()/1000000;
+        if ( instrumentId.exchange()==Exchange.CZCE ) {
+            result.AveragePrice = PriceUtil.long2price(averagePrice);
+        } else {
+            result.AveragePrice = PriceUtil.long2price(averagePrice*instrumentId.getVolumeMutiplier());
+        }
+        result.ActionDay = DateUtil.date2str(updateTime.toLocalDate());
+        for(int i=0;i<depth;i++) {
+            double bidPrice = PriceUtil.long2price(bidPrices[i]), askPrice = PriceUtil.long2price(askPrices[i]);
+            int bidVolume = bidVolumes[i], askVolume = askVolumes[i];
+            switch(i) {
+            case 0:
+                result.BidPrice1 = bidPrice; result.BidVolume1 = bidVolume; result.AskPrice1 = askPrice; result.AskVolume1 = askVolume;
+                break;
+            case 1:
+                result.BidPrice2 = bidPrice; result.BidVolume2 = bidVolume; result.AskPrice2 = askPrice; result.AskVolume2 = askVolume;
+                break;
+            case 2:
+                result.BidPrice3 = bidPrice; result.BidVolume3 = bidVolume; result.AskPrice3 = askPrice; result.AskVolume3 = askVolume;
+                break;
+            case 3:
+                result.BidPrice4 = bidPrice; result.BidVolume4 = bidVolume; result.AskPrice4 = askPrice; result.AskVolume4 = askVolume;
+                break;
+            case 4:
+                result.BidPrice5 = bidPrice; result.BidVolume5 = bidVolume; result.AskPrice5 = askPrice; result.AskVolume5 = askVolume;
+                break;
+            }
+        }
+        return result;
+    }
+
 }
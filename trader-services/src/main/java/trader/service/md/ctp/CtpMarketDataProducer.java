@@ -13,6 +13,8 @@ import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.lmax.disruptor.EventTranslatorTwoArg;
+
 import net.jctp.CThostFtdcDepthMarketDataField;
 import net.jctp.CThostFtdcForQuoteRspField;
 import net.jctp.CThostFtdcRspInfoField;
@@ -23,6 +25,7 @@ import net.jctp.MdApi;
 import net.jctp.MdApiListener;
 import trader.common.beans.BeansContainer;
 import trader.common.beans.Discoverable;
+import trader.common.config.ConfigUtil;
 import trader.common.exchangeable.Exchange;
 import trader.common.exchangeable.Exchangeable;
 import trader.common.exchangeable.ExchangeableType;
@@ -30,9 +33,12 @@ import trader.common.util.DateUtil;
 import trader.common.util.EncryptionUtil;
 import trader.common.util.StringUtil;
 import trader.service.ServiceConstants.ConnState;
+import trader.service.event.AsyncEvent;
+import trader.service.event.AsyncEventService;
 import trader.service.md.MarketData;
 import trader.service.md.MarketDataProducer;
 import trader.service.md.MarketDataProducerFactory;
+import trader.service.md.MarketDataServiceImpl;
 import trader.service.md.spi.AbsMarketDataProducer;
 import trader.service.trade.MarketTimeService;
 
@@ -50,6 +56,23 @@ public class CtpMarketDataProducer extends AbsMarketDataProducer<CThostFtdcDepth
     private volatile boolean asyncLogSubInstrumentIds;
     private List<String> subInstrumentIds;
 
+    /**
+     * 直接在RingBuffer中转换行情数据
+     */
+    private AsyncEventService asyncEventService;
+
+    private final EventTranslatorTwoArg<AsyncEvent, Exchangeable, CThostFtdcDepthMarketDataField> marketDataTranslator = (event, sequence, exchangeable, ctpMarketData)->{
+        CtpMarketData md = null;
+        if ( event.marketData instanceof CtpMarketData ) {
+            md = (CtpMarketData)event.marketData;
+            md.update(getId(), exchangeable, ctpMarketData, tradingDay);
+        } else {
+            md = new CtpMarketData(getId(), exchangeable, ctpMarketData, tradingDay);
+            event.marketData = md;
+        }
+        event.setData(AsyncEvent.EVENT_TYPE_MARKETDATA, null, md, null);
+    };
+
     public CtpMarketDataProducer(BeansContainer beansContainer, Map producerElemMap) {
         super(beansContainer, producerElemMap);
     }
@@ -62,6 +85,9 @@ public class CtpMarketDataProducer extends AbsMarketDataProducer<CThostFtdcDepth
     @Override
     public void connect() {
         tradingDay = beansContainer.getBean(MarketTimeService.class).getTradingDay();
+        if ( ConfigUtil.getBoolean(MarketDataServiceImpl.ITEM_PUBLISH_IN_RING_BUFFER, false) ) {
+            asyncEventService = beansContainer.getBean(AsyncEventService.class);
+        }
         changeStatus(ConnState.Connecting);
         String url = connectionProps.getProperty("frontUrl");
         String brokerId = connectionProps.getProperty("brokerId");
@@ -228,6 +254,12 @@ public class CtpMarketDataProducer extends AbsMarketDataProducer<CThostFtdcDepth
 
     @Override
     public void OnRtnDepthMarketData(CThostFtdcDepthMarketDataField pDepthMarketData) {
+        if ( asyncEventService!=null ) {
+            tickCount++;
+            Exchangeable exchangeable = findOrCreate(pDepthMarketData.ExchangeID, pDepthMarketData.InstrumentID);
+            asyncEventService.publishMarketData(exchangeable, marketDataTranslator, pDepthMarketData);
+            return;
+        }
         MarketData md = createMarketData(pDepthMarketData, tradingDay);
         notifyData(md);
     }
@@ -250,4 +282,9 @@ public class CtpMarketDataProducer extends AbsMarketDataProducer<CThostFtdcDepth
         return md;
     }
 
+    @Override
+    public MarketData createEmptyMarketData(Exchangeable e) {
+        return new CtpMarketData(getId(), e);
+    }
+
 }
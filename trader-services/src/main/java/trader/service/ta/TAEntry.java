@@ -3,11 +3,16 @@ package trader.service.ta;
 import java.io.IOException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.ta4j.core.Bar;
 import org.ta4j.core.TimeSeries;
 
 import trader.common.beans.BeansContainer;
@@ -21,13 +26,16 @@ import trader.common.tick.PriceLevel;
 import trader.common.util.DateUtil;
 import trader.common.util.TraderHomeUtil;
 import trader.service.md.MarketData;
+import trader.service.ta.indicators.IncrementalIndicator;
 import trader.service.ta.trend.MarketDataWaveBarBuilder;
 import trader.service.ta.trend.WaveBar;
 import trader.service.ta.trend.WaveBar.WaveType;
 import trader.service.trade.MarketTimeService;
 
 /**
- * 单个品种的KBar信息
+ * 单个品种的KBar信息.
+ * <BR>只加载一次MIN1历史数据, 其它分钟级别从MIN1合并得到, 只在被配置或者被请求时创建, 运行期间增加级别不需要重新加载历史数据
+ * <BR>成交量(VOL)和成交金额(AMT)级别从TICK历史数据加载, 之后逐TICK增量更新
  */
 @SuppressWarnings("rawtypes")
 public class TAEntry implements TAItem, Lifecycle {
@@ -36,45 +44,99 @@ public class TAEntry implements TAItem, Lifecycle {
     private static class LevelSeriesInfo{
         PriceLevel level;
         LeveledTimeSeries series;
-        /**
-         * 预先计算好时间到KBar的位置, 后续会非常快速的定位.
-         */
-        long[] barBeginMillis;
-        /**
-         * 预先计算好的KBar结束时间
-         */
-        long[] barEndMillis;
         LocalDateTime barBeginTimes[];
         LocalDateTime barEndTimes[];
         int barIndex = -1;
+        /**
+         * 第一根实时KBar在序列中的位置
+         */
+        int liveBeginIndex = -1;
         MarketData lastTick;
         boolean newBar = false;
+        /**
+         * 共享的增量指标, Copy-On-Write
+         */
+        volatile IncrementalIndicator[] indicators = new IncrementalIndicator[0];
         LevelSeriesInfo(PriceLevel level){
             this.level = level;
         }
     }
-    private static final PriceLevel[] minuteLevels = getMinuteLevels();
 
     private Exchangeable exchangeable;
     private MarketDataWaveBarBuilder waveBarBuilder;
-    private LevelSeriesInfo[] levelSeries;
+    /**
+     * 初始创建的级别
+     */
+    private Collection<PriceLevel> initialLevels;
+    /**
+     * 历史数据加载长度
+     */
+    private TALookback lookback;
+    /**
+     * 收市后是否保存当天的MIN1数据, 下次启动直接加载
+     */
+    private boolean saveBars;
+    /**
+     * 多个回测任务共享的历史MIN1数据, 可以为null
+     */
+    private Map<LocalDate, List<Bar>> sharedMin1Bars;
+    /**
+     * 历史TICK数据是否通过MarketDataCache加载, 只用于回测
+     */
+    private boolean useMarketDataCache;
+    /**
+     * 当前活动的级别, 第一个总是MIN1. Copy-On-Write
+     */
+    private volatile LevelSeriesInfo[] levelSeries = new LevelSeriesInfo[0];
     private List<LocalDate> historicalDates = Collections.emptyList();
 
     private ExchangeableTradingTimes tradingTimes;
+    private MarketTimeService mtService;
+    private ExchangeableData data;
+    /**
+     * 用于运行期间增加成交量级别时加载历史数据
+     */
+    private TimeSeriesLoader seriesLoader;
+    /**
+     * 当前交易日的时间到KBar位置查找表
+     */
+    private BarIndexTable barIndexTable;
 
     public TAEntry(Exchangeable exchangeable) {
+        this(exchangeable, Collections.emptyList(), TALookback.DEFAULT, false);
+    }
+
+    public TAEntry(Exchangeable exchangeable, Collection<PriceLevel> levels, TALookback lookback, boolean saveBars) {
         this.exchangeable = exchangeable;
+        this.initialLevels = levels;
+        this.lookback = lookback;
+        this.saveBars = saveBars;
+    }
 
-        levelSeries = new LevelSeriesInfo[minuteLevels.length];
+    /**
+     * 设置共享的历史MIN1数据, 需要在init之前调用
+     */
+    public void setSharedMin1Bars(Map<LocalDate, List<Bar>> sharedMin1Bars) {
+        this.sharedMin1Bars = sharedMin1Bars;
+    }
+
+    /**
+     * 设置历史TICK数据通过MarketDataCache加载, 需要在init之前调用
+     */
+    public void setUseMarketDataCache(boolean useMarketDataCache) {
+        this.useMarketDataCache = useMarketDataCache;
     }
 
     @Override
     public void init(BeansContainer beansContainer) throws Exception
     {
-        MarketTimeService mtService = beansContainer.getBean(MarketTimeService.class);
-        ExchangeableData data = TraderHomeUtil.getExchangeableData();
+        mtService = beansContainer.getBean(MarketTimeService.class);
+        data = TraderHomeUtil.getExchangeableData();
         loadHistoryData(beansContainer, mtService, data);
         buildBarTimestampTable(mtService);
+        for(PriceLevel level:initialLevels) {
+            addLevel(level);
+        }
         waveBarBuilder = new MarketDataWaveBarBuilder();
         long threshold = exchangeable.getPriceTick()*3;
         waveBarBuilder.setStrokeDirectionThreshold(new LongNum(threshold));
@@ -82,7 +144,37 @@ public class TAEntry implements TAItem, Lifecycle {
 
     @Override
     public void destroy() {
+        if ( saveBars ) {
+            try{
+                saveMin1Bars();
+            }catch(Throwable t) {
+                logger.error(exchangeable+" save MIN1 bars failed", t);
+            }
+        }
+    }
 
+    /**
+     * 收市后保存当天实时生成的MIN1数据. 只保存从开市开始完整的数据, 已存在的MIN1文件不会覆盖
+     */
+    private void saveMin1Bars() throws IOException {
+        if ( tradingTimes==null || levelSeries.length==0 || mtService.getMarketTime().isBefore(tradingTimes.getMarketCloseTime()) ) {
+            return;
+        }
+        LevelSeriesInfo min1Entry = levelSeries[0];
+        LeveledTimeSeries series = min1Entry.series;
+        if ( min1Entry.liveBeginIndex<0 || getMin1BarIndex(series, min1Entry.liveBeginIndex)!=0 ) {
+            return;
+        }
+        LocalDate tradingDay = tradingTimes.getTradingDay();
+        if ( data.exists(exchangeable, ExchangeableData.MIN1, tradingDay) ) {
+            return;
+        }
+        List<Bar> bars = new ArrayList<>();
+        for(int i=min1Entry.liveBeginIndex;i<=series.getEndIndex();i++) {
+            bars.add(series.getBar(i));
+        }
+        TimeSeriesLoader.saveMin1Bars(data, exchangeable, tradingDay, bars);
+        logger.info(exchangeable+" saved "+bars.size()+" MIN1 bars of "+tradingDay);
     }
 
     /**
@@ -93,26 +185,30 @@ public class TAEntry implements TAItem, Lifecycle {
         if ( tradingTimes==null ) {
             logger.info(exchangeable+" 不在交易时间段: "+mtService.getMarketTime());
         }else {
-            LocalDateTime mkTime = mtService.getMarketTime();
-            //按分钟计算Timetsamp到KBar位置表, 后续可以直接查表
-            for(PriceLevel level:minuteLevels) {
-                LevelSeriesInfo levelSeries = this.levelSeries[level2index(level)];
-                int barCount = tradingTimes.getTotalTradingSeconds()/(60*level.getValue());
-                levelSeries.barBeginMillis = new long[barCount];
-                levelSeries.barEndMillis = new long[barCount];
-                levelSeries.barBeginTimes = new LocalDateTime[barCount];
-                levelSeries.barEndTimes = new LocalDateTime[barCount];
-                for(int i=0;i<barCount;i++) {
-                    LocalDateTime[] barTimes = TimeSeriesLoader.getBarTimes(tradingTimes, level, i, mkTime);
-                    levelSeries.barBeginTimes[i] = barTimes[0];
-                    levelSeries.barBeginMillis[i] = DateUtil.localdatetime2long(exchangeable.exchange().getZoneId(), barTimes[0]);
-                    levelSeries.barEndTimes[i] = barTimes[1];
-                    levelSeries.barEndMillis[i] = DateUtil.localdatetime2long(exchangeable.exchange().getZoneId(), barTimes[1]);
+            barIndexTable = BarIndexTable.getTable(tradingTimes);
+            for(LevelSeriesInfo levelSeries:this.levelSeries) {
+                if ( !levelSeries.level.isVolumeBased() ) {
+                    buildBarTimes(levelSeries);
                 }
             }
         }
     }
 
+    /**
+     * 按分钟计算KBar起止时间, KBar位置直接查表
+     */
+    private void buildBarTimes(LevelSeriesInfo levelSeries) {
+        PriceLevel level = levelSeries.level;
+        int barCount = tradingTimes.getTotalTradingSeconds()/(60*level.getValue());
+        levelSeries.barBeginTimes = new LocalDateTime[barCount];
+        levelSeries.barEndTimes = new LocalDateTime[barCount];
+        for(int i=0;i<barCount;i++) {
+            LocalDateTime[] barTimes = TimeSeriesLoader.getBarTimes(tradingTimes, level, i, null);
+            levelSeries.barBeginTimes[i] = barTimes[0];
+            levelSeries.barEndTimes[i] = barTimes[1];
+        }
+    }
+
     @Override
     public Exchangeable getExchangeable() {
         return exchangeable;
@@ -122,15 +218,51 @@ public class TAEntry implements TAItem, Lifecycle {
         return historicalDates;
     }
 
+    /**
+     * 当前活动的级别
+     */
+    public PriceLevel[] getLevels() {
+        LevelSeriesInfo[] levelSeries = this.levelSeries;
+        PriceLevel[] result = new PriceLevel[levelSeries.length];
+        for(int i=0;i<levelSeries.length;i++) {
+            result[i] = levelSeries[i].level;
+        }
+        return result;
+    }
+
     @Override
     public LeveledTimeSeries getSeries(PriceLevel level) {
-        LevelSeriesInfo levelEntry = levelSeries[level2index(level)];
+        LevelSeriesInfo levelEntry = getLevelEntry(level, true);
         if (levelEntry!=null) {
             return levelEntry.series;
         }
         return null;
     }
 
+    /**
+     * 和onMarketData使用同一把锁, 新建指标的初始计算不会和TICK更新并发
+     */
+    @Override
+    public synchronized IncrementalIndicator getIndicator(PriceLevel level, String spec) {
+        LevelSeriesInfo levelEntry = getLevelEntry(level, true);
+        if ( levelEntry==null || levelEntry.series==null ) {
+            return null;
+        }
+        String key = IncrementalIndicator.normalizeKey(spec);
+        for(IncrementalIndicator indicator:levelEntry.indicators) {
+            if ( indicator.getKey().equals(key) ) {
+                return indicator;
+            }
+        }
+        IncrementalIndicator indicator = IncrementalIndicator.create(exchangeable, levelEntry.series, spec);
+        indicator.update();
+        IncrementalIndicator[] indicators = Arrays.copyOf(levelEntry.indicators, levelEntry.indicators.length+1);
+        indicators[indicators.length-1] = indicator;
+        levelEntry.indicators = indicators;
+        logger.info(exchangeable+" "+level+" indicator "+key+" created");
+        return indicator;
+    }
+
     @Override
     public List<WaveBar> getWaveBars(WaveType waveType) {
         return waveBarBuilder.getBars(waveType);
@@ -142,46 +274,123 @@ public class TAEntry implements TAItem, Lifecycle {
     }
 
     /**
-     * 加载历史数据. 目前只加载昨天的数据.
-     * TODO 加载最近指定KBar数量的数据
+     * 增加分钟级别, 从MIN1序列合并历史KBar, 之后随行情更新.
+     * <BR>成交量/成交金额级别从TICK数据加载历史KBar.
+     * <BR>当前未完成的KBar从下一个TICK开始重新生成
+     *
+     * @return 级别对应的KBar序列, 不支持的级别返回null
+     */
+    public synchronized LeveledTimeSeries addLevel(PriceLevel level) {
+        LevelSeriesInfo levelEntry = getLevelEntry(level, false);
+        if ( levelEntry!=null ) {
+            return levelEntry.series;
+        }
+        if ( levelSeries.length==0 || (!isMinuteLevel(level) && !isVolumeLevel(level)) ) {
+            logger.warn(exchangeable+" unsupported level "+level);
+            return null;
+        }
+        if ( isVolumeLevel(level) ) {
+            levelEntry = new LevelSeriesInfo(level);
+            try {
+                long t0 = System.currentTimeMillis();
+                setLookback(level, lookback.getDays(level), lookback.getBars(level));
+                levelEntry.series = seriesLoader.load();
+                long t1 = System.currentTimeMillis();
+                logger.info(exchangeable+" level "+level+" loaded "+levelEntry.series.getBarCount()+" bars in "+(t1-t0)+" ms");
+            }catch(Throwable t) {
+                logger.error(exchangeable+" level "+level+" load history failed", t);
+                return null;
+            }
+            addLevelEntry(levelEntry);
+            return levelEntry.series;
+        }
+        LevelSeriesInfo min1Entry = levelSeries[0];
+        LeveledTimeSeries min1Series = min1Entry.series;
+        int endIndex = min1Series.getEndIndex();
+        if ( min1Entry.barIndex>=0 ) {
+            //当天正在生成的KBar由实时行情生成
+            int levelBarIndex = min1Entry.barIndex/level.getValue();
+            while( endIndex>=min1Series.getBeginIndex() && getMin1BarIndex(min1Series, endIndex)/level.getValue()==levelBarIndex ) {
+                endIndex--;
+            }
+        }
+        levelEntry = new LevelSeriesInfo(level);
+        levelEntry.series = TimeSeriesLoader.foldMin1Series(exchangeable, min1Series, level, endIndex);
+        if ( tradingTimes!=null ) {
+            buildBarTimes(levelEntry);
+        }
+        addLevelEntry(levelEntry);
+        logger.info(exchangeable+" level "+level+" added with "+levelEntry.series.getBarCount()+" bars");
+        return levelEntry.series;
+    }
+
+    private void addLevelEntry(LevelSeriesInfo levelEntry) {
+        LevelSeriesInfo[] levelSeries = Arrays.copyOf(this.levelSeries, this.levelSeries.length+1);
+        levelSeries[levelSeries.length-1] = levelEntry;
+        this.levelSeries = levelSeries;
+    }
+
+    /**
+     * 加载MIN1历史数据, 加载长度由TALookback决定, 缺省只加载昨天的数据.
+     * <BR>没有MIN1文件的交易日从TICK生成, 可以保存为MIN1文件避免下次重复生成
      */
     private boolean loadHistoryData(BeansContainer beansContainer, MarketTimeService timeService, ExchangeableData data) throws IOException
     {
-        TimeSeriesLoader seriesLoader = new TimeSeriesLoader(beansContainer, data).setExchangeable(exchangeable);
+        seriesLoader = new TimeSeriesLoader(beansContainer, data).setExchangeable(exchangeable);
         ExchangeableTradingTimes tradingTimes = exchangeable.exchange().getTradingTimes(exchangeable, timeService.getTradingDay());
         if ( tradingTimes==null ) {
             return false;
         }
         seriesLoader
             .setEndTradingDay(tradingTimes.getTradingDay())
-            .setStartTradingDay(MarketDayUtil.prevMarketDay(exchangeable.exchange(), tradingTimes.getTradingDay()))
-            .setEndTime(timeService.getMarketTime());
-
-        for(int i=0;i<minuteLevels.length;i++) {
-            PriceLevel level = minuteLevels[i];
-            LevelSeriesInfo levelSeries = new LevelSeriesInfo(level);
-            this.levelSeries[i] = levelSeries;
-            levelSeries.series = seriesLoader.setLevel(level).load();
-        }
-        historicalDates = seriesLoader.getLoadedDates();
+            .setEndTime(timeService.getMarketTime())
+            .setSaveMin1Bars(saveBars)
+            .setSharedMin1Bars(sharedMin1Bars)
+            .setUseMarketDataCache(useMarketDataCache);
+
+        setLookback(PriceLevel.MIN1, lookback.getMin1Days(initialLevels), lookback.getMin1Bars(initialLevels));
+        LevelSeriesInfo min1Entry = new LevelSeriesInfo(PriceLevel.MIN1);
+        min1Entry.series = seriesLoader.setLevel(PriceLevel.MIN1).load();
+        levelSeries = new LevelSeriesInfo[] {min1Entry};
+        historicalDates = new ArrayList<>(seriesLoader.getLoadedDates());
         return true;
     }
 
+    /**
+     * 设置加载的交易日和KBar数量
+     */
+    private void setLookback(PriceLevel level, int days, int bars) {
+        LocalDate startTradingDay = tradingTimes!=null?tradingTimes.getTradingDay():mtService.getTradingDay();
+        for(int i=0;i<days;i++) {
+            startTradingDay = MarketDayUtil.prevMarketDay(exchangeable.exchange(), startTradingDay);
+        }
+        seriesLoader.setLevel(level).setStartTradingDay(startTradingDay).setBarCount(bars);
+    }
+
     /**
      * 根据TICK数据更新KBar
      */
-    public boolean onMarketData(MarketData tick) {
+    public synchronized boolean onMarketData(MarketData tick) {
         boolean result = false;
-        if ( tick.mktStage==MarketTimeStage.MarketOpen ) {
+        if ( tick.mktStage==MarketTimeStage.MarketOpen && barIndexTable!=null ) {
             waveBarBuilder.onMarketData(tick);
-            for(int i=0;i<minuteLevels.length;i++) {
-                LevelSeriesInfo levelSeries = this.levelSeries[i];
-                int barIndex = getBarIndex(levelSeries, tick);
-                if( barIndex<0 ) { //非开市期间数据, 直接忽略
-                    break;
+            for(LevelSeriesInfo levelSeries:this.levelSeries) {
+                boolean levelNewBar = false;
+                if ( levelSeries.barBeginTimes==null ) {
+                    levelNewBar = updateVolumeLevelSeries(levelSeries, tick);
+                } else {
+                    //非开市期间数据只忽略当前级别, 后续级别(例如成交量级别)继续处理
+                    int barIndex = getBarIndex(levelSeries, tick);
+                    if( barIndex<0 ) {
+                        levelSeries.newBar = false;
+                        continue;
+                    }
+                    levelNewBar = updateLevelSeries(levelSeries, tick, barIndex);
                 }
-                boolean levelNewBar = updateLevelSeries(levelSeries, tick, barIndex);
                 levelSeries.newBar = levelNewBar;
+                for(IncrementalIndicator indicator:levelSeries.indicators) {
+                    indicator.update();
+                }
                 result |= levelNewBar;
             }
         }
@@ -192,10 +401,9 @@ public class TAEntry implements TAItem, Lifecycle {
      * 通知KBar有新增
      */
     public void notifyListeners(List<TAListener> listeners) {
+        LevelSeriesInfo[] levelSeries0 = this.levelSeries;
         for(TAListener listener:listeners) {
-            for(int i=0;i<minuteLevels.length;i++) {
-                PriceLevel level = minuteLevels[i];
-                LevelSeriesInfo levelSeries = this.levelSeries[i];
+            for(LevelSeriesInfo levelSeries:levelSeries0) {
                 if ( levelSeries.newBar ) {
                     try{
                         listener.onNewBar(exchangeable, levelSeries.series);
@@ -208,24 +416,13 @@ public class TAEntry implements TAItem, Lifecycle {
     }
 
     private int getBarIndex(LevelSeriesInfo levelSeries, MarketData tick) {
-        int result = -1;
-        long marketBeginMillis = levelSeries.barBeginMillis[0];
-        if ( tick.updateTimestamp>=marketBeginMillis ) {
-            int currBarIndex = levelSeries.barIndex;
-            if ( currBarIndex<0 ) {
-                currBarIndex = 0;
-            }
-            for(int i=currBarIndex;i<levelSeries.barBeginMillis.length;i++) {
-                if ( tick.updateTimestamp < levelSeries.barBeginMillis[i] ) {
-                    break;
-                }
-                result = i;
-            }
-            //TimeSeriesLoader.getBarIndex(exchangeable, levelSeries.level, tick.updateTime);
-        }else {
+        int result = barIndexTable.getBarIndex(levelSeries.level, tick.updateTimestamp);
+        if ( result<0 ) {
             if ( logger.isDebugEnabled() ) {
                 logger.debug(exchangeable+" 忽略非市场时间数据 "+tick);
             }
+        } else if ( result>=levelSeries.barBeginTimes.length ) {
+            result = levelSeries.barBeginTimes.length-1;
         }
         return result;
     }
@@ -243,6 +440,7 @@ public class TAEntry implements TAItem, Lifecycle {
             FutureBar bar = FutureBar.create(barIndex, tradingTimes, levelSeries.barBeginTimes[barIndex], null, tick, tick.lastPrice, tick.lastPrice);
             series.addBar(bar);
             levelSeries.barIndex = barIndex;
+            levelSeries.liveBeginIndex = series.getEndIndex();
             if ( logger.isDebugEnabled() ) {
                 logger.debug(exchangeable+" "+level+" NEW Kbar #"+barIndex+" OLD #-1 : "+bar);
             }
@@ -272,20 +470,87 @@ public class TAEntry implements TAItem, Lifecycle {
         return result;
     }
 
-    private static PriceLevel[] getMinuteLevels() {
-        return new PriceLevel[]{PriceLevel.MIN1, PriceLevel.MIN3, PriceLevel.MIN5, PriceLevel.MIN15};
+    /**
+     * 更新成交量/成交金额KBar, 当前KBar达到切分数量后, 下一个TICK开始新的KBar
+     *
+     * @return true 如果产生了新的K线
+     */
+    private boolean updateVolumeLevelSeries(LevelSeriesInfo levelSeries, MarketData tick) {
+        boolean result = false;
+        TimeSeries series = levelSeries.series;
+        FutureBar lastBar = null;
+        if ( levelSeries.barIndex>=0 ) {
+            lastBar = (FutureBar)series.getLastBar();
+        }
+        if ( lastBar!=null && !TimeSeriesLoader.isVolumeBarFull(lastBar, levelSeries.level) ) {
+            lastBar.update(tick, tick.updateTime);
+        } else {
+            //从上一个TICK开始计算成交量
+            MarketData edgeTick = levelSeries.lastTick;
+            if ( edgeTick==null ) {
+                if ( hasTradingDayBars(series) ) {
+                    //历史数据已包含当天的KBar, 从当前TICK开始
+                    edgeTick = tick;
+                } else {
+                    //当天第一个TICK, 成交量包含集合竞价
+                    edgeTick = TimeSeriesLoader.createVolumeBarBeginTick(tick);
+                }
+            }
+            int barIndex = levelSeries.barIndex+1;
+            FutureBar bar = FutureBar.create(barIndex, tradingTimes, DateUtil.round(edgeTick.updateTime), edgeTick, tick, tick.lastPrice, tick.lastPrice);
+            if ( logger.isDebugEnabled() ) {
+                logger.debug(exchangeable+" "+levelSeries.level+" NEW Kbar #"+barIndex+" : "+bar);
+            }
+            try{
+                series.addBar(bar);
+                levelSeries.barIndex = barIndex;
+                result = true;
+            }catch(Throwable t){
+                logger.error(exchangeable+" "+levelSeries.level+" failed to NEW Kbar #"+barIndex+" : "+bar, t);
+            }
+        }
+        levelSeries.lastTick = tick;
+        return result;
     }
 
-    private static int level2index(PriceLevel level) {
-        if ( level== PriceLevel.MIN1) {
-            return 0;
-        }else if ( level== PriceLevel.MIN3) {
-            return 1;
-        }else if ( level== PriceLevel.MIN5) {
-            return 2;
-        }else if ( level== PriceLevel.MIN15) {
-            return 3;
+    /**
+     * 加载的历史数据是否已经包含当前交易日开市后的KBar
+     */
+    private boolean hasTradingDayBars(TimeSeries series) {
+        if ( series.getBarCount()==0 || tradingTimes==null ) {
+            return false;
         }
-        return -1;
+        LocalDateTime marketOpenTime = tradingTimes.getMarketTimes()[0];
+        return !series.getLastBar().getEndTime().toLocalDateTime().isBefore(marketOpenTime);
+    }
+
+    /**
+     * 查找级别, 分钟级别不存在时可以自动创建
+     */
+    private LevelSeriesInfo getLevelEntry(PriceLevel level, boolean autoCreate) {
+        for(LevelSeriesInfo levelEntry:levelSeries) {
+            if ( levelEntry.level.equals(level) ) {
+                return levelEntry;
+            }
+        }
+        if ( autoCreate && (isMinuteLevel(level) || isVolumeLevel(level)) && addLevel(level)!=null ) {
+            return getLevelEntry(level, false);
+        }
+        return null;
+    }
+
+    private static int getMin1BarIndex(LeveledTimeSeries min1Series, int index) {
+        if ( min1Series instanceof ColumnarLeveledTimeSeries ) {
+            return ((ColumnarLeveledTimeSeries)min1Series).getBarIndex(index);
+        }
+        return ((FutureBar)min1Series.getBar(index)).getIndex();
+    }
+
+    private static boolean isMinuteLevel(PriceLevel level) {
+        return level!=null && level.name().startsWith(PriceLevel.LEVEL_MIN) && level.getValue()>0;
+    }
+
+    private static boolean isVolumeLevel(PriceLevel level) {
+        return level!=null && level.isVolumeBased() && level.getValue()>0;
     }
 }
@@ -0,0 +1,102 @@
+package trader.service.ta;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import trader.common.tick.PriceLevel;
+import trader.common.util.ConversionUtil;
+import trader.common.util.StringUtil;
+
+/**
+ * 历史数据加载长度配置, 按交易日或者KBar数量.
+ * <BR>格式: 2d 表示所有级别加载前2个交易日; min1:3d, min5:600, vol1k:1d 表示按级别设置, d结尾为交易日, 否则为KBar数量
+ */
+public class TALookback {
+
+    public static final TALookback DEFAULT = parse("1d");
+
+    private static class Value{
+        int days;
+        int bars;
+    }
+
+    private Value defaultValue = new Value();
+    private Map<PriceLevel, Value> levelValues = new HashMap<>();
+
+    /**
+     * 需要加载的交易日数量, 不包含当天
+     */
+    public int getDays(PriceLevel level) {
+        return getValue(level).days;
+    }
+
+    /**
+     * 需要加载的KBar数量, 0表示只按交易日加载
+     */
+    public int getBars(PriceLevel level) {
+        return getValue(level).bars;
+    }
+
+    /**
+     * 这些分钟级别需要的MIN1交易日数量
+     */
+    public int getMin1Days(Collection<PriceLevel> levels) {
+        int result = getDays(PriceLevel.MIN1);
+        for(PriceLevel level:levels) {
+            if ( level.name().startsWith(PriceLevel.LEVEL_MIN) ) {
+                result = Math.max(result, getDays(level));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 这些分钟级别需要的MIN1 KBar数量, 按级别分钟数折算
+     */
+    public int getMin1Bars(Collection<PriceLevel> levels) {
+        int result = getBars(PriceLevel.MIN1);
+        for(PriceLevel level:levels) {
+            if ( level.name().startsWith(PriceLevel.LEVEL_MIN) && level.getValue()>0 ) {
+                result = Math.max(result, getBars(level)*level.getValue());
+            }
+        }
+        return result;
+    }
+
+    private Value getValue(PriceLevel level) {
+        Value result = levelValues.get(level);
+        if ( result==null ) {
+            result = defaultValue;
+        }
+        return result;
+    }
+
+    public static TALookback parse(String str) {
+        TALookback result = new TALookback();
+        result.defaultValue.days = 1;
+        if ( StringUtil.isEmpty(str) ) {
+            return result;
+        }
+        for(String item:StringUtil.split(str, ",|;|\\s")) {
+            int idx = item.indexOf(':');
+            Value value = result.defaultValue;
+            String valueStr = item;
+            if ( idx>0 ) {
+                value = new Value();
+                result.levelValues.put(PriceLevel.valueOf(item.substring(0, idx)), value);
+                valueStr = item.substring(idx+1).trim();
+            }
+            valueStr = valueStr.toLowerCase();
+            if ( valueStr.endsWith("d") ) {
+                value.days = ConversionUtil.toInt(valueStr.substring(0, valueStr.length()-1));
+                value.bars = 0;
+            } else {
+                value.days = 0;
+                value.bars = ConversionUtil.toInt(valueStr);
+            }
+        }
+        return result;
+    }
+
+}
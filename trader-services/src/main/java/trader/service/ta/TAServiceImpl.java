@@ -4,24 +4,28 @@ import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.annotation.PreDestroy;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.ta4j.core.Bar;
 import org.springframework.stereotype.Service;
 
 import trader.common.beans.BeansContainer;
 import trader.common.beans.ServiceState;
 import trader.common.config.ConfigUtil;
 import trader.common.exchangeable.Exchangeable;
+import trader.common.exchangeable.ExchangeableMap;
 import trader.common.exchangeable.ExchangeableData;
 import trader.common.exchangeable.ExchangeableTradingTimes;
+import trader.common.tick.PriceLevel;
 import trader.common.util.ConversionUtil;
 import trader.common.util.StringUtil;
 import trader.common.util.TraderHomeUtil;
@@ -45,6 +49,22 @@ public class TAServiceImpl implements TAService, MarketDataListener {
      * 主动关注的品种
      */
     public static final String ITEM_SUBSCRIPTIONS = "/TAService/subscriptions";
+    /**
+     * 启动时创建的KBar级别, 例如: min1,min3,min5. 其它分钟级别在交易策略请求时从MIN1合并创建
+     */
+    public static final String ITEM_LEVELS = "/TAService/levels";
+    /**
+     * 启动时并行加载历史数据的线程数, 缺省为CPU数量
+     */
+    public static final String ITEM_PRELOAD_THREADS = "/TAService/preloadThreads";
+    /**
+     * 历史数据加载长度, 例如: 2d 或者 min1:3d, min5:600, vol1k:1d. 格式见TALookback
+     */
+    public static final String ITEM_LOOKBACK = "/TAService/lookback";
+    /**
+     * 是否保存从TICK生成的MIN1数据以及收市后当天的MIN1数据, 缺省为true
+     */
+    public static final String ITEM_SAVE_BARS = "/TAService/saveBars";
 
     private MarketDataService mdService;
 
@@ -56,7 +76,17 @@ public class TAServiceImpl implements TAService, MarketDataListener {
 
     private Collection<String> subscriptions = new TreeSet<>();
 
-    private Map<Exchangeable, TAEntry> entries = new HashMap<>();
+    private List<PriceLevel> levels = new ArrayList<>();
+
+    private TALookback lookback = TALookback.DEFAULT;
+
+    private boolean saveBars = true;
+
+    private Map<Exchangeable, Map<LocalDate, List<Bar>>> sharedMin1Bars;
+
+    private boolean useMarketDataCache;
+
+    private ExchangeableMap<TAEntry> entries = new ExchangeableMap<>();
 
     private List<TAListener> listeners = new ArrayList<>();
 
@@ -71,6 +101,17 @@ public class TAServiceImpl implements TAService, MarketDataListener {
         if ( !StringUtil.isEmpty(subscriptions)) {
             this.subscriptions.addAll( Arrays.asList(StringUtil.split(subscriptions, ",|;|\\s")) );
         }
+        String configLevels = ConfigUtil.getString(ITEM_LEVELS);
+        if ( !StringUtil.isEmpty(configLevels)) {
+            for(String level:StringUtil.split(configLevels, ",|;|\\s")) {
+                PriceLevel priceLevel = PriceLevel.valueOf(level);
+                if ( priceLevel!=null && !this.levels.contains(priceLevel) ) {
+                    this.levels.add(priceLevel);
+                }
+            }
+        }
+        lookback = TALookback.parse(ConfigUtil.getString(ITEM_LOOKBACK));
+        saveBars = saveBars && ConfigUtil.getBoolean(ITEM_SAVE_BARS, true);
         if ( state!=ServiceState.Stopped ) {
             data = TraderHomeUtil.getExchangeableData();
 
@@ -79,20 +120,24 @@ public class TAServiceImpl implements TAService, MarketDataListener {
 
             long t0=System.currentTimeMillis();
             mdService.addListener(this);
-            TreeMap<Exchangeable, List<LocalDate>> historicalDates = new TreeMap<>();
+            List<TAEntry> newEntries = new ArrayList<>();
             for(Exchangeable e: filterMarketDataSubscriptions(mdService.getSubscriptions()) ) {
                 ExchangeableTradingTimes tradingTimes = e.exchange().getTradingTimes(e, mtService.getMarketTime().toLocalDate());
                 if ( tradingTimes==null ) {
                     continue;
                 }
-                TAEntry entry = new TAEntry(e);
-                entries.put(e, entry);
-                try{
-                    entry.init(beansContainer);
-                }catch(Throwable t) {
-                    logger.error(entry.getExchangeable()+" load historical data failed", t);
+                TAEntry entry = new TAEntry(e, levels, lookback, saveBars);
+                if ( sharedMin1Bars!=null ) {
+                    entry.setSharedMin1Bars(sharedMin1Bars.get(e));
                 }
-                historicalDates.put(e, entry.getHistoricalDates());
+                entry.setUseMarketDataCache(useMarketDataCache);
+                entries.put(e, entry);
+                newEntries.add(entry);
+            }
+            preloadEntries(beansContainer, newEntries);
+            TreeMap<Exchangeable, List<LocalDate>> historicalDates = new TreeMap<>();
+            for(TAEntry entry:newEntries) {
+                historicalDates.put(entry.getExchangeable(), entry.getHistoricalDates());
             }
             long t1=System.currentTimeMillis();
             logger.info("Start TASevice with data dir "+data.getDataDir()+" in "+(t1-t0)+" ms, "+historicalDates.size()+" exchangeables loaded: "+historicalDates);
@@ -105,12 +150,36 @@ public class TAServiceImpl implements TAService, MarketDataListener {
     @Override
     @PreDestroy
     public void destroy() {
+        for(TAEntry entry:entries.values()) {
+            entry.destroy();
+        }
     }
 
     public void addSubscriptions(String ...subscriptions) {
         this.subscriptions.addAll(Arrays.asList(subscriptions));
     }
 
+    /**
+     * 禁止收市后保存MIN1数据, 用于多个回测任务并行读写同一个Repository. 需要在init之前调用
+     */
+    public void setSaveBars(boolean saveBars) {
+        this.saveBars = saveBars;
+    }
+
+    /**
+     * 使用多个回测任务共享的历史MIN1数据, 每个品种一份. 需要在init之前调用
+     */
+    public void setSharedMin1Bars(Map<Exchangeable, Map<LocalDate, List<Bar>>> sharedMin1Bars) {
+        this.sharedMin1Bars = sharedMin1Bars;
+    }
+
+    /**
+     * 历史TICK数据通过进程内共享的MarketDataCache加载, 只用于回测, 实盘直接读取文件. 需要在init之前调用
+     */
+    public void setUseMarketDataCache(boolean useMarketDataCache) {
+        this.useMarketDataCache = useMarketDataCache;
+    }
+
     @Override
     public TAItem getItem(Exchangeable e) {
         return entries.get(e);
@@ -135,6 +204,31 @@ public class TAServiceImpl implements TAService, MarketDataListener {
         }
     }
 
+    /**
+     * 在ForkJoinPool中并行加载各品种的历史数据, 每个品种的MIN1数据只加载一次, 其它级别从MIN1合并
+     */
+    private void preloadEntries(BeansContainer beansContainer, List<TAEntry> entries) {
+        int threads = ConfigUtil.getInt(ITEM_PRELOAD_THREADS, Runtime.getRuntime().availableProcessors());
+        threads = Math.max(1, Math.min(threads, entries.size()));
+        List<Callable<Void>> tasks = new ArrayList<>(entries.size());
+        for(TAEntry entry:entries) {
+            tasks.add(()->{
+                try{
+                    entry.init(beansContainer);
+                }catch(Throwable t) {
+                    logger.error(entry.getExchangeable()+" load historical data failed", t);
+                }
+                return null;
+            });
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try{
+            pool.invokeAll(tasks);
+        }finally {
+            pool.shutdown();
+        }
+    }
+
     /**
      * 根据配置过滤所有合约, 决定哪些合约需要计算技术指标
      */
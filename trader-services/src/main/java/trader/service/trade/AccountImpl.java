@@ -31,6 +31,7 @@ import ch.qos.logback.core.FileAppender;
 import trader.common.beans.BeansContainer;
 import trader.common.exception.AppException;
 import trader.common.exchangeable.Exchangeable;
+import trader.common.exchangeable.ExchangeableMap;
 import trader.common.util.ConversionUtil;
 import trader.common.util.DateUtil;
 import trader.common.util.FileUtil;
@@ -79,7 +80,10 @@ public class AccountImpl implements Account, TxnSessionListener, TradeConstants,
      */
     private Properties brokerMarginRatio = new Properties();
     private List<AccountListener> listeners = new ArrayList<>();
-    private Map<Exchangeable, PositionImpl> positions = new HashMap<>();
+    /**
+     * Copy-On-Write, 行情回调不加锁查找
+     */
+    private volatile ExchangeableMap<PositionImpl> positions = new ExchangeableMap<>();
     private Map<String, OrderImpl> orders = new ConcurrentHashMap<>();
     private Map<Exchangeable, AtomicInteger> cancelCounts = new ConcurrentHashMap<>();
     private Lock positionLock = new ReentrantLock();
@@ -539,19 +543,26 @@ public class AccountImpl implements Account, TxnSessionListener, TradeConstants,
 
     /**
      * 当市场价格发生变化, 更新持仓盈亏
+     * <BR>行情分片时不同品种的行情会并发回调, 需要和成交回报一样在positionLock中更新
+     * <BR>没有持仓或者价格未变化时不加锁直接返回
      */
     @Override
     public void onMarketData(MarketData marketData) {
         if ( state!=AccountState.Ready ) {
             return;
         }
-        boolean priceChanged = false;
-        PositionImpl pos = positions.get(marketData.instrumentId);
-        if( pos!=null ) {
-            priceChanged = pos.onMarketData(marketData);
+        PositionImpl pos0 = positions.get(marketData.instrumentId);
+        if ( pos0==null || !pos0.isPriceChanged(marketData) ) {
+            return;
         }
-        if ( priceChanged ) {
-            updateAccountMoneyOnMarket();
+        positionLock.lock();
+        try {
+            PositionImpl pos = positions.get(marketData.instrumentId);
+            if ( pos!=null && pos.onMarketData(marketData) ) {
+                updateAccountMoneyOnMarket();
+            }
+        }finally {
+            positionLock.unlock();
         }
     }
 
@@ -640,9 +651,9 @@ public class AccountImpl implements Account, TxnSessionListener, TradeConstants,
         }
     }
 
-    private Map<Exchangeable, PositionImpl> loadPositions() throws Exception
+    private ExchangeableMap<PositionImpl> loadPositions() throws Exception
     {
-        Map<Exchangeable, PositionImpl> positions = new HashMap<>();
+        ExchangeableMap<PositionImpl> positions = new ExchangeableMap<>();
         JsonObject posInfos = (JsonObject)(new JsonParser()).parse(new StringReader(txnSession.syncQryPositions()));
         for(String posKey:posInfos.keySet()) {
             JsonObject posInfo = (JsonObject)posInfos.get(posKey);
@@ -714,12 +725,19 @@ public class AccountImpl implements Account, TxnSessionListener, TradeConstants,
     }
 
     PositionImpl getOrCreatePosition(Exchangeable e, boolean create) {
-        PositionImpl pos = positions.get(e);
-        if ( pos==null && create ) {
-            pos = new PositionImpl(this, e);
-            positions.put(e, pos);
+        positionLock.lock();
+        try {
+            PositionImpl pos = positions.get(e);
+            if ( pos==null && create ) {
+                pos = new PositionImpl(this, e);
+                ExchangeableMap<PositionImpl> positions = new ExchangeableMap<>(this.positions);
+                positions.put(e, pos);
+                this.positions = positions;
+            }
+            return pos;
+        }finally {
+            positionLock.unlock();
         }
-        return pos;
     }
 
     /**
@@ -862,9 +880,16 @@ public class AccountImpl implements Account, TxnSessionListener, TradeConstants,
         executorService.execute(()->{
             try{
                 //查询账户
-                money = txnSession.syncQryAccounts();
+                long[] money = txnSession.syncQryAccounts();
                 //查询持仓
-                positions = loadPositions();
+                ExchangeableMap<PositionImpl> positions = loadPositions();
+                positionLock.lock();
+                try {
+                    this.money = money;
+                    this.positions = positions;
+                }finally {
+                    positionLock.unlock();
+                }
             }catch(Throwable t) {
                 logger.error("Reload asset info failed", t);
             }
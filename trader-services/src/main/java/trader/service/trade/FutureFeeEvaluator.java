@@ -16,6 +16,7 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
 import trader.common.exchangeable.Exchangeable;
+import trader.common.exchangeable.ExchangeableMap;
 import trader.common.util.ConversionUtil;
 import trader.common.util.JsonEnabled;
 import trader.common.util.JsonUtil;
@@ -120,13 +121,13 @@ public class FutureFeeEvaluator implements TxnFeeEvaluator, TradeConstants {
 
     }
 
-    private Map<Exchangeable, FutureFeeInfo> feeInfos;
+    private ExchangeableMap<FutureFeeInfo> feeInfos;
     private Properties brokerMarginRatio;
 
     public FutureFeeEvaluator(Properties brokerMarginRatio, Map<Exchangeable, FutureFeeInfo> feeInfos)
     {
         this.brokerMarginRatio = brokerMarginRatio;
-        this.feeInfos = feeInfos;
+        this.feeInfos = new ExchangeableMap<>(feeInfos);
         for(Exchangeable e:feeInfos.keySet()) {
             long feePriceTick = feeInfos.get(e).priceTick;
             if ( e.getPriceTick()!= feePriceTick)  {
@@ -37,7 +37,10 @@ public class PositionImpl implements Position, TradeConstants {
      */
     private LinkedHashMap<String, OrderImpl> activeOrders = new LinkedHashMap<>();
 
-    private long lastPrice;
+    /**
+     * 只在positionLock中修改, 行情回调不加锁读取以判断价格是否变化
+     */
+    private volatile long lastPrice;
 
     public PositionImpl(AccountImpl account, Exchangeable e, PosDirection direction, long[] money, int[] volumes, List<PositionDetailImpl> details) {
         this(account, e);
@@ -181,6 +184,10 @@ public class PositionImpl implements Position, TradeConstants {
         addMoney(PosMoney_FrozenCommission, unit*orderFrozenCommission);
     }
 
+    boolean isPriceChanged(MarketData marketData) {
+        return marketData.lastPrice!=lastPrice;
+    }
+
     boolean onMarketData(MarketData marketData) {
         boolean result = false;
         if ( marketData.lastPrice!=lastPrice ) {
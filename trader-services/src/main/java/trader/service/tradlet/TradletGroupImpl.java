@@ -34,6 +34,7 @@ public class TradletGroupImpl implements TradletGroup, ServiceErrorCodes {
     private TradletGroupState configState = TradletGroupState.Enabled;
     private TradletGroupState state = TradletGroupState.Suspended;
     private Exchangeable exchangeable;
+    private List<Exchangeable> exchangeables = new ArrayList<>();
     private Account account;
     private KVStore kvStore;
     private List<TradletHolder> tradletHolders = new ArrayList<>();
@@ -65,6 +66,11 @@ public class TradletGroupImpl implements TradletGroup, ServiceErrorCodes {
         return exchangeable;
     }
 
+    @Override
+    public List<Exchangeable> getExchangeables(){
+        return exchangeables;
+    }
+
     @Override
     public KVStore getKVStore() {
         return kvStore;
@@ -124,6 +130,7 @@ public class TradletGroupImpl implements TradletGroup, ServiceErrorCodes {
         this.config = template.config;
         this.configState = template.state;
         this.exchangeable = template.exchangeable;
+        this.exchangeables = template.exchangeables;
         this.account = template.account;
         this.tradletHolders = template.tradletHolders;
         updateTime = System.currentTimeMillis();
@@ -159,6 +166,9 @@ public class TradletGroupImpl implements TradletGroup, ServiceErrorCodes {
         if ( exchangeable!=null ) {
             json.addProperty("exchangeable", exchangeable.toString());
         }
+        if ( exchangeables.size()>1 ) {
+            json.add("exchangeables", JsonUtil.object2json(exchangeables));
+        }
         json.addProperty("account", getAccount().getId());
         json.add("tradlets", JsonUtil.object2json(tradletHolders));
         json.add("playbookKeeper", playbookKeeper.toJson());
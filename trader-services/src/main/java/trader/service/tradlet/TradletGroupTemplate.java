@@ -10,6 +10,7 @@ import trader.common.exception.AppException;
 import trader.common.exchangeable.Exchangeable;
 import trader.common.util.ConversionUtil;
 import trader.common.util.IniFile;
+import trader.common.util.StringUtil;
 import trader.service.ServiceErrorCodes;
 import trader.service.trade.Account;
 import trader.service.trade.TradeService;
@@ -22,9 +23,14 @@ public class TradletGroupTemplate implements ServiceErrorCodes, TradletConstants
     String config;
     TradletGroupState state = TradletGroupState.Enabled;
     Exchangeable exchangeable;
+    List<Exchangeable> exchangeables = new ArrayList<>();
     List<TradletHolder> tradletHolders = new ArrayList<>();
     Account account;
 
+    public List<Exchangeable> getExchangeables(){
+        return exchangeables;
+    }
+
     public static TradletGroupTemplate parse(BeansContainer beansContainer, TradletGroupImpl group, String configText) throws AppException
     {
         TradeService tradeService = beansContainer.getBean(TradeService.class);
@@ -42,7 +48,16 @@ public class TradletGroupTemplate implements ServiceErrorCodes, TradletConstants
             Properties props = commonSection.getProperties();
             String exchangeableStr = props.getProperty("exchangeable");
             if ( props.containsKey("exchangeable")) {
-                template.exchangeable = Exchangeable.fromString(exchangeableStr);
+                //支持多个品种, 第一个为可交易品种
+                for(String instrumentId:StringUtil.split(exchangeableStr, ",|;|\\s")) {
+                    Exchangeable e = Exchangeable.fromString(instrumentId);
+                    if ( !template.exchangeables.contains(e) ) {
+                        template.exchangeables.add(e);
+                    }
+                }
+                if ( !template.exchangeables.isEmpty() ) {
+                    template.exchangeable = template.exchangeables.get(0);
+                }
             }
             template.account = tradeService.getAccount(props.getProperty("account"));
             if (template.account==null) {
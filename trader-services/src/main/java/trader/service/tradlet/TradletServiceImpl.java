@@ -31,6 +31,7 @@ import trader.common.beans.Discoverable;
 import trader.common.config.ConfigUtil;
 import trader.common.exception.AppException;
 import trader.common.exchangeable.Exchangeable;
+import trader.common.exchangeable.ExchangeableMap;
 import trader.common.util.ConversionUtil;
 import trader.common.util.StringUtil;
 import trader.service.ServiceErrorConstants;
@@ -87,6 +88,11 @@ public class TradletServiceImpl implements TradletConstants, TradletService, Plu
 
     private ArrayList<TradletGroupEngine> groupEngines = new ArrayList<>();
 
+    /**
+     * 品种到策略组的行情路由表, reloadGroups时整体替换
+     */
+    private volatile ExchangeableMap<AbsTradletGroupEngine[]> groupRoutes = new ExchangeableMap<>();
+
     private Map<String, Properties> playbookTemplates = new HashMap<>();
 
     @Override
@@ -310,6 +316,9 @@ public class TradletServiceImpl implements TradletConstants, TradletService, Plu
         String message = "Reload "+allGroupEngines.size()+" tradlet groups: "+(allGroupEngines.keySet())+", add: "+newGroupEngines.keySet()+", updated: "+updatedGroupTemplates.keySet()+", removed: "+currGroupEngines.keySet();
         logger.info(message);
         groupEngines = new ArrayList<>(allGroupEngines.values());
+        groupRoutes = buildGroupRoutes(groupEngines, updatedGroupTemplates);
+        //订阅策略组关注的全部品种
+        mdService.addSubscriptions(new ArrayList<>(groupRoutes.keySet()));
         JsonObject result = new JsonObject();
         result.add("new", newGroupIds);
         result.add("updated", updatedGroupIds);
@@ -318,6 +327,35 @@ public class TradletServiceImpl implements TradletConstants, TradletService, Plu
         return result;
     }
 
+    /**
+     * 构建品种到策略组的路由表, 每个策略组可以关注多个品种
+     *
+     * @param updatedTemplates 已更新但还未生效的策略组配置, 使用新配置的品种
+     */
+    public static ExchangeableMap<AbsTradletGroupEngine[]> buildGroupRoutes(Collection<? extends AbsTradletGroupEngine> groupEngines, Map<String, TradletGroupTemplate> updatedTemplates){
+        ExchangeableMap<List<AbsTradletGroupEngine>> routes = new ExchangeableMap<>();
+        for(AbsTradletGroupEngine groupEngine:groupEngines) {
+            TradletGroupImpl group = groupEngine.getGroup();
+            List<Exchangeable> exchangeables = group.getExchangeables();
+            if ( updatedTemplates!=null && updatedTemplates.containsKey(group.getId()) ) {
+                exchangeables = updatedTemplates.get(group.getId()).getExchangeables();
+            }
+            for(Exchangeable e:exchangeables) {
+                List<AbsTradletGroupEngine> engines = routes.get(e);
+                if ( engines==null ) {
+                    engines = new ArrayList<>();
+                    routes.put(e, engines);
+                }
+                engines.add(groupEngine);
+            }
+        }
+        ExchangeableMap<AbsTradletGroupEngine[]> result = new ExchangeableMap<>();
+        for(Map.Entry<Exchangeable, List<AbsTradletGroupEngine>> entry:routes.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().toArray(new AbsTradletGroupEngine[entry.getValue().size()]));
+        }
+        return result;
+    }
+
     /**
      * 解析所有Playbook 模板参数
      */
@@ -367,10 +405,10 @@ public class TradletServiceImpl implements TradletConstants, TradletService, Plu
      * 派发行情事件到交易组
      */
     private void queueMarketDataEvent(MarketData md) {
-        for(int i=0;i<groupEngines.size();i++) {
-            TradletGroupEngine groupEngine = groupEngines.get(i);
-            if ( groupEngine.getGroup().getExchangeable().equals(md.instrumentId) ) {
-                groupEngine.queueEvent(TradletEvent.EVENT_TYPE_MD_TICK, md);
+        AbsTradletGroupEngine[] engines = groupRoutes.get(md.instrumentId);
+        if ( engines!=null ) {
+            for(int i=0;i<engines.length;i++) {
+                engines[i].queueEvent(TradletEvent.EVENT_TYPE_MD_TICK, md);
             }
         }
     }
@@ -379,10 +417,10 @@ public class TradletServiceImpl implements TradletConstants, TradletService, Plu
      * 派发KBar事件到交易组
      */
     private void queueBarEvent(Exchangeable e, LeveledTimeSeries series) {
-        for(int i=0;i<groupEngines.size();i++) {
-            TradletGroupEngine groupEngine = groupEngines.get(i);
-            if ( groupEngine.getGroup().getExchangeable().equals(e) ) {
-                groupEngine.queueEvent(TradletEvent.EVENT_TYPE_MD_BAR, series);
+        AbsTradletGroupEngine[] engines = groupRoutes.get(e);
+        if ( engines!=null ) {
+            for(int i=0;i<engines.length;i++) {
+                engines[i].queueEvent(TradletEvent.EVENT_TYPE_MD_BAR, series);
             }
         }
     }
@@ -4,21 +4,20 @@ import java.util.Properties;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.ta4j.core.TimeSeries;
-import org.ta4j.core.indicators.helpers.ClosePriceIndicator;
-import org.ta4j.core.num.Num;
 
 import trader.common.beans.BeansContainer;
 import trader.common.beans.Discoverable;
+import trader.common.exception.AppException;
 import trader.common.exchangeable.Exchangeable;
 import trader.common.tick.PriceLevel;
 import trader.common.util.DateUtil;
+import trader.service.ServiceErrorConstants;
 import trader.service.md.MarketData;
 import trader.service.ta.LeveledTimeSeries;
-import trader.service.ta.LongNum;
 import trader.service.ta.TAItem;
 import trader.service.ta.TAService;
-import trader.service.ta.indicators.MACDIndicator;
+import trader.service.ta.indicators.IncrementalIndicator;
+import trader.service.ta.indicators.IncrementalMACDIndicator;
 import trader.service.trade.TradeConstants.PosDirection;
 import trader.service.tradlet.Playbook;
 import trader.service.tradlet.PlaybookBuilder;
@@ -42,22 +41,20 @@ public class MACD135Tradlet implements Tradlet {
     public static final String CLOSE_LONG_ACTION = "MACD135-Close-Long";
     public static final String CLOSE_SHORT_ACTION = "MACD135-Close-Short";
 
+    private static final String MACD_SPEC = "MACD(12,26,9)";
+
     private BeansContainer beansContainer;
     private TradletGroup group;
     private TAService taService;
     private PlaybookKeeper playbookKeeper;
     private Playbook activePlaybook;
 
-    private TimeSeries min1Series;
-    private TimeSeries min3Series;
-    private TimeSeries min5Series;
-
-    private MACDIndicator min1MACD;
-    private org.ta4j.core.indicators.MACDIndicator min1DIFF;
-    private MACDIndicator min3MACD;
-    private org.ta4j.core.indicators.MACDIndicator min3DIFF;
-    private MACDIndicator min5MACD;
-    private org.ta4j.core.indicators.MACDIndicator min5DIFF;
+    /**
+     * TAService共享的增量MACD指标, 包含DIFF
+     */
+    private IncrementalIndicator min1MACD;
+    private IncrementalIndicator min3MACD;
+    private IncrementalIndicator min5MACD;
 
     private Properties props = new Properties();
 
@@ -71,21 +68,20 @@ public class MACD135Tradlet implements Tradlet {
         taService = beansContainer.getBean(TAService.class);
 
         TAItem item = taService.getItem(instrument);
-        min1Series = item.getSeries(PriceLevel.MIN1);
-        min3Series = item.getSeries(PriceLevel.MIN3);
-        min5Series = item.getSeries(PriceLevel.MIN5);
-
-        ClosePriceIndicator min1ClosePrice = new ClosePriceIndicator(min1Series);
-        ClosePriceIndicator min3ClosePrice = new ClosePriceIndicator(min3Series);
-        ClosePriceIndicator min5ClosePrice = new ClosePriceIndicator(min5Series);
-
-        min1MACD = new MACDIndicator(min1ClosePrice);
-        min3MACD = new MACDIndicator(min3ClosePrice);
-        min5MACD = new MACDIndicator(min5ClosePrice);
+        if ( item==null ) {
+            throw new AppException(ServiceErrorConstants.ERR_TRADLET_TRADLET_CREATE_FAILED, "MACD135 "+instrument+" 没有技术分析数据");
+        }
+        min1MACD = getIndicator(item, PriceLevel.MIN1);
+        min3MACD = getIndicator(item, PriceLevel.MIN3);
+        min5MACD = getIndicator(item, PriceLevel.MIN5);
+    }
 
-        min1DIFF = new org.ta4j.core.indicators.MACDIndicator(min1ClosePrice, 12, 26);
-        min3DIFF = new org.ta4j.core.indicators.MACDIndicator(min3ClosePrice, 12, 26);
-        min5DIFF = new org.ta4j.core.indicators.MACDIndicator(min5ClosePrice, 12, 26);
+    private static IncrementalIndicator getIndicator(TAItem item, PriceLevel level) throws AppException {
+        IncrementalIndicator result = item.getIndicator(level, MACD_SPEC);
+        if ( result==null ) {
+            throw new AppException(ServiceErrorConstants.ERR_TRADLET_TRADLET_CREATE_FAILED, "MACD135 "+item.getExchangeable()+" 无法创建 "+level+" "+MACD_SPEC+" 指标");
+        }
+        return result;
     }
 
     @Override
@@ -191,9 +187,9 @@ public class MACD135Tradlet implements Tradlet {
 
         result =
                 //MACD(MIN3)<=MACD(MIN3,1)
-                levelLongCloseCriteria(min3Series, min3MACD, min3DIFF)
+                levelLongCloseCriteria(min3MACD)
                 //MACD(MIN1)<=MACD(MIN1,1)
-                && levelLongCloseCriteria(min1Series, min1MACD, min1DIFF);
+                && levelLongCloseCriteria(min1MACD);
 
         return result;
     }
@@ -206,9 +202,9 @@ public class MACD135Tradlet implements Tradlet {
 
         result =
                 //MACD(MIN3)<=MACD(MIN3,1)
-                levelShortCloseCriteria(min3Series, min3MACD, min3DIFF)
+                levelShortCloseCriteria(min3MACD)
                 //MACD(MIN1)<=MACD(MIN1,1)
-                && levelShortCloseCriteria(min1Series, min1MACD, min1DIFF);
+                && levelShortCloseCriteria(min1MACD);
 
         return result;
 
@@ -222,11 +218,11 @@ public class MACD135Tradlet implements Tradlet {
 
         result =
                 //DIFF(MIN5)>=0 && MACD(MIN5)>=MACD(MIN5,1)
-                levelLongCriteria(min5Series, min5MACD, min5DIFF)
+                levelLongCriteria(min5MACD)
                 //DIFF(MIN3)>=0 && MACD(MIN3)>=MACD(MIN3,1)
-                && levelLongCriteria(min3Series, min3MACD, min3DIFF)
+                && levelLongCriteria(min3MACD)
                 //DIFF(MIN1) > DIFF(MIN1,1)
-                && levelDIFF_G_THAN_DIFF1(min1Series, min1DIFF);
+                && levelDIFF_G_THAN_DIFF1(min1MACD);
         return result;
     }
 
@@ -238,26 +234,26 @@ public class MACD135Tradlet implements Tradlet {
 
         result =
                 //DIFF(MIN5)<=0 && MACD(MIN5)<=MACD(MIN5,1)
-                levelShortCriteria(min5Series, min5MACD, min5DIFF)
+                levelShortCriteria(min5MACD)
                 //DIFF(MIN3)<=0 && MACD(MIN3)<=MACD(MIN3,1)
-                && levelShortCriteria(min3Series, min3MACD, min3DIFF)
+                && levelShortCriteria(min3MACD)
                 //DIFF(MIN1)<DIFF(MIN1,1)
-                && levelDIFF_L_THAN_DIFF1(min1Series, min1DIFF);
+                && levelDIFF_L_THAN_DIFF1(min1MACD);
         return result;
     }
 
     /**
      * DIFF()<=0 && MACD<=MACD(1)
      */
-    private boolean levelLongCloseCriteria(TimeSeries levelSeries, MACDIndicator levelMACD, org.ta4j.core.indicators.MACDIndicator levelDIFF)
+    private boolean levelLongCloseCriteria(IncrementalIndicator levelMACD)
     {
         boolean result = false;
-        int levelLastIndex = levelSeries.getEndIndex();
+        int levelLastIndex = levelMACD.getEndIndex();
         if ( levelLastIndex>=1 ) {
-            Num levelDIFFValue = levelDIFF.getValue(levelLastIndex);
-            Num levelMACD0 = levelMACD.getValue(levelLastIndex);
-            Num levelMACD1 = levelMACD.getValue(levelLastIndex-1);
-            result = levelDIFFValue.isLessThanOrEqual(LongNum.ZERO) && levelMACD0.isLessThanOrEqual(levelMACD1);
+            long levelDIFFValue = levelMACD.getValue(IncrementalMACDIndicator.OUTPUT_DIFF, levelLastIndex);
+            long levelMACD0 = levelMACD.getValue(IncrementalMACDIndicator.OUTPUT_MACD, levelLastIndex);
+            long levelMACD1 = levelMACD.getValue(IncrementalMACDIndicator.OUTPUT_MACD, levelLastIndex-1);
+            result = levelDIFFValue<=0 && levelMACD0<=levelMACD1;
         }
         return result;
     }
@@ -265,15 +261,15 @@ public class MACD135Tradlet implements Tradlet {
     /**
      * DIFF()>=0 && MACD>=MACD(1)
      */
-    private boolean levelShortCloseCriteria(TimeSeries levelSeries, MACDIndicator levelMACD, org.ta4j.core.indicators.MACDIndicator levelDIFF)
+    private boolean levelShortCloseCriteria(IncrementalIndicator levelMACD)
     {
         boolean result = false;
-        int levelLastIndex = levelSeries.getEndIndex();
+        int levelLastIndex = levelMACD.getEndIndex();
         if ( levelLastIndex>=1 ) {
-            Num levelDIFFValue = levelDIFF.getValue(levelLastIndex);
-            Num levelMACD0 = levelMACD.getValue(levelLastIndex);
-            Num levelMACD1 = levelMACD.getValue(levelLastIndex-1);
-            result = levelDIFFValue.isGreaterThanOrEqual(LongNum.ZERO) && levelMACD0.isGreaterThanOrEqual(levelMACD1);
+            long levelDIFFValue = levelMACD.getValue(IncrementalMACDIndicator.OUTPUT_DIFF, levelLastIndex);
+            long levelMACD0 = levelMACD.getValue(IncrementalMACDIndicator.OUTPUT_MACD, levelLastIndex);
+            long levelMACD1 = levelMACD.getValue(IncrementalMACDIndicator.OUTPUT_MACD, levelLastIndex-1);
+            result = levelDIFFValue>=0 && levelMACD0>=levelMACD1;
         }
         return result;
     }
@@ -281,13 +277,13 @@ public class MACD135Tradlet implements Tradlet {
     /**
      * 判断 DIFF>DIFF(1)
      */
-    private static boolean levelDIFF_G_THAN_DIFF1(TimeSeries levelSeries, org.ta4j.core.indicators.MACDIndicator levelDIFF) {
+    private static boolean levelDIFF_G_THAN_DIFF1(IncrementalIndicator levelMACD) {
         boolean result = false;
-        int levelLastIndex = levelSeries.getEndIndex();
+        int levelLastIndex = levelMACD.getEndIndex();
         if ( levelLastIndex>=1 ) {
-            Num levelDIFFValue = levelDIFF.getValue(levelLastIndex);
-            Num levelDIFFValue0 = levelDIFF.getValue(levelLastIndex-1);
-            result = levelDIFFValue.isGreaterThan(levelDIFFValue0);
+            long levelDIFFValue = levelMACD.getValue(IncrementalMACDIndicator.OUTPUT_DIFF, levelLastIndex);
+            long levelDIFFValue0 = levelMACD.getValue(IncrementalMACDIndicator.OUTPUT_DIFF, levelLastIndex-1);
+            result = levelDIFFValue>levelDIFFValue0;
         }
         return result;
     }
@@ -295,39 +291,39 @@ public class MACD135Tradlet implements Tradlet {
     /**
      * 判断 DIFF<DIFF(1)
      */
-    private static boolean levelDIFF_L_THAN_DIFF1(TimeSeries levelSeries, org.ta4j.core.indicators.MACDIndicator levelDIFF) {
+    private static boolean levelDIFF_L_THAN_DIFF1(IncrementalIndicator levelMACD) {
         boolean result = false;
-        int levelLastIndex = levelSeries.getEndIndex();
+        int levelLastIndex = levelMACD.getEndIndex();
         if ( levelLastIndex>=1 ) {
-            Num levelDIFFValue = levelDIFF.getValue(levelLastIndex);
-            Num levelDIFFValue0 = levelDIFF.getValue(levelLastIndex-1);
-            result = levelDIFFValue.isLessThan(levelDIFFValue0);
+            long levelDIFFValue = levelMACD.getValue(IncrementalMACDIndicator.OUTPUT_DIFF, levelLastIndex);
+            long levelDIFFValue0 = levelMACD.getValue(IncrementalMACDIndicator.OUTPUT_DIFF, levelLastIndex-1);
+            result = levelDIFFValue<levelDIFFValue0;
         }
         return result;
     }
 
-    private static boolean levelLongCriteria(TimeSeries levelSeries, MACDIndicator levelMACD, org.ta4j.core.indicators.MACDIndicator levelDIFF)
+    private static boolean levelLongCriteria(IncrementalIndicator levelMACD)
     {
         boolean result = false;
-        int levelLastIndex = levelSeries.getEndIndex();
+        int levelLastIndex = levelMACD.getEndIndex();
         if ( levelLastIndex>=1 ) {
-            Num levelDIFFValue = levelDIFF.getValue(levelLastIndex);
-            Num levelMACD0 = levelMACD.getValue(levelLastIndex);
-            Num levelMACD1 = levelMACD.getValue(levelLastIndex-1);
-            result = levelDIFFValue.isGreaterThanOrEqual(LongNum.ZERO) && levelMACD0.isGreaterThanOrEqual(levelMACD1);
+            long levelDIFFValue = levelMACD.getValue(IncrementalMACDIndicator.OUTPUT_DIFF, levelLastIndex);
+            long levelMACD0 = levelMACD.getValue(IncrementalMACDIndicator.OUTPUT_MACD, levelLastIndex);
+            long levelMACD1 = levelMACD.getValue(IncrementalMACDIndicator.OUTPUT_MACD, levelLastIndex-1);
+            result = levelDIFFValue>=0 && levelMACD0>=levelMACD1;
         }
         return result;
     }
 
-    private static boolean levelShortCriteria(TimeSeries levelSeries, MACDIndicator levelMACD, org.ta4j.core.indicators.MACDIndicator levelDIFF)
+    private static boolean levelShortCriteria(IncrementalIndicator levelMACD)
     {
         boolean result = false;
-        int levelLastIndex = levelSeries.getEndIndex();
+        int levelLastIndex = levelMACD.getEndIndex();
         if ( levelLastIndex>=1 ) {
-            Num levelDIFFValue = levelDIFF.getValue(levelLastIndex);
-            Num levelMACD0 = levelMACD.getValue(levelLastIndex);
-            Num levelMACD1 = levelMACD.getValue(levelLastIndex-1);
-            result = levelDIFFValue.isLessThanOrEqual(LongNum.ZERO) && levelMACD0.isLessThanOrEqual(levelMACD1);
+            long levelDIFFValue = levelMACD.getValue(IncrementalMACDIndicator.OUTPUT_DIFF, levelLastIndex);
+            long levelMACD0 = levelMACD.getValue(IncrementalMACDIndicator.OUTPUT_MACD, levelLastIndex);
+            long levelMACD1 = levelMACD.getValue(IncrementalMACDIndicator.OUTPUT_MACD, levelLastIndex-1);
+            result = levelDIFFValue<=0 && levelMACD0<=levelMACD1;
         }
         return result;
     }
@@ -0,0 +1,296 @@
+package trader.simulator;
+
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+import trader.common.exception.AppException;
+import trader.common.exchangeable.Exchangeable;
+import trader.common.exchangeable.ExchangeableTradingTimes;
+import trader.common.util.ConversionUtil;
+import trader.common.util.IniFile;
+import trader.common.util.TraderHomeUtil;
+import trader.service.ServiceErrorConstants;
+import trader.service.data.KVStoreService;
+import trader.service.md.MarketDataService;
+import trader.service.plugin.PluginService;
+import trader.service.ta.TAServiceImpl;
+import trader.service.trade.Account;
+import trader.service.trade.MarketTimeService;
+import trader.service.trade.Order;
+import trader.service.trade.TradeConstants;
+import trader.service.trade.TradeService;
+import trader.service.tradlet.TradletConstants.TradletGroupState;
+import trader.service.tradlet.TradletService;
+import trader.simulator.trade.SimTradeService;
+
+/**
+ * 一个品种一个交易日一组参数的回测任务.
+ * <BR>每个任务使用独立的SimBeansContainer, 可以在多个线程中并行执行
+ */
+public class BacktestJob implements Callable<BacktestResult>, ServiceErrorConstants {
+    private static final Logger logger = LoggerFactory.getLogger(BacktestJob.class);
+
+    private Exchangeable exchangeable;
+    private LocalDate tradingDay;
+    private String paramSetId;
+    private Properties params;
+    private List<Map<String, Object>> groupConfigs;
+    private SharedMarketData sharedData;
+    private PluginService pluginService;
+
+    /**
+     * @param groupConfigs 交易组原始配置, 格式与配置文件相同: id, text
+     * @param params 参数覆盖, key格式为 SECTION.KEY, 例如 MACD135.volume=2
+     */
+    public BacktestJob(Exchangeable exchangeable, LocalDate tradingDay, List<Map<String, Object>> groupConfigs, String paramSetId, Properties params) {
+        this.exchangeable = exchangeable;
+        this.tradingDay = tradingDay;
+        this.groupConfigs = groupConfigs;
+        this.paramSetId = paramSetId;
+        this.params = params;
+    }
+
+    public Exchangeable getExchangeable() {
+        return exchangeable;
+    }
+
+    public LocalDate getTradingDay() {
+        return tradingDay;
+    }
+
+    public String getParamSetId() {
+        return paramSetId;
+    }
+
+    /**
+     * 使用共享的行情数据, 不再由每个任务单独加载
+     */
+    public void setSharedMarketData(SharedMarketData sharedData) {
+        this.sharedData = sharedData;
+        sharedData.retain();
+    }
+
+    /**
+     * 使用已经初始化的插件服务, 用于加载插件中的Tradlet. 插件服务只读, 可以被多个任务共享
+     */
+    public void setPluginService(PluginService pluginService) {
+        this.pluginService = pluginService;
+    }
+
+    @Override
+    public BacktestResult call() {
+        BacktestResult result = new BacktestResult(exchangeable, tradingDay, paramSetId);
+        long t0 = System.currentTimeMillis();
+        SimBeansContainer beansContainer = null;
+        try{
+            beansContainer = initBeans();
+            SimMarketTimeService mtService = beansContainer.getBean(SimMarketTimeService.class);
+            TradeService tradeService = beansContainer.getBean(TradeService.class);
+            //时间片段循环, 每个时间片之后记录权益用于计算回撤
+            while(mtService.nextTimePiece()) {
+                result.updateEquity(getEquity(tradeService));
+            }
+            result.updateEquity(getEquity(tradeService));
+            result.setTrades(getTrades(tradeService));
+        }catch(Throwable t) {
+            logger.error("Backtest "+exchangeable+" "+tradingDay+" "+paramSetId+" failed", t);
+            result.setError(t.toString());
+        }finally {
+            if ( beansContainer!=null ) {
+                destroyBeans(beansContainer);
+            }
+            if ( sharedData!=null ) {
+                sharedData.release();
+            }
+        }
+        result.setTime(System.currentTimeMillis()-t0);
+        return result;
+    }
+
+    private SimBeansContainer initBeans() throws Exception
+    {
+        SimBeansContainer beansContainer = new SimBeansContainer();
+        SimMarketTimeService mtService = new SimMarketTimeService();
+        SimScheduledExecutorService scheduledExecutorService = new SimScheduledExecutorService();
+        SimMarketDataService mdService = new SimMarketDataService();
+        SimKVStoreService kvStoreService = new SimKVStoreService();
+        SimTradeService tradeService = new SimTradeService();
+        TAServiceImpl taService = new TAServiceImpl();
+        SimTradletService tradletService = new SimTradletService();
+
+        beansContainer.addBean(MarketTimeService.class, mtService);
+        beansContainer.addBean(ScheduledExecutorService.class, scheduledExecutorService);
+        //账户在当前线程中同步初始化
+        beansContainer.addBean(ExecutorService.class, MoreExecutors.newDirectExecutorService());
+        beansContainer.addBean(MarketDataService.class, mdService);
+        beansContainer.addBean(KVStoreService.class, kvStoreService);
+        beansContainer.addBean(TradeService.class, tradeService);
+        beansContainer.addBean(TAServiceImpl.class, taService);
+        beansContainer.addBean(TradletService.class, tradletService);
+        if ( pluginService!=null ) {
+            beansContainer.addBean(PluginService.class, pluginService);
+        }
+
+        scheduledExecutorService.init(beansContainer);
+        ExchangeableTradingTimes tradingTimes = exchangeable.exchange().getTradingTimes(exchangeable, tradingDay);
+        mtService.setTimeRanges(tradingDay, tradingTimes.getMarketTimes() );
+        mdService.addSubscriptions(Arrays.asList(exchangeable));
+        if ( sharedData!=null ) {
+            mdService.setMarketDataBuffers(Collections.singletonMap(exchangeable, sharedData.acquire()));
+        }
+        mdService.init(beansContainer);
+        //并行任务不写MIN1缓存, 避免读到其它任务未写完的文件
+        taService.addSubscriptions(exchangeable.id());
+        taService.setSaveBars(false);
+        taService.setUseMarketDataCache(true);
+        if ( sharedData!=null ) {
+            taService.setSharedMin1Bars(Collections.singletonMap(exchangeable, sharedData.getMin1Bars()));
+        }
+        taService.init(beansContainer);
+        tradeService.init(beansContainer);
+        tradletService.setGroupConfigs(createGroupConfigs());
+        tradletService.init(beansContainer);
+        return beansContainer;
+    }
+
+    private void destroyBeans(SimBeansContainer beansContainer) {
+        try{
+            beansContainer.getBean(TradletService.class).destroy();
+            beansContainer.getBean(TradeService.class).destroy();
+            beansContainer.getBean(TAServiceImpl.class).destroy();
+            beansContainer.getBean(MarketDataService.class).destroy();
+        }catch(Throwable t) {
+            logger.error("Backtest "+exchangeable+" "+tradingDay+" destroy failed", t);
+        }
+    }
+
+    /**
+     * 交易组配置: 交易品种替换为当前任务品种, 状态改为Enabled, 并覆盖参数
+     */
+    private List<Map<String, Object>> createGroupConfigs() throws Exception
+    {
+        Properties overrides = new Properties();
+        overrides.setProperty("common.exchangeable", exchangeable.toString());
+        overrides.setProperty("common.state", TradletGroupState.Enabled.name());
+        if ( params!=null ) {
+            overrides.putAll(params);
+        }
+        List<Map<String, Object>> result = new ArrayList<>(groupConfigs.size());
+        for(Map<String, Object> groupConfig:groupConfigs) {
+            Map<String, Object> groupConfig2 = new LinkedHashMap<>(groupConfig);
+            groupConfig2.put("text", overrideConfig(ConversionUtil.toString(groupConfig.get("text")), overrides, null));
+            result.add(groupConfig2);
+        }
+        return result;
+    }
+
+    /**
+     * 检查每个参数至少对应一个交易组的配置段.
+     * <BR>不同交易组的配置段可以不同, 参数只作用于存在对应配置段的交易组
+     *
+     * @throws AppException 参数在所有交易组中都没有对应的SECTION
+     */
+    public static void validateOverrides(List<Map<String, Object>> groupConfigs, Properties overrides) throws Exception
+    {
+        Set<String> usedKeys = new HashSet<>();
+        for(Map<String, Object> groupConfig:groupConfigs) {
+            overrideConfig(ConversionUtil.toString(groupConfig.get("text")), overrides, usedKeys);
+        }
+        //配置段不存在的参数不能静默忽略, 否则回测结果与参数无关
+        for(Object key0:overrides.keySet()) {
+            if ( !usedKeys.contains(key0.toString()) ) {
+                List<String> groupIds = new ArrayList<>(groupConfigs.size());
+                for(Map<String, Object> groupConfig:groupConfigs) {
+                    groupIds.add(ConversionUtil.toString(groupConfig.get("id")));
+                }
+                throw new AppException(ERR_TRADLET_TRADLETGROUP_INVALID_CONFIG, "交易组 "+groupIds+" 配置 "+System.getProperty(TraderHomeUtil.PROP_TRADER_CONFIG_FILE)+" 没有参数 "+key0+" 对应的配置段");
+            }
+        }
+    }
+
+    /**
+     * 按照 SECTION.KEY=VALUE 替换或增加INI配置中的属性, SECTION不存在的参数忽略
+     *
+     * @param usedKeys 不为null时记录已使用的参数
+     */
+    public static String overrideConfig(String configText, Properties overrides, Set<String> usedKeys) throws Exception
+    {
+        IniFile configIni = new IniFile(new StringReader(configText));
+        StringBuilder result = new StringBuilder(configText.length()+128);
+        for(IniFile.Section section:configIni.getAllSections()) {
+            String prefix = section.getName()+".";
+            List<String> lines = new ArrayList<>(Arrays.asList(section.getText().split("\n")));
+            for(Object key0:overrides.keySet()) {
+                String key = key0.toString();
+                if ( !key.startsWith(prefix) ) {
+                    continue;
+                }
+                if ( usedKeys!=null ) {
+                    usedKeys.add(key);
+                }
+                String propKey = key.substring(prefix.length());
+                String line = propKey+"="+overrides.getProperty(key);
+                boolean replaced = false;
+                for(int i=0;i<lines.size();i++) {
+                    String currLine = lines.get(i);
+                    int idx = currLine.indexOf('=');
+                    if ( idx>0 && currLine.substring(0, idx).trim().equals(propKey) ) {
+                        lines.set(i, line);
+                        replaced = true;
+                        break;
+                    }
+                }
+                if ( !replaced ) {
+                    lines.add(line);
+                }
+            }
+            result.append("[").append(section.getName()).append("]\n");
+            for(String line:lines) {
+                result.append(line).append("\n");
+            }
+            result.append("\n");
+        }
+        return result.toString();
+    }
+
+    /**
+     * 账户权益变化: 平仓盈亏+持仓盈亏-手续费
+     */
+    private static long getEquity(TradeService tradeService) {
+        long result = 0;
+        for(Account account:tradeService.getAccounts()) {
+            result += account.getMoney(TradeConstants.AccMoney_CloseProfit)
+                    + account.getMoney(TradeConstants.AccMoney_PositionProfit)
+                    - account.getMoney(TradeConstants.AccMoney_Commission);
+        }
+        return result;
+    }
+
+    private static int getTrades(TradeService tradeService) {
+        int result = 0;
+        for(Account account:tradeService.getAccounts()) {
+            for(Order order:account.getOrders()) {
+                result += order.getTransactions().size();
+            }
+        }
+        return result;
+    }
+
+}
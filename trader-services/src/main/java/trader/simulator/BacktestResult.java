@@ -0,0 +1,113 @@
+package trader.simulator;
+
+import java.time.LocalDate;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import trader.common.exchangeable.Exchangeable;
+import trader.common.util.DateUtil;
+import trader.common.util.JsonEnabled;
+import trader.common.util.PriceUtil;
+
+/**
+ * 单个回测任务的结果: 盈亏, 成交次数和最大回撤
+ */
+public class BacktestResult implements JsonEnabled {
+
+    private Exchangeable exchangeable;
+    private LocalDate tradingDay;
+    private String paramSetId;
+    private long pnl;
+    private long maxEquity;
+    private long maxDrawdown;
+    private int trades;
+    private long time;
+    private String error;
+
+    public BacktestResult(Exchangeable exchangeable, LocalDate tradingDay, String paramSetId) {
+        this.exchangeable = exchangeable;
+        this.tradingDay = tradingDay;
+        this.paramSetId = paramSetId;
+    }
+
+    public Exchangeable getExchangeable() {
+        return exchangeable;
+    }
+
+    public LocalDate getTradingDay() {
+        return tradingDay;
+    }
+
+    public String getParamSetId() {
+        return paramSetId;
+    }
+
+    /**
+     * 当日盈亏: 平仓盈亏+持仓盈亏-手续费
+     */
+    public long getPnl() {
+        return pnl;
+    }
+
+    /**
+     * 当日内权益从最高点的最大回撤
+     */
+    public long getMaxDrawdown() {
+        return maxDrawdown;
+    }
+
+    public int getTrades() {
+        return trades;
+    }
+
+    /**
+     * 回测耗时(ms)
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    void updateEquity(long equity) {
+        pnl = equity;
+        if ( equity>maxEquity ) {
+            maxEquity = equity;
+        }
+        if ( maxEquity-equity>maxDrawdown ) {
+            maxDrawdown = maxEquity-equity;
+        }
+    }
+
+    void setTrades(int trades) {
+        this.trades = trades;
+    }
+
+    void setTime(long time) {
+        this.time = time;
+    }
+
+    void setError(String error) {
+        this.error = error;
+    }
+
+    @Override
+    public JsonElement toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("exchangeable", exchangeable.toString());
+        json.addProperty("tradingDay", DateUtil.date2str(tradingDay));
+        json.addProperty("paramSet", paramSetId);
+        json.addProperty("pnl", PriceUtil.long2str(pnl));
+        json.addProperty("maxDrawdown", PriceUtil.long2str(maxDrawdown));
+        json.addProperty("trades", trades);
+        json.addProperty("time", time);
+        if ( error!=null ) {
+            json.addProperty("error", error);
+        }
+        return json;
+    }
+
+}
@@ -0,0 +1,129 @@
+package trader.simulator;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import trader.common.util.JsonEnabled;
+import trader.common.util.JsonUtil;
+import trader.common.util.PriceUtil;
+
+/**
+ * 一个参数组所有回测任务的合并结果.
+ * <BR>每个交易日所有品种的盈亏相加, 按交易日顺序计算累计盈亏的最大回撤
+ */
+public class BacktestSummary implements JsonEnabled {
+
+    private String paramSetId;
+    private Properties params;
+    private long pnl;
+    private long maxDrawdown;
+    private long maxIntradayDrawdown;
+    private int trades;
+    private int tradingDays;
+    private int winDays;
+    private int failedJobs;
+
+    public BacktestSummary(String paramSetId, Properties params, List<BacktestResult> results) {
+        this.paramSetId = paramSetId;
+        this.params = params;
+        TreeMap<LocalDate, Long> dailyPnls = new TreeMap<>();
+        for(BacktestResult result:results) {
+            if ( !result.getParamSetId().equals(paramSetId) ) {
+                continue;
+            }
+            if ( result.getError()!=null ) {
+                failedJobs++;
+                continue;
+            }
+            Long dailyPnl = dailyPnls.get(result.getTradingDay());
+            dailyPnls.put(result.getTradingDay(), (dailyPnl!=null?dailyPnl:0)+result.getPnl());
+            trades += result.getTrades();
+            maxIntradayDrawdown = Math.max(maxIntradayDrawdown, result.getMaxDrawdown());
+        }
+        long maxPnl = 0;
+        for(long dailyPnl:dailyPnls.values()) {
+            pnl += dailyPnl;
+            maxPnl = Math.max(maxPnl, pnl);
+            maxDrawdown = Math.max(maxDrawdown, maxPnl-pnl);
+            if ( dailyPnl>0 ) {
+                winDays++;
+            }
+        }
+        tradingDays = dailyPnls.size();
+    }
+
+    public String getParamSetId() {
+        return paramSetId;
+    }
+
+    public Properties getParams() {
+        return params;
+    }
+
+    public long getPnl() {
+        return pnl;
+    }
+
+    /**
+     * 按交易日累计盈亏的最大回撤
+     */
+    public long getMaxDrawdown() {
+        return maxDrawdown;
+    }
+
+    /**
+     * 单个回测任务日内的最大回撤
+     */
+    public long getMaxIntradayDrawdown() {
+        return maxIntradayDrawdown;
+    }
+
+    public int getTrades() {
+        return trades;
+    }
+
+    public int getTradingDays() {
+        return tradingDays;
+    }
+
+    public int getWinDays() {
+        return winDays;
+    }
+
+    public int getFailedJobs() {
+        return failedJobs;
+    }
+
+    @Override
+    public JsonElement toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("paramSet", paramSetId);
+        json.add("params", JsonUtil.object2json(params));
+        json.addProperty("pnl", PriceUtil.long2str(pnl));
+        json.addProperty("maxDrawdown", PriceUtil.long2str(maxDrawdown));
+        json.addProperty("maxIntradayDrawdown", PriceUtil.long2str(maxIntradayDrawdown));
+        json.addProperty("trades", trades);
+        json.addProperty("tradingDays", tradingDays);
+        json.addProperty("winDays", winDays);
+        json.addProperty("failedJobs", failedJobs);
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return paramSetId
+                +"\t"+PriceUtil.long2str(pnl)
+                +"\t"+PriceUtil.long2str(maxDrawdown)
+                +"\t"+PriceUtil.long2str(maxIntradayDrawdown)
+                +"\t"+trades
+                +"\t"+tradingDays
+                +"\t"+winDays
+                +"\t"+failedJobs;
+    }
+
+}
@@ -0,0 +1,75 @@
+package trader.simulator;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import org.ta4j.core.Bar;
+
+import trader.common.exchangeable.Exchangeable;
+
+/**
+ * 同一品种同一交易日的多个回测任务共享的只读行情数据.
+ * <BR>第一个任务开始时加载, 最后一个任务结束后释放.
+ * <BR>历史MIN1数据由同一品种的所有交易日共享, 在整个回测期间保留
+ */
+public class SharedMarketData {
+
+    private SimMarketDataService loader;
+    private Exchangeable exchangeable;
+    private LocalDate tradingDay;
+    private int refCount;
+    private ByteBuffer buf;
+    private Map<LocalDate, List<Bar>> min1Bars;
+
+    /**
+     * @param min1Bars 同一品种共享的历史MIN1数据, 需要线程安全
+     */
+    public SharedMarketData(SimMarketDataService loader, Exchangeable exchangeable, LocalDate tradingDay, Map<LocalDate, List<Bar>> min1Bars) {
+        this.loader = loader;
+        this.exchangeable = exchangeable;
+        this.tradingDay = tradingDay;
+        this.min1Bars = min1Bars;
+    }
+
+    public Exchangeable getExchangeable() {
+        return exchangeable;
+    }
+
+    public LocalDate getTradingDay() {
+        return tradingDay;
+    }
+
+    public Map<LocalDate, List<Bar>> getMin1Bars() {
+        return min1Bars;
+    }
+
+    /**
+     * 创建回测任务时增加引用
+     */
+    public synchronized void retain() {
+        refCount++;
+    }
+
+    /**
+     * 回测任务开始时获取数据, 返回的ByteBuffer有独立的position
+     */
+    public synchronized ByteBuffer acquire() {
+        if ( buf==null ) {
+            buf = loader.loadMarketDataBuffer(exchangeable, tradingDay);
+        }
+        return buf.duplicate();
+    }
+
+    /**
+     * 回测任务结束时释放引用
+     */
+    public synchronized void release() {
+        refCount--;
+        if ( refCount<=0 ) {
+            buf = null;
+        }
+    }
+
+}
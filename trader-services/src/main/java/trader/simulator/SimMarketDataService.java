@@ -1,5 +1,6 @@
 package trader.simulator;
 
+import java.nio.ByteBuffer;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
@@ -8,6 +9,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -24,10 +26,14 @@ import trader.common.exchangeable.ExchangeableTradingTimes;
 import trader.common.util.CSVDataSet;
 import trader.common.util.CSVMarshallHelper;
 import trader.common.util.CSVUtil;
+import trader.common.util.DateUtil;
 import trader.common.util.StringUtil;
 import trader.common.util.TraderHomeUtil;
 import trader.service.log.LogServiceImpl;
 import trader.service.md.MarketData;
+import trader.service.md.MarketDataCache;
+import trader.service.md.MarketDataColumnCodec;
+import trader.service.md.MarketDataCursor;
 import trader.service.md.MarketDataListener;
 import trader.service.md.MarketDataProducer;
 import trader.service.md.MarketDataProducerFactory;
@@ -40,45 +46,53 @@ import trader.service.md.MarketDataServiceImpl;
 public class SimMarketDataService implements MarketDataService, SimMarketTimeAware {
     private final static Logger logger = LoggerFactory.getLogger(SimMarketDataService.class);
 
+    /**
+     * 每个品种的行情数据, 通过游标直接访问内存映射的列存数据, 不为每个TICK创建对象
+     */
     private static class SimMDInfo {
+        Exchangeable exchangeable;
         ExchangeableTradingTimes tradingTimes;
-        List<MarketData> marketDatas = new ArrayList<>();
+        MarketDataCursor cursor;
         int nextDataIndex = 0;
-
+        MarketData lastData;
 
         /**
-         * 寻找下一个行情数据
+         * 寻找下一个行情数据, 返回独立的MarketData对象
          */
         public MarketData seek(LocalDateTime lastTime, LocalDateTime actionTime) {
-            MarketData result = null;
-            if ( lastTime==null ) { //第一次, 寻找与市场时间相等或最后一个小于市场时间的行情切片
-                for(int i=0;i<marketDatas.size();i++) {
-                    MarketData md = marketDatas.get(i);
-                    int actionTimeCompare= actionTime.compareTo(md.updateTime);
-                    if ( actionTimeCompare>=0 ) { //actionTime >= marketDataTime
-                        nextDataIndex = i+1;
-                        result = md;
-                        continue;
-                    } else {
-                        nextDataIndex = i;
-                        break;
-                    }
-                }
-            } else { //后续, 寻找lastTime<=updateTime&&updateTime<=actionTime
-                for(int i=nextDataIndex;i<marketDatas.size();i++) {
-                    MarketData md = marketDatas.get(i);
-                    int actionTimeCompare= actionTime.compareTo(md.updateTime);
-                    if ( actionTimeCompare>=0 ) { //actionTime >= marketDataTime
-                        nextDataIndex = i+1;
-                        result = md;
-                        continue;
-                    } else {
-                        nextDataIndex = i;
-                        break;
-                    }
+            int resultIndex = -1;
+            long actionTimestamp = DateUtil.localdatetime2long(cursor.getExchangeable().exchange().getZoneId(), actionTime);
+            //第一次, 寻找与市场时间相等或最后一个小于市场时间的行情切片
+            //后续, 寻找lastTime<=updateTime&&updateTime<=actionTime
+            int beginIndex = (lastTime==null)?0:nextDataIndex;
+            for(int i=beginIndex;i<cursor.size();i++) {
+                if ( actionTimestamp>=cursor.getUpdateTimestamp(i) ) { //actionTime >= marketDataTime
+                    nextDataIndex = i+1;
+                    resultIndex = i;
+                    continue;
+                } else {
+                    nextDataIndex = i;
+                    break;
                 }
             }
-            return result;
+            if ( resultIndex<0 ) {
+                return null;
+            }
+            //监听函数会持有行情对象, 需要复制
+            lastData = cursor.copy(resultIndex);
+            return lastData;
+        }
+
+        /**
+         * 下一个行情切片的时间戳
+         *
+         * @return Long.MAX_VALUE 如果没有更多数据
+         */
+        public long getNextTimestamp() {
+            if ( nextDataIndex>=cursor.size() ) {
+                return Long.MAX_VALUE;
+            }
+            return cursor.getUpdateTimestamp(nextDataIndex);
         }
 
     }
@@ -89,6 +103,17 @@ public class SimMarketDataService implements MarketDataService, SimMarketTimeAwa
     protected Map<Exchangeable, List<MarketDataListener>> listeners = new HashMap<>();
     protected Set<Exchangeable> subscriptions = new TreeSet<>();
     protected Map<Exchangeable, SimMDInfo> mdInfos = new HashMap<>();
+    private Map<Exchangeable, ByteBuffer> marketDataBuffers;
+    /**
+     * 按下一个行情切片时间排序的品种, 每个时间片只处理到期的品种
+     */
+    private PriorityQueue<SimMDInfo> mdQueue = new PriorityQueue<>((SimMDInfo i1, SimMDInfo i2)->{
+        int result = Long.compare(i1.getNextTimestamp(), i2.getNextTimestamp());
+        if ( result==0 ) {
+            result = i1.exchangeable.compareTo(i2.exchangeable);
+        }
+        return result;
+    });
 
     private LocalDateTime lastTime;
 
@@ -121,8 +146,8 @@ public class SimMarketDataService implements MarketDataService, SimMarketTimeAwa
     public MarketData getLastData(Exchangeable e) {
         MarketData result = null;
         SimMDInfo mdInfo = mdInfos.get(e);
-        if ( mdInfo!=null && mdInfo.nextDataIndex>0 ) {
-            result = mdInfo.marketDatas.get(mdInfo.nextDataIndex-1);
+        if ( mdInfo!=null ) {
+            result = mdInfo.lastData;
         }
         return result;
     }
@@ -150,18 +175,21 @@ public class SimMarketDataService implements MarketDataService, SimMarketTimeAwa
     }
 
     /**
-     * 从Repository 加载测试时间段的数据
+     * 从Repository 加载测试时间段的数据.
+     * <BR>init之前已经调用addSubscriptions指定品种时, 不再加载配置文件中的订阅品种
      */
     @Override
     public void init(BeansContainer beansContainer) throws Exception {
         this.beansContainer = beansContainer;
         //Load subscriptions
-        String text = StringUtil.trim(ConfigUtil.getString(MarketDataServiceImpl.ITEM_SUBSCRIPTIONS));
-        for(String instrumentId:StringUtil.split(text, ",|;|\r|\n")) {
-            if ( instrumentId.startsWith("$")) {
-                continue;
+        if ( subscriptions.isEmpty() ) {
+            String text = StringUtil.trim(ConfigUtil.getString(MarketDataServiceImpl.ITEM_SUBSCRIPTIONS));
+            for(String instrumentId:StringUtil.split(text, ",|;|\r|\n")) {
+                if ( instrumentId.startsWith("$")) {
+                    continue;
+                }
+                subscriptions.add(Exchangeable.fromString(instrumentId));
             }
-            subscriptions.add(Exchangeable.fromString(instrumentId));
         }
         SimMarketTimeService mtService = beansContainer.getBean(SimMarketTimeService.class);
         if ( mtService!=null ) {
@@ -179,56 +207,125 @@ public class SimMarketDataService implements MarketDataService, SimMarketTimeAwa
     public void onTimeChanged(LocalDate tradingDay, LocalDateTime actionTime) {
         //通知行情数据
         if ( lastTime==null ) {
-            //第一次调用, 需要加载数据
+            //第一次调用, 需要加载数据, 每个品种从最后一个不晚于当前时间的行情切片开始
             loadMarketData(tradingDay);
-        }
-        for(Exchangeable e:subscriptions) {
-            SimMDInfo mdInfo = mdInfos.get(e);
-            if ( mdInfo==null ) {
-                continue;
-            }
-            MarketData md = mdInfo.seek(lastTime, actionTime);
-            if ( md==null ) {
-                continue;
+            for(Exchangeable e:subscriptions) {
+                SimMDInfo mdInfo = mdInfos.get(e);
+                if ( mdInfo!=null ) {
+                    notifyMarketData(mdInfo, mdInfo.seek(null, actionTime));
+                    mdQueue.add(mdInfo);
+                }
             }
-            md.postProcess(mdInfo.tradingTimes);
-            for(MarketDataListener listener:genericListeners) {
-                listener.onMarketData(md);
+        } else {
+            List<SimMDInfo> dueInfos = null;
+            while(!mdQueue.isEmpty()) {
+                SimMDInfo mdInfo = mdQueue.peek();
+                if ( mdInfo.getNextTimestamp()>DateUtil.localdatetime2long(mdInfo.exchangeable.exchange().getZoneId(), actionTime) ) {
+                    break;
+                }
+                mdQueue.poll();
+                if ( dueInfos==null ) {
+                    dueInfos = new ArrayList<>();
+                }
+                dueInfos.add(mdInfo);
             }
-            List<MarketDataListener> eListeners = listeners.get(e);
-            if ( eListeners!=null ) {
-                for(MarketDataListener listener:eListeners) {
-                    listener.onMarketData(md);
+            if ( dueInfos!=null ) {
+                //同一时间片内按品种顺序通知, 与逐个品种检查时一致
+                if ( dueInfos.size()>1 ) {
+                    dueInfos.sort((SimMDInfo i1, SimMDInfo i2)->i1.exchangeable.compareTo(i2.exchangeable));
                 }
+                for(SimMDInfo mdInfo:dueInfos) {
+                    notifyMarketData(mdInfo, mdInfo.seek(lastTime, actionTime));
+                }
+                mdQueue.addAll(dueInfos);
             }
         }
         lastTime = actionTime;
     }
 
+    /**
+     * 下一个行情切片的时间
+     */
+    @Override
+    public LocalDateTime getNextTime(LocalDateTime actionTime) {
+        SimMDInfo mdInfo = mdQueue.peek();
+        if ( mdInfo==null || mdInfo.getNextTimestamp()==Long.MAX_VALUE ) {
+            return null;
+        }
+        return DateUtil.long2datetime(mdInfo.exchangeable.exchange().getZoneId(), mdInfo.getNextTimestamp());
+    }
+
+    private void notifyMarketData(SimMDInfo mdInfo, MarketData md) {
+        if ( md==null ) {
+            return;
+        }
+        md.postProcess(mdInfo.tradingTimes);
+        for(MarketDataListener listener:genericListeners) {
+            listener.onMarketData(md);
+        }
+        List<MarketDataListener> eListeners = listeners.get(mdInfo.exchangeable);
+        if ( eListeners!=null ) {
+            for(MarketDataListener listener:eListeners) {
+                listener.onMarketData(md);
+            }
+        }
+    }
+
     private void loadMarketData(LocalDate tradingDay) {
-        ExchangeableData data = TraderHomeUtil.getExchangeableData();
         for(Exchangeable e:subscriptions) {
             SimMDInfo mdInfo  =new SimMDInfo();
+            mdInfo.exchangeable = e;
             mdInfo.tradingTimes = e.exchange().getTradingTimes(e, tradingDay);
-            DataInfo tickInfo = ExchangeableData.TICK_CTP;
-            String tickCsv = null;
-            try{
-                tickCsv = data.load(e, tickInfo, tradingDay);
-            }catch(Throwable t) {
-                logger.error("加载 "+e+" 交易日 "+tradingDay+" TICK行情数据失败", t);
-                throw new RuntimeException(t);
+            MarketDataProducer mdProducer = createMarketDataProducer(ExchangeableData.TICK_CTP);
+            ByteBuffer buf = null;
+            if ( marketDataBuffers!=null && marketDataBuffers.containsKey(e) ) {
+                //共享的只读数据, 使用独立的position
+                buf = marketDataBuffers.get(e).duplicate();
+            } else {
+                buf = loadMarketDataBuffer(e, tradingDay);
             }
+            mdInfo.cursor = new MarketDataCursor(buf, e, tradingDay, ()->mdProducer.createEmptyMarketData(e));
+            mdInfos.put(e, mdInfo);
+        }
+    }
 
-            CSVMarshallHelper csvMarshallHelper = createCSVMarshallHelper(tickInfo);
-            MarketDataProducer mdProducer = createMarketDataProducer(tickInfo);
+    /**
+     * 使用已经加载的行情数据, 多个回测任务可以共享同一份数据. 需要在第一个时间片之前调用
+     */
+    public void setMarketDataBuffers(Map<Exchangeable, ByteBuffer> marketDataBuffers) {
+        this.marketDataBuffers = marketDataBuffers;
+    }
 
-            CSVDataSet csvDataSet = CSVUtil.parse(tickCsv);
-            while(csvDataSet.next()) {
-                MarketData marketData = mdProducer.createMarketData(csvMarshallHelper.unmarshall(csvDataSet.getRow()), tradingDay);
-               mdInfo.marketDatas.add(marketData);
-            }
-            mdInfos.put(e, mdInfo);
+    /**
+     * 从Repository加载一个品种一个交易日的TICK数据, 返回列存格式.
+     * <BR>数据保存在进程内共享的缓存中, 并行回测同一品种同一交易日只加载一次
+     */
+    public ByteBuffer loadMarketDataBuffer(Exchangeable e, LocalDate tradingDay) {
+        ExchangeableData data = TraderHomeUtil.getExchangeableData();
+        DataInfo tickInfo = ExchangeableData.TICK_CTP;
+        ByteBuffer buf = null;
+        try{
+            buf = MarketDataCache.getInstance().get(e, tradingDay, tickInfo, ()->{
+                if ( data.existsBinary(e, tickInfo, tradingDay) ) {
+                    //优先使用内存映射的二进制列存格式
+                    return data.mapBinary(e, tickInfo, tradingDay);
+                }
+                //CSV格式转换为列存格式, 避免每个TICK长期占用一个对象
+                MarketDataProducer mdProducer = createMarketDataProducer(tickInfo);
+                String tickCsv = data.load(e, tickInfo, tradingDay);
+                CSVMarshallHelper csvMarshallHelper = createCSVMarshallHelper(tickInfo);
+                List<MarketData> marketDatas = new ArrayList<>();
+                CSVDataSet csvDataSet = CSVUtil.parse(tickCsv);
+                while(csvDataSet.next()) {
+                    marketDatas.add(mdProducer.createMarketData(csvMarshallHelper.unmarshall(csvDataSet.getRow()), tradingDay));
+                }
+                return MarketDataColumnCodec.encode(marketDatas);
+            });
+        }catch(Throwable t) {
+            logger.error("加载 "+e+" 交易日 "+tradingDay+" TICK行情数据失败", t);
+            throw new RuntimeException(t);
         }
+        return buf;
     }
 
     private CSVMarshallHelper createCSVMarshallHelper(DataInfo tickInfo) {
@@ -10,4 +10,14 @@ public interface SimMarketTimeAware {
 
     public void onTimeChanged(LocalDate tradingDay, LocalDateTime actionTime);
 
+    /**
+     * 返回下一个需要处理的时间, 模拟时钟会直接跳到所有服务中最早的时间, 不再逐个时间片推进.
+     * <BR>不晚于当前时间表示需要在下一个时间片处理
+     *
+     * @return null 如果没有待处理的事件
+     */
+    public default LocalDateTime getNextTime(LocalDateTime actionTime) {
+        return null;
+    }
+
 }
@@ -59,26 +59,43 @@ public class SimMarketTimeService implements MarketTimeService {
     }
 
     /**
-     * 模拟走动一个时间片
+     * 模拟走动一个时间片, 然后直接跳到下一个有事件的时间片.
+     * <BR>下一个事件为所有SimMarketTimeAware返回的最早时间: 行情/定时任务/交易回报等, 按最小时间间隔向上对齐, 保证与逐个时间片推进的时间完全一致
      */
     public boolean nextTimePiece()
     {
+        while( timeRangeIndex<timeRanges.length && time.compareTo(timeRanges[timeRangeIndex][1])>=0 ) {
+            timeRangeIndex++;
+        }
         if ( timeRangeIndex>=timeRanges.length) {
             return false;
         }
-        LocalDateTime[] timeRange = timeRanges[timeRangeIndex];
-        LocalDateTime beginTime = timeRange[0], endTime = timeRange[1];
-        if ( time==null ) {
-            time = beginTime;
-        } else if ( time.compareTo(endTime)>=0 ) {
-            timeRangeIndex++;
-            return nextTimePiece();
-        }
         LocalDateTime dt = time;
         for(SimMarketTimeAware c:timeListeners)
             c.onTimeChanged(tradingDay, dt);
-        time = time.plus(minTimeInterval, ChronoUnit.MILLIS);
+        time = getNextTime(dt, timeRanges[timeRangeIndex][1]);
         return true;
     }
 
+    /**
+     * 计算下一个时间片, 没有事件则直接跳到当前时间段结束
+     */
+    private LocalDateTime getNextTime(LocalDateTime dt, LocalDateTime endTime) {
+        LocalDateTime result = null;
+        for(SimMarketTimeAware c:timeListeners) {
+            LocalDateTime nextTime = c.getNextTime(dt);
+            if ( nextTime!=null && (result==null || nextTime.isBefore(result)) ) {
+                result = nextTime;
+            }
+        }
+        if ( result==null ) {
+            return endTime;
+        }
+        //与第一个时间段开始时间按最小时间间隔对齐, 至少前进一个时间片
+        LocalDateTime beginTime = timeRanges[0][0];
+        long millis = Math.max(ChronoUnit.MILLIS.between(beginTime, result), ChronoUnit.MILLIS.between(beginTime, dt)+minTimeInterval);
+        long pieces = (millis+minTimeInterval-1)/minTimeInterval;
+        return beginTime.plus(pieces*minTimeInterval, ChronoUnit.MILLIS);
+    }
+
 }
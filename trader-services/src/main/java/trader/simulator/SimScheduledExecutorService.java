@@ -1,5 +1,6 @@
 package trader.simulator;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
@@ -56,6 +57,13 @@ public class SimScheduledExecutorService implements ScheduledExecutorService, Li
                 }
             }
         }
+
+        /**
+         * 下一次执行时间, 0表示还未初始化
+         */
+        public long getNextTriggerMillis() {
+            return nextTriggerMillis;
+        }
     }
 
     private List<TimeScheduleEntry> schedulerEntries = new ArrayList<>();
@@ -175,4 +183,23 @@ public class SimScheduledExecutorService implements ScheduledExecutorService, Li
         }
     }
 
+    /**
+     * 最早的定时任务执行时间, 新加入的定时任务需要在下一个时间片初始化
+     */
+    @Override
+    public LocalDateTime getNextTime(LocalDateTime actionTime) {
+        long nextMillis = Long.MAX_VALUE;
+        for(int i=0;i<schedulerEntries.size();i++) {
+            long entryMillis = schedulerEntries.get(i).getNextTriggerMillis();
+            if ( entryMillis==0 ) {
+                return actionTime;
+            }
+            nextMillis = Math.min(nextMillis, entryMillis);
+        }
+        if ( nextMillis==Long.MAX_VALUE ) {
+            return null;
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(nextMillis), zoneId);
+    }
+
 }
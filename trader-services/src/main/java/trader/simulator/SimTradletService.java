@@ -21,6 +21,7 @@ import trader.common.beans.BeansContainer;
 import trader.common.config.ConfigUtil;
 import trader.common.exception.AppException;
 import trader.common.exchangeable.Exchangeable;
+import trader.common.exchangeable.ExchangeableMap;
 import trader.common.util.ConversionUtil;
 import trader.common.util.StringUtil;
 import trader.service.ServiceErrorConstants;
@@ -32,6 +33,7 @@ import trader.service.ta.LeveledTimeSeries;
 import trader.service.ta.TAService;
 import trader.service.trade.MarketTimeService;
 import trader.service.trade.TradeService;
+import trader.service.tradlet.AbsTradletGroupEngine;
 import trader.service.tradlet.TradletEvent;
 import trader.service.tradlet.TradletGroup;
 import trader.service.tradlet.TradletGroupImpl;
@@ -58,7 +60,9 @@ public class SimTradletService implements TradletService, ServiceErrorConstants
 
     private Map<String, TradletInfo> tradletInfos = new HashMap<>();
     private List<SimTradletGroupEngine> groupEngines = new ArrayList<>();
+    private ExchangeableMap<AbsTradletGroupEngine[]> groupRoutes = new ExchangeableMap<>();
     private Map<String, Properties> playbookTemplates = new HashMap<>();
+    private List<Map<String, Object>> groupConfigs;
 
     @Override
     public void init(BeansContainer beansContainer) throws Exception
@@ -79,6 +83,7 @@ public class SimTradletService implements TradletService, ServiceErrorConstants
         //加载TradletGroup
         playbookTemplates = loadPlaybookTemplates();
         groupEngines = loadGroups();
+        groupRoutes = TradletServiceImpl.buildGroupRoutes(groupEngines, null);
         mdService.addListener((MarketData md)->{
             queueGroupMDEvent(md);
         });
@@ -95,6 +100,15 @@ public class SimTradletService implements TradletService, ServiceErrorConstants
     public void destroy() {
     }
 
+    /**
+     * 使用指定的交易组配置, 代替从配置文件加载. 需要在init之前调用
+     *
+     * @param groupConfigs 每个交易组的配置, 格式与配置文件相同: id, text
+     */
+    public void setGroupConfigs(List<Map<String, Object>> groupConfigs) {
+        this.groupConfigs = groupConfigs;
+    }
+
     @Override
     public Collection<TradletInfo> getTradletInfos() {
         return tradletInfos.values();
@@ -143,10 +157,10 @@ public class SimTradletService implements TradletService, ServiceErrorConstants
      * 派发行情事件到交易组
      */
     private void queueGroupMDEvent(MarketData md) {
-        for(int i=0;i<groupEngines.size();i++) {
-            SimTradletGroupEngine groupEngine = groupEngines.get(i);
-            if ( groupEngine.getGroup().getExchangeable().equals(md.instrumentId) ) {
-                groupEngine.queueEvent(TradletEvent.EVENT_TYPE_MD_TICK, md);
+        AbsTradletGroupEngine[] engines = groupRoutes.get(md.instrumentId);
+        if ( engines!=null ) {
+            for(int i=0;i<engines.length;i++) {
+                engines[i].queueEvent(TradletEvent.EVENT_TYPE_MD_TICK, md);
             }
         }
     }
@@ -155,10 +169,10 @@ public class SimTradletService implements TradletService, ServiceErrorConstants
      * 派发KBar事件到交易组
      */
     private void queueBarEvent(Exchangeable e, LeveledTimeSeries series) {
-        for(int i=0;i<groupEngines.size();i++) {
-            SimTradletGroupEngine groupEngine = groupEngines.get(i);
-            if ( groupEngine.getGroup().getExchangeable().equals(e) ) {
-                groupEngine.queueEvent(TradletEvent.EVENT_TYPE_MD_BAR, series);
+        AbsTradletGroupEngine[] engines = groupRoutes.get(e);
+        if ( engines!=null ) {
+            for(int i=0;i<engines.length;i++) {
+                engines[i].queueEvent(TradletEvent.EVENT_TYPE_MD_BAR, series);
             }
         }
     }
@@ -187,10 +201,15 @@ public class SimTradletService implements TradletService, ServiceErrorConstants
         return result;
     }
 
+    @SuppressWarnings("unchecked")
     private List<SimTradletGroupEngine> loadGroups()  throws AppException
     {
         List<SimTradletGroupEngine> result = new ArrayList<>();
-        for(Map groupElem:(List<Map>)ConfigUtil.getObject(ITEM_TRADLETGROUPS)) {
+        List<Map<String, Object>> groupElems = groupConfigs;
+        if ( groupElems==null ) {
+            groupElems = (List<Map<String, Object>>)ConfigUtil.getObject(ITEM_TRADLETGROUPS);
+        }
+        for(Map<String, Object> groupElem:groupElems) {
             TradletGroupImpl group = createGroup(groupElem);
             SimTradletGroupEngine engine = new SimTradletGroupEngine(group);
             engine.init(beansContainer);
@@ -199,7 +218,7 @@ public class SimTradletService implements TradletService, ServiceErrorConstants
         return result;
     }
 
-    private TradletGroupImpl createGroup(Map groupElem) throws AppException
+    private TradletGroupImpl createGroup(Map<String, Object> groupElem) throws AppException
     {
         String groupId = ConversionUtil.toString(groupElem.get("id"));
         String groupConfig = ConversionUtil.toString( groupElem.get("text") );
@@ -15,7 +15,7 @@ import trader.service.trade.TradeConstants;
 
 /**
  * 模拟报单. 报单状态改变后, 需要下一个时间片发送回报
- * <BR>目前模拟报单不支持部分成交, 不支持市价
+ * <BR>成交数量受盘口数量限制, 支持部分成交, 全部成交后状态为Completed
  */
 public class SimOrder implements TradeConstants, JsonEnabled {
 
@@ -44,6 +44,7 @@ public class SimOrder implements TradeConstants, JsonEnabled {
     private SimOrderState state;
     private LocalDateTime[] stateTimes;
     private int volume;
+    private int tradeVolume;
     private long limitPrice;
     private OrderPriceType priceType;
     private long frozenMargin;
@@ -101,6 +102,23 @@ public class SimOrder implements TradeConstants, JsonEnabled {
         return volume;
     }
 
+    /**
+     * 已成交数量
+     */
+    public int getTradeVolume() {
+        return tradeVolume;
+    }
+
+    /**
+     * 增加成交数量, 全部成交后修改状态为Completed
+     */
+    public void addTradeVolume(int txnVolume, LocalDateTime time) {
+        tradeVolume += txnVolume;
+        if ( tradeVolume>=volume ) {
+            setState(SimOrderState.Completed, time);
+        }
+    }
+
     public long getFrozenMargin() {
         return frozenMargin;
     }
@@ -149,6 +167,7 @@ public class SimOrder implements TradeConstants, JsonEnabled {
         json.addProperty("offsetFlag", offsetFlag.name());
         json.addProperty("state", state.name());
         json.addProperty("volume", volume);
+        json.addProperty("tradeVolume", tradeVolume);
 
         json.addProperty("limitPrice", limitPrice);
         json.addProperty("priceType", priceType.name());
@@ -0,0 +1,181 @@
+package trader.simulator.trade;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import trader.service.md.MarketData;
+import trader.service.trade.TradeConstants;
+import trader.simulator.trade.SimOrder.SimOrderState;
+
+/**
+ * 一个品种的模拟撮合报单簿.
+ * <BR>限价报单按价格排序: 买单价格从高到低, 卖单价格从低到高, 同价格按报单先后; 市价报单优先成交.
+ * <BR>每个行情切片只检查价格可以成交的报单, 成交数量受对手盘口数量限制, 可以部分成交
+ */
+public class SimOrderBook implements TradeConstants {
+
+    private TreeMap<Long, LinkedList<SimOrder>> bids = new TreeMap<>(Comparator.reverseOrder());
+    private TreeMap<Long, LinkedList<SimOrder>> asks = new TreeMap<>();
+    private LinkedList<SimOrder> marketBids = new LinkedList<>();
+    private LinkedList<SimOrder> marketAsks = new LinkedList<>();
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size==0;
+    }
+
+    public void add(SimOrder order) {
+        boolean buy = order.getDirection()==OrderDirection.Buy;
+        if ( order.getPriceType()==OrderPriceType.LimitPrice ) {
+            TreeMap<Long, LinkedList<SimOrder>> book = buy?bids:asks;
+            LinkedList<SimOrder> orders = book.get(order.getLimitPrice());
+            if ( orders==null ) {
+                orders = new LinkedList<>();
+                book.put(order.getLimitPrice(), orders);
+            }
+            orders.add(order);
+        } else {
+            (buy?marketBids:marketAsks).add(order);
+        }
+        size++;
+    }
+
+    /**
+     * 删除报单, 修改价格前需要先删除
+     */
+    public boolean remove(SimOrder order) {
+        boolean buy = order.getDirection()==OrderDirection.Buy;
+        boolean result = false;
+        if ( order.getPriceType()==OrderPriceType.LimitPrice ) {
+            TreeMap<Long, LinkedList<SimOrder>> book = buy?bids:asks;
+            LinkedList<SimOrder> orders = book.get(order.getLimitPrice());
+            if ( orders!=null ) {
+                result = orders.remove(order);
+                if ( orders.isEmpty() ) {
+                    book.remove(order.getLimitPrice());
+                }
+            }
+        } else {
+            result = (buy?marketBids:marketAsks).remove(order);
+        }
+        if ( result ) {
+            size--;
+        }
+        return result;
+    }
+
+    /**
+     * 根据最新行情撮合, 完全成交的报单从报单簿中删除
+     *
+     * @return 本次行情的成交, 没有成交返回空列表
+     */
+    public List<SimTxn> match(MarketData md, LocalDateTime time) {
+        if ( size==0 ) {
+            return Collections.emptyList();
+        }
+        List<SimTxn> result = new ArrayList<>();
+        //买单和卖方盘口撮合
+        matchSide(true, marketBids, bids, md.lastAskPrice(), md.askPrices, md.askVolumes, md.depth, time, result);
+        //卖单和买方盘口撮合
+        matchSide(false, marketAsks, asks, md.lastBidPrice(), md.bidPrices, md.bidVolumes, md.depth, time, result);
+        return result;
+    }
+
+    private void matchSide(boolean buy, LinkedList<SimOrder> marketOrders, TreeMap<Long, LinkedList<SimOrder>> limitOrders, long bestPrice, long[] depthPrices, int[] depthVolumes, int depth, LocalDateTime time, List<SimTxn> result)
+    {
+        if ( bestPrice==0 ) {
+            return;
+        }
+        //同一个行情切片中, 优先级高的报单先消耗最优档位的数量
+        long matchedVolume = 0;
+        boolean hasDepth = depth>0 && depthPrices!=null && depthVolumes!=null;
+        //市价单逐档成交, 每档按该档价格生成一笔成交. 行情没有盘口数量时按最优价全部成交
+        int levelIndex = 0;
+        long levelUsed = 0;
+        for(Iterator<SimOrder> it=marketOrders.iterator(); it.hasNext();) {
+            SimOrder order = it.next();
+            if ( !hasDepth ) {
+                fill(order, bestPrice, Long.MAX_VALUE, time, result);
+            }
+            while( hasDepth && order.getState()==SimOrderState.Placed ) {
+                if ( levelIndex>=depth || levelIndex>=depthPrices.length || levelIndex>=depthVolumes.length || depthPrices[levelIndex]==0 ) {
+                    return;
+                }
+                long volume = depthVolumes[levelIndex]-levelUsed;
+                if ( volume<=0 ) {
+                    levelIndex++;
+                    levelUsed = 0;
+                    continue;
+                }
+                int txnVolume = fill(order, depthPrices[levelIndex], volume, time, result);
+                levelUsed += txnVolume;
+                matchedVolume += txnVolume;
+            }
+            if ( order.getState()!=SimOrderState.Placed ) {
+                it.remove();
+                size--;
+            }
+        }
+        for(Iterator<Map.Entry<Long, LinkedList<SimOrder>>> levelIt=limitOrders.entrySet().iterator(); levelIt.hasNext();) {
+            Map.Entry<Long, LinkedList<SimOrder>> level = levelIt.next();
+            long price = level.getKey();
+            if ( buy ? price<bestPrice : price>bestPrice ) {
+                break;
+            }
+            long volume = getDepthVolume(buy, price, depthPrices, depthVolumes, depth)-matchedVolume;
+            for(Iterator<SimOrder> it=level.getValue().iterator(); it.hasNext() && volume>0;) {
+                SimOrder order = it.next();
+                int txnVolume = fill(order, price, volume, time, result);
+                matchedVolume += txnVolume;
+                volume -= txnVolume;
+                if ( order.getState()!=SimOrderState.Placed ) {
+                    it.remove();
+                    size--;
+                }
+            }
+            if ( level.getValue().isEmpty() ) {
+                levelIt.remove();
+            }
+            if ( volume<=0 ) {
+                return;
+            }
+        }
+    }
+
+    private static int fill(SimOrder order, long txnPrice, long volume, LocalDateTime time, List<SimTxn> result) {
+        int txnVolume = (int)Math.min(order.getVolume()-order.getTradeVolume(), volume);
+        order.addTradeVolume(txnVolume, time);
+        result.add(new SimTxn(order, txnPrice, txnVolume, time));
+        return txnVolume;
+    }
+
+    /**
+     * 对手盘口中价格不差于price的累计数量, 行情没有盘口数量时不限制
+     */
+    private static long getDepthVolume(boolean buy, long price, long[] depthPrices, int[] depthVolumes, int depth) {
+        if ( depth==0 || depthPrices==null || depthVolumes==null ) {
+            return Long.MAX_VALUE;
+        }
+        long result = 0;
+        for(int i=0; i<depth && i<depthPrices.length && i<depthVolumes.length; i++) {
+            long depthPrice = depthPrices[i];
+            if ( depthPrice==0 || (buy ? depthPrice>price : depthPrice<price) ) {
+                break;
+            }
+            result += depthVolumes[i];
+        }
+        return result;
+    }
+
+}
@@ -14,6 +14,7 @@ import trader.common.exchangeable.Exchangeable;
 import trader.common.util.JsonEnabled;
 import trader.common.util.StringUtil;
 import trader.service.md.MarketData;
+import trader.service.trade.OrderBuilder;
 import trader.service.trade.TradeConstants;
 import trader.simulator.trade.SimOrder.SimOrderState;
 
@@ -32,11 +33,15 @@ public class SimPosition implements JsonEnabled, TradeConstants {
      */
     private List<SimPositionDetail> details = new LinkedList<>();
     /**
-     * 平仓报单
+     * 未成交报单
      */
     private List<SimOrder> orders = new LinkedList<>();
+    /**
+     * 按价格排序的未成交报单, 用于撮合
+     */
+    private SimOrderBook orderBook = new SimOrderBook();
 
-    SimPosition(SimTxnSession session, Exchangeable e){
+    public SimPosition(SimTxnSession session, Exchangeable e){
         this.session = session;
         this.e = e;
     }
@@ -102,6 +107,7 @@ public class SimPosition implements JsonEnabled, TradeConstants {
     public void addOrder(SimOrder order){
         if ( !orders.contains(order)) {
             orders.add(order);
+            orderBook.add(order);
         }
     }
 
@@ -109,12 +115,39 @@ public class SimPosition implements JsonEnabled, TradeConstants {
         for(Iterator<SimOrder> it=orders.iterator(); it.hasNext();) {
             SimOrder o=it.next();
             if ( o.getRef().equals(ref)) {
+                it.remove();
+                orderBook.remove(o);
                 return o;
             }
         }
         return null;
     }
 
+    /**
+     * 修改报单价格, 重新排序
+     */
+    public void modifyOrder(SimOrder order, OrderBuilder builder) {
+        boolean inBook = orderBook.remove(order);
+        order.modify(builder);
+        if ( inBook ) {
+            orderBook.add(order);
+        }
+    }
+
+    /**
+     * 根据最新行情撮合未成交报单
+     */
+    public List<SimTxn> matchOrders(MarketData md, LocalDateTime time){
+        return orderBook.match(md, time);
+    }
+
+    /**
+     * 没有持仓和未成交报单
+     */
+    public boolean isEmpty() {
+        return details.isEmpty() && orders.isEmpty();
+    }
+
     /**
      * 有成交时更新
      */
@@ -124,7 +157,9 @@ public class SimPosition implements JsonEnabled, TradeConstants {
         }
         long txnProfit = 0;
         SimOrder order = txn.getOrder();
-        orders.remove(order);
+        if ( order.getState()!=SimOrderState.Placed ) {
+            orders.remove(order);
+        }
 
         //手续费
         long orderValues[] = session.getFeeEvaluator().compute(e, txn.getVolume(), txn.getPrice(), order.getDirection(), order.getOffsetFlag());
@@ -214,8 +249,10 @@ public class SimPosition implements JsonEnabled, TradeConstants {
             posProfit += (posValues[1] - posOpenValues[1]);
         }
         for(SimOrder o:orders) {
+            //部分成交的报单只冻结剩余数量
+            int orderVolume = o.getVolume()-o.getTradeVolume();
             if ( o.getOffsetFlag()==OrderOffsetFlag.OPEN ) {
-                long[] orderValues = session.getFeeEvaluator().compute(e, o.getVolume(), o.getLimitPrice(), o.getDirection(), o.getOffsetFlag());
+                long[] orderValues = session.getFeeEvaluator().compute(e, orderVolume, o.getLimitPrice(), o.getDirection(), o.getOffsetFlag());
                 frozenCommission += orderValues[1];
                 //开仓
                 if ( o.getDirection()==OrderDirection.Buy ) {
@@ -228,10 +265,10 @@ public class SimPosition implements JsonEnabled, TradeConstants {
             } else {
                 if ( o.getDirection()==OrderDirection.Sell ) {
                     //平多
-                    longFrozenPos += o.getVolume();
+                    longFrozenPos += orderVolume;
                 }else {
                     //平空
-                    shortFrozenPos += o.getVolume();
+                    shortFrozenPos += orderVolume;
                 }
             }
         }
@@ -272,6 +309,7 @@ public class SimPosition implements JsonEnabled, TradeConstants {
             SimOrder o = it.next();
             if ( o.getState()!=SimOrderState.Placed ) {
                 it.remove();
+                orderBook.remove(o);
                 count++;
             }
         }
@@ -16,11 +16,11 @@ public class SimTxn {
     private long price;
     private LocalDateTime time;
 
-    public SimTxn(SimOrder order, long price, LocalDateTime time) {
+    public SimTxn(SimOrder order, long price, int volume, LocalDateTime time) {
         this.order = order;
         id = nextTxnId();
         this.direction = order.getDirection();
-        this.volume = order.getVolume();
+        this.volume = volume;
         this.price = price;
         this.time = time;
     }
@@ -20,6 +20,7 @@ import com.google.gson.JsonParser;
 import trader.common.beans.BeansContainer;
 import trader.common.exception.AppException;
 import trader.common.exchangeable.Exchangeable;
+import trader.common.exchangeable.ExchangeableMap;
 import trader.common.exchangeable.ExchangeableTradingTimes;
 import trader.common.util.ConversionUtil;
 import trader.common.util.DateUtil;
@@ -54,7 +55,7 @@ public class SimTxnSession extends AbsTxnSession implements JsonEnabled, TradeCo
     private MarketDataService mdService;
     private long[] money = new long[AccMoney_Count];
     private SimMarketTimeService mtService;
-    private Map<Exchangeable, SimPosition> positions = new HashMap<>();
+    private ExchangeableMap<SimPosition> positions = new ExchangeableMap<>();
     private List<SimOrder> orders = new ArrayList<>();
     private List<SimTxn> allTxns = new ArrayList<>();
     private List<SimResponse> pendingResponses = new ArrayList<>();
@@ -217,7 +218,7 @@ public class SimTxnSession extends AbsTxnSession implements JsonEnabled, TradeCo
             order = pos.getOrder(order0.getRef());
         }
         if ( order!=null ) {
-            order.modify(builder);
+            pos.modifyOrder(order, builder);
             respondLater(e, ResponseType.RtnOrder, order);
         }else {
             //返回无对应报单错误
@@ -237,21 +238,28 @@ public class SimTxnSession extends AbsTxnSession implements JsonEnabled, TradeCo
         }
         SimPosition pos = positions.get(md.instrumentId);
         if ( pos!=null ) {
-            for(SimOrder order:pos.getOrders()) {
-                SimTxn txn = completeOrder(order, md);
-                if ( txn!=null ) {
-                    pos.updateOnTxn(txn, md.updateTime);
-                    long currTime= md.updateTimestamp;
+            //只撮合价格可以成交的报单
+            List<SimTxn> txns = pos.matchOrders(md, mtService.getMarketTime());
+            for(SimTxn txn:txns) {
+                SimOrder order = txn.getOrder();
+                allTxns.add(txn);
+                pos.updateOnTxn(txn, md.updateTime);
+                long currTime= md.updateTimestamp;
+                if ( order.getState()==SimOrderState.Completed ) {
                     respondLater(order.getExchangeable(), ResponseType.RtnOrder, order, new OrderStateTuple(OrderState.Complete, OrderSubmitState.Accepted, currTime, "全部成交"));
-                    respondLater(order.getExchangeable(), ResponseType.RtnTrade, txn);
+                } else {
+                    respondLater(order.getExchangeable(), ResponseType.RtnOrder, order, new OrderStateTuple(OrderState.ParticallyComplete, OrderSubmitState.Accepted, currTime, "部分成交"));
                 }
+                respondLater(order.getExchangeable(), ResponseType.RtnTrade, txn);
+            }
+            //没有持仓和报单时账户不会变化
+            if ( !txns.isEmpty() || !pos.isEmpty() ) {
+                pos.updateOnMarketData(md);
+                updateAccount();
             }
-            pos.updateOnMarketData(md);
         }
-        updateAccount();
         if ( !pendingResponses.isEmpty() ) {
             sendResponses();
-            pendingResponses.clear();
         }
     }
 
@@ -259,19 +267,31 @@ public class SimTxnSession extends AbsTxnSession implements JsonEnabled, TradeCo
     public void onTimeChanged(LocalDate tradingDay, LocalDateTime actionTime) {
         if ( !pendingResponses.isEmpty() ) {
             sendResponses();
-            pendingResponses.clear();
         }
     }
 
+    /**
+     * 有待发送的回报时, 需要在下一个时间片发送
+     */
+    @Override
+    public LocalDateTime getNextTime(LocalDateTime actionTime) {
+        if ( !pendingResponses.isEmpty() ) {
+            return actionTime;
+        }
+        return null;
+    }
+
     private void respondLater(Exchangeable e, ResponseType responseType, Object ...data) {
         pendingResponses.add(new SimResponse(e, responseType, data));
     }
 
     /**
-     * 实际发送通知
+     * 实际发送通知. 通知过程中新产生的回报在下一个时间片发送
      */
     private void sendResponses() {
-        for(SimResponse r:pendingResponses) {
+        List<SimResponse> responses = pendingResponses;
+        pendingResponses = new ArrayList<>();
+        for(SimResponse r:responses) {
             long currTime = DateUtil.localdatetime2long(r.getExchangeable().exchange().getZoneId(), mtService.getMarketTime());
             switch(r.getType()) {
             case RspOrderInsert:
@@ -426,41 +446,6 @@ public class SimTxnSession extends AbsTxnSession implements JsonEnabled, TradeCo
         order.setState(SimOrderState.Canceled, mtService.getMarketTime());
     }
 
-    /**
-     * 根据最新行情成交报单
-     */
-    private SimTxn completeOrder(SimOrder order, MarketData md) {
-        SimTxn result = null;
-        long txnPrice = 0;
-        if ( order.getState()==SimOrderState.Placed ) {
-            long orderPrice = order.getLimitPrice();
-            switch(order.getPriceType()) {
-            case LimitPrice:
-                if ( order.getDirection()==OrderDirection.Buy && orderPrice>=md.lastAskPrice() ) {
-                    txnPrice = orderPrice;
-                }
-                if (order.getDirection()==OrderDirection.Sell && orderPrice<=md.lastBidPrice() ){
-                    txnPrice = orderPrice;
-                }
-                break;
-            case BestPrice:
-            case AnyPrice:
-                if ( order.getDirection()==OrderDirection.Buy ) {
-                    txnPrice = md.lastAskPrice();
-                } else if (order.getDirection()==OrderDirection.Sell ) {
-                    txnPrice = md.lastBidPrice();
-                }
-                break;
-            }
-        }
-        if ( txnPrice!=0 ) {
-            result = new SimTxn(order, txnPrice, mtService.getMarketTime());
-            order.setState(SimOrderState.Completed, mtService.getMarketTime());
-            allTxns.add(result);
-        }
-        return result;
-    }
-
     /**
      * 将资金从moneyIdx转移到moneyIdx2下, 在扣除保证金时有用.
      * 如果moneyIdx的资金小于amount, 失败.
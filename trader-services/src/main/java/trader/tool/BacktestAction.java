@@ -1,30 +1,67 @@
 package trader.tool;
 
+import java.io.File;
 import java.io.PrintWriter;
+import java.io.StringReader;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.ta4j.core.Bar;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
 
 import trader.common.beans.BeansContainer;
+import trader.common.config.ConfigUtil;
+import trader.common.exception.AppException;
 import trader.common.exchangeable.Exchangeable;
-import trader.common.exchangeable.ExchangeableTradingTimes;
+import trader.common.exchangeable.ExchangeableData;
+import trader.common.util.ConversionUtil;
+import trader.common.util.DateUtil;
+import trader.common.util.FileUtil;
+import trader.common.util.IniFile;
+import trader.common.util.PriceUtil;
+import trader.common.util.StringUtil;
 import trader.common.util.StringUtil.KVPair;
-import trader.service.data.KVStoreService;
-import trader.service.md.MarketDataService;
-import trader.service.ta.TAServiceImpl;
-import trader.service.trade.MarketTimeService;
-import trader.service.trade.TradeService;
-import trader.service.tradlet.TradletService;
+import trader.common.util.TraderHomeUtil;
+import trader.service.ServiceErrorConstants;
+import trader.service.plugin.PluginService;
+import trader.service.tradlet.TradletServiceImpl;
 import trader.service.util.CmdAction;
+import trader.simulator.BacktestJob;
+import trader.simulator.BacktestResult;
+import trader.simulator.BacktestSummary;
+import trader.simulator.SharedMarketData;
 import trader.simulator.SimBeansContainer;
-import trader.simulator.SimKVStoreService;
 import trader.simulator.SimMarketDataService;
-import trader.simulator.SimMarketTimeService;
-import trader.simulator.SimScheduledExecutorService;
-import trader.simulator.SimTradletService;
-import trader.simulator.trade.SimTradeService;
 
-public class BacktestAction implements CmdAction {
+/**
+ * 回测命令.
+ * <BR>按 品种 x 交易日 x 参数组 拆分为独立的回测任务, 在线程池中并行执行, 最后按参数组合并结果
+ */
+public class BacktestAction implements CmdAction, ServiceErrorConstants {
+
+    /**
+     * 缺省参数组, 不覆盖任何配置
+     */
+    private static final String DEFAULT_PARAM_SET = "default";
+
+    protected List<String> groupIds = new ArrayList<>();
+    protected List<Exchangeable> instruments = new ArrayList<>();
+    protected LocalDate beginDate;
+    protected LocalDate endDate;
+    protected String paramsFile;
+    protected int threads = Runtime.getRuntime().availableProcessors();
+    protected String outputFile;
 
     @Override
     public String getCommand() {
@@ -33,48 +70,233 @@ public class BacktestAction implements CmdAction {
 
     @Override
     public void usage(PrintWriter writer) {
-        writer.println("backtest <TRADE_XML> <DATE_RANGE>");
-        writer.println("\t回测");
+        writer.println("backtest --begin=YYYYMMDD [--end=YYYYMMDD] [--groups=GROUP_IDS] [--instruments=INSTRUMENTS] [--params=PARAMS_INI] [--threads=N] [--output=REPORT_JSON]");
+        writer.println("\t回测, 参数组文件每个section为一组参数, 格式为 SECTION.KEY=VALUE");
     }
 
     @Override
     public int execute(BeansContainer beansContainer, PrintWriter writer, List<KVPair> options) throws Exception
     {
-        // TODO Auto-generated method stub
+        parseOptions(options);
+        if ( beginDate==null ) {
+            usage(writer);
+            return 1;
+        }
+        List<Map<String, Object>> groupConfigs = loadGroupConfigs();
+        if ( groupConfigs.isEmpty() ) {
+            writer.println("没有找到交易组: "+groupIds);
+            return 1;
+        }
+        Map<String, Properties> paramSets = loadParamSets();
+        List<BacktestJob> jobs = createJobs(beansContainer, groupConfigs, paramSets);
+        writer.println("回测任务 "+jobs.size()+" 个, 交易组 "+groupConfigs.size()+", 参数组 "+paramSets.size()+", 线程 "+threads);
+        writer.flush();
+
+        long t0 = System.currentTimeMillis();
+        List<BacktestResult> results = runJobs(jobs, writer);
+        long t1 = System.currentTimeMillis();
+
+        List<BacktestSummary> summaries = new ArrayList<>();
+        for(String paramSetId:paramSets.keySet()) {
+            summaries.add(new BacktestSummary(paramSetId, paramSets.get(paramSetId), results));
+        }
+        printSummaries(writer, summaries);
+        writer.println("回测完成, 耗时 "+(t1-t0)/1000+" 秒");
+        saveReport(writer, summaries, results);
         return 0;
     }
 
     /**
-     * 为某个交易日创建运行环境
+     * 加载需要回测的交易组配置, 未指定时使用所有交易组
      */
-    private BeansContainer initBeans(Exchangeable e, LocalDate tradingDay)
-            throws Exception
+    @SuppressWarnings("unchecked")
+    protected List<Map<String, Object>> loadGroupConfigs() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        List<Map<String, Object>> groupElems = (List<Map<String, Object>>)ConfigUtil.getObject(TradletServiceImpl.ITEM_TRADLETGROUPS);
+        if ( groupElems!=null ) {
+            for(Map<String, Object> groupElem:groupElems) {
+                String groupId = ConversionUtil.toString(groupElem.get("id"));
+                if ( groupIds.isEmpty() || groupIds.contains(groupId) ) {
+                    result.add(groupElem);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 从INI文件加载参数组, 每个section代表一组参数
+     */
+    private Map<String, Properties> loadParamSets() throws Exception
     {
-        SimBeansContainer beansContainer = new SimBeansContainer();
-        SimMarketTimeService mtService = new SimMarketTimeService();
-        SimScheduledExecutorService scheduledExecutorService = new SimScheduledExecutorService();
-        SimMarketDataService mdService = new SimMarketDataService();
-        SimKVStoreService kvStoreService = new SimKVStoreService();
-        SimTradeService tradeService = new SimTradeService();
-        TAServiceImpl taService = new TAServiceImpl();
-        SimTradletService tradletService = new SimTradletService();
-
-        beansContainer.addBean(MarketTimeService.class, mtService);
-        beansContainer.addBean(ScheduledExecutorService.class, scheduledExecutorService);
-        beansContainer.addBean(MarketDataService.class, mdService);
-        beansContainer.addBean(KVStoreService.class, kvStoreService);
-        beansContainer.addBean(TradeService.class, tradeService);
-        beansContainer.addBean(TAServiceImpl.class, taService);
-        beansContainer.addBean(TradletService.class, tradletService);
-
-        scheduledExecutorService.init(beansContainer);
-        ExchangeableTradingTimes tradingTimes = e.exchange().getTradingTimes(e, tradingDay);
-        mtService.setTimeRanges(tradingDay, tradingTimes.getMarketTimes() );
-        mdService.init(beansContainer);
-        taService.init(beansContainer);
-        tradeService.init(beansContainer);
-        tradletService.init(beansContainer);
-        return beansContainer;
+        Map<String, Properties> result = new LinkedHashMap<>();
+        if ( !StringUtil.isEmpty(paramsFile) ) {
+            IniFile paramsIni = new IniFile(new StringReader(FileUtil.read(new File(paramsFile))));
+            for(IniFile.Section section:paramsIni.getAllSections()) {
+                result.put(section.getName(), section.getProperties());
+            }
+        }
+        if ( result.isEmpty() ) {
+            result.put(DEFAULT_PARAM_SET, new Properties());
+        }
+        return result;
+    }
+
+    /**
+     * 指定品种时, 所有交易组都在这些品种上回测; 否则每个交易组使用自己配置的品种.
+     * <BR>参数组在创建任务时检查, 所有交易组都没有对应配置段时直接失败
+     */
+    protected List<BacktestJob> createJobs(BeansContainer beansContainer, List<Map<String, Object>> groupConfigs, Map<String, Properties> paramSets) throws Exception
+    {
+        for(Properties params:paramSets.values()) {
+            BacktestJob.validateOverrides(groupConfigs, params);
+        }
+        Map<Exchangeable, List<Map<String, Object>>> instrumentGroups = new TreeMap<>();
+        for(Map<String, Object> groupConfig:groupConfigs) {
+            String groupId = ConversionUtil.toString(groupConfig.get("id"));
+            String groupText = ConversionUtil.toString(groupConfig.get("text"));
+            IniFile.Section commonSection = new IniFile(new StringReader(groupText)).getSection("common");
+            if ( commonSection==null ) {
+                throw new AppException(ERR_TRADLET_TRADLETGROUP_INVALID_CONFIG, "交易组 "+groupId+" 配置 "+System.getProperty(TraderHomeUtil.PROP_TRADER_CONFIG_FILE)+" 没有 [common] 配置段");
+            }
+            List<Exchangeable> groupInstruments = instruments;
+            if ( groupInstruments.isEmpty() ) {
+                groupInstruments = new ArrayList<>();
+                String exchangeableStr = commonSection.get("exchangeable");
+                String[] instrumentIds = StringUtil.split(exchangeableStr, ",|;|\\s");
+                if ( instrumentIds.length>0 ) {
+                    groupInstruments.add(Exchangeable.fromString(instrumentIds[0]));
+                }
+            }
+            for(Exchangeable e:groupInstruments) {
+                List<Map<String, Object>> groups = instrumentGroups.get(e);
+                if ( groups==null ) {
+                    groups = new ArrayList<>();
+                    instrumentGroups.put(e, groups);
+                }
+                groups.add(groupConfig);
+            }
+        }
+        ExchangeableData data = TraderHomeUtil.getExchangeableData();
+        SimMarketDataService mdLoader = new SimMarketDataService();
+        mdLoader.init(new SimBeansContainer());
+        PluginService pluginService = beansContainer.getBean(PluginService.class);
+        List<BacktestJob> result = new ArrayList<>();
+        for(Exchangeable e:instrumentGroups.keySet()) {
+            //同一品种的所有任务共享历史MIN1数据, 每个交易日只加载一次
+            Map<LocalDate, List<Bar>> min1Bars = new ConcurrentHashMap<>();
+            for(LocalDate tradingDay=beginDate; !tradingDay.isAfter(endDate); tradingDay=tradingDay.plusDays(1)) {
+                if ( e.exchange().getTradingTimes(e, tradingDay)==null ) {
+                    continue;
+                }
+                if ( !data.existsBinary(e, ExchangeableData.TICK_CTP, tradingDay) && !data.exists(e, ExchangeableData.TICK_CTP, tradingDay) ) {
+                    continue;
+                }
+                //同一品种同一交易日的所有参数组共享一份行情数据
+                SharedMarketData sharedData = new SharedMarketData(mdLoader, e, tradingDay, min1Bars);
+                for(String paramSetId:paramSets.keySet()) {
+                    BacktestJob job = new BacktestJob(e, tradingDay, instrumentGroups.get(e), paramSetId, paramSets.get(paramSetId));
+                    job.setSharedMarketData(sharedData);
+                    job.setPluginService(pluginService);
+                    result.add(job);
+                }
+            }
+        }
+        return result;
+    }
+
+    protected List<BacktestResult> runJobs(List<BacktestJob> jobs, PrintWriter writer) throws Exception
+    {
+        List<BacktestResult> result = new ArrayList<>(jobs.size());
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, threads));
+        try{
+            List<Future<BacktestResult>> futures = new ArrayList<>(jobs.size());
+            for(BacktestJob job:jobs) {
+                futures.add(executorService.submit(job));
+            }
+            for(int i=0;i<futures.size();i++) {
+                BacktestResult jobResult = futures.get(i).get();
+                result.add(jobResult);
+                writer.println("("+(i+1)+"/"+futures.size()+") "+jobResult.getExchangeable()+" "+DateUtil.date2str(jobResult.getTradingDay())+" "+jobResult.getParamSetId()
+                    +" PnL "+PriceUtil.long2str(jobResult.getPnl())+" 成交 "+jobResult.getTrades()
+                    +(jobResult.getError()!=null?" 失败: "+jobResult.getError():""));
+                writer.flush();
+            }
+        }finally {
+            executorService.shutdownNow();
+        }
+        return result;
+    }
+
+    protected void printSummaries(PrintWriter writer, List<BacktestSummary> summaries) {
+        writer.println("参数组\t盈亏\t最大回撤\t日内最大回撤\t成交\t交易日\t盈利日\t失败");
+        for(BacktestSummary summary:summaries) {
+            writer.println(summary);
+        }
+    }
+
+    /**
+     * 保存JSON格式的回测报告: 每个参数组的合并结果和每个回测任务的结果
+     */
+    protected void saveReport(PrintWriter writer, List<BacktestSummary> summaries, List<BacktestResult> results) throws Exception
+    {
+        if ( StringUtil.isEmpty(outputFile) ) {
+            return;
+        }
+        JsonArray summariesJson = new JsonArray();
+        for(BacktestSummary summary:summaries) {
+            summariesJson.add(summary.toJson());
+        }
+        JsonArray jobsJson = new JsonArray();
+        for(BacktestResult result:results) {
+            jobsJson.add(result.toJson());
+        }
+        JsonObject json = new JsonObject();
+        json.addProperty("beginDate", DateUtil.date2str(beginDate));
+        json.addProperty("endDate", DateUtil.date2str(endDate));
+        json.add("summaries", summariesJson);
+        json.add("jobs", jobsJson);
+        FileUtil.save(new File(outputFile), json.toString());
+        writer.println("回测报告: "+outputFile);
+    }
+
+    protected void parseOptions(List<KVPair> options) {
+        for(KVPair kv:options) {
+            parseOption(kv);
+        }
+        if ( endDate==null ) {
+            endDate = beginDate;
+        }
+    }
+
+    protected void parseOption(KVPair kv) {
+        switch(kv.k.toLowerCase()) {
+        case "begin":
+            beginDate = DateUtil.str2localdate(kv.v);
+            break;
+        case "end":
+            endDate = DateUtil.str2localdate(kv.v);
+            break;
+        case "groups":
+            for(String groupId:StringUtil.split(kv.v, ",|;")) {
+                groupIds.add(groupId);
+            }
+            break;
+        case "instruments":
+            for(String instrumentId:StringUtil.split(kv.v, ",|;")) {
+                instruments.add(Exchangeable.fromString(instrumentId));
+            }
+            break;
+        case "params":
+            paramsFile = kv.v;
+            break;
+        case "threads":
+            threads = ConversionUtil.toInt(kv.v);
+            break;
+        case "output":
+            outputFile = kv.v;
+            break;
+        }
     }
 
 }
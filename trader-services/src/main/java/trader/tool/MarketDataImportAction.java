@@ -31,6 +31,7 @@ import trader.common.exchangeable.ExchangeableData;
 import trader.common.exchangeable.ExchangeableData.DataInfo;
 import trader.common.exchangeable.ExchangeableTradingTimes;
 import trader.common.exchangeable.MarketTimeStage;
+import trader.common.tick.PriceLevel;
 import trader.common.util.CSVDataSet;
 import trader.common.util.CSVMarshallHelper;
 import trader.common.util.CSVUtil;
@@ -42,9 +43,9 @@ import trader.common.util.StringUtil.KVPair;
 import trader.common.util.TraderHomeUtil;
 import trader.common.util.csv.CtpCSVMarshallHelper;
 import trader.service.md.MarketData;
+import trader.service.md.MarketDataColumnCodec;
 import trader.service.md.MarketDataProducer;
 import trader.service.md.MarketDataProducerFactory;
-import trader.service.ta.FutureBar;
 import trader.service.ta.TimeSeriesLoader;
 import trader.service.util.CmdAction;
 import trader.simulator.SimMarketDataService;
@@ -289,6 +290,8 @@ public class MarketDataImportAction implements CmdAction {
         }
         if ( mdInfo.savedTicks>0 ) {
             exchangeableData.save(mdInfo.exchangeable, dataInfo, date, csvWriter.toString());
+            //同时写入二进制列存格式, 供回测快速加载
+            exchangeableData.saveBinary(mdInfo.exchangeable, dataInfo, date, MarketDataColumnCodec.encode(allMarketDatas));
             //写入MIN1数据
             saveMin1Bars(date, mdInfo, allMarketDatas);
         }
@@ -302,29 +305,9 @@ public class MarketDataImportAction implements CmdAction {
      */
     private void saveMin1Bars(LocalDate date, MarketDataInfo mdInfo, List<MarketData> marketDatas) throws IOException
     {
-        DataInfo dataInfo = ExchangeableData.MIN1;
-
-        List<Bar> bars = TimeSeriesLoader.marketDatas2bars(mdInfo.exchangeable, dataInfo.getLevel(), marketDatas);
-        CSVWriter csvWriter = new CSVWriter(dataInfo.getColumns());
+        List<Bar> bars = TimeSeriesLoader.marketDatas2bars(mdInfo.exchangeable, PriceLevel.MIN1, marketDatas);
         //MIN1始终完全重新生成
-        for(Bar bar:bars) {
-            csvWriter.next();
-            if ( bar instanceof FutureBar ) {
-                ((FutureBar)bar).save(csvWriter);
-            } else {
-                csvWriter.set(ExchangeableData.COLUMN_BEGIN_TIME, DateUtil.date2str(bar.getBeginTime().toLocalDateTime()));
-                csvWriter.set(ExchangeableData.COLUMN_END_TIME, DateUtil.date2str(bar.getEndTime().toLocalDateTime()));
-                csvWriter.set(ExchangeableData.COLUMN_OPEN, bar.getOpenPrice().toString());
-                csvWriter.set(ExchangeableData.COLUMN_HIGH, bar.getMaxPrice().toString());
-                csvWriter.set(ExchangeableData.COLUMN_LOW, bar.getMinPrice().toString());
-                csvWriter.set(ExchangeableData.COLUMN_CLOSE, bar.getClosePrice().toString());
-
-                csvWriter.set(ExchangeableData.COLUMN_VOLUME, ""+bar.getVolume().longValue());
-                csvWriter.set(ExchangeableData.COLUMN_TURNOVER, bar.getAmount().toString());
-            }
-        }
-        //保存
-        exchangeableData.save(mdInfo.exchangeable, dataInfo, date, csvWriter.toString());
+        TimeSeriesLoader.saveMin1Bars(exchangeableData, mdInfo.exchangeable, date, bars);
     }
 
     /**
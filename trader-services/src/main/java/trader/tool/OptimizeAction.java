@@ -0,0 +1,227 @@
+package trader.tool;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import trader.common.beans.BeansContainer;
+import trader.common.util.ConversionUtil;
+import trader.common.util.FileUtil;
+import trader.common.util.StringUtil;
+import trader.common.util.StringUtil.KVPair;
+import trader.simulator.BacktestJob;
+import trader.simulator.BacktestResult;
+import trader.simulator.BacktestSummary;
+
+/**
+ * 交易组参数优化命令.
+ * <BR>参数范围文件每行定义一个参数的取值: SECTION.KEY=V1,V2,V3 或 SECTION.KEY=BEGIN:END:STEP,
+ * 所有取值的组合(或随机抽样的子集)作为参数组并行回测, 按目标排序
+ */
+public class OptimizeAction extends BacktestAction {
+
+    /**
+     * 排序目标
+     */
+    public static enum Objective {
+        /**
+         * 累计盈亏从高到低
+         */
+        pnl,
+        /**
+         * 最大回撤从低到高
+         */
+        drawdown,
+        /**
+         * 盈亏/最大回撤从高到低
+         */
+        ratio
+    }
+
+    private String rangesFile;
+    private int samples;
+    private long seed = 0;
+    private Objective objective = Objective.pnl;
+    private int top = 10;
+
+    @Override
+    public String getCommand() {
+        return "optimize";
+    }
+
+    @Override
+    public void usage(PrintWriter writer) {
+        writer.println("optimize --ranges=RANGES_FILE --begin=YYYYMMDD [--end=YYYYMMDD] [--groups=GROUP_IDS] [--instruments=INSTRUMENTS] [--samples=N] [--seed=N] [--objective=pnl|drawdown|ratio] [--top=N] [--threads=N] [--output=REPORT_JSON]");
+        writer.println("\t交易组参数优化, 参数范围格式为 SECTION.KEY=V1,V2,V3 或 SECTION.KEY=BEGIN:END:STEP");
+    }
+
+    @Override
+    public int execute(BeansContainer beansContainer, PrintWriter writer, List<KVPair> options) throws Exception
+    {
+        parseOptions(options);
+        if ( beginDate==null || StringUtil.isEmpty(rangesFile) ) {
+            usage(writer);
+            return 1;
+        }
+        List<Map<String, Object>> groupConfigs = loadGroupConfigs();
+        if ( groupConfigs.isEmpty() ) {
+            writer.println("没有找到交易组: "+groupIds);
+            return 1;
+        }
+        Map<String, Properties> paramSets = createParamSets(loadRanges(), samples, seed);
+        List<BacktestJob> jobs = createJobs(beansContainer, groupConfigs, paramSets);
+        writer.println("参数组 "+paramSets.size()+", 回测任务 "+jobs.size()+" 个, 线程 "+threads);
+        writer.flush();
+
+        long t0 = System.currentTimeMillis();
+        List<BacktestResult> results = runJobs(jobs, writer);
+        long t1 = System.currentTimeMillis();
+
+        List<BacktestSummary> summaries = new ArrayList<>();
+        for(String paramSetId:paramSets.keySet()) {
+            summaries.add(new BacktestSummary(paramSetId, paramSets.get(paramSetId), results));
+        }
+        Collections.sort(summaries, createComparator(objective));
+        printSummaries(writer, summaries.subList(0, Math.min(top, summaries.size())));
+        for(int i=0;i<Math.min(top, summaries.size());i++) {
+            writer.println(summaries.get(i).getParamSetId()+"\t"+summaries.get(i).getParams());
+        }
+        writer.println("参数优化完成, 耗时 "+(t1-t0)/1000+" 秒");
+        saveReport(writer, summaries, results);
+        return 0;
+    }
+
+    @Override
+    protected void parseOption(KVPair kv) {
+        switch(kv.k.toLowerCase()) {
+        case "ranges":
+            rangesFile = kv.v;
+            break;
+        case "samples":
+            samples = ConversionUtil.toInt(kv.v);
+            break;
+        case "seed":
+            seed = ConversionUtil.toLong(kv.v);
+            break;
+        case "objective":
+            objective = ConversionUtil.toEnum(Objective.class, kv.v);
+            break;
+        case "top":
+            top = ConversionUtil.toInt(kv.v);
+            break;
+        default:
+            super.parseOption(kv);
+        }
+    }
+
+    /**
+     * 加载参数范围, 按参数名排序
+     */
+    private Map<String, List<String>> loadRanges() throws Exception
+    {
+        Properties props = StringUtil.text2properties(FileUtil.read(new File(rangesFile)));
+        Map<String, List<String>> result = new TreeMap<>();
+        for(Object key:props.keySet()) {
+            result.put(key.toString(), parseRange(props.getProperty(key.toString())));
+        }
+        return result;
+    }
+
+    /**
+     * 解析参数取值: V1,V2,V3 或 BEGIN:END:STEP
+     */
+    static List<String> parseRange(String range) {
+        List<String> result = new ArrayList<>();
+        String[] parts = StringUtil.split(range, ":");
+        if ( parts.length==3 ) {
+            BigDecimal begin = new BigDecimal(parts[0].trim());
+            BigDecimal end = new BigDecimal(parts[1].trim());
+            BigDecimal step = new BigDecimal(parts[2].trim());
+            if ( step.signum()<=0 ) {
+                throw new IllegalArgumentException("Invalid step in range: "+range);
+            }
+            for(BigDecimal v=begin; v.compareTo(end)<=0; v=v.add(step)) {
+                result.add(v.stripTrailingZeros().toPlainString());
+            }
+        } else {
+            for(String v:StringUtil.split(range, ",|;")) {
+                result.add(v.trim());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 生成所有参数组合, 指定抽样数量时随机选取不重复的组合序号再解码, 不生成完整的笛卡尔积
+     */
+    static Map<String, Properties> createParamSets(Map<String, List<String>> ranges, int samples, long seed) {
+        long total = 1;
+        for(List<String> values:ranges.values()) {
+            if ( values.isEmpty() ) {
+                throw new IllegalArgumentException("Empty parameter range");
+            }
+            total = total>Long.MAX_VALUE/values.size() ? Long.MAX_VALUE : total*values.size();
+        }
+        List<Long> ordinals = new ArrayList<>();
+        if ( samples>0 && samples<total ) {
+            Random random = new Random(seed);
+            Set<Long> picked = new LinkedHashSet<>();
+            while( picked.size()<samples ) {
+                picked.add((random.nextLong()>>>1)%total);
+            }
+            ordinals.addAll(picked);
+        } else {
+            if ( total>Integer.MAX_VALUE ) {
+                throw new IllegalArgumentException("Too many parameter combinations "+total+", use --samples");
+            }
+            for(long i=0;i<total;i++) {
+                ordinals.add(i);
+            }
+        }
+        Map<String, Properties> result = new LinkedHashMap<>();
+        for(int i=0;i<ordinals.size();i++) {
+            result.put("p"+(i+1), decodeParamSet(ranges, ordinals.get(i)));
+        }
+        return result;
+    }
+
+    /**
+     * 按参数名顺序把组合序号解码为每个参数的取值, 最后一个参数变化最快
+     */
+    private static Properties decodeParamSet(Map<String, List<String>> ranges, long ordinal) {
+        List<String> keys = new ArrayList<>(ranges.keySet());
+        Properties result = new Properties();
+        for(int i=keys.size()-1;i>=0;i--) {
+            List<String> values = ranges.get(keys.get(i));
+            result.setProperty(keys.get(i), values.get((int)(ordinal%values.size())));
+            ordinal /= values.size();
+        }
+        return result;
+    }
+
+    static Comparator<BacktestSummary> createComparator(Objective objective) {
+        switch(objective) {
+        case drawdown:
+            return Comparator.comparingLong(BacktestSummary::getMaxDrawdown).thenComparing(Comparator.comparingLong(BacktestSummary::getPnl).reversed());
+        case ratio:
+            return Comparator.comparingDouble((BacktestSummary s)->{
+                return (double)s.getPnl()/Math.max(1, s.getMaxDrawdown());
+            }).reversed();
+        case pnl:
+        default:
+            return Comparator.comparingLong(BacktestSummary::getPnl).reversed();
+        }
+    }
+
+}
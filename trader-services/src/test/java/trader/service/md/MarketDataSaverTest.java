@@ -0,0 +1,123 @@
+package trader.service.md;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import net.jctp.CThostFtdcDepthMarketDataField;
+import trader.common.beans.ServiceState;
+import trader.common.exchangeable.Exchangeable;
+import trader.common.util.FileUtil;
+import trader.common.util.TraderHomeUtil;
+import trader.service.TraderHomeHelper;
+import trader.service.md.ctp.CtpMarketData;
+import trader.simulator.SimBeansContainer;
+
+public class MarketDataSaverTest {
+
+    static {
+        TraderHomeHelper.init();
+    }
+
+    private static final String PRODUCER_ID = "saverTest";
+
+    private volatile ServiceState state = ServiceState.Ready;
+
+    private static CtpMarketData createMarketData(Exchangeable e, String tradingDay, String updateTime) {
+        CThostFtdcDepthMarketDataField field = new CThostFtdcDepthMarketDataField();
+        field.ExchangeID = e.exchange().name();
+        field.InstrumentID = e.id();
+        field.TradingDay = tradingDay;
+        field.ActionDay = tradingDay;
+        field.UpdateTime = updateTime;
+        field.LastPrice = 281.4;
+        field.Volume = 90;
+        field.BidPrice1 = 281.35;
+        field.BidVolume1 = 75;
+        field.AskPrice1 = 281.40;
+        field.AskVolume1 = 27;
+        field.BidPrice2 = Double.MAX_VALUE;
+        LocalDate day = LocalDate.of(Integer.parseInt(tradingDay.substring(0, 4)), Integer.parseInt(tradingDay.substring(4, 6)), Integer.parseInt(tradingDay.substring(6)));
+        return new CtpMarketData(PRODUCER_ID, e, field, day);
+    }
+
+    private static String spillLine(String type, MarketData md, CharSequence text) {
+        return type+"\t"+md.producerId+"\t"+md.tradingDay+"\t"+md.instrumentId+"\t"+text+"\n";
+    }
+
+    /**
+     * 回放之前交易日的溢出文件, 之后当前交易日的行情必须写入各自交易日的文件
+     */
+    @Test
+    public void testReplayPreviousTradingDay() throws Exception {
+        Exchangeable au1906 = Exchangeable.fromString("shfe.au1906");
+        String prevDay = "20181212", currDay = "20181213";
+        File dataDir = TraderHomeUtil.getDirectory(TraderHomeUtil.DIR_MARKETDATA);
+        File prevFile = new File(dataDir, prevDay+"/"+PRODUCER_ID+"/"+au1906+".csv");
+        File currFile = new File(dataDir, currDay+"/"+PRODUCER_ID+"/"+au1906+".csv");
+        File spillDir = new File(dataDir, "spill");
+        File spillFile = new File(spillDir, String.format("%013d-%06d", 0L, 0)+".spill");
+        cleanup(dataDir, prevDay, currDay);
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            CtpMarketData spilled = createMarketData(au1906, prevDay, "14:59:59");
+            StringBuilder row = new StringBuilder();
+            spilled.toCsvRow(row);
+            spillDir.mkdirs();
+            FileUtil.save(spillFile, spillLine("H", spilled, spilled.getCsvHead())+spillLine("D", spilled, row));
+
+            SimBeansContainer beansContainer = new SimBeansContainer();
+            beansContainer.addBean(ExecutorService.class, executorService);
+            beansContainer.addBean(MarketDataService.class, Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] {MarketDataService.class}, (proxy, method, args)->{
+                if ( method.getName().equals("getState") ) {
+                    return state;
+                }
+                return null;
+            }));
+            MarketDataSaver saver = new MarketDataSaver(beansContainer);
+            for(int i=0; i<50 && saver.getSavedCount()<1; i++) {
+                Thread.sleep(100);
+            }
+            saver.asyncSave(createMarketData(au1906, currDay, "21:00:00"));
+            for(int i=0; i<50 && saver.getSavedCount()<2; i++) {
+                Thread.sleep(100);
+            }
+            state = ServiceState.Stopped;
+            executorService.shutdown();
+            executorService.awaitTermination(5, TimeUnit.SECONDS);
+
+            assertTrue(!spillFile.exists());
+            List<String> prevLines = FileUtil.readLines(prevFile);
+            List<String> currLines = FileUtil.readLines(currFile);
+            assertTrue(prevLines.size()==2 && prevLines.get(1).contains("14:59:59"));
+            assertTrue(currLines.size()==2 && currLines.get(1).contains("21:00:00"));
+        }finally {
+            executorService.shutdownNow();
+            spillFile.delete();
+            cleanup(dataDir, prevDay, currDay);
+        }
+    }
+
+    private static void cleanup(File dataDir, String... tradingDays) {
+        for(String tradingDay:tradingDays) {
+            File producerDir = new File(dataDir, tradingDay+"/"+PRODUCER_ID);
+            File[] files = producerDir.listFiles();
+            if ( files!=null ) {
+                for(File file:files) {
+                    file.delete();
+                }
+            }
+            producerDir.delete();
+            producerDir.getParentFile().delete();
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+package trader.service.md.ctp;
+
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import org.junit.Test;
+
+import net.jctp.CThostFtdcDepthMarketDataField;
+import trader.common.exchangeable.Exchangeable;
+import trader.common.util.DateUtil;
+
+public class CtpMarketDataTest {
+
+    private static CThostFtdcDepthMarketDataField createField(String exchangeId, String instrumentId, String tradingDay, String actionDay, String updateTime, int millisec) {
+        CThostFtdcDepthMarketDataField field = new CThostFtdcDepthMarketDataField();
+        field.ExchangeID = exchangeId;
+        field.InstrumentID = instrumentId;
+        field.TradingDay = tradingDay;
+        field.ActionDay = actionDay;
+        field.UpdateTime = updateTime;
+        field.UpdateMillisec = millisec;
+        field.LastPrice = 281.4;
+        field.Volume = 90;
+        field.BidPrice1 = 281.35;
+        field.BidVolume1 = 75;
+        field.AskPrice1 = 281.40;
+        field.AskVolume1 = 27;
+        field.BidPrice2 = Double.MAX_VALUE;
+        return field;
+    }
+
+    @Test
+    public void testTime2int() {
+        assertTrue(CtpMarketData.time2int("21:00:00")==210000);
+        assertTrue(CtpMarketData.time2int("9:05:31")==90531);
+        assertTrue(CtpMarketData.time2int("00:59:59")==5959);
+        assertTrue(CtpMarketData.time2int("")==0);
+    }
+
+    @Test
+    public void testUpdateTime() {
+        Exchangeable au1906 = Exchangeable.fromString("shfe.au1906");
+        LocalDate tradingDay = LocalDate.of(2018, 12, 13);
+        CtpMarketData md = new CtpMarketData("test", au1906, createField("SHFE", "au1906", "20181213", "20181212", "21:00:00", 500), tradingDay);
+        assertTrue(md.updateTime.equals(LocalDateTime.of(2018, 12, 12, 21, 0, 0, 500*1000000)));
+        assertTrue(md.updateTimestamp==DateUtil.localdatetime2long(au1906.exchange().getZoneId(), md.updateTime));
+        assertTrue(md.depth==1 && md.bidVolumes[0]==75 && md.askVolumes[0]==27);
+
+        //DCE夜市的ActionDay是交易日, 需要转换为前一交易日, 后半夜为下一自然日
+        Exchangeable m1905 = Exchangeable.fromString("dce.m1905");
+        LocalDate monday = LocalDate.of(2018, 12, 17);
+        CtpMarketData md2 = new CtpMarketData("test", m1905, createField("DCE", "m1905", "20181217", "20181217", "21:00:01", 0), monday);
+        assertTrue(md2.updateTime.equals(LocalDateTime.of(2018, 12, 14, 21, 0, 1)));
+        //和RingBuffer转换器一样update()原地更新, 复用同一个对象和数组
+        long[] bidPrices = md2.bidPrices;
+        md2.update("test", m1905, createField("DCE", "m1905", "20181217", "20181217", "00:30:00", 0), monday);
+        assertTrue(md2.updateTime.equals(LocalDateTime.of(2018, 12, 15, 0, 30, 0)));
+        md2.update("test", m1905, createField("DCE", "m1905", "20181217", "20181217", "09:00:00", 0), monday);
+        assertTrue(md2.updateTime.equals(LocalDateTime.of(2018, 12, 17, 9, 0, 0)));
+        assertTrue(bidPrices==md2.bidPrices);
+    }
+
+}
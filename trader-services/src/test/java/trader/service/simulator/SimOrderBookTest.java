@@ -0,0 +1,230 @@
+package trader.service.simulator;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import trader.common.exchangeable.Exchangeable;
+import trader.common.util.FileUtil;
+import trader.common.util.PriceUtil;
+import trader.service.md.MarketData;
+import trader.service.md.MarketDataService;
+import trader.service.md.ctp.CtpMarketData;
+import trader.service.trade.Account;
+import trader.service.trade.FutureFeeEvaluator;
+import trader.service.trade.OrderBuilder;
+import trader.service.trade.OrderImpl;
+import trader.service.trade.TradeConstants;
+import trader.service.trade.TradeConstants.OrderDirection;
+import trader.service.trade.TradeConstants.OrderOffsetFlag;
+import trader.service.trade.TradeConstants.OrderPriceType;
+import trader.service.trade.TxnFeeEvaluator;
+import trader.simulator.SimBeansContainer;
+import trader.simulator.SimMarketDataService;
+import trader.simulator.SimMarketTimeService;
+import trader.simulator.trade.SimOrder;
+import trader.simulator.trade.SimOrder.SimOrderState;
+import trader.simulator.trade.SimOrderBook;
+import trader.simulator.trade.SimPosition;
+import trader.simulator.trade.SimTxn;
+import trader.simulator.trade.SimTxnSession;
+
+/**
+ * 模拟撮合报单簿的自测
+ */
+public class SimOrderBookTest {
+
+    private static final Exchangeable au1906 = Exchangeable.fromString("au1906");
+    private static final LocalDateTime time = LocalDateTime.of(2018, 12, 28, 9, 0, 1);
+
+    @Test
+    public void testPriceOrderAndPartialFill() {
+        SimOrderBook book = new SimOrderBook();
+        SimOrder buy1 = createOrder("1", OrderDirection.Buy, "290.00", 3);
+        SimOrder buy2 = createOrder("2", OrderDirection.Buy, "290.10", 2);
+        SimOrder buy3 = createOrder("3", OrderDirection.Buy, "289.00", 1);
+        SimOrder sell1 = createOrder("4", OrderDirection.Sell, "292.00", 1);
+        book.add(buy1);
+        book.add(buy2);
+        book.add(buy3);
+        book.add(sell1);
+        assertTrue(book.size()==4);
+
+        //价格不能成交
+        assertTrue(book.match(createMarketData("289.90", 5, "290.20", 5), time).isEmpty());
+
+        //卖一 290.00 数量 3, 高价买单优先
+        List<SimTxn> txns = book.match(createMarketData("289.90", 5, "290.00", 3), time);
+        assertTrue(txns.size()==2);
+        assertTrue(txns.get(0).getOrder()==buy2 && txns.get(0).getVolume()==2 && txns.get(0).getPrice()==PriceUtil.str2long("290.10"));
+        assertTrue(txns.get(1).getOrder()==buy1 && txns.get(1).getVolume()==1);
+        assertTrue(buy2.getState()==SimOrderState.Completed);
+        assertTrue(buy1.getState()==SimOrderState.Placed && buy1.getTradeVolume()==1);
+        assertTrue(book.size()==3);
+
+        //剩余数量继续成交
+        txns = book.match(createMarketData("289.90", 5, "289.00", 10), time);
+        assertTrue(txns.size()==2 && txns.get(0).getOrder()==buy1 && txns.get(0).getVolume()==2);
+        assertTrue(buy1.getState()==SimOrderState.Completed && buy3.getState()==SimOrderState.Completed);
+
+        assertTrue(book.remove(sell1) && book.isEmpty());
+    }
+
+    @Test
+    public void testMarketOrder() {
+        SimOrderBook book = new SimOrderBook();
+        SimOrder buy1 = createOrder("1", OrderDirection.Buy, "290.00", 2);
+        SimOrder marketBuy = createOrder("2", OrderDirection.Buy, OrderOffsetFlag.OPEN, OrderPriceType.AnyPrice, "0", 5);
+        book.add(buy1);
+        book.add(marketBuy);
+
+        //市价报单优先, 逐档成交, 每档按该档价格, 数量受盘口限制
+        MarketData md = createMarketData("290.00", 5, "290.50", 2);
+        md.depth = 2;
+        md.askPrices = new long[] {PriceUtil.str2long("290.50"), PriceUtil.str2long("291.00")};
+        md.askVolumes = new int[] {2, 2};
+        List<SimTxn> txns = book.match(md, time);
+        assertTrue(txns.size()==2);
+        assertTrue(txns.get(0).getOrder()==marketBuy && txns.get(0).getVolume()==2 && txns.get(0).getPrice()==PriceUtil.str2long("290.50"));
+        assertTrue(txns.get(1).getOrder()==marketBuy && txns.get(1).getVolume()==2 && txns.get(1).getPrice()==PriceUtil.str2long("291.00"));
+        assertTrue(marketBuy.getState()==SimOrderState.Placed && book.size()==2);
+
+        //市价报单先消耗盘口数量, 剩余数量给限价报单
+        txns = book.match(createMarketData("289.50", 5, "290.00", 2), time);
+        assertTrue(txns.size()==2);
+        assertTrue(txns.get(0).getOrder()==marketBuy && txns.get(0).getVolume()==1 && txns.get(0).getPrice()==PriceUtil.str2long("290.00"));
+        assertTrue(txns.get(1).getOrder()==buy1 && txns.get(1).getVolume()==1);
+        assertTrue(marketBuy.getState()==SimOrderState.Completed && buy1.getState()==SimOrderState.Placed);
+        assertTrue(book.size()==1);
+    }
+
+    @Test
+    public void testModifyOrder() throws Exception {
+        SimPosition pos = new SimPosition(createSession(), au1906);
+        SimOrder buy1 = createOrder("1", OrderDirection.Buy, "289.00", 1);
+        SimOrder buy2 = createOrder("2", OrderDirection.Buy, "290.00", 1);
+        pos.addOrder(buy1);
+        pos.addOrder(buy2);
+
+        //修改价格后重新排序, 高价买单优先成交
+        pos.modifyOrder(buy1, new OrderBuilder().setLimitPrice(PriceUtil.str2long("291.00")));
+        assertTrue(buy1.getLimitPrice()==PriceUtil.str2long("291.00"));
+        List<SimTxn> txns = pos.matchOrders(createMarketData("289.50", 5, "290.00", 1), time);
+        assertTrue(txns.size()==1 && txns.get(0).getOrder()==buy1 && txns.get(0).getPrice()==PriceUtil.str2long("291.00"));
+        assertTrue(buy2.getState()==SimOrderState.Placed);
+
+        //原价格档位没有残留报单, 只有buy2成交
+        assertTrue(pos.matchOrders(createMarketData("288.50", 5, "289.00", 5), time).size()==1);
+        assertTrue(buy2.getState()==SimOrderState.Completed);
+    }
+
+    @Test
+    public void testCancelPartialFilled() throws Exception {
+        SimPosition pos = new SimPosition(createSession(), au1906);
+        SimOrder buy1 = createOrder("1", OrderDirection.Buy, "290.00", 3);
+        pos.addOrder(buy1);
+        List<SimTxn> txns = pos.matchOrders(createMarketData("289.90", 5, "290.00", 1), time);
+        assertTrue(txns.size()==1 && buy1.getTradeVolume()==1 && buy1.getState()==SimOrderState.Placed);
+
+        //部分成交后撤单, 报单簿中也要删除
+        assertTrue(pos.removeOrder("1")==buy1);
+        assertTrue(pos.getOrders().isEmpty());
+        assertTrue(pos.matchOrders(createMarketData("289.90", 5, "290.00", 10), time).isEmpty());
+        assertTrue(buy1.getTradeVolume()==1);
+    }
+
+    @Test
+    public void testFrozenOnRemainingVolume() throws Exception {
+        SimTxnSession session = createSession();
+        TxnFeeEvaluator feeEvaluator = session.getFeeEvaluator();
+        SimPosition pos = new SimPosition(session, au1906);
+        //开多3手, 成交2手
+        SimOrder buyOpen = createOrder("1", OrderDirection.Buy, "290.00", 3);
+        pos.addOrder(buyOpen);
+        matchAndUpdate(pos, createMarketData("289.90", 5, "290.00", 2));
+        //平多2手, 成交1手
+        SimOrder sellClose = createOrder("2", OrderDirection.Sell, OrderOffsetFlag.CLOSE, OrderPriceType.LimitPrice, "291.00", 2);
+        pos.addOrder(sellClose);
+        matchAndUpdate(pos, createMarketData("291.00", 1, "291.50", 5));
+        assertTrue(buyOpen.getTradeVolume()==2 && sellClose.getTradeVolume()==1);
+
+        //只冻结剩余数量的保证金, 手续费和持仓
+        long[] remainingValues = feeEvaluator.compute(au1906, 1, PriceUtil.str2long("290.00"), OrderDirection.Buy, OrderOffsetFlag.OPEN);
+        assertTrue(pos.getMoney(TradeConstants.PosMoney_LongFrozenAmount)==remainingValues[0]);
+        assertTrue(pos.getMoney(TradeConstants.PosMoney_FrozenMargin)==remainingValues[0]);
+        assertTrue(pos.getMoney(TradeConstants.PosMoney_FrozenCommission)==remainingValues[1]);
+        assertTrue(pos.getVolume(TradeConstants.PosVolume_LongPosition)==1);
+        assertTrue(pos.getVolume(TradeConstants.PosVolume_LongFrozen)==1);
+    }
+
+    /**
+     * 与SimTxnSession.onMarketData相同: 撮合, 更新成交, 再按行情更新持仓
+     */
+    private static void matchAndUpdate(SimPosition pos, MarketData md) {
+        for(SimTxn txn:pos.matchOrders(md, time)) {
+            pos.updateOnTxn(txn, time);
+        }
+        pos.updateOnMarketData(md);
+    }
+
+    private static SimOrder createOrder(String ref, OrderDirection direction, String price, int volume) {
+        return createOrder(ref, direction, OrderOffsetFlag.OPEN, OrderPriceType.LimitPrice, price, volume);
+    }
+
+    private static SimOrder createOrder(String ref, OrderDirection direction, OrderOffsetFlag offsetFlag, OrderPriceType priceType, String price, int volume) {
+        OrderBuilder builder = new OrderBuilder()
+                .setExchagneable(au1906)
+                .setDirection(direction)
+                .setOffsetFlag(offsetFlag)
+                .setPriceType(priceType)
+                .setLimitPrice(PriceUtil.str2long(price))
+                .setVolume(volume);
+        return new SimOrder(new OrderImpl(ref, builder, null), time);
+    }
+
+    /**
+     * SimPosition只使用交易日和手续费计算, 不需要连接. 账户只用于日志名称
+     */
+    private static SimTxnSession createSession() throws Exception {
+        SimBeansContainer beansContainer = new SimBeansContainer();
+        beansContainer.addBean(MarketDataService.class, new SimMarketDataService());
+        beansContainer.addBean(SimMarketTimeService.class, new SimMarketTimeService());
+        File commissionsFile = new File(SimOrderBookTest.class.getClassLoader().getResource("etc/sim-account1.commissions.json").getFile());
+        TxnFeeEvaluator feeEvaluator = FutureFeeEvaluator.fromJson(null, (JsonObject)(new JsonParser()).parse(FileUtil.read(commissionsFile)));
+        Account account = (Account)Proxy.newProxyInstance(Account.class.getClassLoader(), new Class<?>[] {Account.class}, (proxy, method, args)->{
+            return method.getName().equals("getLoggerCategory") ? SimOrderBookTest.class.getName() : null;
+        });
+        return new SimTxnSession(beansContainer, account, null) {
+            @Override
+            public LocalDate getTradingDay() {
+                return time.toLocalDate();
+            }
+
+            @Override
+            public TxnFeeEvaluator getFeeEvaluator() {
+                return feeEvaluator;
+            }
+        };
+    }
+
+    private static MarketData createMarketData(String bidPrice, int bidVolume, String askPrice, int askVolume) {
+        CtpMarketData md = new CtpMarketData("ctp", au1906);
+        md.depth = 1;
+        md.bidPrices = new long[] {PriceUtil.str2long(bidPrice)};
+        md.bidVolumes = new int[] {bidVolume};
+        md.askPrices = new long[] {PriceUtil.str2long(askPrice)};
+        md.askVolumes = new int[] {askVolume};
+        md.lastPrice = md.bidPrices[0];
+        return md;
+    }
+
+}
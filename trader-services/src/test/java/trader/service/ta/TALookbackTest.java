@@ -0,0 +1,27 @@
+package trader.service.ta;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import trader.common.tick.PriceLevel;
+
+public class TALookbackTest {
+
+    @Test
+    public void testParse() {
+        TALookback lookback = TALookback.parse("2d");
+        assertTrue(lookback.getDays(PriceLevel.MIN5)==2 && lookback.getBars(PriceLevel.MIN5)==0);
+
+        lookback = TALookback.parse("min1:3d, min5:600; vol1k:1d");
+        assertTrue(lookback.getDays(PriceLevel.MIN1)==3);
+        assertTrue(lookback.getDays(PriceLevel.MIN5)==0 && lookback.getBars(PriceLevel.MIN5)==600);
+        assertTrue(lookback.getDays(PriceLevel.VOL1K)==1);
+        assertTrue(lookback.getDays(PriceLevel.MIN15)==1);
+        assertTrue(lookback.getMin1Days(Arrays.asList(PriceLevel.MIN5))==3);
+        assertTrue(lookback.getMin1Bars(Arrays.asList(PriceLevel.MIN5, PriceLevel.VOL1K))==3000);
+    }
+
+}
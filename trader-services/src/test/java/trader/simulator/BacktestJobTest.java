@@ -0,0 +1,70 @@
+package trader.simulator;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import trader.common.exception.AppException;
+import trader.common.util.IniFile;
+
+public class BacktestJobTest {
+
+    private static final String GROUP_MACD = "[common]\nstate=disabled\nexchangeable=au1906\n\n[MACD135]\nvolume=1\n";
+    private static final String GROUP_STOPLOSS = "[common]\nstate=disabled\nexchangeable=ru1905\n\n[StopLoss]\nendTime=14:55:00\n";
+
+    private static Map<String, Object> createGroupConfig(String id, String text) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("id", id);
+        result.put("text", text);
+        return result;
+    }
+
+    @Test
+    public void testReplaceAndAppend() throws Exception {
+        Properties overrides = new Properties();
+        overrides.setProperty("common.state", "Enabled");
+        overrides.setProperty("MACD135.volume", "2");
+        overrides.setProperty("MACD135.period", "5");
+        IniFile ini = new IniFile(new StringReader(BacktestJob.overrideConfig(GROUP_MACD, overrides, null)));
+        assertTrue(ini.getSection("common").get("state").equals("Enabled"));
+        assertTrue(ini.getSection("common").get("exchangeable").equals("au1906"));
+        assertTrue(ini.getSection("MACD135").get("volume").equals("2"));
+        assertTrue(ini.getSection("MACD135").get("period").equals("5"));
+    }
+
+    @Test
+    public void testMultiGroups() throws Exception {
+        List<Map<String, Object>> groupConfigs = new ArrayList<>();
+        groupConfigs.add(createGroupConfig("group_au", GROUP_MACD));
+        groupConfigs.add(createGroupConfig("group_ru", GROUP_STOPLOSS));
+        Properties overrides = new Properties();
+        overrides.setProperty("MACD135.volume", "2");
+        overrides.setProperty("StopLoss.endTime", "14:50:00");
+        //每个参数只需要在一个交易组中存在
+        BacktestJob.validateOverrides(groupConfigs, overrides);
+
+        IniFile auIni = new IniFile(new StringReader(BacktestJob.overrideConfig(GROUP_MACD, overrides, null)));
+        assertTrue(auIni.getSection("MACD135").get("volume").equals("2"));
+        assertTrue(auIni.getSection("StopLoss")==null);
+        IniFile ruIni = new IniFile(new StringReader(BacktestJob.overrideConfig(GROUP_STOPLOSS, overrides, null)));
+        assertTrue(ruIni.getSection("StopLoss").get("endTime").equals("14:50:00"));
+        assertTrue(ruIni.getSection("MACD135")==null);
+
+        //所有交易组都没有的配置段必须失败
+        overrides.setProperty("Unknown.volume", "2");
+        try {
+            BacktestJob.validateOverrides(groupConfigs, overrides);
+            assertTrue(false);
+        }catch(AppException e) {
+            assertTrue(e.getMessage().contains("Unknown.volume"));
+        }
+    }
+
+}
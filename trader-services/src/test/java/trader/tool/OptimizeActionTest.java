@@ -0,0 +1,100 @@
+package trader.tool;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import trader.simulator.BacktestSummary;
+import trader.tool.OptimizeAction.Objective;
+
+public class OptimizeActionTest {
+
+    private static BacktestSummary createSummary(String paramSetId, long pnl, long maxDrawdown) {
+        return new BacktestSummary(paramSetId, new Properties(), Collections.emptyList()) {
+            @Override
+            public long getPnl() {
+                return pnl;
+            }
+            @Override
+            public long getMaxDrawdown() {
+                return maxDrawdown;
+            }
+        };
+    }
+
+    private static List<String> sort(List<BacktestSummary> summaries, Objective objective) {
+        List<BacktestSummary> sorted = new ArrayList<>(summaries);
+        Collections.sort(sorted, OptimizeAction.createComparator(objective));
+        List<String> result = new ArrayList<>();
+        for(BacktestSummary summary:sorted) {
+            result.add(summary.getParamSetId());
+        }
+        return result;
+    }
+
+    @Test
+    public void testParseRange() {
+        assertTrue(OptimizeAction.parseRange("1,2, 3").equals(Arrays.asList("1", "2", "3")));
+        assertTrue(OptimizeAction.parseRange("a;b").equals(Arrays.asList("a", "b")));
+        assertTrue(OptimizeAction.parseRange("1:2:0.5").equals(Arrays.asList("1", "1.5", "2")));
+        assertTrue(OptimizeAction.parseRange("0.1:0.35:0.1").equals(Arrays.asList("0.1", "0.2", "0.3")));
+        try {
+            OptimizeAction.parseRange("1:2:0");
+            assertTrue(false);
+        }catch(IllegalArgumentException e) {}
+    }
+
+    @Test
+    public void testCreateParamSets() {
+        Map<String, List<String>> ranges = new TreeMap<>();
+        ranges.put("MACD135.foo", Arrays.asList("1", "1.5"));
+        ranges.put("MACD135.bar", Arrays.asList("a", "b", "c"));
+        Map<String, Properties> paramSets = OptimizeAction.createParamSets(ranges, 0, 0);
+        assertTrue(paramSets.size()==6);
+        assertTrue(new HashSet<>(paramSets.values()).size()==6);
+        Properties p1 = paramSets.get("p1");
+        assertTrue(p1.getProperty("MACD135.bar").equals("a") && p1.getProperty("MACD135.foo").equals("1"));
+
+        //抽样的组合不重复, 相同seed结果相同
+        Map<String, Properties> samples = OptimizeAction.createParamSets(ranges, 4, 7);
+        assertTrue(samples.size()==4 && new HashSet<>(samples.values()).size()==4);
+        assertTrue(paramSets.values().containsAll(samples.values()));
+        assertTrue(samples.equals(OptimizeAction.createParamSets(ranges, 4, 7)));
+
+        //组合数量很大时抽样不生成完整笛卡尔积
+        Map<String, List<String>> hugeRanges = new TreeMap<>();
+        for(int i=0;i<10;i++) {
+            hugeRanges.put("MACD135.p"+i, OptimizeAction.parseRange("1:100:1"));
+        }
+        Map<String, Properties> hugeSamples = OptimizeAction.createParamSets(hugeRanges, 10, 0);
+        Set<Properties> distinct = new HashSet<>(hugeSamples.values());
+        assertTrue(hugeSamples.size()==10 && distinct.size()==10);
+        assertTrue(hugeSamples.get("p1").size()==10);
+    }
+
+    @Test
+    public void testComparators() {
+        List<BacktestSummary> summaries = Arrays.asList(
+                createSummary("p1", 100, 50),
+                createSummary("p2", 300, 200),
+                createSummary("p3", 200, 50),
+                createSummary("p4", -100, 10)
+                );
+        assertTrue(sort(summaries, Objective.pnl).equals(Arrays.asList("p2", "p3", "p1", "p4")));
+        //回撤相同时盈亏高的在前
+        assertTrue(sort(summaries, Objective.drawdown).equals(Arrays.asList("p4", "p3", "p1", "p2")));
+        //p3: 4, p1: 2, p2: 1.5, p4: -10
+        assertTrue(sort(summaries, Objective.ratio).equals(Arrays.asList("p3", "p1", "p2", "p4")));
+    }
+
+}